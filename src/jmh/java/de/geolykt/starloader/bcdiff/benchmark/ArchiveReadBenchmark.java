@@ -0,0 +1,135 @@
+package de.geolykt.starloader.bcdiff.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Enumeration;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.ClassNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import de.geolykt.starloader.bcdiff.io.ArchiveEntry;
+import de.geolykt.starloader.bcdiff.io.ArchiveInput;
+import de.geolykt.starloader.bcdiff.io.JarFileInput;
+import de.geolykt.starloader.bcdiff.io.MappedArchiveInput;
+
+/**
+ * Benchmarks reading all classes and resources of a jar, as done by the generate and apply commands before any class
+ * is diffed or patched. The single pass inflates every entry once, while the old way of reading a jar opened every
+ * entry once to check the class file magic, once more for the {@link ClassReader} and a third time for its bytes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ArchiveReadBenchmark {
+
+    private static final String[] CLASS_SAMPLES = {SampleClasses.SMALL, SampleClasses.HUGE_SWITCH, SampleClasses.LAMBDAS};
+
+    /**
+     * The amount of entries within the jar. Every eighth entry is a resource instead of a class.
+     */
+    @Param({"2000"})
+    public int entries;
+
+    private Path jarPath;
+
+    private JarFile jar;
+
+    @Setup
+    public void setup() throws IOException {
+        jarPath = Files.createTempFile("bcdiff-benchmark", ".jar");
+        byte[][] classes = new byte[CLASS_SAMPLES.length][];
+        for (int i = 0; i < classes.length; i++) {
+            classes[i] = SampleClasses.generate(CLASS_SAMPLES[i], false);
+        }
+        try (OutputStream out = Files.newOutputStream(jarPath); JarOutputStream jarOut = new JarOutputStream(out)) {
+            for (int i = 0; i < entries; i++) {
+                if (i % 8 == 7) {
+                    jarOut.putNextEntry(new JarEntry("assets/resource" + i + ".txt"));
+                    for (int line = 0; line < 200; line++) {
+                        jarOut.write(("resource " + i + " line " + line + '\n').getBytes(StandardCharsets.UTF_8));
+                    }
+                } else {
+                    jarOut.putNextEntry(new JarEntry("sample/Class" + i + ".class"));
+                    jarOut.write(classes[i % classes.length]);
+                }
+                jarOut.closeEntry();
+            }
+        }
+        jar = new JarFile(jarPath.toFile());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        jar.close();
+        Files.delete(jarPath);
+    }
+
+    @Benchmark
+    public void reopenPerEntry(Blackhole blackhole) throws IOException {
+        Enumeration<JarEntry> jarEntries = jar.entries();
+        while (jarEntries.hasMoreElements()) {
+            JarEntry entry = jarEntries.nextElement();
+            try (InputStream magic = jar.getInputStream(entry)) {
+                if (magic.read() != 0xCA || magic.read() != 0xFE || magic.read() != 0xBA || magic.read() != 0xBE) {
+                    continue;
+                }
+            }
+            try (InputStream in = jar.getInputStream(entry)) {
+                ClassNode node = new ClassNode();
+                new ClassReader(in).accept(node, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+                blackhole.consume(node);
+            }
+            try (InputStream in = jar.getInputStream(entry)) {
+                blackhole.consume(JarFileInput.readFully(in, entry.getSize()));
+            }
+        }
+    }
+
+    @Benchmark
+    public void singlePass(Blackhole blackhole) throws IOException {
+        readSinglePass(new JarFileInput(jar), blackhole);
+    }
+
+    @Benchmark
+    public void singlePassMapped(Blackhole blackhole) throws IOException {
+        try (MappedArchiveInput input = new MappedArchiveInput(jarPath)) {
+            readSinglePass(input, blackhole);
+        }
+    }
+
+    private void readSinglePass(ArchiveInput input, Blackhole blackhole) throws IOException {
+        for (ArchiveEntry entry : input.entries()) {
+            byte[] classFile = entry.readClassFile();
+            if (classFile != null) {
+                ClassNode node = new ClassNode();
+                new ClassReader(classFile).accept(node, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+                blackhole.consume(node);
+                blackhole.consume(classFile);
+            }
+        }
+    }
+}
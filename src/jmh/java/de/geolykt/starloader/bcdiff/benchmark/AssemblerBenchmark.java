@@ -0,0 +1,66 @@
+package de.geolykt.starloader.bcdiff.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.tree.ClassNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.geolykt.starloader.bcdiff.DeltaGenerator;
+import de.geolykt.starloader.bcdiff.assembler.SLAssmbler;
+
+/**
+ * Benchmarks the assembler on a listing of roughly a million lines, which makes the per-line
+ * parsing overhead and allocations of the assembler stand out. Writing the class file is measured
+ * both directly through a class writer and through an intermediate class node.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class AssemblerBenchmark {
+
+    private String[] listing;
+
+    @Setup
+    public void setup() {
+        ClassNode node = new ClassNode();
+        new ClassReader(SampleClasses.generate(SampleClasses.LARGE, false)).accept(node, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        listing = new DeltaGenerator().generateBytecode(node).toArray(new String[0]);
+    }
+
+    @Benchmark
+    public ClassNode assembleLargeListing() {
+        ClassNode out = new ClassNode();
+        new SLAssmbler(listing, out);
+        return out;
+    }
+
+    @Benchmark
+    public byte[] writeLargeListingDirectly() {
+        ClassWriter cw = new ClassWriter(0);
+        new SLAssmbler(listing, cw);
+        return cw.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] writeLargeListingThroughTree() {
+        ClassNode out = new ClassNode();
+        new SLAssmbler(listing, out);
+        ClassWriter cw = new ClassWriter(0);
+        out.accept(cw);
+        return cw.toByteArray();
+    }
+}
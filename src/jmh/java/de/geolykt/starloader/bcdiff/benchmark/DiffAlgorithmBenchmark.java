@@ -0,0 +1,100 @@
+package de.geolykt.starloader.bcdiff.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.ClassNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.difflib.DiffUtils;
+import com.github.difflib.patch.Patch;
+
+import de.geolykt.starloader.bcdiff.DeltaGenerator;
+import de.geolykt.starloader.bcdiff.diff.InternedLineDiff;
+import de.geolykt.starloader.bcdiff.diff.LineDiffAlgorithm;
+
+/**
+ * Benchmarks the line diff algorithms on listings where large parts of the code were moved around, as it happens when
+ * an obfuscator or compiler reorders the blocks of a method. The revised listing consists of the same blocks of lines as
+ * the original listing, but in a different order, which makes the edit distance about as large as the listing itself.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DiffAlgorithmBenchmark {
+
+    /**
+     * The blocks of the revised listing are the blocks of the original listing in reverse order.
+     */
+    public static final String REVERSED = "reversed";
+
+    /**
+     * The blocks of the revised listing are the blocks of the original listing in a random order.
+     */
+    public static final String SHUFFLED = "shuffled";
+
+    private static final int BLOCK_SIZE = 32;
+
+    @Param({"MYERS", "HISTOGRAM", "PATIENCE"})
+    public LineDiffAlgorithm algorithm;
+
+    @Param({REVERSED, SHUFFLED})
+    public String reordering;
+
+    private List<String> originalBytecode;
+
+    private List<String> revisedBytecode;
+
+    private InternedLineDiff unlimitedDiff;
+
+    private InternedLineDiff limitedDiff;
+
+    @Setup
+    public void setup() {
+        ClassNode node = new ClassNode();
+        new ClassReader(SampleClasses.generate(SampleClasses.HUGE_SWITCH, false)).accept(node, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        originalBytecode = new DeltaGenerator().generateBytecode(node);
+        List<List<String>> blocks = new ArrayList<>();
+        for (int i = 0; i < originalBytecode.size(); i += BLOCK_SIZE) {
+            blocks.add(originalBytecode.subList(i, Math.min(originalBytecode.size(), i + BLOCK_SIZE)));
+        }
+        if (reordering.equals(REVERSED)) {
+            Collections.reverse(blocks);
+        } else {
+            Collections.shuffle(blocks, new Random(0));
+        }
+        revisedBytecode = new ArrayList<>(originalBytecode.size());
+        for (List<String> block : blocks) {
+            revisedBytecode.addAll(block);
+        }
+        unlimitedDiff = new InternedLineDiff(algorithm, Integer.MAX_VALUE);
+        limitedDiff = new InternedLineDiff(algorithm, 256);
+    }
+
+    @Benchmark
+    public Patch<String> diff() {
+        return DiffUtils.diff(originalBytecode, revisedBytecode, unlimitedDiff);
+    }
+
+    @Benchmark
+    public Patch<String> diffCostLimited() {
+        return DiffUtils.diff(originalBytecode, revisedBytecode, limitedDiff);
+    }
+}
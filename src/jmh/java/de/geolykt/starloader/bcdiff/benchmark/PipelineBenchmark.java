@@ -0,0 +1,107 @@
+package de.geolykt.starloader.bcdiff.benchmark;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.tree.ClassNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.difflib.DiffUtils;
+import com.github.difflib.patch.Patch;
+
+import de.geolykt.starloader.bcdiff.DeltaGenerator;
+import de.geolykt.starloader.bcdiff.FrameComputingClasswriter;
+import de.geolykt.starloader.bcdiff.assembler.SLAssmbler;
+import de.geolykt.starloader.bcdiff.diff.InternedLineDiff;
+
+/**
+ * Benchmarks the individual stages that every class goes through when a patch is generated or applied:
+ * disassembly, diffing of the listings, reassembly and the computation of stack map frames.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipelineBenchmark {
+
+    @Param({SampleClasses.SMALL, SampleClasses.HUGE_SWITCH, SampleClasses.LAMBDAS})
+    public String sample;
+
+    private DeltaGenerator generator;
+
+    private ClassNode originalNode;
+
+    private List<String> originalBytecode;
+
+    private List<String> revisedBytecode;
+
+    private String[] assemblerInput;
+
+    private ClassNode assembledNode;
+
+    private Map<String, ClassNode> allNodes;
+
+    private static ClassNode readNode(byte[] classFile) {
+        ClassNode node = new ClassNode();
+        new ClassReader(classFile).accept(node, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        return node;
+    }
+
+    @Setup
+    public void setup() {
+        generator = new DeltaGenerator();
+        originalNode = readNode(SampleClasses.generate(sample, false));
+        originalBytecode = generator.generateBytecode(originalNode);
+        revisedBytecode = generator.generateBytecode(readNode(SampleClasses.generate(sample, true)));
+        assemblerInput = revisedBytecode.toArray(new String[0]);
+        assembledNode = new ClassNode();
+        new SLAssmbler(assemblerInput, assembledNode);
+        allNodes = new HashMap<>();
+        allNodes.put(assembledNode.name, assembledNode);
+    }
+
+    @Benchmark
+    public List<String> disassemble() {
+        return generator.generateBytecode(originalNode);
+    }
+
+    @Benchmark
+    public Patch<String> diff() {
+        return DiffUtils.diff(originalBytecode, revisedBytecode);
+    }
+
+    @Benchmark
+    public Patch<String> diffInterned() {
+        return DiffUtils.diff(originalBytecode, revisedBytecode, new InternedLineDiff());
+    }
+
+    @Benchmark
+    public ClassNode assemble() {
+        ClassNode out = new ClassNode();
+        new SLAssmbler(assemblerInput, out);
+        return out;
+    }
+
+    @Benchmark
+    public byte[] computeFrames() {
+        ClassWriter cw = new FrameComputingClasswriter(0, allNodes);
+        assembledNode.accept(cw);
+        return cw.toByteArray();
+    }
+}
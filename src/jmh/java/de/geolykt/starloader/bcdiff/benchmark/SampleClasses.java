@@ -0,0 +1,270 @@
+package de.geolykt.starloader.bcdiff.benchmark;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+
+/**
+ * Generates the classes that the benchmarks operate on. Every class exists in an original and a revised state
+ * which only differ within a single method, which mirrors the usual case of an update to a class.
+ */
+public final class SampleClasses {
+
+    /**
+     * A small class with a few short methods.
+     */
+    public static final String SMALL = "small";
+
+    /**
+     * A class with a method that consists of a huge tableswitch and a method that consists of a huge lookupswitch,
+     * as it is often found in generated code.
+     */
+    public static final String HUGE_SWITCH = "hugeSwitch";
+
+    /**
+     * A class that creates many lambdas.
+     */
+    public static final String LAMBDAS = "lambdas";
+
+    /**
+     * A class with a listing of roughly a million lines, consisting of many methods with huge tableswitches.
+     */
+    public static final String LARGE = "large";
+
+    private static final int SWITCH_CASES = 2000;
+
+    private static final int LARGE_METHODS = 160;
+
+    private static final int LAMBDA_COUNT = 200;
+
+    private static final Handle LAMBDA_METAFACTORY = new Handle(Opcodes.H_INVOKESTATIC, "java/lang/invoke/LambdaMetafactory", "metafactory",
+            "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;Ljava/lang/invoke/MethodType;Ljava/lang/invoke/MethodHandle;Ljava/lang/invoke/MethodType;)Ljava/lang/invoke/CallSite;",
+            false);
+
+    private SampleClasses() {
+    }
+
+    /**
+     * Generates a sample class.
+     *
+     * @param sample The name of the sample, one of {@link #SMALL}, {@link #HUGE_SWITCH}, {@link #LAMBDAS} or {@link #LARGE}
+     * @param revised Whether the revised state of the class should be generated
+     * @return The class file
+     */
+    public static byte[] generate(String sample, boolean revised) {
+        switch (sample) {
+        case SMALL:
+            return generateSmall(revised);
+        case HUGE_SWITCH:
+            return generateHugeSwitch(revised);
+        case LAMBDAS:
+            return generateLambdas(revised);
+        case LARGE:
+            return generateLarge(revised);
+        default:
+            throw new IllegalArgumentException("Unknown sample: " + sample);
+        }
+    }
+
+    private static ClassWriter createClass(String name) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name, null, "java/lang/Object", null);
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        return cw;
+    }
+
+    private static byte[] generateSmall(boolean revised) {
+        ClassWriter cw = createClass("bench/Small");
+        cw.visitField(Opcodes.ACC_PRIVATE | Opcodes.ACC_FINAL, "name", "Ljava/lang/String;", null, null).visitEnd();
+        cw.visitField(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL, "LIMIT", "I", null, 100).visitEnd();
+
+        // public static java.util.List select(boolean linked)
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "select", "(Z)Ljava/util/List;", null, null);
+        mv.visitCode();
+        Label linked = new Label();
+        Label end = new Label();
+        mv.visitVarInsn(Opcodes.ILOAD, 0);
+        mv.visitJumpInsn(Opcodes.IFNE, linked);
+        mv.visitTypeInsn(Opcodes.NEW, "java/util/ArrayList");
+        mv.visitInsn(Opcodes.DUP);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/util/ArrayList", "<init>", "()V", false);
+        mv.visitJumpInsn(Opcodes.GOTO, end);
+        mv.visitLabel(linked);
+        mv.visitTypeInsn(Opcodes.NEW, "java/util/LinkedList");
+        mv.visitInsn(Opcodes.DUP);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/util/LinkedList", "<init>", "()V", false);
+        mv.visitLabel(end);
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        // public static int sum(int[] values)
+        mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "sum", "([I)I", null, null);
+        mv.visitCode();
+        Label loop = new Label();
+        Label exit = new Label();
+        mv.visitInsn(revised ? Opcodes.ICONST_1 : Opcodes.ICONST_0);
+        mv.visitVarInsn(Opcodes.ISTORE, 1);
+        mv.visitInsn(Opcodes.ICONST_0);
+        mv.visitVarInsn(Opcodes.ISTORE, 2);
+        mv.visitLabel(loop);
+        mv.visitVarInsn(Opcodes.ILOAD, 2);
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitInsn(Opcodes.ARRAYLENGTH);
+        mv.visitJumpInsn(Opcodes.IF_ICMPGE, exit);
+        mv.visitVarInsn(Opcodes.ILOAD, 1);
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitVarInsn(Opcodes.ILOAD, 2);
+        mv.visitInsn(Opcodes.IALOAD);
+        mv.visitInsn(Opcodes.IADD);
+        mv.visitVarInsn(Opcodes.ISTORE, 1);
+        mv.visitIincInsn(2, 1);
+        mv.visitJumpInsn(Opcodes.GOTO, loop);
+        mv.visitLabel(exit);
+        mv.visitVarInsn(Opcodes.ILOAD, 1);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        // public java.lang.String describe()
+        mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "describe", "()Ljava/lang/String;", null, null);
+        mv.visitCode();
+        mv.visitTypeInsn(Opcodes.NEW, "java/lang/StringBuilder");
+        mv.visitInsn(Opcodes.DUP);
+        mv.visitLdcInsn("Small[name=");
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/StringBuilder", "<init>", "(Ljava/lang/String;)V", false);
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitFieldInsn(Opcodes.GETFIELD, "bench/Small", "name", "Ljava/lang/String;");
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/StringBuilder", "append", "(Ljava/lang/String;)Ljava/lang/StringBuilder;", false);
+        mv.visitIntInsn(Opcodes.BIPUSH, ']');
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/StringBuilder", "append", "(C)Ljava/lang/StringBuilder;", false);
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/StringBuilder", "toString", "()Ljava/lang/String;", false);
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static byte[] generateHugeSwitch(boolean revised) {
+        ClassWriter cw = createClass("bench/HugeSwitch");
+
+        generateLookup(cw, "lookup", revised);
+
+        // public static int hash(int key)
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "hash", "(I)I", null, null);
+        mv.visitCode();
+        int[] keys = new int[SWITCH_CASES / 4];
+        Label[] targets = new Label[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = i * 37 - 5000;
+            targets[i] = new Label();
+        }
+        Label dflt = new Label();
+        mv.visitVarInsn(Opcodes.ILOAD, 0);
+        mv.visitLookupSwitchInsn(dflt, keys, targets);
+        for (int i = 0; i < keys.length; i++) {
+            mv.visitLabel(targets[i]);
+            mv.visitLdcInsn(keys[i] * 31 + 7);
+            mv.visitInsn(Opcodes.IRETURN);
+        }
+        mv.visitLabel(dflt);
+        mv.visitInsn(Opcodes.ICONST_M1);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static void generateLookup(ClassWriter cw, String name, boolean revised) {
+        // public static java.lang.String <name>(int key)
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, name, "(I)Ljava/lang/String;", null, null);
+        mv.visitCode();
+        Label[] cases = new Label[SWITCH_CASES];
+        for (int i = 0; i < SWITCH_CASES; i++) {
+            cases[i] = new Label();
+        }
+        Label dflt = new Label();
+        mv.visitVarInsn(Opcodes.ILOAD, 0);
+        mv.visitTableSwitchInsn(0, SWITCH_CASES - 1, dflt, cases);
+        for (int i = 0; i < SWITCH_CASES; i++) {
+            mv.visitLabel(cases[i]);
+            if (revised && i == SWITCH_CASES / 2) {
+                mv.visitLdcInsn("changed" + i);
+            } else {
+                mv.visitLdcInsn("value" + i);
+            }
+            mv.visitInsn(Opcodes.ARETURN);
+        }
+        mv.visitLabel(dflt);
+        mv.visitInsn(Opcodes.ACONST_NULL);
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    private static byte[] generateLarge(boolean revised) {
+        ClassWriter cw = createClass("bench/Large");
+        for (int i = 0; i < LARGE_METHODS; i++) {
+            generateLookup(cw, "lookup" + i, revised && i == LARGE_METHODS / 2);
+        }
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static byte[] generateLambdas(boolean revised) {
+        ClassWriter cw = createClass("bench/Lambdas");
+        Type functionType = Type.getType("(Ljava/lang/Object;)Ljava/lang/Object;");
+
+        // public static java.util.List create()
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "create", "()Ljava/util/List;", null, null);
+        mv.visitCode();
+        mv.visitTypeInsn(Opcodes.NEW, "java/util/ArrayList");
+        mv.visitInsn(Opcodes.DUP);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/util/ArrayList", "<init>", "()V", false);
+        mv.visitVarInsn(Opcodes.ASTORE, 0);
+        for (int i = 0; i < LAMBDA_COUNT; i++) {
+            Handle implementation = new Handle(Opcodes.H_INVOKESTATIC, "bench/Lambdas", "lambda$create$" + i, "(Ljava/lang/Object;)Ljava/lang/Object;", false);
+            mv.visitVarInsn(Opcodes.ALOAD, 0);
+            mv.visitInvokeDynamicInsn("apply", "()Ljava/util/function/Function;", LAMBDA_METAFACTORY, functionType, implementation, functionType);
+            mv.visitMethodInsn(Opcodes.INVOKEINTERFACE, "java/util/List", "add", "(Ljava/lang/Object;)Z", true);
+            mv.visitInsn(Opcodes.POP);
+        }
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        for (int i = 0; i < LAMBDA_COUNT; i++) {
+            // private static synthetic java.lang.Object lambda$create$<i>(java.lang.Object)
+            mv = cw.visitMethod(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_SYNTHETIC, "lambda$create$" + i, "(Ljava/lang/Object;)Ljava/lang/Object;", null, null);
+            mv.visitCode();
+            mv.visitTypeInsn(Opcodes.NEW, "java/lang/StringBuilder");
+            mv.visitInsn(Opcodes.DUP);
+            mv.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/StringBuilder", "<init>", "()V", false);
+            mv.visitVarInsn(Opcodes.ALOAD, 0);
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/StringBuilder", "append", "(Ljava/lang/Object;)Ljava/lang/StringBuilder;", false);
+            mv.visitLdcInsn((revised && i == LAMBDA_COUNT / 2) ? "#changed" : "#" + i);
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/StringBuilder", "append", "(Ljava/lang/String;)Ljava/lang/StringBuilder;", false);
+            mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/StringBuilder", "toString", "()Ljava/lang/String;", false);
+            mv.visitInsn(Opcodes.ARETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+}
@@ -0,0 +1,234 @@
+package de.geolykt.starloader.bcdiff;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+
+import de.geolykt.starloader.bcdiff.hierarchy.ClassInfo;
+import de.geolykt.starloader.bcdiff.hierarchy.ClassLoaderHierarchyProvider;
+import de.geolykt.starloader.bcdiff.hierarchy.HierarchyProvider;
+
+/**
+ * A thread-safe cache of the class hierarchy that is used by the {@link FrameComputingClasswriter} to compute
+ * the common super class of two types. The super type and interfaces of every class are only resolved once,
+ * and the common super classes of all pairs of types that were queried are memoised, so a single cache should be
+ * shared between all classes that are written with the same set of known classes.
+ *
+ * <p>Classes are first looked up within the given class nodes and then through a {@link HierarchyProvider}.
+ */
+public class ClassHierarchyCache {
+
+    private static final ClassInfo OBJECT = new ClassInfo("java/lang/Object", null, new String[0], false);
+
+    private final Map<String, ClassInfo> classes = new ConcurrentHashMap<>();
+    private final Map<String, String> commonSuperClasses = new ConcurrentHashMap<>();
+    private final LongAdder classHits = new LongAdder();
+    private final LongAdder classMisses = new LongAdder();
+    private final LongAdder commonSuperClassHits = new LongAdder();
+    private final LongAdder commonSuperClassMisses = new LongAdder();
+    private final Map<String, ClassNode> nodes;
+    private final HierarchyProvider provider;
+
+    /**
+     * Creates a cache that resolves classes from the given class nodes and falls back to the classes
+     * that are visible to the class loader of this class.
+     *
+     * @param nodes The known class nodes, keyed by their internal name
+     */
+    public ClassHierarchyCache(Map<String, ClassNode> nodes) {
+        this(nodes, ClassHierarchyCache.class.getClassLoader());
+    }
+
+    /**
+     * Creates a cache that resolves classes from the given class nodes and falls back to the classes
+     * that are visible to the given class loader.
+     *
+     * @param nodes The known class nodes, keyed by their internal name
+     * @param classLoader The class loader used to look up classes that are not known as a class node
+     */
+    public ClassHierarchyCache(Map<String, ClassNode> nodes, ClassLoader classLoader) {
+        this(nodes, new ClassLoaderHierarchyProvider(classLoader));
+    }
+
+    /**
+     * Creates a cache that resolves classes from the given class nodes and falls back to the given provider.
+     * The provider is not closed by the cache.
+     *
+     * @param nodes The known class nodes, keyed by their internal name
+     * @param provider The provider used to look up classes that are not known as a class node
+     */
+    public ClassHierarchyCache(Map<String, ClassNode> nodes, HierarchyProvider provider) {
+        this.nodes = nodes;
+        this.provider = provider;
+    }
+
+    /**
+     * Obtains the class nodes that are consulted before the hierarchy provider.
+     *
+     * @return The known class nodes, keyed by their internal name
+     */
+    public Map<String, ClassNode> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Obtains the super type, interfaces and kind of a class.
+     *
+     * @param name The internal name of the class
+     * @return The information of the class
+     */
+    public ClassInfo getClassInfo(String name) {
+        if (name.equals("java/lang/Object")) {
+            return OBJECT;
+        }
+        ClassInfo info = classes.get(name);
+        if (info != null) {
+            classHits.increment();
+            return info;
+        }
+        classMisses.increment();
+        info = resolve(name);
+        ClassInfo previous = classes.putIfAbsent(name, info);
+        return previous == null ? info : previous;
+    }
+
+    protected ClassInfo resolve(String name) {
+        ClassNode asmNode = nodes.get(name);
+        if (asmNode != null) {
+            return new ClassInfo(name, asmNode.superName, asmNode.interfaces.toArray(new String[0]), (asmNode.access & Opcodes.ACC_INTERFACE) != 0);
+        }
+        ClassInfo info;
+        try {
+            info = provider.getClassInfo(name);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read the class " + name, e);
+        }
+        if (info == null) {
+            System.err.println("Unable to resolve the class " + name + ", assuming that it directly extends java/lang/Object.");
+            return new ClassInfo(name, "java/lang/Object", new String[0], false);
+        }
+        return info;
+    }
+
+    private boolean isImplementingInterface(ClassInfo clazz, String interfaceName) {
+        if (clazz == OBJECT) {
+            return false;
+        }
+        for (String itf : clazz.getInterfaces()) {
+            if (itf.equals(interfaceName) || isImplementingInterface(getClassInfo(itf), interfaceName)) {
+                return true;
+            }
+        }
+        if (clazz.isInterface() || clazz.getSuperName() == null) {
+            return false;
+        }
+        return isImplementingInterface(getClassInfo(clazz.getSuperName()), interfaceName);
+    }
+
+    /**
+     * Checks whether a value of the sub type can be assigned to a variable of the super type.
+     *
+     * @param superType The super type
+     * @param subType The sub type
+     * @return True if the sub type is assignable to the super type
+     */
+    public boolean canAssign(ClassInfo superType, ClassInfo subType) {
+        final String name = superType.getName();
+        if (superType.isInterface()) {
+            return isImplementingInterface(subType, name);
+        }
+        while (subType != null) {
+            if (name.equals(subType.getName()) || name.equals(subType.getSuperName())) {
+                return true;
+            }
+            if (subType == OBJECT || subType.getSuperName() == null) {
+                return false;
+            }
+            subType = getClassInfo(subType.getSuperName());
+        }
+        return false;
+    }
+
+    /**
+     * Computes the common super class of two types, as required by {@link org.objectweb.asm.ClassWriter#getCommonSuperClass(String, String)}.
+     *
+     * @param type1 The internal name of the first type
+     * @param type2 The internal name of the second type
+     * @return The internal name of the common super class
+     */
+    public String getCommonSuperClass(String type1, String type2) {
+        if (type1.equals("java/lang/Object")) {
+            return type1;
+        }
+        if (type2.equals("java/lang/Object")) {
+            return type2;
+        }
+        String key = type1 + ';' + type2;
+        String common = commonSuperClasses.get(key);
+        if (common != null) {
+            commonSuperClassHits.increment();
+            return common;
+        }
+        commonSuperClassMisses.increment();
+        ClassInfo class1 = getClassInfo(type1);
+        ClassInfo class2 = getClassInfo(type2);
+        if (canAssign(class1, class2)) {
+            common = type1;
+        } else if (canAssign(class2, class1)) {
+            common = type2;
+        } else if (class1.isInterface() || class2.isInterface()) {
+            common = "java/lang/Object";
+        } else {
+            common = getCommonSuperClass(type1, class2.getSuperName());
+        }
+        commonSuperClasses.put(key, common);
+        return common;
+    }
+
+    /**
+     * Obtains the amount of class lookups that were answered from the cache.
+     *
+     * @return The amount of class cache hits
+     */
+    public long getClassHits() {
+        return classHits.sum();
+    }
+
+    /**
+     * Obtains the amount of class lookups that had to resolve the class.
+     *
+     * @return The amount of class cache misses
+     */
+    public long getClassMisses() {
+        return classMisses.sum();
+    }
+
+    /**
+     * Obtains the amount of common super class lookups that were answered from the cache.
+     *
+     * @return The amount of common super class cache hits
+     */
+    public long getCommonSuperClassHits() {
+        return commonSuperClassHits.sum();
+    }
+
+    /**
+     * Obtains the amount of common super class lookups that had to walk the class hierarchy.
+     *
+     * @return The amount of common super class cache misses
+     */
+    public long getCommonSuperClassMisses() {
+        return commonSuperClassMisses.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "ClassHierarchyCache[classes: " + getClassHits() + " hits, " + getClassMisses() + " misses; common super classes: "
+                + getCommonSuperClassHits() + " hits, " + getCommonSuperClassMisses() + " misses]";
+    }
+}
@@ -1,29 +1,50 @@
 package de.geolykt.starloader.bcdiff;
 
-import java.io.BufferedReader;
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Enumeration;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.jar.JarEntry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.JarFile;
-import java.util.jar.JarOutputStream;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
 
 import com.github.difflib.DiffUtils;
 import com.github.difflib.UnifiedDiffUtils;
@@ -31,7 +52,35 @@ import com.github.difflib.patch.Patch;
 import com.github.difflib.patch.PatchFailedException;
 
 import de.geolykt.starloader.bcdiff.assembler.SLAssmbler;
+import de.geolykt.starloader.bcdiff.diff.InternedLineDiff;
+import de.geolykt.starloader.bcdiff.diff.LineDiffAlgorithm;
+import de.geolykt.starloader.bcdiff.diff.StructuralDiff;
 import de.geolykt.starloader.bcdiff.disassembler.BytecodeGeneratorVisitor;
+import de.geolykt.starloader.bcdiff.disassembler.DisassemblyCache;
+import de.geolykt.starloader.bcdiff.disassembler.LineSink;
+import de.geolykt.starloader.bcdiff.hierarchy.ChainedHierarchyProvider;
+import de.geolykt.starloader.bcdiff.hierarchy.ClassInfo;
+import de.geolykt.starloader.bcdiff.hierarchy.ClassLoaderHierarchyProvider;
+import de.geolykt.starloader.bcdiff.hierarchy.HierarchyProvider;
+import de.geolykt.starloader.bcdiff.hierarchy.JdkHierarchyProvider;
+import de.geolykt.starloader.bcdiff.hierarchy.LibraryHierarchyProvider;
+import de.geolykt.starloader.bcdiff.io.ArchiveEntry;
+import de.geolykt.starloader.bcdiff.io.ArchiveInput;
+import de.geolykt.starloader.bcdiff.io.ArchiveWriter;
+import de.geolykt.starloader.bcdiff.io.JarFileInput;
+import de.geolykt.starloader.bcdiff.io.MappedArchiveInput;
+import de.geolykt.starloader.bcdiff.patch.BinaryPatchFormat;
+import de.geolykt.starloader.bcdiff.patch.BinaryPatchReader;
+import de.geolykt.starloader.bcdiff.patch.BinaryPatchWriter;
+import de.geolykt.starloader.bcdiff.patch.IndexedPatchFile;
+import de.geolykt.starloader.bcdiff.patch.PatchCodec;
+import de.geolykt.starloader.bcdiff.patch.PatchCodecs;
+import de.geolykt.starloader.bcdiff.patch.PatchHunk;
+import de.geolykt.starloader.bcdiff.patch.PatchIndexEntry;
+import de.geolykt.starloader.bcdiff.patch.PatchInput;
+import de.geolykt.starloader.bcdiff.patch.PatchReader;
+import de.geolykt.starloader.bcdiff.patch.PatchSection;
+import de.geolykt.starloader.bcdiff.patch.ResourceDelta;
 
 /**
  * Entrypoint class for bytecode delta generation.
@@ -41,10 +90,172 @@ public class DeltaGenerator {
     public static void printHelp() {
         System.out.println("=== Java-bytecode-differential help ===");
         System.out.println(" generate <originalJar> <revisedJar> <ctx>: prints a UnifiedDiff between the bytecode of the two jars to console. The amount of context line is given with ctx.");
-        System.out.println(" apply    <originalJar> <patch> <outputJar>: Patches a jar with a patch created with the generate command.");
+        System.out.println(" apply    <originalJar> <patch> <outputJar>: Patches a jar with a patch created with the generate command. Text and binary patches are detected automatically.");
+        System.out.println(" convert  <patch> <outputPatch>: Converts a text patch to a binary patch or a binary patch to a text patch.");
+        System.out.println(" list     <patch>: prints the files changed by a patch, prefixed by A if the file is added, D if it is removed and M if it is modified.");
+        System.out.println(" disassemble <jar> [packages]: prints the bytecode listing of all classes in the jar, or only those within the comma separated packages, to console.");
+        System.out.println("Options:");
+        System.out.println(" --threads <n>: Amount of worker threads used to generate or apply patches. 0 uses one thread per available processor. Defaults to 1.");
+        System.out.println(" --cache <dir>: Directory in which disassembled classes are cached between runs.");
+        System.out.println(" --cache-size <MiB>: Maximum size of the cache directory. Defaults to 512 MiB.");
+        System.out.println(" --mmap: Memory-map the input jars instead of reading them through java.util.jar. Recommended for very large jars.");
+        System.out.println("         When applying, unchanged entries are then copied without compressing them again.");
+        System.out.println(" --incremental-frames: Only compute stack map frames for methods changed by the patch and keep the frames of all other methods. Requires the class hierarchy to be unchanged.");
+        System.out.println(" --libraries <jars>: Library jars (separated by '" + File.pathSeparatorChar + "') that contain the classes the patched jar depends on. Used to compute stack map frames when applying patches.");
+        System.out.println(" --binary: Makes the generate command write a compact binary patch instead of a unified diff.");
+        System.out.println(" --compress <none|deflate>: Compresses the patches written by the generate and convert commands. Binary patches are compressed section by section, text patches are gzipped. Compressed patches are detected automatically.");
+        System.out.println(" --resources: Makes the generate command also diff entries that are not classes, storing their changes as binary deltas.");
+        System.out.println(" --structural: Diff classes member by member, only diffing the lines of methods and fields that changed. Recommended for very large classes.");
+        System.out.println(" --algorithm <myers|histogram|patience>: Algorithm used to diff the lines of classes. Histogram and patience cope better with reordered code. Defaults to myers.");
+        System.out.println(" --diff-cost-limit <n>: Maximum edit distance explored by the myers algorithm, also within the regions histogram and patience cannot split. Lines beyond it are replaced as a whole. Unlimited by default.");
+    }
+
+    private static ArchiveInput openArchive(String path, boolean mmap) throws IOException {
+        if (mmap) {
+            return new MappedArchiveInput(Paths.get(path));
+        }
+        return new JarFileInput(new JarFile(path));
+    }
+
+    private static PatchInput openPatch(String path) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(path));
+        try {
+            if (isGzip(in)) {
+                // Gzipped patches are read as a stream, regardless of whether they are text or binary patches
+                in = new BufferedInputStream(new GZIPInputStream(in));
+            } else if (BinaryPatchFormat.isBinaryPatch(in) && BinaryPatchFormat.isIndexed(in)) {
+                in.close();
+                return IndexedPatchFile.open(Paths.get(path));
+            }
+            if (BinaryPatchFormat.isBinaryPatch(in)) {
+                return new BinaryPatchReader(in);
+            }
+            return new PatchReader(new InputStreamReader(in));
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    private static boolean isGzip(InputStream in) throws IOException {
+        in.mark(2);
+        try {
+            return in.read() == (GZIPInputStream.GZIP_MAGIC & 0xFF) && in.read() == (GZIPInputStream.GZIP_MAGIC >>> 8);
+        } finally {
+            in.reset();
+        }
+    }
+
+    private static OutputStream openTextPatchOutput(OutputStream out, PatchCodec codec) throws IOException {
+        if (codec == PatchCodecs.NONE) {
+            return out;
+        } else if (codec == PatchCodecs.DEFLATE) {
+            return new GZIPOutputStream(out, 8192);
+        }
+        throw new IOException("Text patches can only be compressed with deflate, but " + codec.getName() + " was requested");
+    }
+
+    private static String describeChange(String originalName, String revisedName) {
+        if (originalName.equals("/dev/null")) {
+            return "A " + revisedName;
+        } else if (revisedName.equals("/dev/null")) {
+            return "D " + originalName;
+        }
+        return "M " + revisedName;
+    }
+
+    private static HierarchyProvider openHierarchy(String[] libraries, boolean mmap) throws IOException {
+        List<ArchiveInput> archives = new ArrayList<>();
+        try {
+            for (String library : libraries) {
+                if (library.isEmpty()) {
+                    continue;
+                }
+                archives.add(openArchive(library, mmap));
+            }
+            return new ChainedHierarchyProvider(new LibraryHierarchyProvider(archives), new JdkHierarchyProvider());
+        } catch (IOException | RuntimeException e) {
+            for (ArchiveInput archive : archives) {
+                try {
+                    archive.close();
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            throw e;
+        }
     }
 
     public static void main(String[] args) {
+        DeltaGenerator generator = new DeltaGenerator();
+        List<String> positionalArgs = new ArrayList<>();
+        boolean mmap = false;
+        boolean binary = false;
+        PatchCodec codec = PatchCodecs.NONE;
+        String cacheDirectory = null;
+        long cacheSize = 512;
+        String[] libraries = new String[0];
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--mmap")) {
+                mmap = true;
+            } else if (args[i].equals("--incremental-frames")) {
+                generator.setIncrementalFrames(true);
+            } else if (args[i].equals("--structural")) {
+                generator.setStructuralDiff(true);
+            } else if (args[i].equals("--binary")) {
+                binary = true;
+            } else if (args[i].equals("--resources")) {
+                generator.setResourceDeltas(true);
+            } else if (args[i].equals("--threads") || args[i].equals("--cache") || args[i].equals("--cache-size")
+                    || args[i].equals("--libraries") || args[i].equals("--algorithm") || args[i].equals("--diff-cost-limit")
+                    || args[i].equals("--compress")) {
+                if (i + 1 == args.length) {
+                    System.err.println("The " + args[i] + " option requires a value.");
+                    printHelp();
+                    System.exit(1);
+                }
+                String option = args[i++];
+                if (option.equals("--threads")) {
+                    generator.setThreadCount(Integer.parseInt(args[i]));
+                } else if (option.equals("--cache")) {
+                    cacheDirectory = args[i];
+                } else if (option.equals("--libraries")) {
+                    libraries = args[i].split(Pattern.quote(File.pathSeparator));
+                } else if (option.equals("--algorithm")) {
+                    try {
+                        generator.setDiffAlgorithm(LineDiffAlgorithm.valueOf(args[i].toUpperCase(Locale.ROOT)));
+                    } catch (IllegalArgumentException e) {
+                        System.err.println("Unknown diff algorithm: " + args[i]);
+                        printHelp();
+                        System.exit(1);
+                    }
+                } else if (option.equals("--compress")) {
+                    codec = PatchCodecs.get(args[i].toLowerCase(Locale.ROOT));
+                    if (codec == null) {
+                        System.err.println("Unknown codec: " + args[i]);
+                        printHelp();
+                        System.exit(1);
+                    }
+                } else if (option.equals("--diff-cost-limit")) {
+                    generator.setDiffCostLimit(Integer.parseInt(args[i]));
+                } else {
+                    cacheSize = Long.parseLong(args[i]);
+                }
+            } else {
+                positionalArgs.add(args[i]);
+            }
+        }
+        args = positionalArgs.toArray(new String[0]);
+        if (cacheDirectory != null) {
+            try {
+                generator.setDisassemblyCache(new DisassemblyCache(Paths.get(cacheDirectory), cacheSize * 1024 * 1024));
+            } catch (IOException e) {
+                System.err.println("Unable to open the disassembly cache.");
+                e.printStackTrace();
+                System.exit(1);
+            }
+        }
+
         if (args.length == 0 || args[0].equals("help")) {
             printHelp();
             System.exit(0);
@@ -59,9 +270,23 @@ public class DeltaGenerator {
             if (args.length > 4) {
                 packageFilter = args[4].split(",");
             }
-            try (JarFile original = new JarFile(args[1])) {
-                try (JarFile revised = new JarFile(args[2])) {
-                    new DeltaGenerator().generatePatch(original, revised, Integer.valueOf(args[3]), packageFilter).forEach(System.out::println);;
+            try (ArchiveInput original = openArchive(args[1], mmap)) {
+                try (ArchiveInput revised = openArchive(args[2], mmap)) {
+                    if (binary) {
+                        BinaryPatchWriter out = new BinaryPatchWriter(new BufferedOutputStream(System.out), codec);
+                        generator.generatePatch(original, revised, Integer.valueOf(args[3]), packageFilter, out);
+                        out.finish();
+                    } else {
+                        OutputStream stream = openTextPatchOutput(System.out, codec);
+                        Writer out = new BufferedWriter(new OutputStreamWriter(stream));
+                        generator.generatePatch(original, revised, Integer.valueOf(args[3]), packageFilter, out);
+                        out.flush();
+                        if (stream instanceof GZIPOutputStream) {
+                            ((GZIPOutputStream) stream).finish();
+                            System.out.flush();
+                        }
+                    }
+                    System.err.println("Skipped " + generator.getSkippedClassCount() + " unchanged classes.");
                 }
             } catch (Throwable e) {
                 System.err.println("Unable to perform action (broken jars?)");
@@ -74,14 +299,86 @@ public class DeltaGenerator {
                 printHelp();
                 System.exit(1);
             }
-            try (JarFile original = new JarFile(args[1])) {
-                List<String> patch = new ArrayList<>();
-                try (BufferedReader br = new BufferedReader(new FileReader(args[2]))) {
-                    for (String read = br.readLine(); read != null; read = br.readLine()) {
-                        patch.add(read);
+            try (HierarchyProvider hierarchy = openHierarchy(libraries, mmap);
+                    ArchiveInput original = openArchive(args[1], mmap)) {
+                generator.setHierarchyProvider(hierarchy);
+                try (PatchInput patch = openPatch(args[2])) {
+                    generator.applyPatch(original, new File(args[3]), patch);
+                    System.err.println(generator.getHierarchyCache());
+                }
+            } catch (Throwable e) {
+                System.err.println("Unable to perform action (broken jars?)");
+                e.printStackTrace();
+                System.exit(1);
+            }
+        } else if (args[0].equals("convert")) {
+            if (args.length != 3) {
+                System.err.println("Invalid argument count. The argument count MUST be 3 for the convert command.");
+                printHelp();
+                System.exit(1);
+            }
+            try (PatchInput patch = openPatch(args[1])) {
+                if (!(patch instanceof PatchReader)) {
+                    try (Writer out = new BufferedWriter(new OutputStreamWriter(openTextPatchOutput(new FileOutputStream(args[2]), codec)))) {
+                        for (PatchSection section = patch.nextSection(); section != null; section = patch.nextSection()) {
+                            for (String line : section.getLines()) {
+                                out.write(line);
+                                out.write('\n');
+                            }
+                        }
+                    }
+                } else {
+                    try (BinaryPatchWriter out = new BinaryPatchWriter(new BufferedOutputStream(new FileOutputStream(args[2])), codec)) {
+                        for (PatchSection section = patch.nextSection(); section != null; section = patch.nextSection()) {
+                            out.writeSection(section);
+                        }
+                    }
+                }
+            } catch (Throwable e) {
+                System.err.println("Unable to perform action (broken patch?)");
+                e.printStackTrace();
+                System.exit(1);
+            }
+        } else if (args[0].equals("list")) {
+            if (args.length != 2) {
+                System.err.println("Invalid argument count. The argument count MUST be 2 for the list command.");
+                printHelp();
+                System.exit(1);
+            }
+            try (PatchInput patch = openPatch(args[1])) {
+                Writer out = new BufferedWriter(new OutputStreamWriter(System.out));
+                if (patch instanceof IndexedPatchFile) {
+                    // Only the index needs to be read
+                    for (PatchIndexEntry entry : ((IndexedPatchFile) patch).getEntries()) {
+                        out.write(describeChange(entry.getOriginalName(), entry.getRevisedName()));
+                        out.write('\n');
+                    }
+                } else {
+                    for (PatchSection section = patch.nextSection(); section != null; section = patch.nextSection()) {
+                        out.write(describeChange(section.getOriginalName(), section.getRevisedName()));
+                        out.write('\n');
                     }
                 }
-                new DeltaGenerator().applyPatch(original, new File(args[3]), patch);
+                out.flush();
+            } catch (Throwable e) {
+                System.err.println("Unable to perform action (broken patch?)");
+                e.printStackTrace();
+                System.exit(1);
+            }
+        } else if (args[0].equals("disassemble")) {
+            if (!(args.length == 2 || args.length == 3)) {
+                System.err.println("Invalid argument count. The argument count MUST be 2 or 3 for the disassemble command.");
+                printHelp();
+                System.exit(1);
+            }
+            String[] packageFilter = new String[0];
+            if (args.length > 2) {
+                packageFilter = args[2].split(",");
+            }
+            try (ArchiveInput input = openArchive(args[1], mmap)) {
+                Writer out = new BufferedWriter(new OutputStreamWriter(System.out));
+                generator.disassemble(input, packageFilter, out);
+                out.flush();
             } catch (Throwable e) {
                 System.err.println("Unable to perform action (broken jars?)");
                 e.printStackTrace();
@@ -104,10 +401,7 @@ public class DeltaGenerator {
         READ_ALL_BYTES = temp;
     }
 
-    private static final byte[] TEMPORARY_CACHE = new byte[4096];
-
-    // TODO Make it work with concurrency
-    public synchronized byte[] readAllBytes(InputStream is) throws IOException {
+    public byte[] readAllBytes(InputStream is) throws IOException {
         if (READ_ALL_BYTES != null) {
             try {
                 return (byte[]) READ_ALL_BYTES.invoke(is);
@@ -115,135 +409,653 @@ public class DeltaGenerator {
                 throw new IOException(e);
             }
         }
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        while (true) {
-            int len = is.read(TEMPORARY_CACHE);
-            if (len != 4096) {
-                if (len != -1) {
-                    out.write(TEMPORARY_CACHE, 0, len);
+        return JarFileInput.readFully(is, -1);
+    }
+
+    private DisassemblyCache disassemblyCache;
+    private ClassHierarchyCache hierarchyCache;
+    private HierarchyProvider hierarchyProvider;
+    private final AtomicInteger skippedClasses = new AtomicInteger();
+    private StructuralDiff structuralDiff;
+    private LineDiffAlgorithm diffAlgorithm = LineDiffAlgorithm.MYERS;
+    private int diffCostLimit = Integer.MAX_VALUE;
+    private InternedLineDiff lineDiff = new InternedLineDiff();
+    private boolean incrementalFrames;
+    private boolean resourceDeltas;
+    private int threadCount = 1;
+
+    /**
+     * Obtains the cache that is used to look up the bytecode listings of classes before disassembling them.
+     *
+     * @return The cache, or null if no cache is used
+     */
+    public DisassemblyCache getDisassemblyCache() {
+        return disassemblyCache;
+    }
+
+    /**
+     * Obtains the algorithm that is used to diff the lines of classes.
+     *
+     * @return The diff algorithm
+     * @see #setDiffAlgorithm(LineDiffAlgorithm)
+     */
+    public LineDiffAlgorithm getDiffAlgorithm() {
+        return diffAlgorithm;
+    }
+
+    /**
+     * Obtains the maximum edit distance explored by the Myers algorithm before lines are replaced as a whole.
+     *
+     * @return The cost limit, {@link Integer#MAX_VALUE} if there is no limit
+     * @see #setDiffCostLimit(int)
+     */
+    public int getDiffCostLimit() {
+        return diffCostLimit;
+    }
+
+    /**
+     * Obtains the class hierarchy that was used to compute frames during the most recent invocation of applyPatch.
+     * Mainly useful to inspect its hit and miss statistics.
+     *
+     * @return The hierarchy cache, or null if applyPatch was not yet invoked
+     */
+    public ClassHierarchyCache getHierarchyCache() {
+        return hierarchyCache;
+    }
+
+    /**
+     * Obtains the provider that is used to look up classes that are not part of the patched archive.
+     *
+     * @return The hierarchy provider, or null if classes are looked up through the class loader of this class
+     */
+    public HierarchyProvider getHierarchyProvider() {
+        return hierarchyProvider;
+    }
+
+    /**
+     * Obtains the amount of classes that were present in both archives with identical contents during the most recent
+     * invocation of generatePatch. These classes were neither disassembled nor diffed.
+     *
+     * @return The amount of skipped classes
+     */
+    public int getSkippedClassCount() {
+        return skippedClasses.get();
+    }
+
+    /**
+     * Checks whether stack map frames are only computed for the methods that were changed by a patch.
+     *
+     * @return True if frames are computed incrementally
+     * @see #setIncrementalFrames(boolean)
+     */
+    public boolean isIncrementalFrames() {
+        return incrementalFrames;
+    }
+
+    /**
+     * Checks whether generatePatch also creates sections for resources, which are all entries that are not classes.
+     *
+     * @return True if resources are diffed
+     * @see #setResourceDeltas(boolean)
+     */
+    public boolean isResourceDeltas() {
+        return resourceDeltas;
+    }
+
+    /**
+     * Checks whether classes are diffed member by member.
+     *
+     * @return True if the structural diff is used
+     * @see #setStructuralDiff(boolean)
+     */
+    public boolean isStructuralDiff() {
+        return structuralDiff != null;
+    }
+
+    /**
+     * Obtains the amount of threads that is used to generate or apply patches.
+     *
+     * @return The amount of worker threads
+     */
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Sets the cache that is used to look up the bytecode listings of classes before disassembling them.
+     * The cache is used by both generatePatch and applyPatch.
+     *
+     * @param disassemblyCache The cache, or null to not use a cache
+     */
+    public void setDisassemblyCache(DisassemblyCache disassemblyCache) {
+        this.disassemblyCache = disassemblyCache;
+    }
+
+    /**
+     * Sets the algorithm that is used to diff the lines of classes. The Myers algorithm (the default) produces the smallest
+     * patches, while the histogram and patience algorithms are much faster if large blocks of code were moved and tend to
+     * produce more readable patches in that case.
+     *
+     * @param diffAlgorithm The diff algorithm
+     */
+    public void setDiffAlgorithm(LineDiffAlgorithm diffAlgorithm) {
+        this.diffAlgorithm = diffAlgorithm;
+        updateLineDiff();
+    }
+
+    /**
+     * Sets the maximum edit distance explored by the Myers algorithm, either on an entire class or, with the histogram
+     * and patience algorithms, on the regions of a class that these could not split. Once the limit is exceeded,
+     * all differing lines of the class or region are replaced by a single hunk instead. This bounds the time spent on
+     * classes that have little in common, at the expense of larger patches.
+     *
+     * @param diffCostLimit The cost limit, {@link Integer#MAX_VALUE} (the default) for no limit
+     */
+    public void setDiffCostLimit(int diffCostLimit) {
+        if (diffCostLimit < 0) {
+            throw new IllegalArgumentException("The cost limit may not be negative: " + diffCostLimit);
+        }
+        this.diffCostLimit = diffCostLimit;
+        updateLineDiff();
+    }
+
+    /**
+     * Sets whether applyPatch only computes the stack map frames of methods that were changed by the patch.
+     * The frames of all other methods are copied from the original class, which is much faster for large classes,
+     * but is only correct if the hierarchy of the classes that these methods use was not changed by the patch.
+     *
+     * @param incrementalFrames True to compute frames incrementally
+     */
+    public void setIncrementalFrames(boolean incrementalFrames) {
+        this.incrementalFrames = incrementalFrames;
+    }
+
+    /**
+     * Sets the provider that is used to look up classes that are not part of the patched archive
+     * when computing stack map frames. The provider is not closed by the generator.
+     *
+     * @param hierarchyProvider The hierarchy provider, or null to look up classes through the class loader of this class
+     */
+    public void setHierarchyProvider(HierarchyProvider hierarchyProvider) {
+        this.hierarchyProvider = hierarchyProvider;
+    }
+
+    /**
+     * Sets whether generatePatch also creates sections for resources, which are all entries that are not classes.
+     * The changes of a resource are stored as a {@link ResourceDelta}, which copies the unchanged parts from the original
+     * resource. Otherwise (the default) resources are ignored and the patched archive contains the original resources.
+     * Patches with resource sections are applied regardless of this setting.
+     *
+     * @param resourceDeltas True to diff resources
+     */
+    public void setResourceDeltas(boolean resourceDeltas) {
+        this.resourceDeltas = resourceDeltas;
+    }
+
+    /**
+     * Sets whether classes are diffed member by member using {@link StructuralDiff} instead of diffing
+     * the entire listing at once. The structural diff is much faster on large classes where only few members
+     * changed, but may produce slightly different (yet equally valid) patches.
+     *
+     * @param structural True to enable the structural diff
+     */
+    public void setStructuralDiff(boolean structural) {
+        this.structuralDiff = structural ? new StructuralDiff(lineDiff) : null;
+    }
+
+    /**
+     * Sets the amount of threads that is used to generate or apply patches.
+     * A value of 1 (the default) does all work on the calling thread, a value of 0 or below
+     * uses one thread per available processor.
+     * The output does not depend on the amount of threads used.
+     *
+     * @param threadCount The amount of worker threads
+     */
+    public void setThreadCount(int threadCount) {
+        if (threadCount <= 0) {
+            threadCount = Runtime.getRuntime().availableProcessors();
+        }
+        this.threadCount = threadCount;
+    }
+
+    public void applyPatch(JarFile original, File revised, List<String> fullPatch) throws IOException, PatchFailedException {
+        applyPatch(new JarFileInput(original), revised, fullPatch);
+    }
+
+    public void applyPatch(ArchiveInput original, File revised, List<String> fullPatch) throws IOException, PatchFailedException {
+        applyPatch(original, revised, new PatchReader(fullPatch));
+    }
+
+    /**
+     * Applies a patch that is read from a {@link Reader}, section by section, so the unified diff is never held in memory as a whole.
+     * See {@link #applyPatch(ArchiveInput, File, PatchInput)} for details.
+     *
+     * @param original The archive to patch
+     * @param revised The file to write the patched archive to
+     * @param patch The reader to read the patch from. It is not closed by this method.
+     * @throws IOException If an archive or the patch could not be read or the output could not be written
+     * @throws PatchFailedException If the patch does not apply to the original archive
+     */
+    public void applyPatch(ArchiveInput original, File revised, Reader patch) throws IOException, PatchFailedException {
+        applyPatch(original, revised, new PatchReader(patch));
+    }
+
+    /**
+     * Applies a patch that is read section by section, in any format. All sections are read before the first class
+     * is assembled, as stack map frames can only be computed once the super class and interfaces of every class the patch
+     * produces are known. Each section is discarded once it was applied. Apart from the original class files and the sections,
+     * only about twice as many patched classes and resource deltas as there are threads are held in memory at any time.
+     *
+     * <p>The sections have to follow the order of the entries in the original archive, followed by the sections
+     * of new entries, which is the order in which generatePatch writes them. This allows every entry to be written
+     * as soon as all entries in front of it were.
+     *
+     * @param original The archive to patch
+     * @param revised The file to write the patched archive to
+     * @param patchReader The patch. It is not closed by this method.
+     * @throws IOException If an archive or the patch could not be read or the output could not be written
+     * @throws PatchFailedException If the patch does not apply to the original archive
+     */
+    public void applyPatch(ArchiveInput original, File revised, PatchInput patchReader) throws IOException, PatchFailedException {
+        try (ArchiveWriter writer = new ArchiveWriter(new BufferedOutputStream(new FileOutputStream(revised)))) {
+            // Only the headers of the classes are parsed, which is all that frame computation needs to know about them
+            Map<String, ClassInfo> classInfos = new HashMap<>();
+            // The original class files are held in memory until their entry is written, all other entries are only read when writing
+            List<ArchiveEntry> entries = new ArrayList<>();
+            Map<String, Integer> positions = new HashMap<>();
+            Map<String, byte[]> classes = new HashMap<>();
+
+            for (ArchiveEntry entry : original.entries()) {
+                if (positions.putIfAbsent(entry.getName(), entries.size()) != null) {
+                    continue;
+                }
+                entries.add(entry);
+                // Every class is only read once, the same bytes are used for the hierarchy, the patch and the output
+                byte[] data = entry.readClassFile();
+                if (data != null) {
+                    ClassInfo info;
+                    try {
+                        info = ClassInfo.read(data);
+                    } catch (Exception discard) {
+                        // Some files (such as .dylib) start with 0xCAFEBABE even though they are not plain java classes. They are treated as resources
+                        continue;
+                    }
+                    classInfos.put(info.getName(), info);
+                    classes.put(entry.getName(), data);
+                }
+            }
+
+            ExecutorService executor = createExecutor(Integer.MAX_VALUE);
+            try {
+                // Frames can only be computed once the hierarchy of every class the patch produces is known, so the patch
+                // is read in full before the first class is assembled. Only its sections are kept, not the patched classes.
+                List<PatchSection> sections = new ArrayList<>();
+                List<Future<ClassInfo>> patchedInfos = new ArrayList<>();
+                for (PatchSection section = patchReader.nextSection(); section != null; section = patchReader.nextSection()) {
+                    sections.add(section);
+                    if (!section.isResource() && !section.getRevisedName().equals("/dev/null")) {
+                        byte[] originalClass = classes.get(section.getOriginalName());
+                        PatchSection patchSection = section;
+                        patchedInfos.add(submit(executor, () -> getPatchedClassInfo(originalClass, patchSection)));
+                    }
+                }
+                for (Future<ClassInfo> patchedInfo : patchedInfos) {
+                    ClassInfo info = awaitResult(patchedInfo, PatchFailedException.class);
+                    if (info != null) {
+                        classInfos.put(info.getName(), info);
+                    }
+                }
+                applySections(sections, entries, positions, classes, classInfos, writer, executor);
+            } finally {
+                if (executor != null) {
+                    executor.shutdownNow();
                 }
-                break;
-            } else {
-                out.write(TEMPORARY_CACHE);
             }
         }
-        return out.toByteArray();
     }
 
-    public void applyPatch(JarFile original, File revised, List<String> fullPatch) throws IOException, PatchFailedException {
-        try (JarOutputStream os = new JarOutputStream(new FileOutputStream(revised))) {
-            Map<String, ClassNode> originalNodes = new HashMap<>();
-            Map<String, ClassNode> allNodes = new HashMap<>();
-            Map<String, byte[]> resources = new HashMap<>();
-
-            Enumeration<JarEntry> entries = original.entries();
-            while (entries.hasMoreElements()) {
-                JarEntry next = entries.nextElement();
-                try (InputStream isTest = original.getInputStream(next)) {
-                    if (next.getName().endsWith(".jnilib")) {
-                        resources.put(next.getName(), readAllBytes(isTest));
-                        isTest.close();
-                        continue; // apparently these files also start with the 0xCAFEBABE prefix.
+    private void applySections(List<PatchSection> sections, List<ArchiveEntry> entries, Map<String, Integer> positions, Map<String, byte[]> classes,
+            Map<String, ClassInfo> classInfos, ArchiveWriter writer, ExecutorService executor) throws IOException, PatchFailedException {
+        // Shared by all classes so that every class in the hierarchy is only resolved once
+        HierarchyProvider provider = hierarchyProvider;
+        if (provider == null) {
+            provider = new ClassLoaderHierarchyProvider(ClassHierarchyCache.class.getClassLoader());
+        }
+        ClassHierarchyCache hierarchy = new ClassHierarchyCache(Collections.emptyMap(), new ChainedHierarchyProvider(classInfos::get, provider));
+        hierarchyCache = hierarchy;
+        // Limits the amount of patched entries that were not yet written
+        int maxPending = executor == null ? 1 : getThreadCount() * 2;
+        // Patched classes are computed in the background and written once they are done and all entries in front
+        // of them were written, while the following sections are applied.
+        // Resources are patched by the writer, so that the patched contents are written as they are built.
+        // Entries are written in the order of the original jar, followed by new entries in the order of the patch.
+        EntryQueue queue = new EntryQueue(writer, classes);
+        // The first entry of the original jar that was not yet queued
+        int nextEntry = 0;
+        for (int i = 0; i < sections.size(); i++) {
+            PatchSection section = sections.get(i);
+            // The section is no longer needed once it was applied
+            sections.set(i, null);
+            String originalName = section.getOriginalName();
+            String revisedName = section.getRevisedName();
+
+            boolean deleted = revisedName.equals("/dev/null");
+            if (!deleted && !originalName.equals("/dev/null") && !originalName.equals(revisedName)) {
+                // renamed file
+                throw new UnsupportedOperationException("Renaming classes not yet implemented");
+            }
+            String name = deleted ? originalName : revisedName;
+            Integer position = positions.get(name);
+            ArchiveEntry replaced = null;
+            if (position == null) {
+                if (deleted) {
+                    continue;
+                }
+                position = entries.size();
+            } else if (position < nextEntry) {
+                // The entry was already queued, possibly unchanged
+                throw new PatchFailedException("The section of " + name + " appears more than once or does not follow the order of the original jar");
+            } else {
+                replaced = entries.get(position);
+            }
+            // Entries in front of the patched entry were not changed by the patch, as its sections follow the order of the jar
+            for (; nextEntry < position; nextEntry++) {
+                queue.copy(entries.get(nextEntry));
+            }
+            if (replaced != null) {
+                nextEntry++;
+            }
+            if (deleted) {
+                classes.remove(name);
+                queue.write(maxPending);
+                continue;
+            }
+
+            // Either a completely new file or a basic patch
+            byte[] originalClass = classes.get(originalName);
+            PatchSection patchSection = section;
+            // Make room for the entry before queueing it
+            queue.write(maxPending - 1);
+            if (section.isResource()) {
+                // The delta is only decoded once the entry is written
+                queue.add(name, replaced, null, (archive, entryName, entry) -> {
+                    byte[] originalData = originalClass;
+                    if (originalData == null) {
+                        originalData = entry == null ? new byte[0] : entry.getBytes();
                     }
-                    boolean validClassFile = true;
-                    if (isTest.read() != 0xCA || isTest.read() != 0xFE || isTest.read() != 0xBA || isTest.read() != 0xBE) {
-                        validClassFile = false;
+                    ResourceDelta delta;
+                    try {
+                        delta = patchSection.getResourceDelta();
+                    } catch (UncheckedIOException e) {
+                        throw e.getCause();
                     }
-                    isTest.close();
-                    if (validClassFile) {
-                        // InflaterInputStream sadly does not support mark/reset, so we have to do it the dirty way.
-                        try (InputStream is = original.getInputStream(next)) {
-                            ClassReader cr = new ClassReader(is);
-                            ClassNode result = new ClassNode();
-                            cr.accept(result, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
-                            originalNodes.put(next.getName(), result);
-                            allNodes.put(result.name, result);
-                        }
+                    try (OutputStream entryOut = archive.putEntry(entryName, entry, delta.getRevisedLength(), delta.getRevisedChecksum() & 0xFFFFFFFFL)) {
+                        delta.apply(originalData, entryOut);
                     }
-                    try (InputStream is = original.getInputStream(next)) {
-                        resources.put(next.getName(), readAllBytes(is));
+                });
+                queue.write(maxPending);
+                continue;
+            }
+            Future<byte[]> patchedClass = submit(executor, () -> {
+                List<String> originalBytecode = originalClass == null ? null : disassemble(originalClass);
+                if (originalBytecode == null) {
+                    originalBytecode = Collections.emptyList();
+                }
+                List<String> patchedBytecode = DiffUtils.patch(originalBytecode, patchSection.getPatch());
+                if (incrementalFrames && originalClass != null) {
+                    return assembleIncrementally(originalClass, originalBytecode, patchedBytecode, hierarchy);
+                }
+                return assemble(patchedBytecode, hierarchy);
+            });
+            queue.add(name, replaced, patchedClass, (archive, entryName, entry) -> archive.writeEntry(entryName, entry, awaitResult(patchedClass, PatchFailedException.class)));
+            queue.write(maxPending);
+        }
+
+        for (; nextEntry < entries.size(); nextEntry++) {
+            queue.copy(entries.get(nextEntry));
+        }
+        queue.write(0);
+    }
+
+    /**
+     * Obtains the hierarchy of a class as it is after the patch was applied. Only classes whose header lines
+     * (".ACCESS", ".NAME", ".SUPER" or ".IMPLEMENTS") are changed by the patch are patched to do so.
+     *
+     * @param originalClass The original class file, null if the class is created by the patch
+     * @param section The section of the class
+     * @return The hierarchy of the patched class, or null if the patch does not change it
+     * @throws PatchFailedException If the patch does not apply to the class
+     */
+    private ClassInfo getPatchedClassInfo(byte[] originalClass, PatchSection section) throws PatchFailedException {
+        if (originalClass != null && !changesHeader(section)) {
+            return null;
+        }
+        List<String> originalBytecode = disassemble(originalClass);
+        if (originalBytecode == null) {
+            originalBytecode = Collections.emptyList();
+        }
+        return readClassInfo(DiffUtils.patch(originalBytecode, section.getPatch()));
+    }
+
+    private static boolean changesHeader(PatchSection section) {
+        for (PatchHunk hunk : section.getHunks()) {
+            for (int i = 0; i < hunk.getLineCount(); i++) {
+                if (hunk.getKind(i) != PatchHunk.CONTEXT) {
+                    String line = hunk.getLine(i);
+                    if (line.startsWith(".ACCESS ") || line.startsWith(".NAME ") || line.startsWith(".SUPER ") || line.startsWith(".IMPLEMENTS")) {
+                        return true;
                     }
                 }
             }
+        }
+        return false;
+    }
 
-            List<List<String>> patches = new ArrayList<>();
-            List<String> currPatch = new ArrayList<>();
-            for (String ln : fullPatch) {
-                if (ln.charAt(0) == '-' && ln.charAt(1) == '-' && ln.charAt(2) == '-') {
-                    if (!currPatch.isEmpty()) {
-                        patches.add(currPatch);
-                        currPatch = new ArrayList<>();
-                    }
-                    currPatch.add(ln);
-                } else if (ln.charAt(0) != '#') {
-                    currPatch.add(ln);
+    /**
+     * Reads the hierarchy of a class from the header of its listing.
+     *
+     * @param bytecode The listing
+     * @return The hierarchy, or null if the listing does not name the class
+     */
+    private static ClassInfo readClassInfo(List<String> bytecode) {
+        int access = 0;
+        String name = null;
+        String superName = null;
+        String[] interfaces = new String[0];
+        for (String line : bytecode) {
+            if (line.startsWith(".ACCESS 0x")) {
+                access = Integer.parseUnsignedInt(line.substring(10), 16);
+            } else if (line.startsWith(".NAME ")) {
+                name = line.substring(6);
+            } else if (line.startsWith(".SUPER ")) {
+                superName = line.substring(7);
+                if (superName.equals("null")) {
+                    superName = null;
                 }
+            } else if (line.startsWith(".IMPLEMENTS ")) {
+                interfaces = line.substring(12).split(" ");
+            } else if (line.equals(".METHOD") || line.equals(".FIELD")) {
+                // The header is always in front of the members
+                break;
+            }
+        }
+        if (name == null) {
+            return null;
+        }
+        return new ClassInfo(name, superName, interfaces, (access & Opcodes.ACC_INTERFACE) != 0);
+    }
+
+    @FunctionalInterface
+    private static interface PatchedEntry {
+        void writeTo(ArchiveWriter writer, String name, ArchiveEntry original) throws IOException, PatchFailedException;
+    }
+
+    /**
+     * The entries that were not yet written to a patched archive, in the order in which they are written.
+     */
+    private static final class EntryQueue {
+
+        private static final class QueuedEntry {
+            private final String name;
+            private final ArchiveEntry original;
+            private final Future<?> result;
+            private final PatchedEntry patched;
+
+            QueuedEntry(String name, ArchiveEntry original, Future<?> result, PatchedEntry patched) {
+                this.name = name;
+                this.original = original;
+                this.result = result;
+                this.patched = patched;
             }
-            if (!currPatch.isEmpty()) {
-                patches.add(currPatch);
-            }
-
-            for (List<String> patchLines : patches) {
-                String originalName = patchLines.get(0).substring(4);
-                String revisedName = patchLines.get(1).substring(4);
-                Patch<String> diffUtilsPatch = UnifiedDiffUtils.parseUnifiedDiff(patchLines);
-
-                if (originalName.equals("/dev/null")) {
-                    // completely new file
-                    List<String> newBytecode = DiffUtils.patch(Collections.emptyList(), diffUtilsPatch);
-                    ClassNode out = new ClassNode();
-                    new SLAssmbler(newBytecode.toArray(new String[0]), out);
-                    ClassWriter cw = new FrameComputingClasswriter(0, allNodes);
-                    out.accept(cw);
-                    resources.put(revisedName, cw.toByteArray());
-                } else if (revisedName.equals("/dev/null")) {
-                    // deleted file
-                    originalNodes.remove(originalName);
-                } else if (!originalName.equals(revisedName)){
-                    // renamed file
-                    throw new UnsupportedOperationException("Renaming classes not yet implemented");
+        }
+
+        private final Deque<QueuedEntry> entries = new ArrayDeque<>();
+        private final ArchiveWriter writer;
+        private final Map<String, byte[]> classes;
+        private int pendingEntries;
+
+        EntryQueue(ArchiveWriter writer, Map<String, byte[]> classes) {
+            this.writer = writer;
+            this.classes = classes;
+        }
+
+        /**
+         * Queues a patched entry.
+         *
+         * @param name The name of the entry
+         * @param original The entry of the original archive that is replaced, or null for new entries
+         * @param result The result the entry waits for, or null if it can be written right away
+         * @param patched Writes the patched entry
+         */
+        void add(String name, ArchiveEntry original, Future<?> result, PatchedEntry patched) {
+            entries.add(new QueuedEntry(name, original, result, patched));
+            pendingEntries++;
+        }
+
+        /**
+         * Queues an entry that is copied from the original archive without changes.
+         *
+         * @param entry The entry
+         */
+        void copy(ArchiveEntry entry) {
+            entries.add(new QueuedEntry(entry.getName(), entry, null, null));
+        }
+
+        /**
+         * Writes the entries at the head of the queue whose results are done. If more than the given amount of patched entries
+         * are queued, it waits for the results at the head of the queue until the limit is no longer exceeded.
+         * A limit of 0 thus writes the entire queue.
+         *
+         * @param maxPendingEntries The maximum amount of patched entries that may stay queued
+         * @throws IOException If an entry could not be read or written
+         * @throws PatchFailedException If an entry could not be patched
+         */
+        void write(int maxPendingEntries) throws IOException, PatchFailedException {
+            while (!entries.isEmpty()) {
+                QueuedEntry entry = entries.peek();
+                if (entry.result != null && !entry.result.isDone() && pendingEntries <= maxPendingEntries) {
+                    return;
+                }
+                entries.poll();
+                if (entry.patched != null) {
+                    pendingEntries--;
+                }
+                // The original class is no longer needed once its entry was written
+                byte[] originalClass = classes.remove(entry.name);
+                if (entry.patched == null) {
+                    writer.copyEntry(entry.original, originalClass);
                 } else {
-                    // basic patch
-                    ClassNode node = originalNodes.remove(originalName);
-                    List<String> newBytecode = DiffUtils.patch(generateBytecode(node), diffUtilsPatch);
-                    ClassNode out = new ClassNode();
-                    new SLAssmbler(newBytecode.toArray(new String[0]), out);
-                    ClassWriter cw = new FrameComputingClasswriter(0, allNodes);
-                    out.accept(cw);
-                    resources.put(revisedName, cw.toByteArray());
+                    entry.patched.writeTo(writer, entry.name, entry.original);
                 }
             }
+        }
+    }
+
+    /**
+     * Assembles the given bytecode and writes it to a class file, computing stack map frames in the process.
+     *
+     * @param bytecode The bytecode in the format emitted by {@link BytecodeGeneratorVisitor}
+     * @param hierarchy The hierarchy of all classes known to the patcher, used for frame computation
+     * @return The class file
+     */
+    protected byte[] assemble(List<String> bytecode, ClassHierarchyCache hierarchy) {
+        ClassWriter cw = new FrameComputingClasswriter(0, hierarchy);
+        new SLAssmbler(bytecode.toArray(new String[0]), cw);
+        return cw.toByteArray();
+    }
+
+    /**
+     * Assembles the patched bytecode of a class, only computing stack map frames for the methods that were changed by the patch.
+     * All other methods are copied from the original class file, including their frames.
+     * This assumes that the hierarchy of the classes used by the unchanged methods did not change either.
+     *
+     * @param originalClass The original class file
+     * @param originalBytecode The bytecode of the original class file
+     * @param bytecode The patched bytecode
+     * @param hierarchy The hierarchy of all classes known to the patcher, used for frame computation
+     * @return The class file
+     */
+    protected byte[] assembleIncrementally(byte[] originalClass, List<String> originalBytecode, List<String> bytecode, ClassHierarchyCache hierarchy) {
+        ClassNode out = new ClassNode();
+        new SLAssmbler(bytecode.toArray(new String[0]), out);
+        ClassNode original = new ClassNode();
+        new ClassReader(originalClass).accept(original, ClassReader.SKIP_DEBUG);
+        Map<String, MethodNode> originalMethods = new HashMap<>();
+        for (MethodNode method : original.methods) {
+            originalMethods.put(StructuralDiff.getMemberKey(true, method.name, method.desc), method);
+        }
+        Map<String, List<String>> originalMembers = StructuralDiff.getMembers(originalBytecode);
+        Map<String, List<String>> patchedMembers = StructuralDiff.getMembers(bytecode);
 
-            for (Map.Entry<String, byte[]> data : resources.entrySet()) {
-                os.putNextEntry(new JarEntry(data.getKey()));
-                os.write(data.getValue());
-                os.closeEntry();
+        // Methods that changed are written to a separate class in order to compute their frames
+        ClassWriter frameWriter = new FrameComputingClasswriter(0, hierarchy);
+        frameWriter.visit(out.version, out.access, out.name, out.signature, out.superName, out.interfaces.toArray(new String[0]));
+        List<Integer> changedMethods = new ArrayList<>();
+        for (int i = 0; i < out.methods.size(); i++) {
+            MethodNode method = out.methods.get(i);
+            String key = StructuralDiff.getMemberKey(true, method.name, method.desc);
+            List<String> originalLines = originalMembers.get(key);
+            MethodNode originalMethod = originalMethods.get(key);
+            if (originalMethod != null && originalLines != null && originalLines.equals(patchedMembers.get(key))) {
+                out.methods.set(i, originalMethod);
+            } else {
+                changedMethods.add(i);
+                method.accept(frameWriter);
             }
-//            patch.forEach(System.out::println);
         }
+        frameWriter.visitEnd();
+        if (!changedMethods.isEmpty()) {
+            ClassNode framed = new ClassNode();
+            new ClassReader(frameWriter.toByteArray()).accept(framed, 0);
+            for (int i = 0; i < changedMethods.size(); i++) {
+                out.methods.set(changedMethods.get(i), framed.methods.get(i));
+            }
+        }
+
+        ClassWriter cw = new ClassWriter(0);
+        out.accept(cw);
+        return cw.toByteArray();
     }
 
     public Map<String, ClassNode> mapNodes(JarFile input) throws IOException {
-        Enumeration<JarEntry> entries = input.entries();
+        return mapNodes(new JarFileInput(input));
+    }
+
+    public Map<String, ClassNode> mapNodes(ArchiveInput input) throws IOException {
         Map<String, ClassNode> out = new LinkedHashMap<>();
 
-        while (entries.hasMoreElements()) {
-            JarEntry next = entries.nextElement();
-            try (InputStream isTest = input.getInputStream(next)) {
-                if (isTest.read() != 0xCA || isTest.read() != 0xFE || isTest.read() != 0xBA || isTest.read() != 0xBE) {
-                    isTest.close();
-                    continue;
-                }
-                isTest.close();
-                // InflaterInputStream sadly does not support mark/reset, so we have to do it the dirty way.
-                try (InputStream is = input.getInputStream(next)) {
-                    ClassReader cr = new ClassReader(is);
-                    ClassNode result = new ClassNode();
-                    cr.accept(result, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
-                    out.put(next.getName(), result);
-                } catch (Exception discard) {
-                    // Some files (such as .jnilib or .dylib start with 0xCAFEBABE even though they are not plain java classes. We ignore them)
-                }
+        for (ArchiveEntry entry : input.entries()) {
+            byte[] data = entry.readClassFile();
+            if (data == null) {
+                continue;
+            }
+            try {
+                ClassReader cr = new ClassReader(data);
+                ClassNode result = new ClassNode();
+                cr.accept(result, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+                out.put(entry.getName(), result);
+            } catch (Exception discard) {
+                // Some files (such as .dylib) start with 0xCAFEBABE even though they are not plain java classes. We ignore them
             }
         }
 
@@ -251,67 +1063,443 @@ public class DeltaGenerator {
     }
 
     public List<String> generatePatch(JarFile original, JarFile revised, int context, String[] packageWhitelist) throws IOException {
-        Map<String, ClassNode> originalNodes = mapNodes(original);
-        Map<String, ClassNode> revisedNodes = mapNodes(revised);
+        return generatePatch(new JarFileInput(original), new JarFileInput(revised), context, packageWhitelist);
+    }
+
+    public List<String> generatePatch(ArchiveInput original, ArchiveInput revised, int context, String[] packageWhitelist) throws IOException {
         List<String> output = new ArrayList<>();
+        generatePatch(original, revised, context, packageWhitelist, (section) -> output.addAll(section.getLines()));
+        return output;
+    }
 
-        for (Map.Entry<String, ClassNode> onode : originalNodes.entrySet()) {
-            if (packageWhitelist.length != 0) {
-                boolean allow = false;
-                for (String filter : packageWhitelist) {
-                    if (onode.getKey().startsWith(filter)) {
-                        allow = true;
-                        break;
-                    }
-                }
-                if (!allow) {
-                    continue;
-                }
+    /**
+     * Generates the patch between two archives and writes it to a {@link Writer}, line by line.
+     * Unlike {@link #generatePatch(ArchiveInput, ArchiveInput, int, String[])} the class nodes of the archives
+     * are only loaded when they are diffed and are discarded afterwards, so the memory usage depends on the
+     * size of the largest class and not on the size of the archives.
+     * Lines are terminated by a single line feed character.
+     *
+     * @param original The original archive
+     * @param revised The revised archive
+     * @param context The amount of context lines
+     * @param packageWhitelist The prefixes of the entries that should be diffed, or an empty array to diff all entries
+     * @param out The writer to write the patch to. It is not closed or flushed by this method.
+     * @throws IOException If an archive could not be read or the writer could not be written to
+     */
+    public void generatePatch(ArchiveInput original, ArchiveInput revised, int context, String[] packageWhitelist, Writer out) throws IOException {
+        generatePatch(original, revised, context, packageWhitelist, (section) -> {
+            for (String line : section.getLines()) {
+                out.write(line);
+                out.write('\n');
             }
-            List<String> originalBytecode = generateBytecode(onode.getValue());
-            ClassNode rNode = revisedNodes.remove(onode.getKey());
-            if (rNode == null) {
-                Patch<String> patch = DiffUtils.diff(originalBytecode, Collections.emptyList());
-                output.addAll(UnifiedDiffUtils.generateUnifiedDiff(onode.getKey(), "/dev/null", originalBytecode, patch, context));
-            } else {
-                output.addAll(generateUnifiedDiff(onode.getValue(), onode.getKey(), rNode, onode.getKey(), context));
+        });
+    }
+
+    /**
+     * Generates the patch between two archives in the {@link BinaryPatchFormat binary patch format}.
+     * Like {@link #generatePatch(ArchiveInput, ArchiveInput, int, String[], Writer)}, classes are only loaded
+     * while they are diffed.
+     *
+     * @param original The original archive
+     * @param revised The revised archive
+     * @param context The amount of context lines
+     * @param packageWhitelist The prefixes of the entries that should be diffed, or an empty array to diff all entries
+     * @param out The writer to write the patch to. It is not finished or closed by this method.
+     * @throws IOException If an archive could not be read or the writer could not be written to
+     */
+    public void generatePatch(ArchiveInput original, ArchiveInput revised, int context, String[] packageWhitelist, BinaryPatchWriter out) throws IOException {
+        generatePatch(original, revised, context, packageWhitelist, out::writeSection);
+    }
+
+    @FunctionalInterface
+    private static interface SectionConsumer {
+        void accept(PatchSection section) throws IOException;
+    }
+
+    private void generatePatch(ArchiveInput original, ArchiveInput revised, int context, String[] packageWhitelist, SectionConsumer out) throws IOException {
+        skippedClasses.set(0);
+        // Only the entries are indexed, classes are read once they are needed.
+        Map<String, ArchiveEntry> revisedEntries = new LinkedHashMap<>();
+        for (ArchiveEntry entry : revised.entries()) {
+            if (isWhitelisted(entry.getName(), packageWhitelist)) {
+                revisedEntries.put(entry.getName(), entry);
             }
         }
 
-        for (Map.Entry<String, ClassNode> surplusRevisedNode : revisedNodes.entrySet()) {
-            if (packageWhitelist.length != 0) {
-                boolean allow = false;
-                for (String filter : packageWhitelist) {
-                    if (surplusRevisedNode.getKey().startsWith(filter)) {
-                        allow = true;
-                        break;
-                    }
-                }
-                if (!allow) {
+        // Every task produces the section of a single entry, or null if it did not change. The results are consumed in the order
+        // in which the tasks were submitted so the resulting patch is the same regardless of the thread count.
+        // At most a few tasks are in flight at any time so that finished diffs do not pile up in memory.
+        ExecutorService executor = createExecutor(Integer.MAX_VALUE);
+        int maxPending = executor == null ? 1 : getThreadCount() * 2;
+        Deque<Future<PatchSection>> pending = new ArrayDeque<>();
+        try {
+            for (ArchiveEntry originalEntry : original.entries()) {
+                String name = originalEntry.getName();
+                if (!isWhitelisted(name, packageWhitelist)) {
                     continue;
                 }
+                ArchiveEntry revisedEntry = revisedEntries.remove(name);
+                pending.add(submit(executor, () -> generateSection(name, originalEntry, revisedEntry, context)));
+                acceptSections(pending, maxPending, out);
+            }
+
+            for (ArchiveEntry surplusRevisedEntry : revisedEntries.values()) {
+                String name = surplusRevisedEntry.getName();
+                pending.add(submit(executor, () -> generateSection(name, null, surplusRevisedEntry, context)));
+                acceptSections(pending, maxPending, out);
             }
-            List<String> revisedBytecode = generateBytecode(surplusRevisedNode.getValue());
+
+            acceptSections(pending, 1, out);
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private static void acceptSections(Deque<Future<PatchSection>> pending, int maxPending, SectionConsumer out) throws IOException {
+        while (pending.size() >= maxPending) {
+            PatchSection section = awaitResult(pending.poll(), IOException.class);
+            if (section != null) {
+                out.accept(section);
+            }
+        }
+    }
+
+    private PatchSection generateSection(String name, ArchiveEntry originalEntry, ArchiveEntry revisedEntry, int contextLines) throws IOException {
+        // Every entry is read once, the class files are passed on to the diff
+        byte[] originalClass = readClass(originalEntry);
+        byte[] revisedClass = readClass(revisedEntry);
+        boolean originalResource = originalEntry != null && originalClass == null;
+        boolean revisedResource = revisedEntry != null && revisedClass == null;
+        if (resourceDeltas && (originalResource || revisedResource)) {
+            // Entries that are classes in only one of the archives are diffed as resources
+            return generateResourceSection(name, originalEntry, originalClass, revisedEntry, revisedClass);
+        }
+        // Entries that are not classes are treated as if they were absent
+        List<String> lines = generateUnifiedDiff(name, originalEntry, originalClass, revisedEntry, revisedClass, contextLines);
+        return lines.isEmpty() ? null : new PatchSection(lines);
+    }
+
+    /**
+     * Generates the section of a resource, which is an entry that is not a class file.
+     *
+     * @param name The name of the resource
+     * @param originalEntry The original entry, or null if the resource was added
+     * @param originalData The contents of the original entry if they were already read, otherwise null
+     * @param revisedEntry The revised entry, or null if the resource was removed
+     * @param revisedData The contents of the revised entry if they were already read, otherwise null
+     * @return The section, or null if the resource did not change
+     * @throws IOException If an entry could not be read
+     */
+    protected PatchSection generateResourceSection(String name, ArchiveEntry originalEntry, byte[] originalData,
+            ArchiveEntry revisedEntry, byte[] revisedData) throws IOException {
+        if (originalData == null) {
+            originalData = originalEntry == null ? new byte[0] : originalEntry.getBytes();
+        }
+        if (revisedData == null) {
+            revisedData = revisedEntry == null ? new byte[0] : revisedEntry.getBytes();
+        }
+        if (originalEntry != null && revisedEntry != null && originalEntry.getCrc() != -1 && revisedEntry.getCrc() != -1
+                && originalEntry.getCrc() != revisedEntry.getCrc()) {
+            return new PatchSection(name, name, ResourceDelta.compute(originalData, revisedData));
+        }
+        if (originalEntry != null && revisedEntry != null && Arrays.equals(originalData, revisedData)) {
+            return null;
+        }
+        return new PatchSection(originalEntry == null ? "/dev/null" : name, revisedEntry == null ? "/dev/null" : name,
+                ResourceDelta.compute(originalData, revisedData));
+    }
+
+    /**
+     * Reads the contents of an archive entry if it is a class file, see {@link ArchiveEntry#readClassFile()}.
+     *
+     * @param entry The entry to read, may be null
+     * @return The contents of the entry, or null if the entry is null or not a class
+     * @throws IOException If the entry could not be read
+     */
+    protected static byte[] readClass(ArchiveEntry entry) throws IOException {
+        return entry == null ? null : entry.readClassFile();
+    }
+
+    /**
+     * Reads a class node in the same way {@link #mapNodes(ArchiveInput)} does.
+     *
+     * @param data The class file, may be null
+     * @return The class node, or null if the data is null or not a valid class
+     */
+    protected ClassNode readNode(byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        try {
+            ClassReader cr = new ClassReader(data);
+            ClassNode result = new ClassNode();
+            cr.accept(result, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+            return result;
+        } catch (Exception discard) {
+            // Some files (such as .dylib) start with 0xCAFEBABE even though they are not plain java classes. We ignore them
+            return null;
+        }
+    }
+
+    /**
+     * Generates the unified diff between two class files that were read from archive entries. If both classes have the same contents,
+     * an empty diff is returned without disassembling the classes.
+     *
+     * @param name The name of the class file
+     * @param originalEntry The original entry, only used for its checksum
+     * @param originalData The original class file, or null if the class was added
+     * @param revisedEntry The revised entry, only used for its checksum
+     * @param revisedData The revised class file, or null if the class was removed
+     * @param contextLines The amount of context lines
+     * @return The unified diff
+     */
+    protected List<String> generateUnifiedDiff(String name, ArchiveEntry originalEntry, byte[] originalData,
+            ArchiveEntry revisedEntry, byte[] revisedData, int contextLines) {
+        if (originalData != null && revisedData != null) {
+            // The checksums and sizes of the central directory can tell us whether the classes differ without comparing them.
+            // If they are equal however, the contents need to be compared as checksums may collide.
+            boolean mayBeEqual = (originalEntry.getCrc() == -1 || revisedEntry.getCrc() == -1 || originalEntry.getCrc() == revisedEntry.getCrc())
+                    && originalData.length == revisedData.length;
+            if (mayBeEqual && Arrays.equals(originalData, revisedData)) {
+                skippedClasses.incrementAndGet();
+                return Collections.emptyList();
+            }
+        }
+        return generateUnifiedDiff(name, disassemble(originalData), disassemble(revisedData), contextLines);
+    }
+
+    /**
+     * Generates the unified diff of a class that may not exist in either the original or the revised state.
+     *
+     * @param name The name of the class file
+     * @param originalBytecode The bytecode of the original class, or null if the class was added
+     * @param revisedBytecode The bytecode of the revised class, or null if the class was removed
+     * @param contextLines The amount of context lines
+     * @return The unified diff
+     */
+    protected List<String> generateUnifiedDiff(String name, List<String> originalBytecode, List<String> revisedBytecode, int contextLines) {
+        if (originalBytecode == null && revisedBytecode == null) {
+            return Collections.emptyList();
+        } else if (revisedBytecode == null) {
+            Patch<String> patch = DiffUtils.diff(originalBytecode, Collections.emptyList());
+            return UnifiedDiffUtils.generateUnifiedDiff(name, "/dev/null", originalBytecode, patch, contextLines);
+        } else if (originalBytecode == null) {
             Patch<String> patch = DiffUtils.diff(Collections.emptyList(), revisedBytecode);
-            output.addAll(UnifiedDiffUtils.generateUnifiedDiff("/dev/null", surplusRevisedNode.getKey(), Collections.emptyList(), patch, context));
+            return UnifiedDiffUtils.generateUnifiedDiff("/dev/null", name, Collections.emptyList(), patch, contextLines);
+        }
+        Patch<String> patch = diff(originalBytecode, revisedBytecode);
+        return UnifiedDiffUtils.generateUnifiedDiff(name, name, originalBytecode, patch, contextLines);
+    }
+
+    /**
+     * Computes the patch between two bytecode listings.
+     *
+     * @param originalBytecode The original listing
+     * @param revisedBytecode The revised listing
+     * @return The patch
+     */
+    protected Patch<String> diff(List<String> originalBytecode, List<String> revisedBytecode) {
+        StructuralDiff structural = structuralDiff;
+        if (structural != null) {
+            return structural.diff(originalBytecode, revisedBytecode);
+        }
+        return DiffUtils.diff(originalBytecode, revisedBytecode, lineDiff);
+    }
+
+    private void updateLineDiff() {
+        lineDiff = new InternedLineDiff(diffAlgorithm, diffCostLimit);
+        if (structuralDiff != null) {
+            structuralDiff = new StructuralDiff(lineDiff);
+        }
+    }
+
+    private static boolean isWhitelisted(String name, String[] packageWhitelist) {
+        if (packageWhitelist.length == 0) {
+            return true;
+        }
+        for (String filter : packageWhitelist) {
+            if (name.startsWith(filter)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Creates the executor used to run the given amount of tasks, or null if the tasks
+     * should be run on the calling thread.
+     *
+     * @param taskCount The amount of tasks that will be submitted
+     * @return The executor, or null
+     */
+    protected ExecutorService createExecutor(int taskCount) {
+        int threads = Math.min(getThreadCount(), taskCount);
+        if (threads <= 1) {
+            return null;
+        }
+        return Executors.newFixedThreadPool(threads);
+    }
+
+    /**
+     * Submits a task to an executor. If the executor is null, the task is run on the calling thread
+     * before this method returns.
+     *
+     * @param executor The executor, may be null
+     * @param task The task to run
+     * @return The future of the task
+     */
+    protected static <T> Future<T> submit(ExecutorService executor, Callable<T> task) {
+        if (executor == null) {
+            FutureTask<T> future = new FutureTask<>(task);
+            future.run();
+            return future;
+        }
+        return executor.submit(task);
+    }
+
+    /**
+     * Waits for a future to complete and unwraps the exception it completed with, if any.
+     *
+     * @param future The future to wait on
+     * @param checkedException The checked exception type (besides {@link IOException}) that is rethrown as-is
+     * @return The result of the future
+     * @throws IOException If the task threw an {@link IOException} or the thread was interrupted
+     * @throws E If the task threw an exception of the given type
+     */
+    protected static <T, E extends Exception> T awaitResult(Future<T> future, Class<E> checkedException) throws IOException, E {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a worker thread", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (checkedException.isInstance(cause)) {
+                throw checkedException.cast(cause);
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
         }
-        return output;
     }
 
     public List<String> generateUnifiedDiff(ClassNode nodeA, String nameA, ClassNode nodeB, String nameB, int contextLines) {
         List<String> nodeABytecode = generateBytecode(nodeA);
-        Patch<String> diff = DiffUtils.diff(nodeABytecode, generateBytecode(nodeB));
+        Patch<String> diff = diff(nodeABytecode, generateBytecode(nodeB));
         return UnifiedDiffUtils.generateUnifiedDiff(nameA, nameB, nodeABytecode, diff, contextLines);
     }
 
     public Patch<String> generatePatch(ClassNode nodeA, ClassNode nodeB) {
-        return DiffUtils.diff(generateBytecode(nodeA), generateBytecode(nodeB));
+        return diff(generateBytecode(nodeA), generateBytecode(nodeB));
+    }
+
+    /**
+     * Generates the bytecode listing of a class file, consulting the {@link #getDisassemblyCache() disassembly cache} if one is set.
+     *
+     * @param classFile The class file, may be null
+     * @return The listing, or null if the class file is null or not a valid class
+     */
+    protected List<String> disassemble(byte[] classFile) {
+        if (classFile == null) {
+            return null;
+        }
+        DisassemblyCache cache = disassemblyCache;
+        if (cache != null) {
+            List<String> cached = cache.get(classFile);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        ClassNode node = readNode(classFile);
+        if (node == null) {
+            return null;
+        }
+        List<String> bytecode = generateBytecode(node);
+        if (cache != null) {
+            cache.put(classFile, bytecode);
+        }
+        return bytecode;
+    }
+
+    /**
+     * Applies a single section of a patch to a class, for example one obtained from {@link IndexedPatchFile#getSection(String)}.
+     * The class should have been read with {@link ClassReader#SKIP_DEBUG} and {@link ClassReader#SKIP_FRAMES}
+     * like the patcher does, otherwise the patch may not apply. The returned class does not have stack map frames,
+     * which are only computed once it is written with a {@link ClassWriter} that computes them.
+     *
+     * @param node The class to patch, may be null if the section creates the class
+     * @param section The section
+     * @return The patched class, or null if the section removes the class
+     * @throws IllegalArgumentException If the section is the section of a resource
+     * @throws PatchFailedException If the section does not apply to the class
+     */
+    public ClassNode applyPatch(ClassNode node, PatchSection section) throws PatchFailedException {
+        if (section.isResource()) {
+            throw new IllegalArgumentException("The section of " + section.getOriginalName() + " is the section of a resource, not of a class");
+        } else if (section.getRevisedName().equals("/dev/null")) {
+            return null;
+        }
+        List<String> originalBytecode = node == null ? Collections.emptyList() : generateBytecode(node);
+        List<String> patchedBytecode = DiffUtils.patch(originalBytecode, section.getPatch());
+        ClassNode out = new ClassNode();
+        new SLAssmbler(patchedBytecode.toArray(new String[0]), out);
+        return out;
     }
 
     public List<String> generateBytecode(ClassNode node) {
         List<String> output = new ArrayList<>();
-        ClassVisitor visitor = new BytecodeGeneratorVisitor(output);
-        node.accept(visitor);
+        generateBytecode(node, LineSink.of(output));
         return output;
     }
+
+    /**
+     * Passes the bytecode listing of a class to a sink line by line, so that the listing can be
+     * written or fingerprinted without holding it in memory.
+     *
+     * @param node The class
+     * @param sink The sink
+     */
+    public void generateBytecode(ClassNode node, LineSink sink) {
+        ClassVisitor visitor = new BytecodeGeneratorVisitor(sink);
+        node.accept(visitor);
+    }
+
+    /**
+     * Writes the bytecode listings of the classes within an archive. Every listing is preceded by
+     * a comment line naming the class file.
+     *
+     * @param input The archive
+     * @param packageWhitelist The prefixes of the classes to write, or an empty array to write all classes
+     * @param out The writer to write the listings to
+     * @throws IOException If the archive could not be read or the listings could not be written
+     */
+    public void disassemble(ArchiveInput input, String[] packageWhitelist, Writer out) throws IOException {
+        LineSink sink = LineSink.of(out);
+        for (ArchiveEntry entry : input.entries()) {
+            if (!isWhitelisted(entry.getName(), packageWhitelist)) {
+                continue;
+            }
+            ClassNode node = readNode(entry.readClassFile());
+            if (node == null) {
+                continue;
+            }
+            out.write("// ");
+            out.write(entry.getName());
+            out.write('\n');
+            try {
+                generateBytecode(node, sink);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+    }
 }
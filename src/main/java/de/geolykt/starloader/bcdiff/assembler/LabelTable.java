@@ -3,20 +3,19 @@ package de.geolykt.starloader.bcdiff.assembler;
 import java.util.HashMap;
 import java.util.Map;
 
-import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.Label;
 
 public class LabelTable {
 
-    protected final Map<String, LabelNode> labels = new HashMap<>();
+    protected final Map<String, Label> labels = new HashMap<>();
 
     public LabelTable() {
     }
 
-    public LabelNode getLabel(String name) {
-        LabelNode label = labels.get(name);
+    public Label getLabel(String name) {
+        Label label = labels.get(name);
         if (label == null) {
-            label = new LabelNode();
-            label.getLabel().info = label;
+            label = new Label();
             labels.put(name, label);
         }
         return label;
@@ -0,0 +1,299 @@
+package de.geolykt.starloader.bcdiff.assembler;
+
+/**
+ * A cursor over a single line of the assembler format. Tokens are scanned in place, so unlike {@link String#split(String)}
+ * no regular expressions, arrays or strings for tokens that are skipped or parsed as numbers are created.
+ * A tokenizer can be reused for any amount of lines by calling {@link #reset(String, int)}.
+ */
+public class LineTokenizer {
+
+    private String line;
+    private int position;
+    private int end;
+
+    /**
+     * Starts tokenizing a line from its first character.
+     *
+     * @param line The line
+     * @return This tokenizer
+     */
+    public LineTokenizer reset(String line) {
+        return reset(line, 0);
+    }
+
+    /**
+     * Starts tokenizing a line from the given offset, ignoring all characters before it.
+     *
+     * @param line The line
+     * @param start The index of the first character to tokenize
+     * @return This tokenizer
+     */
+    public LineTokenizer reset(String line, int start) {
+        this.line = line;
+        this.position = start;
+        this.end = line.length();
+        return this;
+    }
+
+    private IllegalStateException error(String message) {
+        return new IllegalStateException(message + " at column " + position + " of line: " + line);
+    }
+
+    /**
+     * Consumes the given literal.
+     *
+     * @param literal The literal that is expected at the current position
+     * @throws IllegalStateException If the line does not continue with the literal
+     */
+    public void expect(String literal) {
+        if (!line.startsWith(literal, position)) {
+            throw error("Expected \"" + literal + "\"");
+        }
+        position += literal.length();
+    }
+
+    public String getLine() {
+        return line;
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    public boolean hasNext() {
+        return position < end;
+    }
+
+    private int indexOf(char delimiter) {
+        int index = line.indexOf(delimiter, position);
+        if (index == -1) {
+            throw error("Expected '" + delimiter + "'");
+        }
+        return index;
+    }
+
+    /**
+     * Obtains the token up to the next space or the end of the line and consumes the space.
+     *
+     * @return The token
+     */
+    public String next() {
+        int start = position;
+        int space = line.indexOf(' ', start);
+        if (space == -1) {
+            position = end;
+            return line.substring(start);
+        }
+        position = space + 1;
+        return line.substring(start, space);
+    }
+
+    /**
+     * Obtains the token up to the given delimiter and consumes the delimiter.
+     *
+     * @param delimiter The character that ends the token
+     * @return The token
+     * @throws IllegalStateException If the line does not contain the delimiter
+     */
+    public String next(char delimiter) {
+        int start = position;
+        int index = indexOf(delimiter);
+        position = index + 1;
+        return line.substring(start, index);
+    }
+
+    /**
+     * Obtains the token up to the given delimiter, but does not consume the delimiter.
+     *
+     * @param delimiter The character that ends the token
+     * @return The token
+     * @throws IllegalStateException If the line does not contain the delimiter
+     */
+    public String nextBefore(char delimiter) {
+        int start = position;
+        position = indexOf(delimiter);
+        return line.substring(start, position);
+    }
+
+    /**
+     * Obtains the token up to the first of the two delimiters or the end of the line, but does not consume the delimiter.
+     *
+     * @param delimiter1 The first character that ends the token
+     * @param delimiter2 The second character that ends the token
+     * @return The token
+     */
+    public String nextBefore(char delimiter1, char delimiter2) {
+        int start = position;
+        while (position < end) {
+            char c = line.charAt(position);
+            if (c == delimiter1 || c == delimiter2) {
+                break;
+            }
+            position++;
+        }
+        return line.substring(start, position);
+    }
+
+    /**
+     * Parses the integer up to the next space or the end of the line and consumes the space.
+     *
+     * @return The integer
+     * @throws NumberFormatException If the token is not a valid integer
+     */
+    public int nextInt() {
+        return nextInt(' ', true);
+    }
+
+    /**
+     * Parses the integer up to the given delimiter and consumes the delimiter.
+     *
+     * @param delimiter The character that ends the integer
+     * @return The integer
+     * @throws NumberFormatException If the token is not a valid integer
+     * @throws IllegalStateException If the line does not contain the delimiter
+     */
+    public int nextInt(char delimiter) {
+        return nextInt(delimiter, false);
+    }
+
+    private int nextInt(char delimiter, boolean endAllowed) {
+        int start = position;
+        boolean negative = position < end && line.charAt(position) == '-';
+        if (negative) {
+            position++;
+        }
+        long value = 0;
+        while (position < end) {
+            char c = line.charAt(position);
+            if (c == delimiter) {
+                break;
+            }
+            int digit = c - '0';
+            if (digit < 0 || digit > 9 || value > Integer.MAX_VALUE + 1L) {
+                throw new NumberFormatException("Invalid integer \"" + line.substring(start, Math.min(end, position + 1)) + "\" at column " + start + " of line: " + line);
+            }
+            value = value * 10 + digit;
+            position++;
+        }
+        if (position == end && !endAllowed) {
+            throw error("Expected '" + delimiter + "'");
+        }
+        if (negative) {
+            value = -value;
+        }
+        if (position == start + (negative ? 1 : 0) || value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new NumberFormatException("Invalid integer \"" + line.substring(start, position) + "\" at column " + start + " of line: " + line);
+        }
+        if (position < end) {
+            position++;
+        }
+        return (int) value;
+    }
+
+    /**
+     * Parses the hexadecimal integer up to the next space or the end of the line and consumes the space.
+     * All 32 bits may be set, so "FFFFFFFF" is parsed as -1.
+     *
+     * @return The integer
+     * @throws NumberFormatException If the token is not a valid hexadecimal integer
+     */
+    public int nextHexInt() {
+        int start = position;
+        int value = 0;
+        while (position < end && line.charAt(position) != ' ') {
+            int digit = Character.digit(line.charAt(position), 16);
+            if (digit == -1 || position - start == 8) {
+                throw new NumberFormatException("Invalid hexadecimal integer at column " + start + " of line: " + line);
+            }
+            value = (value << 4) | digit;
+            position++;
+        }
+        if (position == start) {
+            throw new NumberFormatException("Missing hexadecimal integer at column " + start + " of line: " + line);
+        }
+        if (position < end) {
+            position++;
+        }
+        return value;
+    }
+
+    /**
+     * Obtains the token up to the next space or the end of the line and consumes the space.
+     * The token "null" is returned as null.
+     *
+     * @return The token, or null
+     */
+    public String nextNullable() {
+        String token = next();
+        if (token.equals("null")) {
+            return null;
+        }
+        return token;
+    }
+
+    /**
+     * Obtains the index of the closing quote of the quoted string that starts at the current position, which must be a quote.
+     * Escaped quotes are skipped. The position is not changed.
+     *
+     * @return The index of the closing quote
+     * @throws IllegalStateException If the string is not closed
+     */
+    public int findClosingQuote() {
+        if (position >= end || line.charAt(position) != '"') {
+            throw error("Expected '\"'");
+        }
+        for (int i = position + 1; i < end; i++) {
+            char c = line.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '"') {
+                return i;
+            }
+        }
+        throw error("Unterminated string");
+    }
+
+    public char peek() {
+        if (position >= end) {
+            throw error("Unexpected end of line");
+        }
+        return line.charAt(position);
+    }
+
+    /**
+     * Obtains the remainder of the line and moves the cursor to the end of the line.
+     *
+     * @return The remainder of the line
+     */
+    public String rest() {
+        String rest = line.substring(position);
+        position = end;
+        return rest;
+    }
+
+    public void setPosition(int position) {
+        this.position = position;
+    }
+
+    public void skip(int amount) {
+        position += amount;
+    }
+
+    /**
+     * Consumes the given literal if the line continues with it.
+     *
+     * @param literal The literal
+     * @return True if the literal was consumed
+     */
+    public boolean skipIf(String literal) {
+        if (line.startsWith(literal, position)) {
+            position += literal.length();
+            return true;
+        }
+        return false;
+    }
+
+    public boolean startsWith(String prefix) {
+        return line.startsWith(prefix, position);
+    }
+}
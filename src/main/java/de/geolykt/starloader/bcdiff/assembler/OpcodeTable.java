@@ -0,0 +1,390 @@
+package de.geolykt.starloader.bcdiff.assembler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.objectweb.asm.Opcodes;
+
+/**
+ * A precomputed perfect hash table that maps the mnemonics of the assembler format to their opcode and the
+ * kind of operands they take. Lookups operate on a region of the line, so the mnemonic never has to be
+ * copied into its own string, and always probe exactly one slot of the table.
+ *
+ * <p>The table uses the hash and displace scheme: keys are first distributed into buckets and every bucket
+ * stores a displacement that was chosen while building the table so that no two keys end up in the same slot.
+ */
+public final class OpcodeTable {
+
+    /**
+     * The kind of an instruction, which defines the operands it takes.
+     * Besides actual instructions, this also covers the directives that may appear within the code of a method.
+     */
+    public enum Kind {
+        /** An instruction without operands, such as IADD. */
+        INSN,
+        /** BIPUSH or SIPUSH, followed by an integer. */
+        INT,
+        /** NEWARRAY, followed by the descriptor of a primitive type. */
+        NEWARRAY,
+        /** A local variable instruction, followed by the name or index of the variable. */
+        VAR,
+        /** IINC, followed by the variable and the increment. */
+        IINC,
+        /** A jump instruction, followed by the label to jump to. */
+        JUMP,
+        /** A type instruction, followed by the internal name of the type. */
+        TYPE,
+        /** A field instruction, followed by "owner.name desc". */
+        FIELD,
+        /** A method instruction, followed by "owner.name(desc)". */
+        METHOD,
+        /** INVOKEDYNAMIC, followed by the name, descriptor, bootstrap handle and arguments of the call site. */
+        INVOKEDYNAMIC,
+        /** LDC, followed by a constant. */
+        LDC,
+        /** TABLESWITCH, followed by the range, offsets and default label. */
+        TABLESWITCH,
+        /** LOOKUPSWITCH, followed by the mapping and default label. */
+        LOOKUPSWITCH,
+        /** MULTIANEWARRAY, followed by the descriptor and the amount of dimensions. */
+        MULTIANEWARRAY,
+        /** The LINE directive, followed by a label and a line number. */
+        LINE,
+        /** The TRY directive, declaring a try-catch block. */
+        TRY,
+        /** The SIGNATURE directive, declaring the generic signature of the method. */
+        SIGNATURE,
+        /** The ALIAS directive. */
+        ALIAS,
+        /** The THROWS directive, declaring an exception thrown by the method. */
+        THROWS
+    }
+
+    /**
+     * An entry of the table.
+     */
+    public static final class Entry {
+
+        private final String mnemonic;
+        private final int opcode;
+        private final Kind kind;
+        private final int hash;
+
+        private Entry(String mnemonic, int opcode, Kind kind) {
+            this.mnemonic = mnemonic;
+            this.opcode = opcode;
+            this.kind = kind;
+            this.hash = hash(mnemonic, 0, mnemonic.length());
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public String getMnemonic() {
+            return mnemonic;
+        }
+
+        /**
+         * Obtains the opcode of the instruction.
+         *
+         * @return The opcode, or -1 for directives
+         */
+        public int getOpcode() {
+            return opcode;
+        }
+
+        @Override
+        public String toString() {
+            return mnemonic + " (" + kind + ")";
+        }
+    }
+
+    private static final int BUCKET_COUNT = 64;
+    private static final int SLOT_COUNT = 512;
+
+    private static final int[] DISPLACEMENTS = new int[BUCKET_COUNT];
+    private static final Entry[] SLOTS = new Entry[SLOT_COUNT];
+
+    static {
+        List<Entry> entries = new ArrayList<>();
+        insn(entries, "NOP", Opcodes.NOP);
+        insn(entries, "ACONST_NULL", Opcodes.ACONST_NULL);
+        insn(entries, "ICONST_M1", Opcodes.ICONST_M1);
+        insn(entries, "ICONST_0", Opcodes.ICONST_0);
+        insn(entries, "ICONST_1", Opcodes.ICONST_1);
+        insn(entries, "ICONST_2", Opcodes.ICONST_2);
+        insn(entries, "ICONST_3", Opcodes.ICONST_3);
+        insn(entries, "ICONST_4", Opcodes.ICONST_4);
+        insn(entries, "ICONST_5", Opcodes.ICONST_5);
+        insn(entries, "LCONST_0", Opcodes.LCONST_0);
+        insn(entries, "LCONST_1", Opcodes.LCONST_1);
+        insn(entries, "FCONST_0", Opcodes.FCONST_0);
+        insn(entries, "FCONST_1", Opcodes.FCONST_1);
+        insn(entries, "FCONST_2", Opcodes.FCONST_2);
+        insn(entries, "DCONST_0", Opcodes.DCONST_0);
+        insn(entries, "DCONST_1", Opcodes.DCONST_1);
+        insn(entries, "IALOAD", Opcodes.IALOAD);
+        insn(entries, "LALOAD", Opcodes.LALOAD);
+        insn(entries, "FALOAD", Opcodes.FALOAD);
+        insn(entries, "DALOAD", Opcodes.DALOAD);
+        insn(entries, "AALOAD", Opcodes.AALOAD);
+        insn(entries, "BALOAD", Opcodes.BALOAD);
+        insn(entries, "CALOAD", Opcodes.CALOAD);
+        insn(entries, "SALOAD", Opcodes.SALOAD);
+        insn(entries, "IASTORE", Opcodes.IASTORE);
+        insn(entries, "LASTORE", Opcodes.LASTORE);
+        insn(entries, "FASTORE", Opcodes.FASTORE);
+        insn(entries, "DASTORE", Opcodes.DASTORE);
+        insn(entries, "AASTORE", Opcodes.AASTORE);
+        insn(entries, "BASTORE", Opcodes.BASTORE);
+        insn(entries, "CASTORE", Opcodes.CASTORE);
+        insn(entries, "SASTORE", Opcodes.SASTORE);
+        insn(entries, "POP", Opcodes.POP);
+        insn(entries, "POP2", Opcodes.POP2);
+        insn(entries, "DUP", Opcodes.DUP);
+        insn(entries, "DUP_X1", Opcodes.DUP_X1);
+        insn(entries, "DUP_X2", Opcodes.DUP_X2);
+        insn(entries, "DUP2", Opcodes.DUP2);
+        insn(entries, "DUP2_X1", Opcodes.DUP2_X1);
+        insn(entries, "DUP2_X2", Opcodes.DUP2_X2);
+        insn(entries, "SWAP", Opcodes.SWAP);
+        insn(entries, "IADD", Opcodes.IADD);
+        insn(entries, "LADD", Opcodes.LADD);
+        insn(entries, "FADD", Opcodes.FADD);
+        insn(entries, "DADD", Opcodes.DADD);
+        insn(entries, "ISUB", Opcodes.ISUB);
+        insn(entries, "LSUB", Opcodes.LSUB);
+        insn(entries, "FSUB", Opcodes.FSUB);
+        insn(entries, "DSUB", Opcodes.DSUB);
+        insn(entries, "IMUL", Opcodes.IMUL);
+        insn(entries, "LMUL", Opcodes.LMUL);
+        insn(entries, "FMUL", Opcodes.FMUL);
+        insn(entries, "DMUL", Opcodes.DMUL);
+        insn(entries, "IDIV", Opcodes.IDIV);
+        insn(entries, "LDIV", Opcodes.LDIV);
+        insn(entries, "FDIV", Opcodes.FDIV);
+        insn(entries, "DDIV", Opcodes.DDIV);
+        insn(entries, "IREM", Opcodes.IREM);
+        insn(entries, "LREM", Opcodes.LREM);
+        insn(entries, "FREM", Opcodes.FREM);
+        insn(entries, "DREM", Opcodes.DREM);
+        insn(entries, "INEG", Opcodes.INEG);
+        insn(entries, "LNEG", Opcodes.LNEG);
+        insn(entries, "FNEG", Opcodes.FNEG);
+        insn(entries, "DNEG", Opcodes.DNEG);
+        insn(entries, "ISHL", Opcodes.ISHL);
+        insn(entries, "LSHL", Opcodes.LSHL);
+        insn(entries, "ISHR", Opcodes.ISHR);
+        insn(entries, "LSHR", Opcodes.LSHR);
+        insn(entries, "IUSHR", Opcodes.IUSHR);
+        insn(entries, "LUSHR", Opcodes.LUSHR);
+        insn(entries, "IAND", Opcodes.IAND);
+        insn(entries, "LAND", Opcodes.LAND);
+        insn(entries, "IOR", Opcodes.IOR);
+        insn(entries, "LOR", Opcodes.LOR);
+        insn(entries, "IXOR", Opcodes.IXOR);
+        insn(entries, "LXOR", Opcodes.LXOR);
+        insn(entries, "I2L", Opcodes.I2L);
+        insn(entries, "I2F", Opcodes.I2F);
+        insn(entries, "I2D", Opcodes.I2D);
+        insn(entries, "L2I", Opcodes.L2I);
+        insn(entries, "L2F", Opcodes.L2F);
+        insn(entries, "L2D", Opcodes.L2D);
+        insn(entries, "F2I", Opcodes.F2I);
+        insn(entries, "F2L", Opcodes.F2L);
+        insn(entries, "F2D", Opcodes.F2D);
+        insn(entries, "D2I", Opcodes.D2I);
+        insn(entries, "D2L", Opcodes.D2L);
+        insn(entries, "D2F", Opcodes.D2F);
+        insn(entries, "I2B", Opcodes.I2B);
+        insn(entries, "I2C", Opcodes.I2C);
+        insn(entries, "I2S", Opcodes.I2S);
+        insn(entries, "LCMP", Opcodes.LCMP);
+        insn(entries, "FCMPL", Opcodes.FCMPL);
+        insn(entries, "FCMPG", Opcodes.FCMPG);
+        insn(entries, "DCMPL", Opcodes.DCMPL);
+        insn(entries, "DCMPG", Opcodes.DCMPG);
+        insn(entries, "IRETURN", Opcodes.IRETURN);
+        insn(entries, "LRETURN", Opcodes.LRETURN);
+        insn(entries, "FRETURN", Opcodes.FRETURN);
+        insn(entries, "DRETURN", Opcodes.DRETURN);
+        insn(entries, "ARETURN", Opcodes.ARETURN);
+        insn(entries, "RETURN", Opcodes.RETURN);
+        insn(entries, "ARRAYLENGTH", Opcodes.ARRAYLENGTH);
+        insn(entries, "ATHROW", Opcodes.ATHROW);
+        insn(entries, "MONITORENTER", Opcodes.MONITORENTER);
+        insn(entries, "MONITOREXIT", Opcodes.MONITOREXIT);
+
+        entries.add(new Entry("BIPUSH", Opcodes.BIPUSH, Kind.INT));
+        entries.add(new Entry("SIPUSH", Opcodes.SIPUSH, Kind.INT));
+        entries.add(new Entry("NEWARRAY", Opcodes.NEWARRAY, Kind.NEWARRAY));
+
+        entries.add(new Entry("ILOAD", Opcodes.ILOAD, Kind.VAR));
+        entries.add(new Entry("LLOAD", Opcodes.LLOAD, Kind.VAR));
+        entries.add(new Entry("FLOAD", Opcodes.FLOAD, Kind.VAR));
+        entries.add(new Entry("DLOAD", Opcodes.DLOAD, Kind.VAR));
+        entries.add(new Entry("ALOAD", Opcodes.ALOAD, Kind.VAR));
+        entries.add(new Entry("ISTORE", Opcodes.ISTORE, Kind.VAR));
+        entries.add(new Entry("LSTORE", Opcodes.LSTORE, Kind.VAR));
+        entries.add(new Entry("FSTORE", Opcodes.FSTORE, Kind.VAR));
+        entries.add(new Entry("DSTORE", Opcodes.DSTORE, Kind.VAR));
+        entries.add(new Entry("ASTORE", Opcodes.ASTORE, Kind.VAR));
+        entries.add(new Entry("IINC", Opcodes.IINC, Kind.IINC));
+
+        entries.add(new Entry("IFEQ", Opcodes.IFEQ, Kind.JUMP));
+        entries.add(new Entry("IFNE", Opcodes.IFNE, Kind.JUMP));
+        entries.add(new Entry("IFLT", Opcodes.IFLT, Kind.JUMP));
+        entries.add(new Entry("IFGE", Opcodes.IFGE, Kind.JUMP));
+        entries.add(new Entry("IFGT", Opcodes.IFGT, Kind.JUMP));
+        entries.add(new Entry("IFLE", Opcodes.IFLE, Kind.JUMP));
+        entries.add(new Entry("IF_ICMPEQ", Opcodes.IF_ICMPEQ, Kind.JUMP));
+        entries.add(new Entry("IF_ICMPNE", Opcodes.IF_ICMPNE, Kind.JUMP));
+        entries.add(new Entry("IF_ICMPLT", Opcodes.IF_ICMPLT, Kind.JUMP));
+        entries.add(new Entry("IF_ICMPGE", Opcodes.IF_ICMPGE, Kind.JUMP));
+        entries.add(new Entry("IF_ICMPGT", Opcodes.IF_ICMPGT, Kind.JUMP));
+        entries.add(new Entry("IF_ICMPLE", Opcodes.IF_ICMPLE, Kind.JUMP));
+        entries.add(new Entry("IF_ACMPEQ", Opcodes.IF_ACMPEQ, Kind.JUMP));
+        entries.add(new Entry("IF_ACMPNE", Opcodes.IF_ACMPNE, Kind.JUMP));
+        entries.add(new Entry("GOTO", Opcodes.GOTO, Kind.JUMP));
+        entries.add(new Entry("IFNULL", Opcodes.IFNULL, Kind.JUMP));
+        entries.add(new Entry("IFNONNULL", Opcodes.IFNONNULL, Kind.JUMP));
+
+        entries.add(new Entry("NEW", Opcodes.NEW, Kind.TYPE));
+        entries.add(new Entry("ANEWARRAY", Opcodes.ANEWARRAY, Kind.TYPE));
+        entries.add(new Entry("CHECKCAST", Opcodes.CHECKCAST, Kind.TYPE));
+        entries.add(new Entry("INSTANCEOF", Opcodes.INSTANCEOF, Kind.TYPE));
+
+        entries.add(new Entry("GETSTATIC", Opcodes.GETSTATIC, Kind.FIELD));
+        entries.add(new Entry("PUTSTATIC", Opcodes.PUTSTATIC, Kind.FIELD));
+        entries.add(new Entry("GETFIELD", Opcodes.GETFIELD, Kind.FIELD));
+        entries.add(new Entry("PUTFIELD", Opcodes.PUTFIELD, Kind.FIELD));
+
+        entries.add(new Entry("INVOKEVIRTUAL", Opcodes.INVOKEVIRTUAL, Kind.METHOD));
+        entries.add(new Entry("INVOKESPECIAL", Opcodes.INVOKESPECIAL, Kind.METHOD));
+        entries.add(new Entry("INVOKESTATIC", Opcodes.INVOKESTATIC, Kind.METHOD));
+        entries.add(new Entry("INVOKEINTERFACE", Opcodes.INVOKEINTERFACE, Kind.METHOD));
+        entries.add(new Entry("INVOKEDYNAMIC", Opcodes.INVOKEDYNAMIC, Kind.INVOKEDYNAMIC));
+
+        entries.add(new Entry("LDC", Opcodes.LDC, Kind.LDC));
+        entries.add(new Entry("TABLESWITCH", Opcodes.TABLESWITCH, Kind.TABLESWITCH));
+        entries.add(new Entry("LOOKUPSWITCH", Opcodes.LOOKUPSWITCH, Kind.LOOKUPSWITCH));
+        entries.add(new Entry("MULTIANEWARRAY", Opcodes.MULTIANEWARRAY, Kind.MULTIANEWARRAY));
+
+        entries.add(new Entry("LINE", -1, Kind.LINE));
+        entries.add(new Entry("TRY", -1, Kind.TRY));
+        entries.add(new Entry("SIGNATURE", -1, Kind.SIGNATURE));
+        entries.add(new Entry("ALIAS", -1, Kind.ALIAS));
+        entries.add(new Entry("THROWS", -1, Kind.THROWS));
+
+        build(entries);
+    }
+
+    private OpcodeTable() {
+    }
+
+    private static void insn(List<Entry> entries, String mnemonic, int opcode) {
+        entries.add(new Entry(mnemonic, opcode, Kind.INSN));
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private static void build(List<Entry> entries) {
+        List<Entry>[] buckets = new List[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] = new ArrayList<>();
+        }
+        for (Entry entry : entries) {
+            buckets[entry.hash & (BUCKET_COUNT - 1)].add(entry);
+        }
+        // Place the largest buckets first, while most slots are still free
+        Integer[] order = new Integer[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> buckets[b].size() - buckets[a].size());
+
+        int[] slots = new int[8];
+        for (int bucket : order) {
+            List<Entry> bucketEntries = buckets[bucket];
+            if (bucketEntries.isEmpty()) {
+                continue;
+            }
+            if (slots.length < bucketEntries.size()) {
+                slots = new int[bucketEntries.size()];
+            }
+            int displacement = 0;
+            search:
+            while (true) {
+                if (displacement == 1 << 20) {
+                    throw new IllegalStateException("Unable to build a perfect hash table for bucket " + bucketEntries);
+                }
+                for (int i = 0; i < bucketEntries.size(); i++) {
+                    int slot = slot(bucketEntries.get(i).hash, displacement);
+                    if (SLOTS[slot] != null) {
+                        displacement++;
+                        continue search;
+                    }
+                    for (int j = 0; j < i; j++) {
+                        if (slots[j] == slot) {
+                            displacement++;
+                            continue search;
+                        }
+                    }
+                    slots[i] = slot;
+                }
+                break;
+            }
+            DISPLACEMENTS[bucket] = displacement;
+            for (int i = 0; i < bucketEntries.size(); i++) {
+                SLOTS[slots[i]] = bucketEntries.get(i);
+            }
+        }
+    }
+
+    private static int hash(String s, int start, int end) {
+        // FNV-1a
+        int hash = 0x811C9DC5;
+        for (int i = start; i < end; i++) {
+            hash ^= s.charAt(i);
+            hash *= 0x01000193;
+        }
+        return hash;
+    }
+
+    private static int slot(int hash, int displacement) {
+        int h = hash ^ (displacement * 0x9E3779B9);
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        return h & (SLOT_COUNT - 1);
+    }
+
+    /**
+     * Looks up the mnemonic that is stored within a region of a string.
+     *
+     * @param s The string, usually the line that is assembled
+     * @param start The index of the first character of the mnemonic
+     * @param end The index after the last character of the mnemonic
+     * @return The entry of the mnemonic, or null if the mnemonic is unknown
+     */
+    public static Entry lookup(String s, int start, int end) {
+        int hash = hash(s, start, end);
+        Entry entry = SLOTS[slot(hash, DISPLACEMENTS[hash & (BUCKET_COUNT - 1)])];
+        if (entry == null || entry.hash != hash || entry.mnemonic.length() != end - start
+                || !s.regionMatches(start, entry.mnemonic, 0, end - start)) {
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Looks up a mnemonic.
+     *
+     * @param mnemonic The mnemonic
+     * @return The entry of the mnemonic, or null if the mnemonic is unknown
+     */
+    public static Entry lookup(String mnemonic) {
+        return lookup(mnemonic, 0, mnemonic.length());
+    }
+}
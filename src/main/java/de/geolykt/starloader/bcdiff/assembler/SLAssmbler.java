@@ -4,30 +4,16 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
 import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.tree.ClassNode;
-import org.objectweb.asm.tree.FieldInsnNode;
 import org.objectweb.asm.tree.FieldNode;
-import org.objectweb.asm.tree.IincInsnNode;
-import org.objectweb.asm.tree.InsnList;
-import org.objectweb.asm.tree.InsnNode;
-import org.objectweb.asm.tree.IntInsnNode;
-import org.objectweb.asm.tree.InvokeDynamicInsnNode;
-import org.objectweb.asm.tree.JumpInsnNode;
-import org.objectweb.asm.tree.LabelNode;
-import org.objectweb.asm.tree.LdcInsnNode;
-import org.objectweb.asm.tree.LineNumberNode;
-import org.objectweb.asm.tree.LocalVariableNode;
-import org.objectweb.asm.tree.LookupSwitchInsnNode;
-import org.objectweb.asm.tree.MethodInsnNode;
 import org.objectweb.asm.tree.MethodNode;
-import org.objectweb.asm.tree.MultiANewArrayInsnNode;
-import org.objectweb.asm.tree.TableSwitchInsnNode;
-import org.objectweb.asm.tree.TryCatchBlockNode;
-import org.objectweb.asm.tree.TypeInsnNode;
-import org.objectweb.asm.tree.VarInsnNode;
 
 import de.geolykt.starloader.bcdiff.assembler.DefHeader.MethodDefHeader;
 
@@ -49,95 +35,150 @@ public class SLAssmbler {
         ESCAPED_CHARACTERS['\\'] = '\\';
     }
 
+    /**
+     * The amount of spaces that the lines of methods and fields are indented with.
+     */
+    private static final int INDENT = 4;
+
     private final StringBuilder sharedBuilder = new StringBuilder();
+    private final LineTokenizer tokens = new LineTokenizer();
+
+    /**
+     * The header of the class that is being assembled, which is collected until it is passed to the visitor.
+     */
+    private static final class ClassHeader {
+
+        private int version;
+        private int access;
+        private String name;
+        private String signature;
+        private String superName;
+        private String[] interfaces;
+        private boolean hasSource;
+        private String sourceFile;
+        private String sourceDebug;
+        private String outerClass;
+        private String outerMethod;
+        private String outerMethodDesc;
+        private boolean visited;
+
+        private void accept(ClassVisitor visitor) {
+            if (visited) {
+                return;
+            }
+            visited = true;
+            visitor.visit(version, access, name, signature, superName, interfaces);
+            if (hasSource) {
+                visitor.visitSource(sourceFile, sourceDebug);
+            }
+            if (outerClass != null) {
+                visitor.visitOuterClass(outerClass, outerMethod, outerMethodDesc);
+            }
+        }
+
+        private ClassHeader ensureNotVisited(String line) {
+            if (visited) {
+                throw new IllegalStateException("The header of the class must be declared before its members, but found: " + line);
+            }
+            return this;
+        }
+    }
 
+    /**
+     * Assembles a class into a tree.
+     *
+     * @param bytecode The lines of the class
+     * @param output The node to write the class into
+     */
     public SLAssmbler(String[] bytecode, ClassNode output) {
+        this(bytecode, (ClassVisitor) output);
+    }
 
+    /**
+     * Assembles a class, passing it to the visitor while the lines are parsed. Used together with a
+     * {@link org.objectweb.asm.ClassWriter} this directly writes the class file without first building a {@link ClassNode}.
+     *
+     * @param bytecode The lines of the class
+     * @param output The visitor to pass the class to
+     */
+    public SLAssmbler(String[] bytecode, ClassVisitor output) {
         List<String> recafCode = new ArrayList<>();
         List<String> methodLVT = new ArrayList<>();
         boolean parseMethod = false;
         boolean parseField = false;
+        // The header needs to be visited in one go, which is done as soon as the first member is encountered
+        ClassHeader header = new ClassHeader();
 
-        List<MethodNode> methods = new ArrayList<>();
-        List<FieldNode> fields = new ArrayList<>();
-
+        LineTokenizer tokens = this.tokens;
         for (int index = 0; index < bytecode.length; index++) {
             String line = bytecode[index];
             if (line.charAt(0) == ' ') {
-                recafCode.add(line.substring(4));
+                // The indentation is skipped by the tokenizer when the member is parsed
+                recafCode.add(line);
                 continue;
             }
-            String[] tokens = line.split(" ");
-            switch (tokens[0]) {
+            tokens.reset(line);
+            String directive = tokens.next();
+            switch (directive) {
             case ".VERSION":
-                output.version = Integer.parseInt(tokens[1]);
+                header.ensureNotVisited(line).version = tokens.nextInt();
                 break;
             case ".ACCESS":
-                output.access = Integer.parseInt(tokens[1].substring(2), 16);
+                tokens.expect("0x");
+                header.ensureNotVisited(line).access = tokens.nextHexInt();
                 break;
             case ".NAME":
-                output.name = tokens[1];
+                header.ensureNotVisited(line).name = tokens.next();
                 break;
             case ".SIGNATURE":
-                if (tokens[1].equals("null")) {
-                    tokens[1] = null;
-                }
-                output.signature = tokens[1];
+                header.ensureNotVisited(line).signature = tokens.nextNullable();
                 break;
             case ".SUPER":
-                if (tokens[1].equals("null")) {
-                    tokens[1] = null;
-                }
-                output.superName = tokens[1];
+                header.ensureNotVisited(line).superName = tokens.nextNullable();
                 break;
             case ".IMPLEMENTS": {
-                String[] interfaces = new String[tokens.length - 1];
-                System.arraycopy(tokens, 1, interfaces, 0, interfaces.length);
-                output.interfaces = Arrays.asList(interfaces);
+                List<String> interfaces = new ArrayList<>();
+                while (tokens.hasNext()) {
+                    interfaces.add(tokens.next());
+                }
+                header.ensureNotVisited(line).interfaces = interfaces.toArray(new String[0]);
                 break;
             }
             case ".SOURCE":
-                if (tokens[1].equals("null")) {
-                    tokens[1] = null;
-                }
-                if (tokens[2].equals("null")) {
-                    tokens[2] = null;
-                }
-                output.sourceFile = tokens[1];
-                output.sourceDebug = tokens[2];
-                break;
-            case ".INNERCLASS":
-                if (tokens[3].equals("null")) {
-                    tokens[3] = null;
-                }
-                if (tokens[4].equals("null")) {
-                    tokens[4] = null;
-                }
-                output.visitInnerClass(tokens[2], tokens[4], tokens[3], Integer.parseInt(tokens[1], 16));
+                header.ensureNotVisited(line).hasSource = true;
+                header.sourceFile = tokens.nextNullable();
+                header.sourceDebug = tokens.nextNullable();
+                break;
+            case ".INNERCLASS": {
+                header.accept(output);
+                int access = tokens.nextHexInt();
+                String name = tokens.next();
+                String innerName = tokens.nextNullable();
+                String outerName = tokens.nextNullable();
+                output.visitInnerClass(name, outerName, innerName, access);
                 break;
+            }
             case ".OUTERCLASS":
-                if (tokens[2].equals("null")) {
-                    tokens[2] = null;
-                }
-                if (tokens[3].equals("null")) {
-                    tokens[3] = null;
-                }
-                output.visitOuterClass(tokens[1], tokens[2], tokens[3]);
+                header.ensureNotVisited(line).outerClass = tokens.next();
+                header.outerMethod = tokens.nextNullable();
+                header.outerMethodDesc = tokens.nextNullable();
                 break;
             case ".METHOD":
+                header.accept(output);
                 parseMethod = true;
                 break;
             case ".FIELD":
+                header.accept(output);
                 parseField = true;
                 break;
             case ".END":
                 if (parseField) {
                     parseField = false;
-                    fields.add(parseField(recafCode));
+                    parseField(recafCode, output);
                     recafCode.clear();
                 } else if (parseMethod) {
                     parseMethod = false;
-                    methods.add(parseMethod(recafCode, methodLVT));
+                    parseMethod(recafCode, methodLVT, output);
                     methodLVT.clear();
                     recafCode.clear();
                 } else {
@@ -145,57 +186,115 @@ public class SLAssmbler {
                 }
                 break;
             case ".METHODLVT":
-                methodLVT.add(line.substring(11));
+                methodLVT.add(line);
                 break;
             default:
-                if (tokens[0].charAt(0) == '.') {
-                    throw new IllegalStateException("Unknown token: " + tokens[0] + ". Token found in line " + index + " (" + line + ")");
+                if (directive.charAt(0) == '.') {
+                    throw new IllegalStateException("Unknown token: " + directive + ". Token found in line " + index + " (" + line + ")");
                 }
             }
         }
-        output.fields = fields;
-        output.methods = methods;
+        header.accept(output);
+        output.visitEnd();
     }
 
+    /**
+     * Parses the constant at the current position of the tokenizer. The constant ends at the end of the line, or at the next
+     * ',' or ']' for constants that are not strings or handles.
+     *
+     * @param tokens The tokenizer
+     * @return The constant
+     */
+    protected Object parseConstant(LineTokenizer tokens) {
+        if (tokens.peek() == '\"') {
+            int closingQuote = tokens.findClosingQuote();
+            String value = removeEscapes(tokens.getLine(), tokens.getPosition() + 1, closingQuote);
+            tokens.setPosition(closingQuote + 1);
+            return value;
+        } else if (tokens.startsWith("handle[")) {
+            return parseHandle(tokens);
+        }
+        String rawValue = tokens.nextBefore(',', ']');
+        int lastChar = rawValue.length() - 1;
+        if (rawValue.charAt(0) == '[') {
+            return Type.getObjectType(rawValue);
+        } else if (rawValue.charAt(0) == '(') {
+            return Type.getMethodType(rawValue);
+        } else if (rawValue.charAt(lastChar) == 'L') {
+            return Long.parseLong(rawValue.substring(0, lastChar));
+        } else if (rawValue.charAt(lastChar) == 'F') {
+            return Float.parseFloat(rawValue.substring(0, lastChar));
+        } else if (rawValue.charAt(lastChar) == 'D') {
+            return Double.parseDouble(rawValue.substring(0, lastChar));
+        } else if (rawValue.charAt(lastChar) == ';') {
+            return Type.getObjectType(rawValue.substring(1, lastChar));
+        } else if (rawValue.equals("Infinity")) {
+            return Double.POSITIVE_INFINITY;
+        } else if (rawValue.equals("-Infinity")) {
+            return Double.NEGATIVE_INFINITY;
+        } else if (rawValue.equals("NaN")) {
+            return Double.NaN;
+        } else {
+            return Integer.parseInt(rawValue);
+        }
+    }
+
+    /**
+     * Parses a field.
+     *
+     * @param recafCode The lines of the field, still indented
+     * @return The parsed field
+     */
     protected FieldNode parseField(List<String> recafCode) {
+        ClassNode owner = new ClassNode();
+        parseField(recafCode, owner);
+        return owner.fields.get(0);
+    }
+
+    /**
+     * Parses a field and passes it to the visitor.
+     *
+     * @param recafCode The lines of the field, still indented
+     * @param visitor The visitor of the class that declares the field
+     */
+    protected void parseField(List<String> recafCode, ClassVisitor visitor) {
         String signature = null;
         Object value = null;
 
-        DefHeader header = DefHeader.parseFieldDef(recafCode.get(0));
+        DefHeader header = DefHeader.parseFieldDef(recafCode.get(0).substring(INDENT));
         String name = header.getName();
         String desc = header.getDesc();
         int access = header.getAccess();
 
+        LineTokenizer tokens = this.tokens;
         for (int i = 1; i < recafCode.size(); i++) {
             String line = recafCode.get(i);
-            String[] tokens = line.split(" ", 2);
-            if (tokens[0].equals("VALUE")) {
-                int lastChar = tokens[1].length() - 1;
-                if (tokens[1].charAt(0) == '\"') {
-                    value = removeEscapes(tokens[1].substring(1, lastChar));
-                } else if (tokens[1].codePointAt(lastChar) == 'L') {
-                    value = Long.parseLong(tokens[1].substring(0, lastChar));
-                } else if (tokens[1].codePointAt(lastChar) == 'F') {
-                    value = Float.parseFloat(tokens[1].substring(0, lastChar));
-                } else if (tokens[1].codePointAt(lastChar) == 'D') {
-                    value = Double.parseDouble(tokens[1].substring(0, lastChar));
-                } else {
-                    value = Integer.parseInt(tokens[1]);
-                }
-            } else if (tokens[0].equals("SIGNATURE")) {
-                signature = tokens[1];
+            tokens.reset(line, INDENT);
+            if (tokens.skipIf("VALUE ")) {
+                value = parseConstant(tokens);
+            } else if (tokens.skipIf("SIGNATURE ")) {
+                signature = tokens.rest();
             } else {
                 throw new IllegalArgumentException("Line " + i + " (" + line + ") has an invalid or unimplemented token.");
             }
         }
-        return new FieldNode(access, name, desc, signature, value);
+        FieldVisitor field = visitor.visitField(access, name, desc, signature, value);
+        if (field != null) {
+            field.visitEnd();
+        }
     }
-    protected Handle parseHandle(String input) {
-        // remove the "handle[" prefix and the ']' suffix.
-        input = input.substring(7, input.length() - 1);
-        String[] tokens = input.split(" ");
+
+    /**
+     * Parses a handle in the form of "handle[TAG owner.name(desc)]".
+     *
+     * @param tokens The tokenizer, positioned at the start of the handle
+     * @return The handle
+     */
+    protected Handle parseHandle(LineTokenizer tokens) {
+        tokens.expect("handle[");
+        String tagName = tokens.next();
         int tag = -1;
-        switch (tokens[0]) {
+        switch (tagName) {
         case "H_GETFIELD":
             tag = Opcodes.H_GETFIELD;
             break;
@@ -224,726 +323,406 @@ public class SLAssmbler {
             tag = Opcodes.H_NEWINVOKESPECIAL;
             break;
         default:
-            throw new IllegalArgumentException("Unknown tag: " + tokens[0]);
+            throw new IllegalArgumentException("Unknown tag: " + tagName);
         }
-        String[] split = tokens[1].split("\\.", 2);
-        int descStart = split[1].indexOf('(');
-        return new Handle(tag, split[0], split[1].substring(0, descStart), split[1].substring(descStart), tag == Opcodes.H_INVOKEINTERFACE);
+        String owner = tokens.next('.');
+        String name = tokens.nextBefore('(');
+        String desc = tokens.next(']');
+        return new Handle(tag, owner, name, desc, tag == Opcodes.H_INVOKEINTERFACE);
     }
 
-    protected void parseInvokedynamic(String hmeta, String params, InsnList instructionList) {
-        String[] tokens = params.split(" ", 4);
-        String name = tokens[0];
-        String desc = tokens[1];
-        String boostrapHandle = tokens[2];
-        String[] bsmArgsRaw = tokens[3].substring(5, tokens[3].length() - 1).split(", ");
-        if (boostrapHandle.equals("${H_META}")) {
-            boostrapHandle = hmeta;
-        }
-        Handle bsmHandle = parseHandle(boostrapHandle);
-        int argC = bsmArgsRaw.length;
-        Object[] bsmArgs = new Object[argC];
-        for (int i = 0; i < argC; i++) {
-            String raw = bsmArgsRaw[i];
-            if (raw.codePointAt(0) == 'h') {
-                // Handle
-                bsmArgs[i] = parseHandle(raw);
-            } else {
-                // Type
-                bsmArgs[i] = Type.getMethodType(raw);
+    /**
+     * Parses the operands of an invokedynamic instruction in the form of "name desc handle args[arg1, arg2, ...]".
+     * The bootstrap handle can be replaced by "${H_META}", in which case the handle declared by the H_META alias is used.
+     *
+     * @param hmeta The handle declared by the H_META alias, or null
+     * @param tokens The tokenizer, positioned at the name of the call site
+     * @param visitor The visitor to pass the instruction to
+     */
+    protected void parseInvokedynamic(Handle hmeta, LineTokenizer tokens, MethodVisitor visitor) {
+        String name = tokens.next();
+        String desc = tokens.next();
+        Handle bsmHandle;
+        if (tokens.skipIf("${H_META}")) {
+            if (hmeta == null) {
+                throw new IllegalStateException("The H_META alias is used but was not declared: " + tokens.getLine());
             }
+            bsmHandle = hmeta;
+        } else {
+            bsmHandle = parseHandle(tokens);
+        }
+        tokens.expect(" args[");
+        List<Object> bsmArgs = new ArrayList<>();
+        if (tokens.peek() != ']') {
+            do {
+                bsmArgs.add(parseConstant(tokens));
+            } while (tokens.skipIf(", "));
+        }
+        tokens.expect("]");
+        visitor.visitInvokeDynamicInsn(name, desc, bsmHandle, bsmArgs.toArray());
+    }
+
+    /**
+     * Parses the operands of an instruction and passes the instruction to the visitor.
+     *
+     * @param instruction The instruction
+     * @param tokens The tokenizer, positioned at the first operand of the instruction
+     * @param visitor The visitor to pass the instruction to
+     * @param labels The labels of the method
+     * @param locals The local variable names of the method
+     * @param hmeta The handle declared by the H_META alias, or null
+     */
+    protected void parseInstruction(OpcodeTable.Entry instruction, LineTokenizer tokens, MethodVisitor visitor, LabelTable labels, LocalNameTable locals, Handle hmeta) {
+        int opcode = instruction.getOpcode();
+        switch (instruction.getKind()) {
+        case INSN:
+            visitor.visitInsn(opcode);
+            break;
+        case INT:
+            visitor.visitIntInsn(opcode, tokens.nextInt());
+            break;
+        case NEWARRAY:
+            visitor.visitIntInsn(opcode, getArrayType(tokens.peek()));
+            break;
+        case VAR:
+            pushVarInsn(opcode, visitor, tokens.next(), locals);
+            break;
+        case IINC: {
+            int var = locals.getVarIndex(tokens.next(), opcode);
+            visitor.visitIincInsn(var, tokens.nextInt());
+            break;
+        }
+        case JUMP:
+            pushJumpInsn(opcode, tokens.next(), labels, visitor);
+            break;
+        case TYPE:
+            visitor.visitTypeInsn(opcode, tokens.next());
+            break;
+        case FIELD:
+            parseFieldInsn(opcode, tokens, visitor);
+            break;
+        case METHOD:
+            parseMethodInsn(opcode, tokens, visitor);
+            break;
+        case INVOKEDYNAMIC:
+            parseInvokedynamic(hmeta, tokens, visitor);
+            break;
+        case LDC:
+            visitor.visitLdcInsn(parseConstant(tokens));
+            break;
+        case TABLESWITCH:
+            parseTableSwitch(tokens, labels, visitor);
+            break;
+        case LOOKUPSWITCH:
+            parseLookupSwitch(tokens, labels, visitor);
+            break;
+        case MULTIANEWARRAY: {
+            String desc = tokens.next();
+            visitor.visitMultiANewArrayInsn(desc, tokens.nextInt());
+            break;
+        }
+        case LINE: {
+            Label start = labels.getLabel(tokens.next());
+            visitor.visitLineNumber(tokens.nextInt(), start);
+            break;
+        }
+        default:
+            throw new IllegalStateException(instruction.getMnemonic() + " is not an instruction: " + tokens.getLine());
         }
-        instructionList.add(new InvokeDynamicInsnNode(name, desc, bsmHandle, bsmArgs));
     }
 
-    protected void parseLookupSwitch(String params, LabelTable labels, InsnList instructionList) {
-        int first = params.indexOf('[');
-        int last = params.lastIndexOf('[');
-        int endFirst = params.indexOf(']');
-        LabelNode defaultLabel = labels.getLabel(params.substring(last + 1, params.length() - 1));
-        String[] entries = params.substring(first + 1, endFirst).split(", ");
-        int entryNum = entries.length;
-        int[] keys = new int[entryNum];
-        LabelNode[] values = new LabelNode[entryNum];
-        for (int i = 0; i < entryNum; i++) {
-            String[] entry = entries[i].split("=");
-            keys[i] = Integer.valueOf(entry[0]);
-            values[i] = labels.getLabel(entry[1]);
+    /**
+     * Parses the operands of a lookupswitch instruction in the form of "mapping[key1=label1, key2=label2, ...] default[label]".
+     *
+     * @param tokens The tokenizer, positioned at the start of the mapping
+     * @param labels The labels of the method
+     * @param visitor The visitor to pass the instruction to
+     */
+    protected void parseLookupSwitch(LineTokenizer tokens, LabelTable labels, MethodVisitor visitor) {
+        tokens.expect("mapping[");
+        List<Label> values = new ArrayList<>();
+        int[] keys = new int[8];
+        if (tokens.peek() != ']') {
+            do {
+                if (values.size() == keys.length) {
+                    keys = Arrays.copyOf(keys, keys.length * 2);
+                }
+                keys[values.size()] = tokens.nextInt('=');
+                values.add(labels.getLabel(tokens.nextBefore(',', ']')));
+            } while (tokens.skipIf(", "));
         }
-        instructionList.add(new LookupSwitchInsnNode(defaultLabel, keys, values));
+        tokens.expect("] default[");
+        Label defaultLabel = labels.getLabel(tokens.next(']'));
+        visitor.visitLookupSwitchInsn(defaultLabel, Arrays.copyOf(keys, values.size()), values.toArray(new Label[0]));
     }
 
+    /**
+     * Parses a method.
+     *
+     * @param code The lines of the method, still indented
+     * @param methodLVT The ".METHODLVT" lines of the method
+     * @return The parsed method
+     */
     protected MethodNode parseMethod(List<String> code, List<String> methodLVT) {
-        //System.out.println(String.format("%05d:    %s", 0, code.get(0)));
-        MethodDefHeader header = DefHeader.parseMethodDef(code.get(0));
+        ClassNode owner = new ClassNode();
+        parseMethod(code, methodLVT, owner);
+        return owner.methods.get(0);
+    }
+
+    /**
+     * Parses a method and passes it to the visitor.
+     * The signature, exceptions and try-catch blocks of the method are read before any instruction is visited,
+     * as a {@link MethodVisitor} expects them first. The local variables are visited after all instructions.
+     *
+     * @param code The lines of the method, still indented
+     * @param methodLVT The ".METHODLVT" lines of the method
+     * @param visitor The visitor of the class that declares the method
+     */
+    protected void parseMethod(List<String> code, List<String> methodLVT, ClassVisitor visitor) {
+        MethodDefHeader header = DefHeader.parseMethodDef(code.get(0).substring(INDENT));
         String signature = null;
-        List<String> exceptions = null;
+        List<String> exceptions = new ArrayList<>();
+        LineTokenizer tokens = this.tokens;
         int linesOfCode = code.size();
 
+        for (int i = 1; i < linesOfCode; i++) {
+            String line = code.get(i);
+            if (line.startsWith("SIGNATURE ", INDENT)) {
+                tokens.reset(line, INDENT).expect("SIGNATURE ");
+                signature = tokens.next();
+                if (tokens.hasNext()) {
+                    throw new IllegalStateException("Signature contains whitespace character");
+                }
+            } else if (line.startsWith("THROWS ", INDENT)) {
+                tokens.reset(line, INDENT).expect("THROWS ");
+                exceptions.add(tokens.next());
+                if (tokens.hasNext()) {
+                    throw new IllegalStateException("Too many tokens.");
+                }
+            }
+        }
+
+        MethodVisitor method = visitor.visitMethod(header.getAccess(), header.getName(), header.getDesc(), signature, exceptions.toArray(new String[0]));
+        if (method == null) {
+            return;
+        }
+        boolean hasCode = (header.getAccess() & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_NATIVE)) == 0;
         LabelTable labels = new LabelTable();
         LocalNameTable locals = new LocalNameTable(header);
-        InsnList instructionList = new InsnList();
-        List<TryCatchBlockNode> tryCatchBlocks = new ArrayList<>();
-        String hmeta = null;
+        Handle hmeta = null;
 
-        List<LocalVariableNode> lvt = new ArrayList<>();
         for (String entry : methodLVT) {
-            String[] tokens = entry.split(" ");
-            int index = Integer.parseInt(tokens[2]);
-            LabelNode start = labels.getLabel(tokens[3]);
-            LabelNode end = labels.getLabel(tokens[4]);
-            // Also add the signature
-            lvt.add(new LocalVariableNode(tokens[0], tokens[1], null, start, end, index));
-            locals.pushName(index, tokens[0]);
+            tokens.reset(entry);
+            tokens.expect(".METHODLVT ");
+            String name = tokens.next();
+            tokens.next();
+            locals.pushName(tokens.nextInt(), name);
         }
 
+        if (hasCode) {
+            method.visitCode();
+        }
         for (int i = 1; i < linesOfCode; i++) {
             String line = code.get(i);
-            //System.out.println(String.format("%05d:    %s", i, line));
-            String[] tokens = line.split(" ");
-            String instruction = tokens[0];
-            switch (instruction) {
-            case "SIGNATURE":
-                if (tokens.length != 2) {
-                    throw new IllegalStateException("Signature contains whitespace character");
-                }
-                signature = tokens[1];
-                break;
-            case "ALIAS":
-                if (tokens[1].equals("H_META")) {
-                    hmeta = line.split(" ", 3)[2];
-                    hmeta = hmeta.substring(1, hmeta.length() - 1);
-                } else {
-                    throw new IllegalStateException("Line " + i + " (" + line + ") declares an alias, even though aliases are only partially implemented.");
-                }
-                break;
-            case "THROWS":
-                if (exceptions == null) {
-                    exceptions = new ArrayList<>();
-                }
-                if (tokens.length != 2) {
-                    throw new IllegalStateException("Too many tokens.");
-                }
-                exceptions.add(tokens[1]);
-                break;
-            // xStore
-            case "ASTORE":
-                pushVarInsn(Opcodes.ASTORE, instructionList, tokens[1], locals);
-                break;
-            case "ISTORE":
-                pushVarInsn(Opcodes.ISTORE, instructionList, tokens[1], locals);
-                break;
-            case "LSTORE":
-                pushVarInsn(Opcodes.LSTORE, instructionList, tokens[1], locals);
-                break;
-            case "FSTORE":
-                pushVarInsn(Opcodes.FSTORE, instructionList, tokens[1], locals);
-                break;
-            case "DSTORE":
-                pushVarInsn(Opcodes.DSTORE, instructionList, tokens[1], locals);
-                break;
-            // xLoad
-            case "ALOAD":
-                pushVarInsn(Opcodes.ALOAD, instructionList, tokens[1], locals);
-                break;
-            case "ILOAD":
-                pushVarInsn(Opcodes.ILOAD, instructionList, tokens[1], locals);
-                break;
-            case "LLOAD":
-                pushVarInsn(Opcodes.LLOAD, instructionList, tokens[1], locals);
-                break;
-            case "FLOAD":
-                pushVarInsn(Opcodes.FLOAD, instructionList, tokens[1], locals);
-                break;
-            case "DLOAD":
-                pushVarInsn(Opcodes.DLOAD, instructionList, tokens[1], locals);
-                break;
-            case "LINE":
-                instructionList.add(new LineNumberNode(Integer.parseInt(tokens[2]), labels.getLabel(tokens[1])));
-                break;
-            case "RETURN":
-                instructionList.add(new InsnNode(Opcodes.RETURN));
-                break;
-            case "ARETURN":
-                instructionList.add(new InsnNode(Opcodes.ARETURN));
-                break;
-            case "IRETURN":
-                instructionList.add(new InsnNode(Opcodes.IRETURN));
-                break;
-            case "LRETURN":
-                instructionList.add(new InsnNode(Opcodes.LRETURN));
-                break;
-            case "FRETURN":
-                instructionList.add(new InsnNode(Opcodes.FRETURN));
-                break;
-            case "DRETURN":
-                instructionList.add(new InsnNode(Opcodes.DRETURN));
-                break;
-            case "ATHROW":
-                instructionList.add(new InsnNode(Opcodes.ATHROW));
-                break;
-            case "MONITOREXIT":
-                instructionList.add(new InsnNode(Opcodes.MONITOREXIT));
-                break;
-            case "MONITORENTER":
-                instructionList.add(new InsnNode(Opcodes.MONITORENTER));
-                break;
-            case "ICONST_M1":
-                instructionList.add(new InsnNode(Opcodes.ICONST_M1));
-                break;
-            case "ICONST_0":
-                instructionList.add(new InsnNode(Opcodes.ICONST_0));
-                break;
-            case "ICONST_1":
-                instructionList.add(new InsnNode(Opcodes.ICONST_1));
-                break;
-            case "ICONST_2":
-                instructionList.add(new InsnNode(Opcodes.ICONST_2));
-                break;
-            case "ICONST_3":
-                instructionList.add(new InsnNode(Opcodes.ICONST_3));
-                break;
-            case "ICONST_4":
-                instructionList.add(new InsnNode(Opcodes.ICONST_4));
-                break;
-            case "ICONST_5":
-                instructionList.add(new InsnNode(Opcodes.ICONST_5));
-                break;
-            case "FCONST_0":
-                instructionList.add(new InsnNode(Opcodes.FCONST_0));
-                break;
-            case "FCONST_1":
-                instructionList.add(new InsnNode(Opcodes.FCONST_1));
-                break;
-            case "FCONST_2":
-                instructionList.add(new InsnNode(Opcodes.FCONST_2));
-                break;
-            case "DCONST_0":
-                instructionList.add(new InsnNode(Opcodes.DCONST_0));
-                break;
-            case "DCONST_1":
-                instructionList.add(new InsnNode(Opcodes.DCONST_1));
-                break;
-            case "LCONST_0":
-                instructionList.add(new InsnNode(Opcodes.LCONST_0));
-                break;
-            case "LCONST_1":
-                instructionList.add(new InsnNode(Opcodes.LCONST_1));
-                break;
-            case "ACONST_NULL":
-                instructionList.add(new InsnNode(Opcodes.ACONST_NULL));
-                break;
-            case "DUP":
-                instructionList.add(new InsnNode(Opcodes.DUP));
-                break;
-            case "DUP_X1":
-                instructionList.add(new InsnNode(Opcodes.DUP_X1));
-                break;
-            case "DUP_X2":
-                instructionList.add(new InsnNode(Opcodes.DUP_X2));
-                break;
-            case "DUP2":
-                instructionList.add(new InsnNode(Opcodes.DUP2));
-                break;
-            case "DUP2_X1":
-                instructionList.add(new InsnNode(Opcodes.DUP2_X1));
-                break;
-            case "DUP2_X2":
-                instructionList.add(new InsnNode(Opcodes.DUP2_X2));
-                break;
-            case "POP":
-                instructionList.add(new InsnNode(Opcodes.POP));
-                break;
-            case "POP2":
-                instructionList.add(new InsnNode(Opcodes.POP2));
-                break;
-            case "AASTORE":
-                instructionList.add(new InsnNode(Opcodes.AASTORE));
-                break;
-            case "BASTORE":
-                instructionList.add(new InsnNode(Opcodes.BASTORE));
-                break;
-            case "CASTORE":
-                instructionList.add(new InsnNode(Opcodes.CASTORE));
-                break;
-            case "DASTORE":
-                instructionList.add(new InsnNode(Opcodes.DASTORE));
-                break;
-            case "IASTORE":
-                instructionList.add(new InsnNode(Opcodes.IASTORE));
-                break;
-            case "FASTORE":
-                instructionList.add(new InsnNode(Opcodes.FASTORE));
-                break;
-            case "LASTORE":
-                instructionList.add(new InsnNode(Opcodes.LASTORE));
-                break;
-            case "SASTORE":
-                instructionList.add(new InsnNode(Opcodes.SASTORE));
-                break;
-            case "AALOAD":
-                instructionList.add(new InsnNode(Opcodes.AALOAD));
-                break;
-            case "BALOAD":
-                instructionList.add(new InsnNode(Opcodes.BALOAD));
-                break;
-            case "CALOAD":
-                instructionList.add(new InsnNode(Opcodes.CALOAD));
-                break;
-            case "DALOAD":
-                instructionList.add(new InsnNode(Opcodes.DALOAD));
-                break;
-            case "IALOAD":
-                instructionList.add(new InsnNode(Opcodes.IALOAD));
-                break;
-            case "FALOAD":
-                instructionList.add(new InsnNode(Opcodes.FALOAD));
-                break;
-            case "LALOAD":
-                instructionList.add(new InsnNode(Opcodes.LALOAD));
-                break;
-            case "SALOAD":
-                instructionList.add(new InsnNode(Opcodes.SALOAD));
-                break;
-            case "I2C":
-                instructionList.add(new InsnNode(Opcodes.I2C));
-                break;
-            case "I2S":
-                instructionList.add(new InsnNode(Opcodes.I2S));
-                break;
-            case "I2B":
-                instructionList.add(new InsnNode(Opcodes.I2B));
-                break;
-            case "I2L":
-                instructionList.add(new InsnNode(Opcodes.I2L));
-                break;
-            case "I2F":
-                instructionList.add(new InsnNode(Opcodes.I2F));
-                break;
-            case "I2D":
-                instructionList.add(new InsnNode(Opcodes.I2D));
-                break;
-            case "L2I":
-                instructionList.add(new InsnNode(Opcodes.L2I));
-                break;
-            case "L2F":
-                instructionList.add(new InsnNode(Opcodes.L2F));
-                break;
-            case "L2D":
-                instructionList.add(new InsnNode(Opcodes.L2D));
-                break;
-            case "F2I":
-                instructionList.add(new InsnNode(Opcodes.F2I));
-                break;
-            case "F2L":
-                instructionList.add(new InsnNode(Opcodes.F2L));
-                break;
-            case "F2D":
-                instructionList.add(new InsnNode(Opcodes.F2D));
-                break;
-            case "D2I":
-                instructionList.add(new InsnNode(Opcodes.D2I));
-                break;
-            case "D2L":
-                instructionList.add(new InsnNode(Opcodes.D2L));
-                break;
-            case "D2F":
-                instructionList.add(new InsnNode(Opcodes.D2F));
-                break;
-            case "ARRAYLENGTH":
-                instructionList.add(new InsnNode(Opcodes.ARRAYLENGTH));
-                break;
-            case "ISUB":
-                instructionList.add(new InsnNode(Opcodes.ISUB));
-                break;
-            case "LSUB":
-                instructionList.add(new InsnNode(Opcodes.LSUB));
-                break;
-            case "DSUB":
-                instructionList.add(new InsnNode(Opcodes.DSUB));
-                break;
-            case "FSUB":
-                instructionList.add(new InsnNode(Opcodes.FSUB));
-                break;
-            case "IMUL":
-                instructionList.add(new InsnNode(Opcodes.IMUL));
-                break;
-            case "LMUL":
-                instructionList.add(new InsnNode(Opcodes.LMUL));
-                break;
-            case "FMUL":
-                instructionList.add(new InsnNode(Opcodes.FMUL));
-                break;
-            case "DMUL":
-                instructionList.add(new InsnNode(Opcodes.DMUL));
-                break;
-            case "IADD":
-                instructionList.add(new InsnNode(Opcodes.IADD));
-                break;
-            case "LADD":
-                instructionList.add(new InsnNode(Opcodes.LADD));
-                break;
-            case "DADD":
-                instructionList.add(new InsnNode(Opcodes.DADD));
-                break;
-            case "FADD":
-                instructionList.add(new InsnNode(Opcodes.FADD));
-                break;
-            case "IDIV":
-                instructionList.add(new InsnNode(Opcodes.IDIV));
-                break;
-            case "LDIV":
-                instructionList.add(new InsnNode(Opcodes.LDIV));
-                break;
-            case "DDIV":
-                instructionList.add(new InsnNode(Opcodes.DDIV));
-                break;
-            case "FDIV":
-                instructionList.add(new InsnNode(Opcodes.FDIV));
-                break;
-            case "INEG":
-                instructionList.add(new InsnNode(Opcodes.INEG));
-                break;
-            case "LNEG":
-                instructionList.add(new InsnNode(Opcodes.LNEG));
-                break;
-            case "DNEG":
-                instructionList.add(new InsnNode(Opcodes.DNEG));
-                break;
-            case "FNEG":
-                instructionList.add(new InsnNode(Opcodes.FNEG));
-                break;
-            case "IREM":
-                instructionList.add(new InsnNode(Opcodes.IREM));
-                break;
-            case "LREM":
-                instructionList.add(new InsnNode(Opcodes.LREM));
-                break;
-            case "DREM":
-                instructionList.add(new InsnNode(Opcodes.DREM));
-                break;
-            case "FREM":
-                instructionList.add(new InsnNode(Opcodes.FREM));
-                break;
-            case "ISHR":
-                instructionList.add(new InsnNode(Opcodes.ISHR)); // shift right
-                break;
-            case "LSHR":
-                instructionList.add(new InsnNode(Opcodes.LSHR));
-                break;
-            case "IUSHR":
-                instructionList.add(new InsnNode(Opcodes.IUSHR)); // unsigned shift right
-                break;
-            case "LUSHR":
-                instructionList.add(new InsnNode(Opcodes.LUSHR));
-                break;
-            case "ISHL":
-                instructionList.add(new InsnNode(Opcodes.ISHL)); // shift left
-                break;
-            case "LSHL":
-                instructionList.add(new InsnNode(Opcodes.LSHL));
-                break;
-            case "IAND":
-                instructionList.add(new InsnNode(Opcodes.IAND));
-                break;
-            case "LAND":
-                instructionList.add(new InsnNode(Opcodes.LAND));
-                break;
-            case "IOR":
-                instructionList.add(new InsnNode(Opcodes.IOR));
-                break;
-            case "LOR":
-                instructionList.add(new InsnNode(Opcodes.LOR));
-                break;
-            case "IXOR":
-                instructionList.add(new InsnNode(Opcodes.IXOR));
-                break;
-            case "LXOR":
-                instructionList.add(new InsnNode(Opcodes.LXOR));
-                break;
-            case "DCMPL":
-                instructionList.add(new InsnNode(Opcodes.DCMPL));
-                break;
-            case "DCMPG":
-                instructionList.add(new InsnNode(Opcodes.DCMPG));
-                break;
-            case "FCMPL":
-                instructionList.add(new InsnNode(Opcodes.FCMPL));
-                break;
-            case "FCMPG":
-                instructionList.add(new InsnNode(Opcodes.FCMPG));
-                break;
-            case "LCMP":
-                instructionList.add(new InsnNode(Opcodes.LCMP));
-                break;
-            case "IINC":
-                instructionList.add(new IincInsnNode(locals.getVarIndex(tokens[1], Opcodes.IINC), Integer.valueOf(tokens[2])));
-                break;
-            case "GOTO":
-                pushJumpInsn(Opcodes.GOTO, tokens[1], labels, instructionList);
-                break;
-            case "IF_ACMPEQ":
-                pushJumpInsn(Opcodes.IF_ACMPEQ, tokens[1], labels, instructionList);
-                break;
-            case "IF_ACMPNE":
-                pushJumpInsn(Opcodes.IF_ACMPNE, tokens[1], labels, instructionList);
-                break;
-            case "IF_ICMPEQ":
-                pushJumpInsn(Opcodes.IF_ICMPEQ, tokens[1], labels, instructionList);
-                break;
-            case "IF_ICMPGE":
-                pushJumpInsn(Opcodes.IF_ICMPGE, tokens[1], labels, instructionList);
-                break;
-            case "IF_ICMPGT":
-                pushJumpInsn(Opcodes.IF_ICMPGT, tokens[1], labels, instructionList);
-                break;
-            case "IF_ICMPLE":
-                pushJumpInsn(Opcodes.IF_ICMPLE, tokens[1], labels, instructionList);
-                break;
-            case "IF_ICMPLT":
-                pushJumpInsn(Opcodes.IF_ICMPLT, tokens[1], labels, instructionList);
-                break;
-            case "IF_ICMPNE":
-                pushJumpInsn(Opcodes.IF_ICMPNE, tokens[1], labels, instructionList);
-                break;
-            case "IFEQ":
-                pushJumpInsn(Opcodes.IFEQ, tokens[1], labels, instructionList);
-                break;
-            case "IFGE":
-                pushJumpInsn(Opcodes.IFGE, tokens[1], labels, instructionList);
-                break;
-            case "IFGT":
-                pushJumpInsn(Opcodes.IFGT, tokens[1], labels, instructionList);
-                break;
-            case "IFLE":
-                pushJumpInsn(Opcodes.IFLE, tokens[1], labels, instructionList);
-                break;
-            case "IFLT":
-                pushJumpInsn(Opcodes.IFLT, tokens[1], labels, instructionList);
-                break;
-            case "IFNE":
-                pushJumpInsn(Opcodes.IFNE, tokens[1], labels, instructionList);
-                break;
-            case "IFNONNULL":
-                pushJumpInsn(Opcodes.IFNONNULL, tokens[1], labels, instructionList);
-                break;
-            case "IFNULL":
-                pushJumpInsn(Opcodes.IFNULL, tokens[1], labels, instructionList);
-                break;
-            case "LOOKUPSWITCH":
-                parseLookupSwitch(line.split(" ", 2)[1], labels, instructionList);
-                break;
-            case "TABLESWITCH":
-                parseTableSwitch(line.split(" ", 2)[1], labels, instructionList);
-                break;
-            case "CHECKCAST":
-                instructionList.add(new TypeInsnNode(Opcodes.CHECKCAST, tokens[1]));
-                break;
-            case "INSTANCEOF":
-                instructionList.add(new TypeInsnNode(Opcodes.INSTANCEOF, tokens[1]));
-                break;
-            case "NEW":
-                instructionList.add(new TypeInsnNode(Opcodes.NEW, tokens[1]));
-                break;
-            case "ANEWARRAY":
-                instructionList.add(new TypeInsnNode(Opcodes.ANEWARRAY, tokens[1]));
-                break;
-            case "MULTIANEWARRAY":
-                instructionList.add(new MultiANewArrayInsnNode(tokens[1], Integer.valueOf(tokens[2])));
-                break;
-            case "GETFIELD": {
-                String[] spl = tokens[1].split("\\.");
-                instructionList.add(new FieldInsnNode(Opcodes.GETFIELD, spl[0], spl[1], tokens[2]));
-                break;
-            }
-            case "PUTFIELD": {
-                String[] spl = tokens[1].split("\\.");
-                instructionList.add(new FieldInsnNode(Opcodes.PUTFIELD, spl[0], spl[1], tokens[2]));
-                break;
-            }
-            case "GETSTATIC": {
-                String[] spl = tokens[1].split("\\.");
-                instructionList.add(new FieldInsnNode(Opcodes.GETSTATIC, spl[0], spl[1], tokens[2]));
-                break;
+            if (line.startsWith("TRY ", INDENT)) {
+                tokens.reset(line, INDENT).expect("TRY ");
+                parseTryCatchBlock(tokens, labels, method);
             }
-            case "PUTSTATIC": {
-                String[] spl = tokens[1].split("\\.");
-                instructionList.add(new FieldInsnNode(Opcodes.PUTSTATIC, spl[0], spl[1], tokens[2]));
-                break;
-            }
-            case "LDC": {
-                String rawValue = line.split(" ", 2)[1];
-                Object value;
-                int lastChar = rawValue.length() - 1;
-                if (rawValue.charAt(0) == '\"') {
-                    value = removeEscapes(rawValue.substring(1, lastChar));
-                } else if (rawValue.charAt(0) == '[') {
-                    value = org.objectweb.asm.Type.getObjectType(rawValue);
-                } else if (rawValue.codePointAt(lastChar) == 'L') {
-                    value = Long.parseLong(rawValue.substring(0, lastChar));
-                } else if (rawValue.codePointAt(lastChar) == 'F') {
-                    value = Float.parseFloat(rawValue.substring(0, lastChar));
-                } else if (rawValue.codePointAt(lastChar) == 'D') {
-                    value = Double.parseDouble(rawValue.substring(0, lastChar));
-                } else if (rawValue.codePointAt(lastChar) == ';') {
-                    value = org.objectweb.asm.Type.getObjectType(rawValue.substring(1, rawValue.length() - 1));
-                } else if (rawValue.equals("Infinity")) {
-                    value = Double.POSITIVE_INFINITY;
-                } else if (rawValue.equals("-Infinity")) {
-                    value = Double.NEGATIVE_INFINITY;
-                } else if (rawValue.equals("NaN")) {
-                    value = Double.NaN;
-                } else {
-                    value = Integer.parseInt(rawValue);
+        }
+
+        for (int i = 1; i < linesOfCode; i++) {
+            String line = code.get(i);
+            int space = line.indexOf(' ', INDENT);
+            int end = space == -1 ? line.length() : space;
+            OpcodeTable.Entry instruction = OpcodeTable.lookup(line, INDENT, end);
+            if (instruction == null) {
+                if (space == -1 && end > INDENT + 1 && line.charAt(end - 1) == ':') {
+                    pushLabel(line.substring(INDENT, end - 1), labels, method);
+                    continue;
                 }
-                instructionList.add(new LdcInsnNode(value));
-                break;
+                throw new IllegalStateException("Unknown instruction (" + line.substring(INDENT, end) + ") at line " + i + ": " + line);
             }
-            case "SIPUSH":
-                instructionList.add(new IntInsnNode(Opcodes.SIPUSH, Integer.parseInt(tokens[1])));
-                break;
-            case "BIPUSH":
-                instructionList.add(new IntInsnNode(Opcodes.BIPUSH, Integer.parseInt(tokens[1])));
-                break;
-            case "NEWARRAY": {
-                int type = -1;
-                // Apparently these magic values are hardcoded without much more info or other documentation
-                switch (tokens[1].codePointAt(0)) {
-                case 'B':
-                    type = 8;
-                    break;
-                case 'C':
-                    type = 5;
-                    break;
-                case 'D':
-                    type = 7;
-                    break;
-                case 'F':
-                    type = 6;
-                    break;
-                case 'I':
-                    type = 10;
-                    break;
-                case 'J':
-                    type = 11;
-                    break;
-                case 'S':
-                    type = 9;
-                    break;
-                case 'Z':
-                    type = 4;
-                    break;
-                default:
-                    throw new IllegalStateException(tokens[1] + " is not a valid descriptor.");
+            tokens.reset(line, space == -1 ? end : space + 1);
+            switch (instruction.getKind()) {
+            case SIGNATURE:
+            case THROWS:
+            case TRY:
+                // Already handled before the instructions
+                break;
+            case ALIAS:
+                if (tokens.skipIf("H_META \"")) {
+                    hmeta = parseHandle(tokens);
+                    tokens.expect("\"");
+                } else {
+                    throw new IllegalStateException("Line " + i + " (" + line + ") declares an alias, even though aliases are only partially implemented.");
                 }
-                instructionList.add(new IntInsnNode(Opcodes.NEWARRAY, type));
-                break;
-            }
-            case "INVOKEVIRTUAL":
-                parseMethodInsn(Opcodes.INVOKEVIRTUAL, line.split(" ", 2)[1], instructionList);
-                break;
-            case "INVOKESTATIC":
-                parseMethodInsn(Opcodes.INVOKESTATIC, line.split(" ", 2)[1], instructionList);
-                break;
-            case "INVOKESPECIAL":
-                parseMethodInsn(Opcodes.INVOKESPECIAL, line.split(" ", 2)[1], instructionList);
-                break;
-            case "INVOKEINTERFACE":
-                parseMethodInsn(Opcodes.INVOKEINTERFACE, line.split(" ", 2)[1], instructionList);
                 break;
-            case "INVOKEDYNAMIC":
-                parseInvokedynamic(hmeta, line.split(" ", 2)[1], instructionList);
-                break;
-            case "TRY": {
-                LabelNode start = labels.getLabel(tokens[1]);
-                LabelNode end = labels.getLabel(tokens[2]);
-                LabelNode handler = labels.getLabel(tokens[4]);
-                String type = tokens[3].substring(6, tokens[3].length() - 1); // get rid of the "catch(" prefix
-                TryCatchBlockNode block = new TryCatchBlockNode(start, end, handler, type);
-                tryCatchBlocks.add(block);
-                break;
-            }
             default:
-                if (tokens.length == 1) {
-                    if (tokens[0].indexOf(':') == tokens[0].length() - 1) {
-                        pushLabel(tokens[0], labels, instructionList);
-                        break;
-                    }
-                }
-                throw new IllegalStateException("Unknown instruction (" + tokens[0] + ") at line " + i + ": " + line);
+                parseInstruction(instruction, tokens, method, labels, locals, hmeta);
             }
         }
-        String[] exceptionsArr;
-        if (exceptions == null) {
-            exceptionsArr = new String[0];
-        } else {
-            exceptionsArr = exceptions.toArray(new String[0]);
+
+        for (String entry : methodLVT) {
+            tokens.reset(entry);
+            tokens.expect(".METHODLVT ");
+            String name = tokens.next();
+            String desc = tokens.next();
+            int index = tokens.nextInt();
+            Label start = labels.getLabel(tokens.next());
+            Label end = labels.getLabel(tokens.next());
+            // Also add the signature
+            method.visitLocalVariable(name, desc, null, start, end, index);
+        }
+        if (hasCode) {
+            // The maximums are either computed by the class writer or not needed at all
+            method.visitMaxs(0, 0);
         }
+        method.visitEnd();
+    }
 
-        MethodNode method = new MethodNode(header.getAccess(), header.getName(), header.getDesc(), signature, exceptionsArr);
-        method.instructions = instructionList;
-        method.tryCatchBlocks = tryCatchBlocks;
-        method.localVariables = lvt;
-        return method;
+    /**
+     * Parses the operands of a field instruction in the form of "owner.name desc".
+     *
+     * @param opcode The opcode of the instruction
+     * @param tokens The tokenizer, positioned at the owner of the field
+     * @param visitor The visitor to pass the instruction to
+     */
+    protected void parseFieldInsn(int opcode, LineTokenizer tokens, MethodVisitor visitor) {
+        String owner = tokens.next('.');
+        String name = tokens.next();
+        visitor.visitFieldInsn(opcode, owner, name, tokens.next());
     }
 
-    protected void parseMethodInsn(int opcode, String params, InsnList instructionList) {
-        String[] split = params.split("\\.", 2);
-        int firstBracket = split[1].indexOf('(');
-        String name = split[1].substring(0, firstBracket);
-        String desc = split[1].substring(firstBracket);
-        instructionList.add(new MethodInsnNode(opcode, split[0], name, desc));
+    /**
+     * Parses the operands of a method instruction in the form of "owner.name(desc)".
+     *
+     * @param opcode The opcode of the instruction
+     * @param tokens The tokenizer, positioned at the owner of the method
+     * @param visitor The visitor to pass the instruction to
+     */
+    protected void parseMethodInsn(int opcode, LineTokenizer tokens, MethodVisitor visitor) {
+        String owner = tokens.next('.');
+        String name = tokens.nextBefore('(');
+        visitor.visitMethodInsn(opcode, owner, name, tokens.next(), opcode == Opcodes.INVOKEINTERFACE);
     }
 
-    protected void parseTableSwitch(String params, LabelTable labels, InsnList instructionList) {
-        int first = params.indexOf('[');
-        int last = params.lastIndexOf('[');
-        int endFirst = params.indexOf(']');
-        LabelNode defaultLabel = labels.getLabel(params.substring(last + 1, params.length() - 1));
-        String[] range = params.substring(first + 1, endFirst).split(":");
-        int min = Integer.valueOf(range[0]);
-        int max = Integer.valueOf(range[1]);
-        first = params.indexOf('[', first + 1);
-        endFirst = params.indexOf(']', first);
-        String[] values = params.substring(first + 1, endFirst).split(", ");
-        int valuesNum = values.length;
-        LabelNode[] jumpLabels = new LabelNode[valuesNum];
-        for (int i = 0; i < valuesNum; i++) {
-            jumpLabels[i] = labels.getLabel(values[i]);
+    /**
+     * Parses the operands of a tableswitch instruction in the form of "range[min:max] offsets[label1, label2, ...] default[label]".
+     *
+     * @param tokens The tokenizer, positioned at the start of the range
+     * @param labels The labels of the method
+     * @param visitor The visitor to pass the instruction to
+     */
+    protected void parseTableSwitch(LineTokenizer tokens, LabelTable labels, MethodVisitor visitor) {
+        tokens.expect("range[");
+        int min = tokens.nextInt(':');
+        int max = tokens.nextInt(']');
+        tokens.expect(" offsets[");
+        Label[] jumpLabels = new Label[Math.max(0, max - min + 1)];
+        int count = 0;
+        if (tokens.peek() != ']') {
+            do {
+                if (count == jumpLabels.length) {
+                    throw new IllegalStateException("Tableswitch has more offsets than its range allows: " + tokens.getLine());
+                }
+                jumpLabels[count++] = labels.getLabel(tokens.nextBefore(',', ']'));
+            } while (tokens.skipIf(", "));
         }
-        instructionList.add(new TableSwitchInsnNode(min, max, defaultLabel, jumpLabels));
-}
+        tokens.expect("] default[");
+        Label defaultLabel = labels.getLabel(tokens.next(']'));
+        if (count != jumpLabels.length) {
+            jumpLabels = Arrays.copyOf(jumpLabels, count);
+        }
+        visitor.visitTableSwitchInsn(min, max, defaultLabel, jumpLabels);
+    }
 
-    protected void pushJumpInsn(int opcode, String labelname, LabelTable labels, InsnList instructionList) {
-        instructionList.add(new JumpInsnNode(opcode, labels.getLabel(labelname)));
+    /**
+     * Parses a try-catch block in the form of "start end CATCH(type) handler".
+     * The type "*" declares a handler that catches all exceptions.
+     *
+     * @param tokens The tokenizer, positioned at the start label
+     * @param labels The labels of the method
+     * @param visitor The visitor to pass the try-catch block to
+     */
+    protected void parseTryCatchBlock(LineTokenizer tokens, LabelTable labels, MethodVisitor visitor) {
+        Label start = labels.getLabel(tokens.next());
+        Label end = labels.getLabel(tokens.next());
+        tokens.expect("CATCH(");
+        String type = tokens.next(')');
+        if (type.equals("*")) {
+            // Catches everything, used by finally blocks
+            type = null;
+        }
+        tokens.expect(" ");
+        Label handler = labels.getLabel(tokens.next());
+        visitor.visitTryCatchBlock(start, end, handler, type);
     }
 
-    protected void pushLabel(String name, LabelTable labels, InsnList instructions) {
-        // Note: name contains the colon of the label declaration, which needs to be removed
-        int len = name.length();
-        instructions.add(labels.getLabel(name.substring(0, len - 1)));
+    private static int getArrayType(char descriptor) {
+        switch (descriptor) {
+        case 'B':
+            return Opcodes.T_BYTE;
+        case 'C':
+            return Opcodes.T_CHAR;
+        case 'D':
+            return Opcodes.T_DOUBLE;
+        case 'F':
+            return Opcodes.T_FLOAT;
+        case 'I':
+            return Opcodes.T_INT;
+        case 'J':
+            return Opcodes.T_LONG;
+        case 'S':
+            return Opcodes.T_SHORT;
+        case 'Z':
+            return Opcodes.T_BOOLEAN;
+        default:
+            throw new IllegalStateException(descriptor + " is not a valid descriptor.");
+        }
+    }
+
+    protected void pushJumpInsn(int opcode, String labelname, LabelTable labels, MethodVisitor visitor) {
+        visitor.visitJumpInsn(opcode, labels.getLabel(labelname));
+    }
+
+    protected void pushLabel(String name, LabelTable labels, MethodVisitor visitor) {
+        visitor.visitLabel(labels.getLabel(name));
     }
 
-    protected void pushVarInsn(int opcode, InsnList list, String var, LocalNameTable lnt) {
-        list.add(new VarInsnNode(opcode, lnt.getVarIndex(var, opcode)));
+    protected void pushVarInsn(int opcode, MethodVisitor visitor, String var, LocalNameTable lnt) {
+        visitor.visitVarInsn(opcode, lnt.getVarIndex(var, opcode));
     }
 
     protected String removeEscapes(String input) {
-        char[] cstr = input.toCharArray();
+        return removeEscapes(input, 0, input.length());
+    }
+
+    /**
+     * Resolves the escape sequences within a region of a string.
+     *
+     * @param input The string
+     * @param start The index of the first character of the region
+     * @param end The index after the last character of the region
+     * @return The region without escape sequences
+     */
+    protected String removeEscapes(String input, int start, int end) {
+        if (input.indexOf('\\', start) == -1 || input.indexOf('\\', start) >= end) {
+            return input.substring(start, end);
+        }
         sharedBuilder.setLength(0);
-        int len = cstr.length;
         boolean hadSlash = false;
-        for (int i = 0; i < len; i++) {
-            char c = cstr[i];
+        for (int i = start; i < end; i++) {
+            char c = input.charAt(i);
             if (hadSlash) {
-                char newval = ESCAPED_CHARACTERS[cstr[i]];
+                char newval = c < 256 ? ESCAPED_CHARACTERS[c] : 0;
                 if (newval == 0) {
-                    if (cstr[i] == 'u') {
-                        int codepoint = Integer.parseInt("" + cstr[++i] + cstr[++i] + cstr[++i] + cstr[++i], 16);
+                    if (c == 'u') {
+                        int codepoint = Integer.parseInt(input.substring(i + 1, i + 5), 16);
+                        i += 4;
                         sharedBuilder.appendCodePoint(codepoint);
                     } else {
                         sharedBuilder.append('\\');
-                        sharedBuilder.append(cstr[i]);
+                        sharedBuilder.append(c);
                     }
                 } else {
                     sharedBuilder.append(newval);
@@ -953,7 +732,7 @@ public class SLAssmbler {
                 if (c == '\\') {
                     hadSlash = true;
                 } else {
-                    sharedBuilder.append(cstr[i]);
+                    sharedBuilder.append(c);
                 }
             }
         }
@@ -0,0 +1,106 @@
+package de.geolykt.starloader.bcdiff.diff;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.github.difflib.algorithm.Change;
+import com.github.difflib.patch.DeltaType;
+
+/**
+ * Base class of the diffs that split the sequences of line IDs at matching lines (the anchors) and diff the regions
+ * between them independently. Regions that cannot be split any further are diffed with {@link IntMyersDiff}.
+ * Regions are processed from a stack rather than recursively, so that long sequences cannot overflow the call stack.
+ */
+abstract class AnchoredIntDiff {
+
+    protected final int[] original;
+    protected final int[] revised;
+    private final int costLimit;
+    private final List<Change> changes = new ArrayList<>();
+    private int[] regions = new int[64];
+    private int regionCount;
+
+    protected AnchoredIntDiff(int[] original, int[] revised, int costLimit) {
+        this.original = original;
+        this.revised = revised;
+        this.costLimit = costLimit;
+    }
+
+    final List<Change> computeDiff() {
+        pushRegion(0, original.length, 0, revised.length);
+        while (regionCount != 0) {
+            int base = --regionCount * 4;
+            diffRegion(regions[base], regions[base + 1], regions[base + 2], regions[base + 3]);
+        }
+        changes.sort((a, b) -> a.startOriginal != b.startOriginal ? Integer.compare(a.startOriginal, b.startOriginal)
+                : Integer.compare(a.startRevised, b.startRevised));
+        // Regions are diffed independently, so changes may touch each other
+        List<Change> merged = new ArrayList<>(changes.size());
+        Change previous = null;
+        for (Change change : changes) {
+            if (previous != null && previous.endOriginal == change.startOriginal && previous.endRevised == change.startRevised) {
+                previous = MyersTrace.createChange(previous.startOriginal, previous.startRevised, change.endOriginal, change.endRevised);
+                merged.set(merged.size() - 1, previous);
+            } else {
+                merged.add(change);
+                previous = change;
+            }
+        }
+        return merged;
+    }
+
+    private void diffRegion(int originalStart, int originalEnd, int revisedStart, int revisedEnd) {
+        while (originalStart < originalEnd && revisedStart < revisedEnd && original[originalStart] == revised[revisedStart]) {
+            originalStart++;
+            revisedStart++;
+        }
+        while (originalEnd > originalStart && revisedEnd > revisedStart && original[originalEnd - 1] == revised[revisedEnd - 1]) {
+            originalEnd--;
+            revisedEnd--;
+        }
+        if (originalStart == originalEnd && revisedStart == revisedEnd) {
+            return;
+        } else if (originalStart == originalEnd) {
+            changes.add(new Change(DeltaType.INSERT, originalStart, originalEnd, revisedStart, revisedEnd));
+        } else if (revisedStart == revisedEnd) {
+            changes.add(new Change(DeltaType.DELETE, originalStart, originalEnd, revisedStart, revisedEnd));
+        } else if (!split(originalStart, originalEnd, revisedStart, revisedEnd)) {
+            for (Change change : IntMyersDiff.computeDiff(original, originalStart, originalEnd, revised, revisedStart, revisedEnd, costLimit)) {
+                changes.add(new Change(change.deltaType, change.startOriginal + originalStart, change.endOriginal + originalStart,
+                        change.startRevised + revisedStart, change.endRevised + revisedStart));
+            }
+        }
+    }
+
+    /**
+     * Queues a region to be diffed.
+     *
+     * @param originalStart The start of the region within the original sequence, inclusive
+     * @param originalEnd The end of the region within the original sequence, exclusive
+     * @param revisedStart The start of the region within the revised sequence, inclusive
+     * @param revisedEnd The end of the region within the revised sequence, exclusive
+     */
+    protected final void pushRegion(int originalStart, int originalEnd, int revisedStart, int revisedEnd) {
+        if (regionCount * 4 == regions.length) {
+            regions = Arrays.copyOf(regions, regions.length * 2);
+        }
+        int base = regionCount++ * 4;
+        regions[base] = originalStart;
+        regions[base + 1] = originalEnd;
+        regions[base + 2] = revisedStart;
+        regions[base + 3] = revisedEnd;
+    }
+
+    /**
+     * Splits a region at its anchors by {@link #pushRegion(int, int, int, int) queuing} the regions between them.
+     * The region neither starts nor ends with matching lines.
+     *
+     * @param originalStart The start of the region within the original sequence, inclusive
+     * @param originalEnd The end of the region within the original sequence, exclusive
+     * @param revisedStart The start of the region within the revised sequence, inclusive
+     * @param revisedEnd The end of the region within the revised sequence, exclusive
+     * @return False if the region has no anchors and should be diffed with {@link IntMyersDiff} instead
+     */
+    protected abstract boolean split(int originalStart, int originalEnd, int revisedStart, int revisedEnd);
+}
@@ -0,0 +1,102 @@
+package de.geolykt.starloader.bcdiff.diff;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.github.difflib.algorithm.Change;
+
+/**
+ * The histogram diff over sequences of line IDs as obtained from a {@link LineInterner}.
+ *
+ * <p>Every region is split at the longest run of matching lines whose rarest line occurs the fewest times within the
+ * original region. Lines that occur more than {@value #MAX_OCCURRENCES} times are never used to split a region.
+ */
+public final class IntHistogramDiff extends AnchoredIntDiff {
+
+    private static final int MAX_OCCURRENCES = 64;
+
+    /**
+     * Computes the changes that transform the original sequence into the revised sequence.
+     *
+     * @param original The original sequence
+     * @param revised The revised sequence
+     * @param idCount The amount of distinct IDs, all IDs must be below this value
+     * @param costLimit The maximum edit distance of regions that are diffed with {@link IntMyersDiff}
+     * @return The changes, ordered by their position
+     */
+    public static List<Change> computeDiff(int[] original, int[] revised, int idCount, int costLimit) {
+        return new IntHistogramDiff(original, revised, idCount, costLimit).computeDiff();
+    }
+
+    private final int[] counts;
+    private final int[] firstOccurrence;
+    private final int[] nextOccurrence;
+
+    private IntHistogramDiff(int[] original, int[] revised, int idCount, int costLimit) {
+        super(original, revised, costLimit);
+        this.counts = new int[idCount];
+        this.firstOccurrence = new int[idCount];
+        this.nextOccurrence = new int[original.length];
+        Arrays.fill(firstOccurrence, -1);
+    }
+
+    @Override
+    protected boolean split(int originalStart, int originalEnd, int revisedStart, int revisedEnd) {
+        for (int i = originalEnd - 1; i >= originalStart; i--) {
+            int id = original[i];
+            nextOccurrence[i] = firstOccurrence[id];
+            firstOccurrence[id] = i;
+            counts[id]++;
+        }
+
+        int bestOriginal = -1;
+        int bestRevised = -1;
+        int bestLength = 0;
+        int bestCount = MAX_OCCURRENCES + 1;
+        for (int r = revisedStart; r < revisedEnd;) {
+            int count = counts[revised[r]];
+            if (count == 0 || count > bestCount) {
+                r++;
+                continue;
+            }
+            int nextR = r + 1;
+            for (int o = firstOccurrence[revised[r]]; o != -1; o = nextOccurrence[o]) {
+                int startO = o;
+                int startR = r;
+                while (startO > originalStart && startR > revisedStart && original[startO - 1] == revised[startR - 1]) {
+                    startO--;
+                    startR--;
+                }
+                int endO = o + 1;
+                int endR = r + 1;
+                while (endO < originalEnd && endR < revisedEnd && original[endO] == revised[endR]) {
+                    endO++;
+                    endR++;
+                }
+                int runCount = count;
+                for (int i = startO; i < endO; i++) {
+                    runCount = Math.min(runCount, counts[original[i]]);
+                }
+                if (runCount < bestCount || (runCount == bestCount && endO - startO > bestLength)) {
+                    bestOriginal = startO;
+                    bestRevised = startR;
+                    bestLength = endO - startO;
+                    bestCount = runCount;
+                }
+                nextR = Math.max(nextR, endR);
+            }
+            r = nextR;
+        }
+
+        for (int i = originalStart; i < originalEnd; i++) {
+            firstOccurrence[original[i]] = -1;
+            counts[original[i]] = 0;
+        }
+        if (bestOriginal == -1) {
+            return false;
+        }
+        pushRegion(bestOriginal + bestLength, originalEnd, bestRevised + bestLength, revisedEnd);
+        pushRegion(originalStart, bestOriginal, revisedStart, bestRevised);
+        return true;
+    }
+}
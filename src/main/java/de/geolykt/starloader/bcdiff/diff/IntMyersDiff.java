@@ -0,0 +1,143 @@
+package de.geolykt.starloader.bcdiff.diff;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.github.difflib.algorithm.Change;
+import com.github.difflib.algorithm.DiffAlgorithmListener;
+
+/**
+ * The greedy Myers diff over sequences of line IDs as obtained from a {@link LineInterner}.
+ *
+ * <p>The paths are explored in the same order as {@link com.github.difflib.algorithm.myers.MeyersDiff}, so
+ * both produce the same changes. Instead of linking path nodes, the furthest reaching point of every diagonal is
+ * recorded for every edit distance and the path is recovered from these afterwards.
+ */
+public final class IntMyersDiff {
+
+    private IntMyersDiff() {
+    }
+
+    /**
+     * Computes the changes that transform a range of the original sequence into a range of the revised sequence.
+     * The positions of the changes are relative to the start of the respective ranges.
+     *
+     * @param original The original sequence
+     * @param originalStart The start of the range within the original sequence, inclusive
+     * @param originalEnd The end of the range within the original sequence, exclusive
+     * @param revised The revised sequence
+     * @param revisedStart The start of the range within the revised sequence, inclusive
+     * @param revisedEnd The end of the range within the revised sequence, exclusive
+     * @param progress The listener that is notified about the progress, may be null
+     * @return The changes, ordered by their position
+     */
+    public static List<Change> computeDiff(int[] original, int originalStart, int originalEnd, int[] revised, int revisedStart,
+            int revisedEnd, DiffAlgorithmListener progress) {
+        if (progress != null) {
+            progress.diffStart();
+        }
+        int max = originalEnd - originalStart + revisedEnd - revisedStart + 1;
+        List<Change> changes = continueDiff(new MyersTrace(max), original, originalStart, originalEnd, revised, revisedStart, revisedEnd,
+                Integer.MAX_VALUE, progress);
+        if (progress != null) {
+            progress.diffEnd();
+        }
+        return changes;
+    }
+
+    /**
+     * Computes the changes that transform a range of the original sequence into a range of the revised sequence,
+     * giving up once the edit distance exceeds the given limit. In that case all lines between the common prefix and the
+     * common suffix of both ranges are replaced by a single change.
+     * The positions of the changes are relative to the start of the respective ranges.
+     *
+     * @param original The original sequence
+     * @param originalStart The start of the range within the original sequence, inclusive
+     * @param originalEnd The end of the range within the original sequence, exclusive
+     * @param revised The revised sequence
+     * @param revisedStart The start of the range within the revised sequence, inclusive
+     * @param revisedEnd The end of the range within the revised sequence, exclusive
+     * @param costLimit The maximum edit distance
+     * @return The changes, ordered by their position
+     */
+    public static List<Change> computeDiff(int[] original, int originalStart, int originalEnd, int[] revised, int revisedStart,
+            int revisedEnd, int costLimit) {
+        int max = originalEnd - originalStart + revisedEnd - revisedStart + 1;
+        List<Change> changes = continueDiff(new MyersTrace(Math.min(max, costLimit)), original, originalStart, originalEnd, revised,
+                revisedStart, revisedEnd, costLimit, null);
+        if (changes == null) {
+            return replaceRange(original, originalStart, originalEnd, revised, revisedStart, revisedEnd);
+        }
+        return changes;
+    }
+
+    /**
+     * Computes the changes that transform the original sequence into the revised sequence.
+     *
+     * @param original The original sequence
+     * @param revised The revised sequence
+     * @return The changes, ordered by their position
+     */
+    public static List<Change> computeDiff(int[] original, int[] revised) {
+        return computeDiff(original, 0, original.length, revised, 0, revised.length, null);
+    }
+
+    /**
+     * Continues a search whose first rows may have been recorded by comparing the lines in another way.
+     * Returns null if the edit distance exceeds the cost limit.
+     */
+    static List<Change> continueDiff(MyersTrace trace, int[] original, int originalStart, int originalEnd, int[] revised, int revisedStart,
+            int revisedEnd, int costLimit, DiffAlgorithmListener progress) {
+        int n = originalEnd - originalStart;
+        int m = revisedEnd - revisedStart;
+        int max = n + m + 1;
+        int limit = (int) Math.min(max, costLimit + 1L);
+        int[] previous = trace.lastRow();
+        for (int d = trace.depth(); d < limit; d++) {
+            if (progress != null) {
+                progress.diffStep(d, max);
+            }
+            int[] current = trace.nextRow();
+            for (int k = -d, index = 0; k <= d; k += 2, index++) {
+                int x = MyersTrace.startX(previous, d, k, index);
+                int y = x - k;
+                while (x < n && y < m && original[originalStart + x] == revised[revisedStart + y]) {
+                    x++;
+                    y++;
+                }
+                current[index] = x;
+                if (x >= n && y >= m) {
+                    return trace.buildChanges(k, x);
+                }
+            }
+            previous = current;
+        }
+        if (limit < max) {
+            return null;
+        }
+        throw new IllegalStateException("Could not find a diff path");
+    }
+
+    /**
+     * Creates the single change that replaces all lines between the common prefix and the common suffix of two ranges.
+     * The positions of the change are relative to the start of the respective ranges.
+     */
+    static List<Change> replaceRange(int[] original, int originalStart, int originalEnd, int[] revised, int revisedStart, int revisedEnd) {
+        int prefix = 0;
+        while (originalStart + prefix < originalEnd && revisedStart + prefix < revisedEnd
+                && original[originalStart + prefix] == revised[revisedStart + prefix]) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (originalEnd - suffix > originalStart + prefix && revisedEnd - suffix > revisedStart + prefix
+                && original[originalEnd - suffix - 1] == revised[revisedEnd - suffix - 1]) {
+            suffix++;
+        }
+        int originalLength = originalEnd - originalStart - suffix;
+        int revisedLength = revisedEnd - revisedStart - suffix;
+        if (prefix == originalLength && prefix == revisedLength) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(MyersTrace.createChange(prefix, prefix, originalLength, revisedLength));
+    }
+}
@@ -0,0 +1,106 @@
+package de.geolykt.starloader.bcdiff.diff;
+
+import java.util.List;
+
+import com.github.difflib.algorithm.Change;
+
+/**
+ * The patience diff over sequences of line IDs as obtained from a {@link LineInterner}.
+ *
+ * <p>Every region is split at the longest sequence of lines that occur exactly once in both the original
+ * and the revised region and appear in the same order in both.
+ */
+public final class IntPatienceDiff extends AnchoredIntDiff {
+
+    /**
+     * Computes the changes that transform the original sequence into the revised sequence.
+     *
+     * @param original The original sequence
+     * @param revised The revised sequence
+     * @param idCount The amount of distinct IDs, all IDs must be below this value
+     * @param costLimit The maximum edit distance of regions that are diffed with {@link IntMyersDiff}
+     * @return The changes, ordered by their position
+     */
+    public static List<Change> computeDiff(int[] original, int[] revised, int idCount, int costLimit) {
+        return new IntPatienceDiff(original, revised, idCount, costLimit).computeDiff();
+    }
+
+    private final int[] originalCounts;
+    private final int[] revisedCounts;
+    private final int[] originalPositions;
+
+    private IntPatienceDiff(int[] original, int[] revised, int idCount, int costLimit) {
+        super(original, revised, costLimit);
+        this.originalCounts = new int[idCount];
+        this.revisedCounts = new int[idCount];
+        this.originalPositions = new int[idCount];
+    }
+
+    @Override
+    protected boolean split(int originalStart, int originalEnd, int revisedStart, int revisedEnd) {
+        for (int i = originalStart; i < originalEnd; i++) {
+            originalCounts[original[i]]++;
+            originalPositions[original[i]] = i;
+        }
+        for (int i = revisedStart; i < revisedEnd; i++) {
+            revisedCounts[revised[i]]++;
+        }
+        // The unique lines in the order of the revised region
+        int[] anchorOriginal = new int[Math.min(originalEnd - originalStart, revisedEnd - revisedStart)];
+        int[] anchorRevised = new int[anchorOriginal.length];
+        int anchorCount = 0;
+        for (int i = revisedStart; i < revisedEnd; i++) {
+            int id = revised[i];
+            if (originalCounts[id] == 1 && revisedCounts[id] == 1) {
+                anchorOriginal[anchorCount] = originalPositions[id];
+                anchorRevised[anchorCount++] = i;
+            }
+        }
+        for (int i = originalStart; i < originalEnd; i++) {
+            originalCounts[original[i]] = 0;
+        }
+        for (int i = revisedStart; i < revisedEnd; i++) {
+            revisedCounts[revised[i]] = 0;
+        }
+        if (anchorCount == 0) {
+            return false;
+        }
+
+        // Patience sorting to find the longest sequence of anchors that is also ascending in the original region
+        int[] pileTops = new int[anchorCount];
+        int[] predecessors = new int[anchorCount];
+        int piles = 0;
+        for (int i = 0; i < anchorCount; i++) {
+            int low = 0;
+            int high = piles;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (anchorOriginal[pileTops[mid]] < anchorOriginal[i]) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            predecessors[i] = low == 0 ? -1 : pileTops[low - 1];
+            pileTops[low] = i;
+            if (low == piles) {
+                piles++;
+            }
+        }
+        int[] sequence = new int[piles];
+        for (int i = piles - 1, anchor = pileTops[piles - 1]; i >= 0; i--, anchor = predecessors[anchor]) {
+            sequence[i] = anchor;
+        }
+
+        int nextOriginal = originalEnd;
+        int nextRevised = revisedEnd;
+        for (int i = piles - 1; i >= 0; i--) {
+            int anchor = sequence[i];
+            pushRegion(anchorOriginal[anchor] + 1, nextOriginal, anchorRevised[anchor] + 1, nextRevised);
+            nextOriginal = anchorOriginal[anchor];
+            nextRevised = anchorRevised[anchor];
+        }
+        pushRegion(originalStart, nextOriginal, revisedStart, nextRevised);
+        return true;
+    }
+}
@@ -0,0 +1,110 @@
+package de.geolykt.starloader.bcdiff.diff;
+
+import java.util.List;
+
+import com.github.difflib.algorithm.Change;
+import com.github.difflib.algorithm.DiffAlgorithmI;
+import com.github.difflib.algorithm.DiffAlgorithmListener;
+
+/**
+ * A line diff that maps both listings to line IDs using a shared {@link LineInterner} and runs the selected
+ * {@link LineDiffAlgorithm} over the IDs, so that long lines are not compared again and again while the paths are explored.
+ * With the Myers algorithm and no cost limit, the changes are the same as the ones computed by
+ * {@link com.github.difflib.algorithm.myers.MeyersDiff}.
+ *
+ * <p>Interning costs about as much as comparing every line twice, which does not pay off if only few lines differ.
+ * The Myers algorithm thus explores the first edit distances by comparing the strings and the lines are only interned once
+ * the listings turn out to differ considerably.
+ *
+ * <p>The cost limit bounds the edit distance the Myers algorithm explores, either on the entire listing or on the regions
+ * the histogram and patience algorithms could not split any further. Once it is exceeded, the lines of the listing
+ * or region are replaced by a single change, which is coarse but still valid. This bounds both the time and the memory
+ * spent on listings that have little in common.
+ */
+public class InternedLineDiff implements DiffAlgorithmI<String> {
+
+    private final LineDiffAlgorithm algorithm;
+    private final int costLimit;
+
+    /**
+     * Creates a line diff that uses the Myers algorithm without a cost limit.
+     */
+    public InternedLineDiff() {
+        this(LineDiffAlgorithm.MYERS, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates a line diff that uses the given algorithm.
+     *
+     * @param algorithm The algorithm
+     * @param costLimit The maximum edit distance explored by the Myers algorithm, {@link Integer#MAX_VALUE} for no limit
+     */
+    public InternedLineDiff(LineDiffAlgorithm algorithm, int costLimit) {
+        if (costLimit < 0) {
+            throw new IllegalArgumentException("The cost limit may not be negative: " + costLimit);
+        }
+        this.algorithm = algorithm;
+        this.costLimit = costLimit;
+    }
+
+    @Override
+    public List<Change> computeDiff(List<String> source, List<String> target, DiffAlgorithmListener progress) {
+        if (progress != null) {
+            progress.diffStart();
+        }
+        List<Change> changes;
+        if (algorithm == LineDiffAlgorithm.MYERS) {
+            changes = computeMyersDiff(source, target, progress);
+        } else {
+            LineInterner interner = new LineInterner(source.size() + target.size());
+            int[] original = interner.intern(source);
+            int[] revised = interner.intern(target);
+            if (algorithm == LineDiffAlgorithm.HISTOGRAM) {
+                changes = IntHistogramDiff.computeDiff(original, revised, interner.size(), costLimit);
+            } else {
+                changes = IntPatienceDiff.computeDiff(original, revised, interner.size(), costLimit);
+            }
+        }
+        if (progress != null) {
+            progress.diffEnd();
+        }
+        return changes;
+    }
+
+    private List<Change> computeMyersDiff(List<String> source, List<String> target, DiffAlgorithmListener progress) {
+        int n = source.size();
+        int m = target.size();
+        int max = n + m + 1;
+        MyersTrace trace = new MyersTrace(Math.min(max, costLimit));
+        // Past this edit distance the string comparisons of the failed attempts to extend a snake outweigh interning
+        int stringDepth = (int) Math.min(Math.min(max, costLimit + 1L), (int) Math.sqrt(2.0 * max) + 1);
+        int[] previous = null;
+        for (int d = 0; d < stringDepth; d++) {
+            if (progress != null) {
+                progress.diffStep(d, max);
+            }
+            int[] current = trace.nextRow();
+            for (int k = -d, index = 0; k <= d; k += 2, index++) {
+                int x = MyersTrace.startX(previous, d, k, index);
+                int y = x - k;
+                while (x < n && y < m && source.get(x).equals(target.get(y))) {
+                    x++;
+                    y++;
+                }
+                current[index] = x;
+                if (x >= n && y >= m) {
+                    return trace.buildChanges(k, x);
+                }
+            }
+            previous = current;
+        }
+        LineInterner interner = new LineInterner(n + m);
+        int[] original = interner.intern(source);
+        int[] revised = interner.intern(target);
+        List<Change> changes = IntMyersDiff.continueDiff(trace, original, 0, n, revised, 0, m, costLimit, progress);
+        if (changes == null) {
+            return IntMyersDiff.replaceRange(original, 0, n, revised, 0, m);
+        }
+        return changes;
+    }
+}
@@ -0,0 +1,27 @@
+package de.geolykt.starloader.bcdiff.diff;
+
+/**
+ * The algorithms that can be used to diff two listings line by line.
+ *
+ * @see InternedLineDiff
+ */
+public enum LineDiffAlgorithm {
+
+    /**
+     * The greedy Myers diff, which finds the shortest edit script. It needs O(ND) time, which becomes slow
+     * if large parts of the listings differ, for example because the blocks of a large method were reordered.
+     */
+    MYERS,
+
+    /**
+     * The histogram diff as known from git. It repeatedly splits the listings at the longest run of common lines
+     * that occur the fewest times and only runs the Myers diff on the remaining regions without any such lines.
+     */
+    HISTOGRAM,
+
+    /**
+     * The patience diff. It splits the listings at the longest increasing sequence of lines that occur exactly once
+     * in either listing and only runs the Myers diff on the remaining regions without any unique lines.
+     */
+    PATIENCE;
+}
@@ -0,0 +1,117 @@
+package de.geolykt.starloader.bcdiff.diff;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Assigns every distinct line an int ID so that listings can be compared by comparing ints
+ * instead of comparing strings. Equal lines get the same ID, regardless of the listing they were obtained from.
+ */
+public final class LineInterner {
+
+    private String[] lines;
+    private int[] slots;
+    private int size;
+
+    public LineInterner() {
+        this(256);
+    }
+
+    /**
+     * Creates an interner that is sized to hold the given amount of distinct lines without growing.
+     *
+     * @param expectedLines The expected amount of distinct lines
+     */
+    public LineInterner(int expectedLines) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedLines) * 2 - 1) << 1;
+        this.slots = new int[capacity];
+        Arrays.fill(slots, -1);
+        this.lines = new String[capacity >> 1];
+    }
+
+    /**
+     * Obtains the line an ID was assigned to.
+     *
+     * @param id The ID
+     * @return The line
+     */
+    public String getLine(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("Unknown line ID: " + id);
+        }
+        return lines[id];
+    }
+
+    private void grow() {
+        int[] newSlots = new int[slots.length << 1];
+        Arrays.fill(newSlots, -1);
+        int mask = newSlots.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = mix(lines[id].hashCode()) & mask;
+            while (newSlots[slot] != -1) {
+                slot = (slot + 1) & mask;
+            }
+            newSlots[slot] = id;
+        }
+        slots = newSlots;
+        lines = Arrays.copyOf(lines, newSlots.length >> 1);
+    }
+
+    /**
+     * Obtains the ID of a line, assigning it a new ID if the line was not seen before.
+     *
+     * @param line The line
+     * @return The ID of the line
+     */
+    public int intern(String line) {
+        int mask = slots.length - 1;
+        int slot = mix(line.hashCode()) & mask;
+        while (true) {
+            int id = slots[slot];
+            if (id == -1) {
+                break;
+            }
+            if (lines[id].equals(line)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        int id = size++;
+        lines[id] = line;
+        slots[slot] = id;
+        if (size == lines.length) {
+            grow();
+        }
+        return id;
+    }
+
+    /**
+     * Interns every line of a listing.
+     *
+     * @param listing The listing
+     * @return The IDs of the lines, in the order of the listing
+     */
+    public int[] intern(List<String> listing) {
+        int[] ids = new int[listing.size()];
+        int i = 0;
+        for (String line : listing) {
+            ids[i++] = intern(line);
+        }
+        return ids;
+    }
+
+    private static int mix(int hash) {
+        // Spread the bits as lines often only differ in their last characters
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Obtains the amount of distinct lines that were interned so far.
+     *
+     * @return The amount of distinct lines
+     */
+    public int size() {
+        return size;
+    }
+}
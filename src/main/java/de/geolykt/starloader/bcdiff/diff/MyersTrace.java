@@ -0,0 +1,125 @@
+package de.geolykt.starloader.bcdiff.diff;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.github.difflib.algorithm.Change;
+import com.github.difflib.patch.DeltaType;
+
+/**
+ * Records the furthest reaching points of the greedy Myers diff for every edit distance and recovers the changes from them.
+ * The rows do not depend on how the lines are compared, which allows a search to start out by comparing strings
+ * and to continue by comparing line IDs.
+ */
+final class MyersTrace {
+
+    private int[][] rows;
+    private int depth;
+
+    MyersTrace(int maxDepth) {
+        this.rows = new int[Math.max(1, Math.min(maxDepth, 64))][];
+    }
+
+    /**
+     * Obtains the x coordinate the path on diagonal k of edit distance d starts at, before following the snake.
+     * The paths are chosen in the same way as {@link com.github.difflib.algorithm.myers.MeyersDiff} does.
+     *
+     * @param previous The row of edit distance d - 1, or null if d is 0
+     * @param d The edit distance
+     * @param k The diagonal
+     * @param index The index of the diagonal within the row of edit distance d
+     * @return The x coordinate
+     */
+    static int startX(int[] previous, int d, int k, int index) {
+        if (d == 0) {
+            return 0;
+        } else if (isInsertion(previous, d, k, index)) {
+            return previous[index];
+        } else {
+            return previous[index - 1] + 1;
+        }
+    }
+
+    private static boolean isInsertion(int[] previous, int d, int k, int index) {
+        return k == -d || (k != d && previous[index - 1] < previous[index]);
+    }
+
+    List<Change> buildChanges(int k, int x) {
+        List<Change> changes = new ArrayList<>();
+        int d = depth - 1;
+        int y = x - k;
+        // The end of the edit run that is currently being walked back over, if any
+        int runEndX = -1;
+        int runEndY = -1;
+        for (; d > 0; d--) {
+            int[] previous = rows[d - 1];
+            int index = (k + d) / 2;
+            boolean insertion = isInsertion(previous, d, k, index);
+            int startX = insertion ? previous[index] : previous[index - 1] + 1;
+            int previousK = insertion ? k + 1 : k - 1;
+            if (startX != x && runEndX != -1) {
+                // The snake ends the edit run that follows it
+                changes.add(createChange(x, y, runEndX, runEndY));
+                runEndX = -1;
+            }
+            if (runEndX == -1) {
+                runEndX = startX;
+                runEndY = startX - k;
+            }
+            k = previousK;
+            x = previous[(k + d - 1) / 2];
+            y = x - k;
+        }
+        if (runEndX != -1) {
+            changes.add(createChange(x, y, runEndX, runEndY));
+        }
+        Collections.reverse(changes);
+        return changes;
+    }
+
+    static Change createChange(int startX, int startY, int endX, int endY) {
+        DeltaType type;
+        if (startX == endX) {
+            type = DeltaType.INSERT;
+        } else if (startY == endY) {
+            type = DeltaType.DELETE;
+        } else {
+            type = DeltaType.CHANGE;
+        }
+        return new Change(type, startX, endX, startY, endY);
+    }
+
+    /**
+     * Obtains the amount of recorded rows, which is the edit distance of the next row.
+     *
+     * @return The amount of rows
+     */
+    int depth() {
+        return depth;
+    }
+
+    /**
+     * Obtains the row of the previous edit distance.
+     *
+     * @return The last row, or null if no row was recorded yet
+     */
+    int[] lastRow() {
+        return depth == 0 ? null : rows[depth - 1];
+    }
+
+    /**
+     * Allocates the row for the next edit distance.
+     *
+     * @return The row, which has room for the x coordinates of depth() + 1 diagonals
+     */
+    int[] nextRow() {
+        if (depth == rows.length) {
+            rows = Arrays.copyOf(rows, depth * 2);
+        }
+        int[] row = new int[depth + 1];
+        rows[depth++] = row;
+        return row;
+    }
+}
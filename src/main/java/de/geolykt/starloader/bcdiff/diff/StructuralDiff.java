@@ -0,0 +1,212 @@
+package de.geolykt.starloader.bcdiff.diff;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.github.difflib.algorithm.Change;
+import com.github.difflib.algorithm.DiffAlgorithmI;
+import com.github.difflib.patch.AbstractDelta;
+import com.github.difflib.patch.DeltaType;
+import com.github.difflib.patch.Patch;
+
+import de.geolykt.starloader.bcdiff.assembler.DefHeader;
+
+/**
+ * Computes the difference between two bytecode listings member by member instead of line by line.
+ *
+ * <p>Both listings are split into blocks, where every method and field (from the ".METHOD" or ".FIELD" line up to and including
+ * the ".END" line) is a single block and every other line is a block of its own. The blocks are then matched by their
+ * name and descriptor. Matched blocks with identical contents are skipped entirely and the line diff is only run
+ * within blocks that changed or could not be matched. As most members usually do not change between two versions of
+ * a class, this is much faster on large classes than running the line diff over the entire listing.
+ *
+ * <p>The resulting patch is a regular line-based patch over the entire listing and can be applied like any other patch.
+ */
+public class StructuralDiff {
+
+    /**
+     * A contiguous range of lines within a listing that forms a member or a single line outside of a member.
+     */
+    private static class Block {
+        final int start;
+        final int end;
+        final String key;
+        final int hash;
+
+        Block(List<String> listing, int start, int end, String key) {
+            this.start = start;
+            this.end = end;
+            this.key = key;
+            this.hash = listing.subList(start, end).hashCode();
+        }
+    }
+
+    private static String getMemberKey(List<String> listing, int start, int end) {
+        boolean method = listing.get(start).equals(".METHOD");
+        for (int i = start + 1; i < end; i++) {
+            String line = listing.get(i);
+            if (line.startsWith("    DEFINE ")) {
+                try {
+                    DefHeader header;
+                    if (method) {
+                        header = DefHeader.parseMethodDef(line.substring(4));
+                    } else {
+                        header = DefHeader.parseFieldDef(line.substring(4));
+                    }
+                    return getMemberKey(method, header.getName(), header.getDesc());
+                } catch (RuntimeException e) {
+                    // Fall back to matching by the entire definition
+                    return line;
+                }
+            }
+        }
+        return listing.get(start);
+    }
+
+    /**
+     * Obtains the key under which a member is stored in the map returned by {@link #getMembers(List)}.
+     *
+     * @param method True if the member is a method, false if it is a field
+     * @param name The name of the member
+     * @param desc The descriptor of the member
+     * @return The key of the member
+     */
+    public static String getMemberKey(boolean method, String name, String desc) {
+        return (method ? "M " : "F ") + name + ' ' + desc;
+    }
+
+    /**
+     * Splits a listing into the lines of its methods and fields.
+     *
+     * @param listing The listing
+     * @return The lines of every member, from the ".METHOD" or ".FIELD" line up to and including the ".END" line,
+     * keyed by {@link #getMemberKey(boolean, String, String)}
+     */
+    public static Map<String, List<String>> getMembers(List<String> listing) {
+        Map<String, List<String>> members = new HashMap<>();
+        for (Block block : split(listing)) {
+            String first = listing.get(block.start);
+            if (first.equals(".METHOD") || first.equals(".FIELD")) {
+                members.put(block.key, listing.subList(block.start, block.end));
+            }
+        }
+        return members;
+    }
+
+    private static List<Block> split(List<String> listing) {
+        List<Block> blocks = new ArrayList<>();
+        int size = listing.size();
+        for (int i = 0; i < size; i++) {
+            String line = listing.get(i);
+            if (line.equals(".METHOD") || line.equals(".FIELD")) {
+                int end = i + 1;
+                while (end < size && !listing.get(end).equals(".END")) {
+                    end++;
+                }
+                end = Math.min(end + 1, size);
+                blocks.add(new Block(listing, i, end, getMemberKey(listing, i, end)));
+                i = end - 1;
+            } else {
+                blocks.add(new Block(listing, i, i + 1, line));
+            }
+        }
+        return blocks;
+    }
+
+    private final DiffAlgorithmI<String> lineDiff;
+
+    /**
+     * Creates a structural diff that uses the {@link InternedLineDiff} to match members and for the line diff within changed members.
+     */
+    public StructuralDiff() {
+        this(new InternedLineDiff());
+    }
+
+    /**
+     * Creates a structural diff that uses the given algorithm to match members and for the line diff within changed members.
+     *
+     * @param lineDiff The line diff algorithm
+     */
+    public StructuralDiff(DiffAlgorithmI<String> lineDiff) {
+        this.lineDiff = lineDiff;
+    }
+
+    /**
+     * Computes the patch that transforms the original listing into the revised listing.
+     *
+     * @param original The original listing
+     * @param revised The revised listing
+     * @return The patch
+     */
+    public Patch<String> diff(List<String> original, List<String> revised) {
+        List<Block> originalBlocks = split(original);
+        List<Block> revisedBlocks = split(revised);
+        List<String> originalKeys = new ArrayList<>(originalBlocks.size());
+        for (Block block : originalBlocks) {
+            originalKeys.add(block.key);
+        }
+        List<String> revisedKeys = new ArrayList<>(revisedBlocks.size());
+        for (Block block : revisedBlocks) {
+            revisedKeys.add(block.key);
+        }
+
+        List<Change> changes = new ArrayList<>();
+        int originalBlock = 0;
+        int revisedBlock = 0;
+        for (AbstractDelta<String> keyDelta : Patch.generate(originalKeys, revisedKeys, lineDiff.computeDiff(originalKeys, revisedKeys, null)).getDeltas()) {
+            // Blocks before the delta were matched by their key
+            int deltaStart = keyDelta.getSource().getPosition();
+            while (originalBlock < deltaStart) {
+                diffMatched(original, revised, originalBlocks.get(originalBlock++), revisedBlocks.get(revisedBlock++), changes);
+            }
+            // Blocks within the delta could not be matched, so they are diffed as a whole
+            int originalEnd = originalBlock + keyDelta.getSource().size();
+            int revisedEnd = revisedBlock + keyDelta.getTarget().size();
+            int originalStart = originalBlock == originalEnd ? startOf(originalBlocks, originalBlock, original.size()) : originalBlocks.get(originalBlock).start;
+            int revisedStart = revisedBlock == revisedEnd ? startOf(revisedBlocks, revisedBlock, revised.size()) : revisedBlocks.get(revisedBlock).start;
+            int originalStop = originalBlock == originalEnd ? originalStart : originalBlocks.get(originalEnd - 1).end;
+            int revisedStop = revisedBlock == revisedEnd ? revisedStart : revisedBlocks.get(revisedEnd - 1).end;
+            diffRange(original, originalStart, originalStop, revised, revisedStart, revisedStop, changes);
+            originalBlock = originalEnd;
+            revisedBlock = revisedEnd;
+        }
+        while (originalBlock < originalBlocks.size()) {
+            diffMatched(original, revised, originalBlocks.get(originalBlock++), revisedBlocks.get(revisedBlock++), changes);
+        }
+        return Patch.generate(original, revised, changes);
+    }
+
+    private void diffMatched(List<String> original, List<String> revised, Block originalBlock, Block revisedBlock, List<Change> changes) {
+        if (originalBlock.hash == revisedBlock.hash
+                && original.subList(originalBlock.start, originalBlock.end).equals(revised.subList(revisedBlock.start, revisedBlock.end))) {
+            return;
+        }
+        diffRange(original, originalBlock.start, originalBlock.end, revised, revisedBlock.start, revisedBlock.end, changes);
+    }
+
+    private void diffRange(List<String> original, int originalStart, int originalEnd, List<String> revised, int revisedStart, int revisedEnd, List<Change> changes) {
+        if (originalStart == originalEnd && revisedStart == revisedEnd) {
+            return;
+        } else if (originalStart == originalEnd) {
+            changes.add(new Change(DeltaType.INSERT, originalStart, originalEnd, revisedStart, revisedEnd));
+            return;
+        } else if (revisedStart == revisedEnd) {
+            changes.add(new Change(DeltaType.DELETE, originalStart, originalEnd, revisedStart, revisedEnd));
+            return;
+        }
+        List<Change> rangeChanges = lineDiff.computeDiff(original.subList(originalStart, originalEnd), revised.subList(revisedStart, revisedEnd), null);
+        for (Change change : rangeChanges) {
+            changes.add(new Change(change.deltaType, change.startOriginal + originalStart, change.endOriginal + originalStart,
+                    change.startRevised + revisedStart, change.endRevised + revisedStart));
+        }
+    }
+
+    private static int startOf(List<Block> blocks, int index, int listingSize) {
+        if (index == blocks.size()) {
+            return listingSize;
+        }
+        return blocks.get(index).start;
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * Package for the algorithms that compute the differences between two bytecode listings.
+ */
+package de.geolykt.starloader.bcdiff.diff;
@@ -7,42 +7,65 @@ import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.FieldVisitor;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
-import org.objectweb.asm.tree.MethodNode;
 
 public class BytecodeGeneratorVisitor extends ClassVisitor {
 
-    protected final List<String> out;
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    protected final LineSink out;
     private final StringBuilder sharedBuilder = new StringBuilder();
 
     public BytecodeGeneratorVisitor(List<String> out) {
+        this(LineSink.of(out));
+    }
+
+    /**
+     * Creates a visitor that passes the lines of the listing to the sink as the class is visited.
+     *
+     * @param out The sink
+     */
+    public BytecodeGeneratorVisitor(LineSink out) {
         super(Opcodes.ASM9);
         this.out = out;
     }
 
+    private static void appendHex(StringBuilder builder, int value) {
+        for (int shift = 28; shift >= 0; shift -= 4) {
+            builder.append(HEX_DIGITS[(value >>> shift) & 0xF]);
+        }
+    }
+
     @Override
     public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
         super.visit(version, access, name, signature, superName, interfaces);
-        if (version < 46) {
-            out.add(String.format(".VERSION %d", version));
-        } else {
-            out.add(String.format(".VERSION %d // Java %d", version, version - 44));
+        sharedBuilder.setLength(0);
+        sharedBuilder.append(".VERSION ");
+        sharedBuilder.append(version);
+        if (version >= 46) {
+            sharedBuilder.append(" // Java ");
+            sharedBuilder.append(version - 44);
         }
-        out.add(String.format(".ACCESS 0x%08X", access));
+        out.accept(sharedBuilder);
+
+        sharedBuilder.setLength(0);
+        sharedBuilder.append(".ACCESS 0x");
+        appendHex(sharedBuilder, access);
+        out.accept(sharedBuilder);
 
         sharedBuilder.setLength(0);
         sharedBuilder.append(".NAME ");
         sharedBuilder.append(name);
-        out.add(sharedBuilder.toString());
+        out.accept(sharedBuilder);
 
         sharedBuilder.setLength(0);
         sharedBuilder.append(".SIGNATURE ");
         sharedBuilder.append(signature);
-        out.add(sharedBuilder.toString());
+        out.accept(sharedBuilder);
 
         sharedBuilder.setLength(0);
         sharedBuilder.append(".SUPER ");
         sharedBuilder.append(superName);
-        out.add(sharedBuilder.toString());
+        out.accept(sharedBuilder);
 
         if (interfaces.length != 0) {
             sharedBuilder.setLength(0);
@@ -51,7 +74,7 @@ public class BytecodeGeneratorVisitor extends ClassVisitor {
                 sharedBuilder.append(' ');
                 sharedBuilder.append(str);
             }
-            out.add(sharedBuilder.toString());
+            out.accept(sharedBuilder);
         }
     }
 
@@ -63,42 +86,37 @@ public class BytecodeGeneratorVisitor extends ClassVisitor {
 
     @Override
     public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
-        return new FieldDisassembler(api, access, name, descriptor, signature, value, (text) -> {
-            out.add(".FIELD");
-            String[] lines = text.split("\\n");
-            for (String line : lines) {
-                sharedBuilder.setLength(0);
-                sharedBuilder.append("    ");
-                sharedBuilder.append(line);
-                out.add(sharedBuilder.toString());
-            }
-            out.add(".END");
-        });
+        return new FieldDisassembler(api, access, name, descriptor, signature, value, out, sharedBuilder);
     }
 
     @Override
     public void visitInnerClass(String name, String outerName, String innerName, int access) {
-        out.add(String.format(".INNERCLASS %08X %s %s %s", access, name, innerName, outerName));
+        sharedBuilder.setLength(0);
+        sharedBuilder.append(".INNERCLASS ");
+        appendHex(sharedBuilder, access);
+        sharedBuilder.append(' ').append(name).append(' ').append(innerName).append(' ').append(outerName);
+        out.accept(sharedBuilder);
         super.visitInnerClass(name, outerName, innerName, access);
     }
 
     @Override
     public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
-        SLMethodDisassemblyCallback callback = new SLMethodDisassemblyCallback();
-        MethodNode disassembler = new MethodDisassembler(api, access, name, descriptor, signature, exceptions, callback);
-        callback.setup(disassembler, out, sharedBuilder);
-        return disassembler;
+        return new MethodDisassembler(api, access, name, descriptor, signature, exceptions, out, sharedBuilder);
     }
 
     @Override
     public void visitOuterClass(String owner, String name, String descriptor) {
-        out.add(String.format(".OUTERCLASS %s %s %s", owner, name ,descriptor));
+        sharedBuilder.setLength(0);
+        sharedBuilder.append(".OUTERCLASS ").append(owner).append(' ').append(name).append(' ').append(descriptor);
+        out.accept(sharedBuilder);
         super.visitOuterClass(owner, name, descriptor);
     }
 
     @Override
     public void visitSource(String source, String debug) {
-        out.add(String.format(".SOURCE %s %s", source, debug));
+        sharedBuilder.setLength(0);
+        sharedBuilder.append(".SOURCE ").append(source).append(' ').append(debug);
+        out.accept(sharedBuilder);
         super.visitSource(source, debug);
     }
 }
@@ -0,0 +1,106 @@
+package de.geolykt.starloader.bcdiff.disassembler;
+
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.util.Printer;
+
+/**
+ * Formats constants and handles in the way the assembler expects them.
+ */
+final class ConstantFormatter {
+
+    private ConstantFormatter() {
+    }
+
+    /**
+     * Appends a constant, which may be a string, a boxed primitive, a {@link Type} or a {@link Handle}.
+     * Longs, floats and doubles are suffixed by 'L', 'F' and 'D', strings are quoted and escaped.
+     *
+     * @param builder The builder to append the constant to
+     * @param value The constant
+     */
+    static void appendConstant(StringBuilder builder, Object value) {
+        if (value instanceof String) {
+            builder.append('"');
+            appendEscaped(builder, (String) value);
+            builder.append('"');
+        } else if (value instanceof Long) {
+            builder.append(((Long) value).longValue()).append('L');
+        } else if (value instanceof Float) {
+            builder.append(value).append('F');
+        } else if (value instanceof Double) {
+            builder.append(value).append('D');
+        } else if (value instanceof Type) {
+            builder.append(((Type) value).getDescriptor());
+        } else if (value instanceof Handle) {
+            appendHandle(builder, (Handle) value);
+        } else {
+            builder.append(value);
+        }
+    }
+
+    /**
+     * Escapes a string so that it fits on a single line. All characters outside of printable ASCII
+     * are written as unicode escapes.
+     *
+     * @param builder The builder to append the escaped string to
+     * @param string The string
+     */
+    static void appendEscaped(StringBuilder builder, String string) {
+        int length = string.length();
+        for (int i = 0; i < length; i++) {
+            char c = string.charAt(i);
+            switch (c) {
+            case '\n':
+                builder.append("\\n");
+                break;
+            case '\t':
+                builder.append("\\t");
+                break;
+            case '\r':
+                builder.append("\\r");
+                break;
+            case '\b':
+                builder.append("\\b");
+                break;
+            case '\f':
+                builder.append("\\f");
+                break;
+            case '"':
+                builder.append("\\\"");
+                break;
+            case '\\':
+                builder.append("\\\\");
+                break;
+            default:
+                if (c < 0x20 || c >= 0x7F) {
+                    builder.append("\\u");
+                    String hex = Integer.toHexString(c).toUpperCase();
+                    for (int pad = hex.length(); pad < 4; pad++) {
+                        builder.append('0');
+                    }
+                    builder.append(hex);
+                } else {
+                    builder.append(c);
+                }
+            }
+        }
+    }
+
+    /**
+     * Appends a handle in the form of "handle[TAG owner.name(desc)]".
+     *
+     * @param builder The builder to append the handle to
+     * @param handle The handle
+     */
+    static void appendHandle(StringBuilder builder, Handle handle) {
+        builder.append("handle[");
+        builder.append(Printer.HANDLE_TAG[handle.getTag()]);
+        builder.append(' ');
+        builder.append(handle.getOwner());
+        builder.append('.');
+        builder.append(handle.getName());
+        builder.append(handle.getDesc());
+        builder.append(']');
+    }
+}
@@ -0,0 +1,203 @@
+package de.geolykt.starloader.bcdiff.disassembler;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A persistent cache that maps the contents of class files to the bytecode listing generated by
+ * {@link BytecodeGeneratorVisitor}. Every listing is stored as a file within the cache directory whose
+ * name is derived from the hash of the class file and the version of the disassembler.
+ *
+ * <p>The total size of the cache directory is bounded. If it exceeds its maximum size, the least recently used
+ * listings are removed. The last modification time of the files is used to track when a listing was last used,
+ * so the usage order persists across runs. Multiple instances of the cache (even within different processes)
+ * may safely share a directory.
+ */
+public class DisassemblyCache {
+
+    /**
+     * The version of the disassembly format. Needs to be incremented whenever the output of the
+     * {@link BytecodeGeneratorVisitor} changes so that outdated listings are no longer used.
+     */
+    private static final String FORMAT_VERSION = "2";
+
+    private static final String FILE_SUFFIX = ".bcdis";
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final Path directory;
+
+    /**
+     * The files within the cache and their size, ordered from the least recently used to the most recently used file.
+     */
+    private final LinkedHashMap<Path, Long> files = new LinkedHashMap<>(16, 0.75F, true);
+
+    private final long maxSize;
+
+    private long size;
+
+    private final byte[] versionKey;
+
+    /**
+     * Opens a cache directory, creating it if it does not exist.
+     *
+     * @param directory The directory to store the listings in
+     * @param maxSize The maximum size of all listings in bytes
+     * @throws IOException If the directory could not be created or read
+     */
+    public DisassemblyCache(Path directory, long maxSize) throws IOException {
+        this.directory = directory;
+        this.maxSize = maxSize;
+        String implementationVersion = DisassemblyCache.class.getPackage().getImplementationVersion();
+        this.versionKey = (FORMAT_VERSION + '/' + implementationVersion + '\n').getBytes(StandardCharsets.UTF_8);
+        Files.createDirectories(directory);
+
+        List<Path> existing = new ArrayList<>();
+        Map<Path, FileTime> lastUse = new LinkedHashMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + FILE_SUFFIX)) {
+            for (Path file : stream) {
+                existing.add(file);
+                lastUse.put(file, Files.getLastModifiedTime(file));
+            }
+        }
+        existing.sort((a, b) -> lastUse.get(a).compareTo(lastUse.get(b)));
+        for (Path file : existing) {
+            long fileSize = Files.size(file);
+            files.put(file, fileSize);
+            size += fileSize;
+        }
+        evict();
+    }
+
+    /**
+     * Removes the least recently used listings until the cache is no larger than its maximum size.
+     * The caller must hold the lock on this object or be the constructor.
+     */
+    private void evict() {
+        Iterator<Map.Entry<Path, Long>> it = files.entrySet().iterator();
+        while (size > maxSize && it.hasNext()) {
+            Map.Entry<Path, Long> eldest = it.next();
+            it.remove();
+            size -= eldest.getValue();
+            try {
+                Files.deleteIfExists(eldest.getKey());
+            } catch (IOException ignored) {
+                // Probably in use by another process, it will be evicted in a later run
+            }
+        }
+    }
+
+    /**
+     * Obtains the cached listing of a class file.
+     *
+     * @param classFile The contents of the class file
+     * @return The listing, or null if the class file is not cached
+     */
+    public List<String> get(byte[] classFile) {
+        Path file = getFile(classFile);
+        synchronized (this) {
+            if (files.get(file) == null) {
+                return null;
+            }
+        }
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                lines.add(line);
+            }
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (NoSuchFileException e) {
+            // Removed by another process
+            synchronized (this) {
+                Long fileSize = files.remove(file);
+                if (fileSize != null) {
+                    size -= fileSize;
+                }
+            }
+            return null;
+        } catch (IOException e) {
+            return null;
+        }
+        return lines;
+    }
+
+    private Path getFile(byte[] classFile) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required to be supported by every JVM", e);
+        }
+        digest.update(versionKey);
+        byte[] hash = digest.digest(classFile);
+        char[] name = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            name[i * 2] = HEX_DIGITS[(hash[i] >> 4) & 0x0F];
+            name[i * 2 + 1] = HEX_DIGITS[hash[i] & 0x0F];
+        }
+        return directory.resolve(new String(name) + FILE_SUFFIX);
+    }
+
+    /**
+     * Stores the listing of a class file, evicting the least recently used listings if needed.
+     * Failures to write the listing are ignored as the cache is only an optimisation.
+     *
+     * @param classFile The contents of the class file
+     * @param listing The listing of the class file
+     */
+    public void put(byte[] classFile, List<String> listing) {
+        Path file = getFile(classFile);
+        synchronized (this) {
+            if (files.containsKey(file)) {
+                return;
+            }
+        }
+        Path temporary = null;
+        try {
+            temporary = Files.createTempFile(directory, "listing", ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+                for (String line : listing) {
+                    writer.write(line);
+                    writer.write('\n');
+                }
+            }
+            try {
+                Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            long fileSize = Files.size(file);
+            synchronized (this) {
+                Long previous = files.put(file, fileSize);
+                if (previous != null) {
+                    size -= previous;
+                }
+                size += fileSize;
+                evict();
+            }
+        } catch (IOException e) {
+            if (temporary != null) {
+                try {
+                    Files.deleteIfExists(temporary);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+}
@@ -1,31 +1,63 @@
 package de.geolykt.starloader.bcdiff.disassembler;
 
-import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.FieldVisitor;
 
-import me.coley.recaf.parse.bytecode.Disassembler;
+/**
+ * A field visitor that writes the lines of the field, enclosed by ".FIELD" and ".END", to the output
+ * once {@link FieldVisitor#visitEnd()} is called.
+ */
+public class FieldDisassembler extends FieldVisitor {
 
-public class FieldDisassembler extends FieldNode {
+    private static final String[] ACCESS_NAMES = {"public", "private", "protected", "static", "final", null, "volatile", "transient",
+            null, null, null, null, "synthetic", null, "enum"};
 
-    @FunctionalInterface
-    public static interface FieldDisassemblyCallback {
-        public void run(String disassembledText);
-    }
-
-    protected FieldDisassemblyCallback callback;
+    protected final int access;
+    protected final String name;
+    protected final String descriptor;
+    protected final String signature;
+    protected final Object value;
+    protected final LineSink out;
+    private final StringBuilder sharedBuilder;
 
     public FieldDisassembler(int api, int access, String name, String descriptor, String signature, Object value,
-            FieldDisassemblyCallback callback) {
-        super(api, access, name, descriptor, signature, value);
-        this.callback = callback;
-    }
-
-    protected void disassemble() {
-        callback.run(new Disassembler().disassemble(this));
+            LineSink out, StringBuilder sharedBuilder) {
+        super(api);
+        this.access = access;
+        this.name = name;
+        this.descriptor = descriptor;
+        this.signature = signature;
+        this.value = value;
+        this.out = out;
+        this.sharedBuilder = sharedBuilder;
     }
 
     @Override
     public void visitEnd() {
         super.visitEnd();
-        disassemble();
+        StringBuilder builder = sharedBuilder;
+        out.accept(".FIELD");
+
+        builder.setLength(0);
+        builder.append("    DEFINE ");
+        for (int i = 0; i < ACCESS_NAMES.length; i++) {
+            if (ACCESS_NAMES[i] != null && (access & (1 << i)) != 0) {
+                builder.append(ACCESS_NAMES[i]).append(' ');
+            }
+        }
+        builder.append(descriptor).append(' ').append(name);
+        out.accept(builder);
+
+        if (signature != null) {
+            builder.setLength(0);
+            builder.append("    SIGNATURE ").append(signature);
+            out.accept(builder);
+        }
+        if (value != null) {
+            builder.setLength(0);
+            builder.append("    VALUE ");
+            ConstantFormatter.appendConstant(builder, value);
+            out.accept(builder);
+        }
+        out.accept(".END");
     }
 }
@@ -0,0 +1,79 @@
+package de.geolykt.starloader.bcdiff.disassembler;
+
+import java.security.MessageDigest;
+
+/**
+ * A {@link LineSink} that feeds the UTF-8 encoding of every line, terminated by '\n', into a digest.
+ * This fingerprints a listing without keeping any of its lines, so two classes can be compared by their listing
+ * at the cost of a single hash each. The hash is equal to the hash of the listing as written by the {@link WriterLineSink}
+ * with an UTF-8 encoding.
+ */
+public class HashingLineSink implements LineSink {
+
+    private final MessageDigest digest;
+    private final byte[] buffer = new byte[1024];
+    private int bufferSize;
+    private long lineCount;
+
+    public HashingLineSink(MessageDigest digest) {
+        this.digest = digest;
+    }
+
+    @Override
+    public void accept(CharSequence line) {
+        int length = line.length();
+        for (int i = 0; i < length; i++) {
+            char c = line.charAt(i);
+            if (c < 0x80) {
+                put(c);
+            } else if (c < 0x800) {
+                put(0xC0 | (c >> 6));
+                put(0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(line.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, line.charAt(++i));
+                put(0xF0 | (codePoint >> 18));
+                put(0x80 | ((codePoint >> 12) & 0x3F));
+                put(0x80 | ((codePoint >> 6) & 0x3F));
+                put(0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired surrogates are replaced in the same way String.getBytes does
+                put('?');
+            } else {
+                put(0xE0 | (c >> 12));
+                put(0x80 | ((c >> 6) & 0x3F));
+                put(0x80 | (c & 0x3F));
+            }
+        }
+        put('\n');
+        lineCount++;
+    }
+
+    private void put(int b) {
+        if (bufferSize == buffer.length) {
+            digest.update(buffer, 0, bufferSize);
+            bufferSize = 0;
+        }
+        buffer[bufferSize++] = (byte) b;
+    }
+
+    /**
+     * Completes the hash of all lines accepted so far and resets the sink.
+     *
+     * @return The hash
+     */
+    public byte[] digest() {
+        digest.update(buffer, 0, bufferSize);
+        bufferSize = 0;
+        lineCount = 0;
+        return digest.digest();
+    }
+
+    /**
+     * Obtains the amount of lines accepted since the sink was created or last reset.
+     *
+     * @return The amount of lines
+     */
+    public long getLineCount() {
+        return lineCount;
+    }
+}
@@ -0,0 +1,53 @@
+package de.geolykt.starloader.bcdiff.disassembler;
+
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.util.List;
+
+/**
+ * Receives the lines of a bytecode listing as they are produced by the {@link BytecodeGeneratorVisitor}.
+ * This allows the listing to be written to disk, hashed or otherwise processed without holding all of its lines in memory.
+ *
+ * <p>Lines are passed without a line terminator. The passed sequence is usually a reused buffer that is modified after
+ * the call, so implementations that keep the line need to copy it, for example through {@link CharSequence#toString()}.
+ */
+@FunctionalInterface
+public interface LineSink {
+
+    /**
+     * Creates a sink that adds all lines to a list.
+     *
+     * @param out The list
+     * @return The sink
+     */
+    public static LineSink of(List<String> out) {
+        return new ListLineSink(out);
+    }
+
+    /**
+     * Creates a sink that writes all lines to a writer, each terminated by '\n'.
+     *
+     * @param out The writer
+     * @return The sink
+     */
+    public static LineSink of(Writer out) {
+        return new WriterLineSink(out);
+    }
+
+    /**
+     * Creates a sink that only feeds the lines to a digest.
+     *
+     * @param digest The digest
+     * @return The sink
+     */
+    public static HashingLineSink hashing(MessageDigest digest) {
+        return new HashingLineSink(digest);
+    }
+
+    /**
+     * Accepts the next line of the listing.
+     *
+     * @param line The line, without line terminator
+     */
+    void accept(CharSequence line);
+}
@@ -0,0 +1,24 @@
+package de.geolykt.starloader.bcdiff.disassembler;
+
+import java.util.List;
+
+/**
+ * A {@link LineSink} that collects the lines in a list.
+ */
+public class ListLineSink implements LineSink {
+
+    protected final List<String> out;
+
+    public ListLineSink(List<String> out) {
+        this.out = out;
+    }
+
+    @Override
+    public void accept(CharSequence line) {
+        out.add(line.toString());
+    }
+
+    public List<String> getLines() {
+        return out;
+    }
+}
@@ -1,36 +1,116 @@
 package de.geolykt.starloader.bcdiff.disassembler;
 
+import java.util.HashMap;
+import java.util.Map;
+
+import org.objectweb.asm.Handle;
 import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.IincInsnNode;
+import org.objectweb.asm.tree.IntInsnNode;
+import org.objectweb.asm.tree.InvokeDynamicInsnNode;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.LineNumberNode;
+import org.objectweb.asm.tree.LocalVariableNode;
+import org.objectweb.asm.tree.LookupSwitchInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
 import org.objectweb.asm.tree.MethodNode;
-
-import me.coley.recaf.parse.bytecode.Disassembler;
+import org.objectweb.asm.tree.MultiANewArrayInsnNode;
+import org.objectweb.asm.tree.TableSwitchInsnNode;
+import org.objectweb.asm.tree.TryCatchBlockNode;
+import org.objectweb.asm.tree.TypeInsnNode;
+import org.objectweb.asm.tree.VarInsnNode;
+import org.objectweb.asm.util.Printer;
 
 /**
- * A method visitor that hijacks Recaf to disassemble the method into plaintext
- * once {@link MethodVisitor#visitEnd()} is called.
+ * A method visitor that writes the lines of the method, enclosed by ".METHOD" and ".END", to the output
+ * once {@link MethodVisitor#visitEnd()} is called. The method is buffered until then, as the names of
+ * labels and local variables are only known after the entire method was visited.
  */
 public class MethodDisassembler extends MethodNode {
 
-    @FunctionalInterface
-    public static interface MethodDisassemblyCallback {
-        public void run(String disassembledText);
-    }
+    private static final String[] ACCESS_NAMES = {"public", "private", "protected", "static", "final", "synchronized", "bridge", "varargs",
+            "native", null, "abstract", "strictfp", "synthetic"};
+
+    /**
+     * The array type descriptors, indexed by the operand of the NEWARRAY instruction.
+     */
+    private static final String ARRAY_TYPES = "????ZCFDBSIJ";
+
+    private static final String INDENT = "    ";
+
+    /**
+     * The bootstrap method of lambdas, which is declared once per method as the H_META alias.
+     */
+    private static final Handle METAFACTORY = new Handle(Opcodes.H_INVOKESTATIC, "java/lang/invoke/LambdaMetafactory", "metafactory",
+            "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;Ljava/lang/invoke/MethodType;"
+            + "Ljava/lang/invoke/MethodHandle;Ljava/lang/invoke/MethodType;)Ljava/lang/invoke/CallSite;", false);
 
-    protected MethodDisassemblyCallback callback;
+    protected final LineSink out;
+    private final StringBuilder sharedBuilder;
+    private final Map<LabelNode, String> labelNames = new HashMap<>();
+    private String[] localNames;
 
-    public MethodDisassembler(int api, int access, String name, String descriptor, String signature,  String[] exceptions,
-            MethodDisassemblyCallback callback) {
+    public MethodDisassembler(int api, int access, String name, String descriptor, String signature, String[] exceptions,
+            LineSink out, StringBuilder sharedBuilder) {
         super(api, access, name, descriptor, signature, exceptions);
-        this.callback = callback;
+        this.out = out;
+        this.sharedBuilder = sharedBuilder;
     }
 
-    protected MethodDisassembler(int api, MethodDisassemblyCallback callback) {
-        super(api);
-        this.callback = callback;
+    private static String createLabelName(int counter) {
+        if (counter > 25) {
+            if (counter > 675) {
+                int first = counter / 676;
+                int second = (counter % 676) / 26;
+                int third = counter % 26;
+                return String.valueOf(new char[] {(char) (('A' - 1) + first), (char) ('A' + second), (char) ('A' + third)});
+            } else {
+                int first = counter / 26;
+                int second = counter % 26;
+                return String.valueOf(new char[] {(char) (('A' - 1) + first), (char) ('A' + second)});
+            }
+        } else {
+            return String.valueOf((char) ('A' + counter));
+        }
     }
 
-    protected void disassemble() {
-        callback.run(new Disassembler().disassemble(this));
+    private static boolean isMetafactory(Handle handle) {
+        return handle.getTag() == METAFACTORY.getTag() && handle.getOwner().equals(METAFACTORY.getOwner())
+                && handle.getName().equals(METAFACTORY.getName()) && handle.getDesc().equals(METAFACTORY.getDesc());
+    }
+
+    private StringBuilder beginLine() {
+        StringBuilder builder = sharedBuilder;
+        builder.setLength(0);
+        builder.append(INDENT);
+        return builder;
+    }
+
+    private void endLine() {
+        out.accept(sharedBuilder);
+    }
+
+    /**
+     * Obtains the name of a local variable, which is the name of the first entry of the local variable table
+     * with the given index, or the index itself if there is no such entry.
+     *
+     * @param index The index of the local variable
+     * @return The name of the variable
+     */
+    protected String getLocalName(int index) {
+        if (index < localNames.length && localNames[index] != null) {
+            return localNames[index];
+        }
+        if (index == 0 && (access & Opcodes.ACC_STATIC) == 0) {
+            return "this";
+        }
+        return Integer.toString(index);
     }
 
     @Override
@@ -38,4 +118,209 @@ public class MethodDisassembler extends MethodNode {
         super.visitEnd();
         disassemble();
     }
+
+    protected void disassemble() {
+        out.accept(".METHOD");
+        String lastLabel = null;
+        for (AbstractInsnNode insn : instructions) {
+            if (insn instanceof LabelNode) {
+                lastLabel = createLabelName(labelNames.size());
+                labelNames.put((LabelNode) insn, lastLabel);
+            }
+        }
+
+        int localCount = 0;
+        if (localVariables != null) {
+            for (LocalVariableNode local : localVariables) {
+                localCount = Math.max(localCount, local.index + 1);
+            }
+        }
+        localNames = new String[localCount];
+        if (localVariables != null) {
+            for (LocalVariableNode local : localVariables) {
+                if (localNames[local.index] == null) {
+                    localNames[local.index] = local.name;
+                }
+                String end = labelNames.get(local.end);
+                sharedBuilder.setLength(0);
+                sharedBuilder.append(".METHODLVT ");
+                sharedBuilder.append(local.name);
+                sharedBuilder.append(' ');
+                sharedBuilder.append(local.desc);
+                sharedBuilder.append(' ');
+                sharedBuilder.append(local.index);
+                sharedBuilder.append(' ');
+                sharedBuilder.append(labelNames.get(local.start));
+                sharedBuilder.append(' ');
+                sharedBuilder.append(end == null ? lastLabel : end);
+                endLine();
+            }
+        }
+
+        disassembleHeader();
+        for (AbstractInsnNode insn : instructions) {
+            disassembleInstruction(insn);
+        }
+        out.accept(".END");
+    }
+
+    private void disassembleHeader() {
+        StringBuilder builder = beginLine();
+        builder.append("DEFINE ");
+        for (int i = 0; i < ACCESS_NAMES.length; i++) {
+            if (ACCESS_NAMES[i] != null && (access & (1 << i)) != 0) {
+                builder.append(ACCESS_NAMES[i]).append(' ');
+            }
+        }
+        builder.append(name).append('(');
+        int slot = (access & Opcodes.ACC_STATIC) == 0 ? 1 : 0;
+        Type[] args = Type.getArgumentTypes(desc);
+        for (int i = 0; i < args.length; i++) {
+            if (i != 0) {
+                builder.append(", ");
+            }
+            builder.append(args[i].getDescriptor()).append(' ').append(getLocalName(slot));
+            slot += args[i].getSize();
+        }
+        builder.append(')').append(Type.getReturnType(desc).getDescriptor());
+        endLine();
+
+        if (signature != null) {
+            beginLine().append("SIGNATURE ").append(signature);
+            endLine();
+        }
+        if (exceptions != null) {
+            for (String exception : exceptions) {
+                beginLine().append("THROWS ").append(exception);
+                endLine();
+            }
+        }
+        for (AbstractInsnNode insn : instructions) {
+            if (insn instanceof InvokeDynamicInsnNode && isMetafactory(((InvokeDynamicInsnNode) insn).bsm)) {
+                builder = beginLine().append("ALIAS H_META \"");
+                ConstantFormatter.appendHandle(builder, METAFACTORY);
+                builder.append('"');
+                endLine();
+                break;
+            }
+        }
+        if (tryCatchBlocks != null) {
+            for (TryCatchBlockNode block : tryCatchBlocks) {
+                beginLine().append("TRY ").append(labelNames.get(block.start))
+                    .append(' ').append(labelNames.get(block.end))
+                    .append(" CATCH(").append(block.type == null ? "*" : block.type)
+                    .append(") ").append(labelNames.get(block.handler));
+                endLine();
+            }
+        }
+    }
+
+    private void disassembleInstruction(AbstractInsnNode insn) {
+        StringBuilder builder;
+        switch (insn.getType()) {
+        case AbstractInsnNode.LABEL:
+            beginLine().append(labelNames.get(insn)).append(':');
+            break;
+        case AbstractInsnNode.LINE: {
+            LineNumberNode line = (LineNumberNode) insn;
+            beginLine().append("LINE ").append(labelNames.get(line.start)).append(' ').append(line.line);
+            break;
+        }
+        case AbstractInsnNode.FRAME:
+            return;
+        case AbstractInsnNode.INSN:
+            beginLine().append(Printer.OPCODES[insn.getOpcode()]);
+            break;
+        case AbstractInsnNode.INT_INSN: {
+            IntInsnNode intInsn = (IntInsnNode) insn;
+            builder = beginLine().append(Printer.OPCODES[insn.getOpcode()]).append(' ');
+            if (insn.getOpcode() == Opcodes.NEWARRAY) {
+                builder.append(ARRAY_TYPES.charAt(intInsn.operand));
+            } else {
+                builder.append(intInsn.operand);
+            }
+            break;
+        }
+        case AbstractInsnNode.VAR_INSN:
+            beginLine().append(Printer.OPCODES[insn.getOpcode()]).append(' ').append(getLocalName(((VarInsnNode) insn).var));
+            break;
+        case AbstractInsnNode.IINC_INSN: {
+            IincInsnNode iinc = (IincInsnNode) insn;
+            beginLine().append(Printer.OPCODES[insn.getOpcode()]).append(' ').append(getLocalName(iinc.var)).append(' ').append(iinc.incr);
+            break;
+        }
+        case AbstractInsnNode.TYPE_INSN:
+            beginLine().append(Printer.OPCODES[insn.getOpcode()]).append(' ').append(((TypeInsnNode) insn).desc);
+            break;
+        case AbstractInsnNode.FIELD_INSN: {
+            FieldInsnNode field = (FieldInsnNode) insn;
+            beginLine().append(Printer.OPCODES[insn.getOpcode()]).append(' ')
+                .append(field.owner).append('.').append(field.name).append(' ').append(field.desc);
+            break;
+        }
+        case AbstractInsnNode.METHOD_INSN: {
+            MethodInsnNode method = (MethodInsnNode) insn;
+            beginLine().append(Printer.OPCODES[insn.getOpcode()]).append(' ')
+                .append(method.owner).append('.').append(method.name).append(method.desc);
+            break;
+        }
+        case AbstractInsnNode.JUMP_INSN:
+            beginLine().append(Printer.OPCODES[insn.getOpcode()]).append(' ').append(labelNames.get(((JumpInsnNode) insn).label));
+            break;
+        case AbstractInsnNode.LDC_INSN:
+            builder = beginLine().append("LDC ");
+            ConstantFormatter.appendConstant(builder, ((LdcInsnNode) insn).cst);
+            break;
+        case AbstractInsnNode.MULTIANEWARRAY_INSN: {
+            MultiANewArrayInsnNode multiANewArray = (MultiANewArrayInsnNode) insn;
+            beginLine().append("MULTIANEWARRAY ").append(multiANewArray.desc).append(' ').append(multiANewArray.dims);
+            break;
+        }
+        case AbstractInsnNode.TABLESWITCH_INSN: {
+            TableSwitchInsnNode tableSwitch = (TableSwitchInsnNode) insn;
+            builder = beginLine().append("TABLESWITCH range[").append(tableSwitch.min).append(':').append(tableSwitch.max).append("] offsets[");
+            for (int i = 0; i < tableSwitch.labels.size(); i++) {
+                if (i != 0) {
+                    builder.append(", ");
+                }
+                builder.append(labelNames.get(tableSwitch.labels.get(i)));
+            }
+            builder.append("] default[").append(labelNames.get(tableSwitch.dflt)).append(']');
+            break;
+        }
+        case AbstractInsnNode.LOOKUPSWITCH_INSN: {
+            LookupSwitchInsnNode lookupSwitch = (LookupSwitchInsnNode) insn;
+            builder = beginLine().append("LOOKUPSWITCH mapping[");
+            for (int i = 0; i < lookupSwitch.keys.size(); i++) {
+                if (i != 0) {
+                    builder.append(", ");
+                }
+                builder.append(lookupSwitch.keys.get(i).intValue()).append('=').append(labelNames.get(lookupSwitch.labels.get(i)));
+            }
+            builder.append("] default[").append(labelNames.get(lookupSwitch.dflt)).append(']');
+            break;
+        }
+        case AbstractInsnNode.INVOKE_DYNAMIC_INSN: {
+            InvokeDynamicInsnNode indy = (InvokeDynamicInsnNode) insn;
+            builder = beginLine().append("INVOKEDYNAMIC ").append(indy.name).append(' ').append(indy.desc).append(' ');
+            if (isMetafactory(indy.bsm)) {
+                builder.append("${H_META}");
+            } else {
+                ConstantFormatter.appendHandle(builder, indy.bsm);
+            }
+            builder.append(" args[");
+            for (int i = 0; i < indy.bsmArgs.length; i++) {
+                if (i != 0) {
+                    builder.append(", ");
+                }
+                ConstantFormatter.appendConstant(builder, indy.bsmArgs[i]);
+            }
+            builder.append(']');
+            break;
+        }
+        default:
+            throw new IllegalStateException("Unsupported instruction type " + insn.getType() + " in method " + name + desc);
+        }
+        endLine();
+    }
 }
@@ -0,0 +1,28 @@
+package de.geolykt.starloader.bcdiff.disassembler;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * A {@link LineSink} that writes every line, terminated by '\n', to a writer.
+ * As visitors cannot throw checked exceptions, I/O errors are rethrown as {@link UncheckedIOException}.
+ * The writer is neither flushed nor closed by the sink.
+ */
+public class WriterLineSink implements LineSink {
+
+    protected final Writer out;
+
+    public WriterLineSink(Writer out) {
+        this.out = out;
+    }
+
+    @Override
+    public void accept(CharSequence line) {
+        try {
+            out.append(line).append('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
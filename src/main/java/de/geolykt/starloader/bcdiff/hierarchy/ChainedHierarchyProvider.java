@@ -0,0 +1,55 @@
+package de.geolykt.starloader.bcdiff.hierarchy;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * {@link HierarchyProvider} that queries multiple providers in order and returns the first match.
+ */
+public class ChainedHierarchyProvider implements HierarchyProvider {
+
+    private final List<HierarchyProvider> providers;
+
+    public ChainedHierarchyProvider(HierarchyProvider... providers) {
+        this(Arrays.asList(providers));
+    }
+
+    public ChainedHierarchyProvider(List<? extends HierarchyProvider> providers) {
+        this.providers = new ArrayList<>(providers);
+    }
+
+    @Override
+    public ClassInfo getClassInfo(String name) throws IOException {
+        for (HierarchyProvider provider : providers) {
+            ClassInfo info = provider.getClassInfo(name);
+            if (info != null) {
+                return info;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Closes all providers of the chain, even if closing one of them fails.
+     */
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (HierarchyProvider provider : providers) {
+            try {
+                provider.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
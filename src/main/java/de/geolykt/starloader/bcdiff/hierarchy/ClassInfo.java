@@ -0,0 +1,50 @@
+package de.geolykt.starloader.bcdiff.hierarchy;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * The super type, interfaces and kind of a class.
+ */
+public class ClassInfo {
+
+    /**
+     * Reads the information of a class from the header of its class file. Only the constant pool
+     * and the header are parsed, the fields and methods of the class are not visited.
+     *
+     * @param classFile The class file
+     * @return The information of the class
+     */
+    public static ClassInfo read(byte[] classFile) {
+        ClassReader reader = new ClassReader(classFile);
+        return new ClassInfo(reader.getClassName(), reader.getSuperName(), reader.getInterfaces(), (reader.getAccess() & Opcodes.ACC_INTERFACE) != 0);
+    }
+
+    private final String name;
+    private final String superName;
+    private final String[] interfaces;
+    private final boolean itf;
+
+    public ClassInfo(String name, String superName, String[] interfaces, boolean itf) {
+        this.name = name;
+        this.superName = superName;
+        this.interfaces = interfaces;
+        this.itf = itf;
+    }
+
+    public String[] getInterfaces() {
+        return interfaces;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getSuperName() {
+        return superName;
+    }
+
+    public boolean isInterface() {
+        return itf;
+    }
+}
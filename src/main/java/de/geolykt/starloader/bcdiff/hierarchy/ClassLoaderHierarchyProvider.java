@@ -0,0 +1,38 @@
+package de.geolykt.starloader.bcdiff.hierarchy;
+
+/**
+ * {@link HierarchyProvider} that looks up classes through a {@link ClassLoader}. The classes are loaded
+ * (but not initialized) within the running JVM, so this provider is comparatively slow and only knows the classes
+ * that are on the classpath of the tool. Prefer {@link LibraryHierarchyProvider} and {@link JdkHierarchyProvider}.
+ */
+public class ClassLoaderHierarchyProvider implements HierarchyProvider {
+
+    private final ClassLoader classLoader;
+
+    public ClassLoaderHierarchyProvider(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+    }
+
+    @Override
+    public ClassInfo getClassInfo(String name) {
+        Class<?> clazz;
+        try {
+            clazz = Class.forName(name.replace('/', '.'), false, classLoader);
+        } catch (ClassNotFoundException | LinkageError e) {
+            return null;
+        }
+        boolean itf = clazz.isInterface();
+        String superName;
+        if (itf || clazz.getSuperclass() == null) {
+            superName = "java/lang/Object";
+        } else {
+            superName = clazz.getSuperclass().getName().replace('.', '/');
+        }
+        Class<?>[] interfaces = clazz.getInterfaces();
+        String[] superInterfaces = new String[interfaces.length];
+        for (int i = 0; i < interfaces.length; i++) {
+            superInterfaces[i] = interfaces[i].getName().replace('.', '/');
+        }
+        return new ClassInfo(name, superName, superInterfaces, itf);
+    }
+}
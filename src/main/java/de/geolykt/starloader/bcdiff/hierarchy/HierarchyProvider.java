@@ -0,0 +1,28 @@
+package de.geolykt.starloader.bcdiff.hierarchy;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A source of the class hierarchy. Providers are queried by the
+ * {@link de.geolykt.starloader.bcdiff.ClassHierarchyCache} for every class that is not part of the patched jar,
+ * which caches the result. Providers must be safe to use from multiple threads.
+ */
+public interface HierarchyProvider extends Closeable {
+
+    /**
+     * Obtains the information of a class.
+     *
+     * @param name The internal name of the class
+     * @return The information of the class, or null if this provider does not know the class
+     * @throws IOException If the class is known but could not be read
+     */
+    ClassInfo getClassInfo(String name) throws IOException;
+
+    /**
+     * Releases the resources held by this provider. Does nothing by default.
+     */
+    @Override
+    default void close() throws IOException {
+    }
+}
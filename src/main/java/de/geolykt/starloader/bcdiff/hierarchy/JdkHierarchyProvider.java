@@ -0,0 +1,105 @@
+package de.geolykt.starloader.bcdiff.hierarchy;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.ProviderNotFoundException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarFile;
+
+import de.geolykt.starloader.bcdiff.io.JarFileInput;
+
+/**
+ * {@link HierarchyProvider} that reads the classes of the JDK the tool runs on without loading them.
+ * On Java 9 and above, the classes are read from the jrt: file system of the runtime image,
+ * on Java 8 they are read from the rt.jar of the JRE.
+ */
+public class JdkHierarchyProvider implements HierarchyProvider {
+
+    private final FileSystem jrt;
+
+    /**
+     * The modules that contain each package, only used with the jrt: file system.
+     */
+    private final Map<String, List<String>> packageModules;
+
+    private final LibraryHierarchyProvider runtimeJar;
+
+    /**
+     * Creates a provider for the running JDK.
+     *
+     * @throws IOException If the runtime image could not be indexed
+     */
+    public JdkHierarchyProvider() throws IOException {
+        FileSystem fs;
+        try {
+            fs = FileSystems.getFileSystem(URI.create("jrt:/"));
+        } catch (FileSystemNotFoundException | ProviderNotFoundException e) {
+            fs = null;
+        }
+        jrt = fs;
+        if (fs == null) {
+            packageModules = Collections.emptyMap();
+            Path rtJar = Paths.get(System.getProperty("java.home"), "lib", "rt.jar");
+            if (!Files.exists(rtJar)) {
+                throw new NoSuchFileException(rtJar.toString(), null, "Neither the jrt: file system nor the rt.jar of the JRE are available");
+            }
+            runtimeJar = new LibraryHierarchyProvider(Collections.singletonList(new JarFileInput(new JarFile(rtJar.toFile()))));
+        } else {
+            runtimeJar = null;
+            packageModules = new HashMap<>();
+            try (DirectoryStream<Path> packages = Files.newDirectoryStream(fs.getPath("/packages"))) {
+                for (Path pkg : packages) {
+                    List<String> modules = new ArrayList<>(1);
+                    try (DirectoryStream<Path> moduleLinks = Files.newDirectoryStream(pkg)) {
+                        for (Path module : moduleLinks) {
+                            modules.add(module.getFileName().toString());
+                        }
+                    }
+                    packageModules.put(pkg.getFileName().toString(), modules);
+                }
+            }
+        }
+    }
+
+    @Override
+    public ClassInfo getClassInfo(String name) throws IOException {
+        if (runtimeJar != null) {
+            return runtimeJar.getClassInfo(name);
+        }
+        int lastSlash = name.lastIndexOf('/');
+        if (lastSlash == -1) {
+            return null;
+        }
+        List<String> modules = packageModules.get(name.substring(0, lastSlash).replace('/', '.'));
+        if (modules == null) {
+            return null;
+        }
+        for (String module : modules) {
+            Path classFile = jrt.getPath("/modules", module, name + ".class");
+            if (Files.exists(classFile)) {
+                return ClassInfo.read(Files.readAllBytes(classFile));
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // The jrt: file system is shared by the entire JVM and cannot be closed
+        if (runtimeJar != null) {
+            runtimeJar.close();
+        }
+    }
+}
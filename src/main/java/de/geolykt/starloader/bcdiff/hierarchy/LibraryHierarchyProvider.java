@@ -0,0 +1,70 @@
+package de.geolykt.starloader.bcdiff.hierarchy;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.geolykt.starloader.bcdiff.io.ArchiveEntry;
+import de.geolykt.starloader.bcdiff.io.ArchiveInput;
+
+/**
+ * {@link HierarchyProvider} that reads the headers of the class files within library jars.
+ * The names of all classes are indexed once when the provider is created, the class files themselves are only
+ * read when they are queried. If multiple archives contain the same class, the first archive wins.
+ * The archives stay open until the provider is closed.
+ */
+public class LibraryHierarchyProvider implements HierarchyProvider {
+
+    private final List<ArchiveInput> archives;
+    private final Map<String, ArchiveEntry> index = new HashMap<>();
+
+    /**
+     * Creates a provider over the given archives. The provider takes ownership of the archives
+     * and closes them when it is closed.
+     *
+     * @param archives The library archives
+     * @throws IOException If the entries of an archive could not be read
+     */
+    public LibraryHierarchyProvider(List<? extends ArchiveInput> archives) throws IOException {
+        this.archives = new ArrayList<>(archives);
+        for (ArchiveInput archive : archives) {
+            for (ArchiveEntry entry : archive.entries()) {
+                String name = entry.getName();
+                // Skip multi-release and other metadata variants of classes
+                if (name.endsWith(".class") && !name.startsWith("META-INF/")) {
+                    index.putIfAbsent(name.substring(0, name.length() - 6), entry);
+                }
+            }
+        }
+    }
+
+    @Override
+    public ClassInfo getClassInfo(String name) throws IOException {
+        ArchiveEntry entry = index.get(name);
+        if (entry == null) {
+            return null;
+        }
+        return ClassInfo.read(entry.getBytes());
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (ArchiveInput archive : archives) {
+            try {
+                archive.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
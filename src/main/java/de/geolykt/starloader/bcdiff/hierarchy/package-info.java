@@ -0,0 +1,4 @@
+/**
+ * Package for the sources of the class hierarchy that is required to compute stack map frames.
+ */
+package de.geolykt.starloader.bcdiff.hierarchy;
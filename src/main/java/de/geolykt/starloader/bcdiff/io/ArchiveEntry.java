@@ -0,0 +1,156 @@
+package de.geolykt.starloader.bcdiff.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.ZipEntry;
+
+/**
+ * A single entry of an {@link ArchiveInput}.
+ */
+public interface ArchiveEntry {
+
+    /**
+     * Checks whether the given contents of an entry look like a java class file.
+     * This is the case if the contents start with the 0xCAFEBABE magic. Entries ending
+     * with ".jnilib" are never considered to be class files as these
+     * files also start with that magic.
+     *
+     * @param name The name of the entry
+     * @param data The contents of the entry
+     * @return True if the entry should be treated as a class file
+     */
+    public static boolean isClassFile(String name, byte[] data) {
+        if (name.endsWith(".jnilib")) {
+            return false;
+        }
+        return data.length >= 4 && (data[0] & 0xFF) == 0xCA && (data[1] & 0xFF) == 0xFE
+                && (data[2] & 0xFF) == 0xBA && (data[3] & 0xFF) == 0xBE;
+    }
+
+    /**
+     * Obtains the CRC-32 checksum of the uncompressed contents of the entry, if it is known without reading the entry.
+     *
+     * @return The checksum of the entry, or -1 if unknown
+     */
+    long getCrc();
+
+    /**
+     * Obtains the zip metadata of the entry, such as its compression method, modification time, extra field and comment.
+     * It is used to preserve the metadata when the entry is written to another archive.
+     *
+     * @return The metadata, or null if it is not known
+     */
+    default ZipEntry getZipEntry() {
+        return null;
+    }
+
+    /**
+     * Obtains the name of the entry as stored in the archive.
+     *
+     * @return The name of the entry
+     */
+    String getName();
+
+    /**
+     * Reads the uncompressed contents of the entry. Every invocation reads (and if required inflates)
+     * the entry anew, so callers should only call this method once and share the returned array.
+     *
+     * @return The contents of the entry
+     * @throws IOException If the entry could not be read
+     */
+    byte[] getBytes() throws IOException;
+
+    /**
+     * Obtains the size of the uncompressed contents of the entry, if it is known without reading the entry.
+     *
+     * @return The size of the entry, or -1 if unknown
+     */
+    long getSize();
+
+    /**
+     * Opens a stream over the uncompressed contents of the entry.
+     *
+     * @return A new stream that needs to be closed by the caller
+     * @throws IOException If the entry could not be opened
+     */
+    InputStream openStream() throws IOException;
+
+    /**
+     * Checks whether the entry should be treated as a class file without reading the entire entry.
+     * See {@link #isClassFile(String, byte[])} for the exact rules.
+     *
+     * @return True if the entry should be treated as a class file
+     * @throws IOException If the entry could not be read
+     */
+    default boolean isClassFile() throws IOException {
+        if (getName().endsWith(".jnilib")) {
+            return false;
+        }
+        try (InputStream is = openStream()) {
+            return is.read() == 0xCA && is.read() == 0xFE && is.read() == 0xBA && is.read() == 0xBE;
+        }
+    }
+
+    /**
+     * Reads the contents of the entry if it is a class file. Unlike calling {@link #isClassFile()} followed by
+     * {@link #getBytes()}, the entry is only read (and inflated) once: the magic is checked on the first bytes
+     * of the stream the contents are read from. Entries that are not class files are only read as far as required to tell.
+     *
+     * @return The contents of the entry, or null if it is not a class file
+     * @throws IOException If the entry could not be read
+     */
+    default byte[] readClassFile() throws IOException {
+        if (getName().endsWith(".jnilib")) {
+            return null;
+        }
+        try (InputStream is = openStream()) {
+            byte[] magic = new byte[4];
+            for (int offset = 0; offset < magic.length;) {
+                int read = is.read(magic, offset, magic.length - offset);
+                if (read == -1) {
+                    return null;
+                }
+                offset += read;
+            }
+            if (!isClassFile(getName(), magic)) {
+                return null;
+            }
+            long size = getSize();
+            if (size < 4 || size > Integer.MAX_VALUE - 8) {
+                byte[] rest = JarFileInput.readFully(is, -1);
+                byte[] data = new byte[rest.length + 4];
+                System.arraycopy(magic, 0, data, 0, 4);
+                System.arraycopy(rest, 0, data, 4, rest.length);
+                return data;
+            }
+            byte[] data = new byte[(int) size];
+            System.arraycopy(magic, 0, data, 0, 4);
+            for (int offset = 4; offset < data.length;) {
+                int read = is.read(data, offset, data.length - offset);
+                if (read == -1) {
+                    throw new EOFException("Entry " + getName() + " ended after " + offset + " bytes even though " + size + " bytes were expected.");
+                }
+                offset += read;
+            }
+            return data;
+        }
+    }
+
+    /**
+     * Copies the uncompressed contents of the entry to the given stream without
+     * holding the entire entry in memory.
+     *
+     * @param out The stream to write the contents to
+     * @throws IOException If the entry could not be read or the stream could not be written to
+     */
+    default void writeTo(OutputStream out) throws IOException {
+        byte[] buffer = new byte[8192];
+        try (InputStream is = openStream()) {
+            for (int read = is.read(buffer); read != -1; read = is.read(buffer)) {
+                out.write(buffer, 0, read);
+            }
+        }
+    }
+}
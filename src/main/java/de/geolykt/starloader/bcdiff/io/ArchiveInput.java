@@ -0,0 +1,18 @@
+package de.geolykt.starloader.bcdiff.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * An archive (usually a jar) whose entries are read by the differential generator or the patcher.
+ */
+public interface ArchiveInput extends Closeable {
+
+    /**
+     * Obtains all entries of the archive in the order in which they are stored within the archive.
+     *
+     * @return The entries of the archive
+     * @throws IOException If the archive could not be read
+     */
+    Iterable<? extends ArchiveEntry> entries() throws IOException;
+}
@@ -0,0 +1,479 @@
+package de.geolykt.starloader.bcdiff.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+import de.geolykt.starloader.bcdiff.io.MappedArchiveInput.MappedEntry;
+
+/**
+ * Writes zip archives (usually jars) that are derived from another archive, as done when applying patches.
+ *
+ * <p>Entries of a {@link MappedArchiveInput} are copied as they are stored: their data is copied without inflating
+ * and deflating it again and their headers keep the compression method, modification time, attributes, extra field
+ * and comment. Entries that are written anew keep the metadata of the entry they replace, as far as it is known. New entries
+ * are deflated and get a fixed modification time, so that the written archive only depends on the contents that were written.
+ */
+public class ArchiveWriter implements Closeable {
+
+    /**
+     * The metadata of an entry, as written to its local and central directory header.
+     */
+    private static class EntryHeader {
+        int versionMadeBy = VERSION_DEFLATED;
+        int versionNeeded = VERSION_DEFLATED;
+        int flags = FLAG_UTF8;
+        int method = ZipEntry.DEFLATED;
+        int time;
+        int date = DOS_EPOCH_DATE;
+        byte[] name;
+        byte[] localExtra = EMPTY;
+        byte[] centralExtra = EMPTY;
+        byte[] comment = EMPTY;
+        int internalAttributes;
+        long externalAttributes;
+    }
+
+    /**
+     * The stream the contents of an entry that was started with {@link ArchiveWriter#putEntry(String, ArchiveEntry, long, long)}
+     * are written to.
+     */
+    private class EntryOutputStream extends OutputStream {
+
+        private final EntryHeader header;
+        private final long offset;
+        private final long expectedSize;
+        private final long expectedCrc;
+        private final CRC32 crc = new CRC32();
+        private long size;
+        private long compressedSize;
+        private boolean closed;
+
+        EntryOutputStream(EntryHeader header, long offset, long expectedSize, long expectedCrc) {
+            this.header = header;
+            this.offset = offset;
+            this.expectedSize = expectedSize;
+            this.expectedCrc = expectedCrc;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            current = null;
+            if (header.method == ZipEntry.STORED) {
+                compressedSize = size;
+                if (size != expectedSize || crc.getValue() != expectedCrc) {
+                    throw new ZipException("Entry " + new String(header.name, StandardCharsets.UTF_8)
+                            + " does not have the size and checksum it was started with");
+                }
+            } else {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    writeDeflated();
+                }
+                deflater.reset();
+                // The data descriptor holds what the local header could not
+                writeInt(out, DATA_DESCRIPTOR_SIGNATURE);
+                writeInt(out, crc.getValue());
+                writeInt(out, checkSize(compressedSize));
+                writeInt(out, checkSize(size));
+                position += 16;
+            }
+            writeCentralHeader(header, crc.getValue(), compressedSize, size, offset);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("The entry was already closed");
+            }
+            crc.update(b, off, len);
+            size += len;
+            if (header.method == ZipEntry.STORED) {
+                out.write(b, off, len);
+                compressedSize += len;
+                position += len;
+            } else {
+                deflater.setInput(b, off, len);
+                while (!deflater.needsInput()) {
+                    writeDeflated();
+                }
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        private void writeDeflated() throws IOException {
+            int n = deflater.deflate(buffer);
+            out.write(buffer, 0, n);
+            compressedSize += n;
+            position += n;
+        }
+    }
+
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014B50;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074B50;
+    // 1980-01-01, the earliest date that can be represented
+    private static final int DOS_EPOCH_DATE = 1 << 5 | 1;
+    private static final byte[] EMPTY = new byte[0];
+    private static final int END_HEADER_SIGNATURE = 0x06054B50;
+    private static final int FLAG_DATA_DESCRIPTOR = 1 << 3;
+    private static final int FLAG_UTF8 = 1 << 11;
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034B50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int VERSION_DEFLATED = 20;
+    private static final int VERSION_STORED = 10;
+    private static final int VERSION_ZIP64 = 45;
+    private static final int ZIP64_END_HEADER_SIGNATURE = 0x06064B50;
+    private static final int ZIP64_EXTRA_FIELD_ID = 0x0001;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064B50;
+
+    private final OutputStream out;
+    private final ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+    private final Set<String> names = new HashSet<>();
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private final byte[] buffer = new byte[8192];
+    private EntryOutputStream current;
+    private long entryCount;
+    private long position;
+    private boolean finished;
+
+    /**
+     * Constructor.
+     *
+     * @param out The stream to write the archive to. It is closed once this writer is closed and should be buffered.
+     */
+    public ArchiveWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    private static int checkSize(long size) throws ZipException {
+        if (size > 0xFFFFFFFFL) {
+            throw new ZipException("Entries and archives larger than 4 GiB are not supported");
+        }
+        return (int) size;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            deflater.end();
+            out.close();
+        }
+    }
+
+    /**
+     * Copies an entry of another archive. Entries of a {@link MappedArchiveInput} are copied as they are stored,
+     * all other entries are compressed again, keeping the metadata returned by {@link ArchiveEntry#getZipEntry()}.
+     *
+     * @param entry The entry
+     * @param contents The uncompressed contents of the entry if they were already read, otherwise null.
+     * Used if the entry cannot be copied as it is stored.
+     * @throws IOException If the entry could not be read or the archive could not be written
+     */
+    public void copyEntry(ArchiveEntry entry, byte[] contents) throws IOException {
+        if (entry instanceof MappedEntry) {
+            MappedEntry mapped = (MappedEntry) entry;
+            if (mapped.getMethod() == ZipEntry.STORED || mapped.getMethod() == ZipEntry.DEFLATED) {
+                EntryHeader header = createHeader(entry.getName(), entry);
+                header.method = mapped.getMethod();
+                long offset = startEntry(header, entry.getCrc(), mapped.getCompressedSize(), entry.getSize());
+                ByteBuffer data = mapped.getRawData();
+                while (data.hasRemaining()) {
+                    int n = Math.min(buffer.length, data.remaining());
+                    data.get(buffer, 0, n);
+                    out.write(buffer, 0, n);
+                }
+                position += mapped.getCompressedSize();
+                writeCentralHeader(header, entry.getCrc(), mapped.getCompressedSize(), entry.getSize(), offset);
+                return;
+            }
+        }
+        if (contents != null) {
+            writeEntry(entry.getName(), entry, contents);
+        } else {
+            try (OutputStream entryOut = putEntry(entry.getName(), entry, entry.getSize(), entry.getCrc())) {
+                entry.writeTo(entryOut);
+            }
+        }
+    }
+
+    private EntryHeader createHeader(String name, ArchiveEntry original) throws IOException {
+        EntryHeader header = new EntryHeader();
+        header.name = name.getBytes(StandardCharsets.UTF_8);
+        if (original instanceof MappedEntry) {
+            MappedEntry mapped = (MappedEntry) original;
+            ByteBuffer central = mapped.getCentralHeader();
+            header.versionMadeBy = central.getShort(4) & 0xFFFF;
+            header.versionNeeded = central.getShort(6) & 0xFFFF;
+            header.flags = central.getShort(8) & 0xFFFF & ~FLAG_DATA_DESCRIPTOR;
+            header.method = central.getShort(10) & 0xFFFF;
+            header.time = central.getShort(12) & 0xFFFF;
+            header.date = central.getShort(14) & 0xFFFF;
+            int nameLength = central.getShort(28) & 0xFFFF;
+            int extraLength = central.getShort(30) & 0xFFFF;
+            int commentLength = central.getShort(32) & 0xFFFF;
+            header.internalAttributes = central.getShort(36) & 0xFFFF;
+            header.externalAttributes = central.getInt(38) & 0xFFFFFFFFL;
+            header.centralExtra = stripZip64(slice(central, CENTRAL_HEADER_SIZE + nameLength, extraLength));
+            header.comment = slice(central, CENTRAL_HEADER_SIZE + nameLength + extraLength, commentLength);
+            ByteBuffer local = mapped.getLocalHeader();
+            int localNameLength = local.getShort(26) & 0xFFFF;
+            header.localExtra = stripZip64(slice(local, LOCAL_HEADER_SIZE + localNameLength, local.getShort(28) & 0xFFFF));
+            return header;
+        }
+        ZipEntry metadata = original == null ? null : original.getZipEntry();
+        if (metadata != null) {
+            if (metadata.getMethod() == ZipEntry.STORED) {
+                header.method = ZipEntry.STORED;
+                header.versionNeeded = VERSION_STORED;
+            }
+            long time = metadata.getTime();
+            if (time != -1) {
+                LocalDateTime dateTime = LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault());
+                if (dateTime.getYear() >= 1980 && dateTime.getYear() <= 2107) {
+                    header.date = (dateTime.getYear() - 1980) << 9 | dateTime.getMonthValue() << 5 | dateTime.getDayOfMonth();
+                    header.time = dateTime.getHour() << 11 | dateTime.getMinute() << 5 | dateTime.getSecond() >> 1;
+                }
+            }
+            if (metadata.getExtra() != null) {
+                header.localExtra = stripZip64(metadata.getExtra());
+                header.centralExtra = header.localExtra;
+            }
+            if (metadata.getComment() != null) {
+                header.comment = metadata.getComment().getBytes(StandardCharsets.UTF_8);
+            }
+        }
+        return header;
+    }
+
+    /**
+     * Writes the central directory and flushes the stream. No entries can be written afterwards.
+     *
+     * @throws IOException If the archive could not be written
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        if (current != null) {
+            current.close();
+        }
+        finished = true;
+        long directoryOffset = position;
+        long directorySize = centralDirectory.size();
+        centralDirectory.writeTo(out);
+        position += directorySize;
+        if (entryCount >= 0xFFFF || directoryOffset >= 0xFFFFFFFFL) {
+            long zip64EndHeader = position;
+            writeInt(out, ZIP64_END_HEADER_SIGNATURE);
+            writeLong(out, 44);
+            writeShort(out, VERSION_ZIP64);
+            writeShort(out, VERSION_ZIP64);
+            writeInt(out, 0);
+            writeInt(out, 0);
+            writeLong(out, entryCount);
+            writeLong(out, entryCount);
+            writeLong(out, directorySize);
+            writeLong(out, directoryOffset);
+            writeInt(out, ZIP64_LOCATOR_SIGNATURE);
+            writeInt(out, 0);
+            writeLong(out, zip64EndHeader);
+            writeInt(out, 1);
+        }
+        writeInt(out, END_HEADER_SIGNATURE);
+        writeShort(out, 0);
+        writeShort(out, 0);
+        writeShort(out, (int) Math.min(entryCount, 0xFFFF));
+        writeShort(out, (int) Math.min(entryCount, 0xFFFF));
+        writeInt(out, directorySize);
+        writeInt(out, Math.min(directoryOffset, 0xFFFFFFFFL));
+        writeShort(out, 0);
+        out.flush();
+    }
+
+    /**
+     * Starts an entry whose contents are written to the returned stream. The entry is ended once the stream is closed.
+     * The entry keeps the compression method of the original entry, whereas new entries are deflated.
+     *
+     * @param name The name of the entry
+     * @param original The entry that is replaced by this entry, whose metadata is kept. Null for new entries.
+     * @param size The size of the contents. Only required if the original entry is stored, otherwise -1 may be passed.
+     * @param crc The CRC32 checksum of the contents. Only required if the original entry is stored, otherwise -1 may be passed.
+     * @return The stream to write the contents to
+     * @throws IOException If the archive could not be written
+     */
+    public OutputStream putEntry(String name, ArchiveEntry original, long size, long crc) throws IOException {
+        EntryHeader header = createHeader(name, original);
+        if (header.method != ZipEntry.STORED) {
+            header.method = ZipEntry.DEFLATED;
+            header.flags |= FLAG_DATA_DESCRIPTOR;
+            long offset = startEntry(header, 0, 0, 0);
+            current = new EntryOutputStream(header, offset, size, crc);
+        } else {
+            if (size < 0 || crc < 0) {
+                throw new IllegalArgumentException("The size and checksum of stored entries must be known in advance");
+            }
+            long offset = startEntry(header, crc, size, size);
+            current = new EntryOutputStream(header, offset, size, crc);
+        }
+        return current;
+    }
+
+    private static byte[] slice(ByteBuffer buffer, int offset, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        ((Buffer) view).position(offset);
+        view.get(bytes);
+        return bytes;
+    }
+
+    private long startEntry(EntryHeader header, long crc, long compressedSize, long size) throws IOException {
+        if (finished) {
+            throw new IllegalStateException("The archive was already finished");
+        } else if (current != null) {
+            throw new IllegalStateException("The previous entry was not closed");
+        }
+        String name = new String(header.name, StandardCharsets.UTF_8);
+        if (!names.add(name)) {
+            throw new ZipException("Duplicate entry: " + name);
+        }
+        long offset = position;
+        checkSize(offset);
+        writeInt(out, LOCAL_HEADER_SIGNATURE);
+        writeShort(out, header.versionNeeded);
+        writeShort(out, header.flags);
+        writeShort(out, header.method);
+        writeShort(out, header.time);
+        writeShort(out, header.date);
+        writeInt(out, crc);
+        writeInt(out, checkSize(compressedSize));
+        writeInt(out, checkSize(size));
+        writeShort(out, header.name.length);
+        writeShort(out, header.localExtra.length);
+        out.write(header.name);
+        out.write(header.localExtra);
+        position += LOCAL_HEADER_SIZE + header.name.length + header.localExtra.length;
+        return offset;
+    }
+
+    private static byte[] stripZip64(byte[] extra) {
+        // Sizes and offsets are rewritten, so values from a zip64 field would be stale
+        ByteArrayOutputStream out = null;
+        int pos = 0;
+        while (pos + 4 <= extra.length) {
+            int id = (extra[pos] & 0xFF) | (extra[pos + 1] & 0xFF) << 8;
+            int length = (extra[pos + 2] & 0xFF) | (extra[pos + 3] & 0xFF) << 8;
+            int end = Math.min(extra.length, pos + 4 + length);
+            if (id == ZIP64_EXTRA_FIELD_ID) {
+                if (out == null) {
+                    out = new ByteArrayOutputStream(extra.length);
+                    out.write(extra, 0, pos);
+                }
+            } else if (out != null) {
+                out.write(extra, pos, end - pos);
+            }
+            pos = end;
+        }
+        return out == null ? extra : out.toByteArray();
+    }
+
+    private void writeCentralHeader(EntryHeader header, long crc, long compressedSize, long size, long offset) throws IOException {
+        ByteArrayOutputStream directory = centralDirectory;
+        writeInt(directory, CENTRAL_HEADER_SIGNATURE);
+        writeShort(directory, header.versionMadeBy);
+        writeShort(directory, header.versionNeeded);
+        writeShort(directory, header.flags);
+        writeShort(directory, header.method);
+        writeShort(directory, header.time);
+        writeShort(directory, header.date);
+        writeInt(directory, crc);
+        writeInt(directory, checkSize(compressedSize));
+        writeInt(directory, checkSize(size));
+        writeShort(directory, header.name.length);
+        writeShort(directory, header.centralExtra.length);
+        writeShort(directory, header.comment.length);
+        writeShort(directory, 0);
+        writeShort(directory, header.internalAttributes);
+        writeInt(directory, header.externalAttributes);
+        writeInt(directory, offset);
+        directory.write(header.name);
+        directory.write(header.centralExtra);
+        directory.write(header.comment);
+        entryCount++;
+    }
+
+    /**
+     * Writes an entry whose contents are known in advance, so that its header holds its sizes and checksum.
+     * The entry keeps the compression method of the original entry, whereas new entries are deflated.
+     *
+     * @param name The name of the entry
+     * @param original The entry that is replaced by this entry, whose metadata is kept. Null for new entries.
+     * @param contents The uncompressed contents
+     * @throws IOException If the archive could not be written
+     */
+    public void writeEntry(String name, ArchiveEntry original, byte[] contents) throws IOException {
+        EntryHeader header = createHeader(name, original);
+        CRC32 crc = new CRC32();
+        crc.update(contents, 0, contents.length);
+        if (header.method == ZipEntry.STORED) {
+            long offset = startEntry(header, crc.getValue(), contents.length, contents.length);
+            out.write(contents);
+            position += contents.length;
+            writeCentralHeader(header, crc.getValue(), contents.length, contents.length, offset);
+            return;
+        }
+        header.method = ZipEntry.DEFLATED;
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, contents.length / 2));
+        deflater.setInput(contents, 0, contents.length);
+        deflater.finish();
+        while (!deflater.finished()) {
+            int n = deflater.deflate(buffer);
+            compressed.write(buffer, 0, n);
+        }
+        deflater.reset();
+        long offset = startEntry(header, crc.getValue(), compressed.size(), contents.length);
+        compressed.writeTo(out);
+        position += compressed.size();
+        writeCentralHeader(header, crc.getValue(), compressed.size(), contents.length, offset);
+    }
+
+    private static void writeInt(OutputStream out, long value) throws IOException {
+        out.write((int) value);
+        out.write((int) (value >>> 8));
+        out.write((int) (value >>> 16));
+        out.write((int) (value >>> 24));
+    }
+
+    private static void writeLong(OutputStream out, long value) throws IOException {
+        writeInt(out, value);
+        writeInt(out, value >>> 32);
+    }
+
+    private static void writeShort(OutputStream out, int value) throws IOException {
+        out.write(value);
+        out.write(value >>> 8);
+    }
+}
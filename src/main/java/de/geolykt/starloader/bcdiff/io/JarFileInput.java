@@ -0,0 +1,110 @@
+package de.geolykt.starloader.bcdiff.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+
+/**
+ * {@link ArchiveInput} implementation that is backed by a {@link JarFile}.
+ */
+public class JarFileInput implements ArchiveInput {
+
+    protected class JarFileEntry implements ArchiveEntry {
+
+        protected final JarEntry entry;
+
+        public JarFileEntry(JarEntry entry) {
+            this.entry = entry;
+        }
+
+        @Override
+        public byte[] getBytes() throws IOException {
+            try (InputStream is = jar.getInputStream(entry)) {
+                return readFully(is, entry.getSize());
+            }
+        }
+
+        @Override
+        public long getCrc() {
+            return entry.getCrc();
+        }
+
+        @Override
+        public String getName() {
+            return entry.getName();
+        }
+
+        @Override
+        public long getSize() {
+            return entry.getSize();
+        }
+
+        @Override
+        public ZipEntry getZipEntry() {
+            return entry;
+        }
+
+        @Override
+        public InputStream openStream() throws IOException {
+            return jar.getInputStream(entry);
+        }
+    }
+
+    /**
+     * Reads all remaining bytes of an input stream. If the amount of bytes is known beforehand,
+     * the bytes are read into an array of exactly that size, avoiding any intermediary copies.
+     *
+     * @param is The stream to read
+     * @param size The amount of bytes that the stream contains, or -1 if unknown
+     * @return The contents of the stream
+     * @throws IOException If the stream could not be read
+     */
+    public static byte[] readFully(InputStream is, long size) throws IOException {
+        if (size >= 0 && size <= Integer.MAX_VALUE - 8) {
+            byte[] data = new byte[(int) size];
+            int offset = 0;
+            while (offset < data.length) {
+                int read = is.read(data, offset, data.length - offset);
+                if (read == -1) {
+                    throw new EOFException("Stream ended after " + offset + " bytes even though " + size + " bytes were expected.");
+                }
+                offset += read;
+            }
+            return data;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for (int read = is.read(buffer); read != -1; read = is.read(buffer)) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    protected final JarFile jar;
+
+    public JarFileInput(JarFile jar) {
+        this.jar = jar;
+    }
+
+    @Override
+    public void close() throws IOException {
+        jar.close();
+    }
+
+    @Override
+    public Iterable<? extends ArchiveEntry> entries() {
+        List<JarFileEntry> entries = new ArrayList<>();
+        Enumeration<JarEntry> jarEntries = jar.entries();
+        while (jarEntries.hasMoreElements()) {
+            entries.add(new JarFileEntry(jarEntries.nextElement()));
+        }
+        return entries;
+    }
+}
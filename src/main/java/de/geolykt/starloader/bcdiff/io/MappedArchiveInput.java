@@ -0,0 +1,406 @@
+package de.geolykt.starloader.bcdiff.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * {@link ArchiveInput} implementation that memory-maps the archive and parses the central directory itself.
+ * Entries are read straight from the mapped region: stored entries are never copied unless
+ * their bytes are explicitly requested and compressed entries are inflated directly from the mapping.
+ * This avoids holding the contents of large archives on the heap.
+ *
+ * <p>Only archives smaller than 2 GiB are supported. The mapping stays valid until it is garbage collected,
+ * even after {@link #close()} has been called.
+ */
+public class MappedArchiveInput implements ArchiveInput {
+
+    /**
+     * An entry within a memory-mapped archive.
+     */
+    public class MappedEntry implements ArchiveEntry {
+
+        protected final String name;
+        protected final int method;
+        protected final long crc;
+        protected final long compressedSize;
+        protected final long size;
+        protected final long localHeaderOffset;
+        protected final int centralHeaderOffset;
+        protected final int centralHeaderLength;
+
+        protected MappedEntry(String name, int method, long crc, long compressedSize, long size, long localHeaderOffset,
+                int centralHeaderOffset, int centralHeaderLength) {
+            this.name = name;
+            this.method = method;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+            this.centralHeaderOffset = centralHeaderOffset;
+            this.centralHeaderLength = centralHeaderLength;
+        }
+
+        @Override
+        public byte[] getBytes() throws IOException {
+            try (InputStream is = openStream()) {
+                return JarFileInput.readFully(is, size);
+            }
+        }
+
+        /**
+         * Obtains a view of the central directory header of the entry, including its name, extra field and comment.
+         * The returned buffer is independent from any other buffer returned by this method.
+         *
+         * @return A read-only little-endian buffer over the central directory header
+         */
+        public ByteBuffer getCentralHeader() {
+            ByteBuffer header = archive.duplicate();
+            // Called through Buffer, as the ByteBuffer overrides of these methods only exist since Java 9
+            ((Buffer) header).position(centralHeaderOffset);
+            ((Buffer) header).limit(centralHeaderOffset + centralHeaderLength);
+            return header.slice().order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        @Override
+        public long getCrc() {
+            return crc;
+        }
+
+        /**
+         * Obtains the size of the (possibly compressed) data of the entry.
+         *
+         * @return The compressed size of the entry
+         */
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        /**
+         * Obtains the compression method of the entry, as defined by {@link java.util.zip.ZipEntry}.
+         *
+         * @return The compression method of the entry
+         */
+        public int getMethod() {
+            return method;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Obtains a view of the local header of the entry, including its name and extra field.
+         * The returned buffer is independent from any other buffer returned by this method.
+         *
+         * @return A read-only little-endian buffer over the local header
+         * @throws IOException If the local header of the entry is corrupt
+         */
+        public ByteBuffer getLocalHeader() throws IOException {
+            ByteBuffer header = archive.duplicate();
+            ((Buffer) header).position((int) localHeaderOffset);
+            ((Buffer) header).limit(getDataOffset());
+            return header.slice().order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        private int getDataOffset() throws ZipException {
+            if (localHeaderOffset + LOCAL_HEADER_SIZE > archive.limit()
+                    || archive.getInt((int) localHeaderOffset) != LOCAL_HEADER_SIGNATURE) {
+                throw new ZipException("Invalid local header for entry " + name);
+            }
+            int headerPos = (int) localHeaderOffset;
+            int dataStart = headerPos + LOCAL_HEADER_SIZE + getUnsignedShort(archive, headerPos + 26) + getUnsignedShort(archive, headerPos + 28);
+            if (dataStart > archive.limit()) {
+                throw new ZipException("Local header of entry " + name + " exceeds the archive");
+            }
+            return dataStart;
+        }
+
+        /**
+         * Obtains a view of the raw (possibly compressed) data of the entry within the mapped region.
+         * The returned buffer is independent from any other buffer returned by this method.
+         *
+         * @return A read-only buffer over the data of the entry
+         * @throws IOException If the local header of the entry is corrupt
+         */
+        public ByteBuffer getRawData() throws IOException {
+            int dataStart = getDataOffset();
+            if (dataStart + compressedSize > archive.limit()) {
+                throw new ZipException("Data of entry " + name + " exceeds the archive");
+            }
+            ByteBuffer data = archive.duplicate();
+            ((Buffer) data).position(dataStart);
+            ((Buffer) data).limit((int) (dataStart + compressedSize));
+            return data.slice();
+        }
+
+        @Override
+        public long getSize() {
+            return size;
+        }
+
+        @Override
+        public InputStream openStream() throws IOException {
+            ByteBuffer data = getRawData();
+            if (method == METHOD_STORED) {
+                return new ByteBufferInputStream(data);
+            } else if (method == METHOD_DEFLATED) {
+                return new MappedInflaterInputStream(new ByteBufferInputStream(data));
+            }
+            throw new ZipException("Unsupported compression method " + method + " for entry " + name);
+        }
+
+        @Override
+        public boolean isClassFile() throws IOException {
+            if (method != METHOD_STORED) {
+                return ArchiveEntry.super.isClassFile();
+            }
+            if (name.endsWith(".jnilib") || size < 4) {
+                return false;
+            }
+            // Peek directly into the mapping
+            ByteBuffer data = getRawData();
+            return (data.get(0) & 0xFF) == 0xCA && (data.get(1) & 0xFF) == 0xFE
+                    && (data.get(2) & 0xFF) == 0xBA && (data.get(3) & 0xFF) == 0xBE;
+        }
+    }
+
+    /**
+     * Inflater stream that releases its inflater once closed and feeds the inflater a dummy byte
+     * once the input is exhausted, as is required by inflaters in "nowrap" mode.
+     */
+    private static class MappedInflaterInputStream extends InflaterInputStream {
+
+        private boolean eof;
+        private boolean closed;
+
+        public MappedInflaterInputStream(InputStream in) {
+            super(in, new Inflater(true), 8192);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                inf.end();
+                super.close();
+            }
+        }
+
+        @Override
+        protected void fill() throws IOException {
+            if (eof) {
+                throw new EOFException("Unexpected end of ZLIB input stream");
+            }
+            len = in.read(buf, 0, buf.length);
+            if (len == -1) {
+                buf[0] = 0;
+                len = 1;
+                eof = true;
+            }
+            inf.setInput(buf, 0, len);
+        }
+    }
+
+    /**
+     * Input stream that reads from a {@link ByteBuffer}.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        public ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+
+        @Override
+        public int read() {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            return buffer.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            ((Buffer) buffer).position(buffer.position() + skipped);
+            return skipped;
+        }
+    }
+
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014B50;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int END_HEADER_SIGNATURE = 0x06054B50;
+    private static final int END_HEADER_SIZE = 22;
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034B50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int METHOD_DEFLATED = 8;
+    private static final int METHOD_STORED = 0;
+    private static final int ZIP64_END_HEADER_SIGNATURE = 0x06064B50;
+    private static final int ZIP64_EXTRA_FIELD_ID = 0x0001;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064B50;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+
+    private static int getUnsignedShort(ByteBuffer buffer, int position) {
+        return buffer.getShort(position) & 0xFFFF;
+    }
+
+    private static long getUnsignedInt(ByteBuffer buffer, int position) {
+        return buffer.getInt(position) & 0xFFFFFFFFL;
+    }
+
+    protected final MappedByteBuffer archive;
+    protected final FileChannel channel;
+    protected final List<MappedEntry> entries;
+
+    public MappedArchiveInput(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long fileSize = channel.size();
+            if (fileSize > Integer.MAX_VALUE) {
+                throw new IOException("Archive " + path + " is larger than 2 GiB, which is not supported by the memory-mapped reader.");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            this.archive = buffer;
+            this.entries = Collections.unmodifiableList(readCentralDirectory());
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    @Override
+    public List<MappedEntry> entries() {
+        return entries;
+    }
+
+    private int findEndHeader() throws ZipException {
+        int limit = archive.limit();
+        // The comment of the end header may be up to 65535 bytes long
+        int lowest = Math.max(0, limit - END_HEADER_SIZE - 0xFFFF);
+        for (int pos = limit - END_HEADER_SIZE; pos >= lowest; pos--) {
+            if (archive.getInt(pos) == END_HEADER_SIGNATURE
+                    && pos + END_HEADER_SIZE + getUnsignedShort(archive, pos + 20) == limit) {
+                return pos;
+            }
+        }
+        throw new ZipException("Unable to locate the end of central directory record. Is the file a zip archive?");
+    }
+
+    private List<MappedEntry> readCentralDirectory() throws ZipException {
+        int endHeader = findEndHeader();
+        long entryCount = getUnsignedShort(archive, endHeader + 10);
+        long directoryOffset = getUnsignedInt(archive, endHeader + 16);
+
+        int locator = endHeader - ZIP64_LOCATOR_SIZE;
+        if (locator >= 0 && archive.getInt(locator) == ZIP64_LOCATOR_SIGNATURE) {
+            long zip64EndHeader = archive.getLong(locator + 8);
+            if (zip64EndHeader < 0 || zip64EndHeader + 56 > endHeader
+                    || archive.getInt((int) zip64EndHeader) != ZIP64_END_HEADER_SIGNATURE) {
+                throw new ZipException("Invalid zip64 end of central directory record");
+            }
+            entryCount = archive.getLong((int) zip64EndHeader + 32);
+            directoryOffset = archive.getLong((int) zip64EndHeader + 48);
+        }
+        if (directoryOffset < 0 || directoryOffset > endHeader) {
+            throw new ZipException("Invalid central directory offset: " + directoryOffset);
+        }
+
+        List<MappedEntry> entries = new ArrayList<>((int) Math.min(entryCount, 0xFFFF));
+        int pos = (int) directoryOffset;
+        for (long i = 0; i < entryCount; i++) {
+            if (pos + CENTRAL_HEADER_SIZE > endHeader || archive.getInt(pos) != CENTRAL_HEADER_SIGNATURE) {
+                throw new ZipException("Invalid central directory header at offset " + pos);
+            }
+            int flags = getUnsignedShort(archive, pos + 8);
+            if ((flags & 1) != 0) {
+                throw new ZipException("Encrypted entries are not supported");
+            }
+            int method = getUnsignedShort(archive, pos + 10);
+            long crc = getUnsignedInt(archive, pos + 16);
+            long compressedSize = getUnsignedInt(archive, pos + 20);
+            long size = getUnsignedInt(archive, pos + 24);
+            int nameLength = getUnsignedShort(archive, pos + 28);
+            int extraLength = getUnsignedShort(archive, pos + 30);
+            int commentLength = getUnsignedShort(archive, pos + 32);
+            long localHeaderOffset = getUnsignedInt(archive, pos + 42);
+
+            byte[] rawName = new byte[nameLength];
+            ByteBuffer nameBuffer = archive.duplicate();
+            ((Buffer) nameBuffer).position(pos + CENTRAL_HEADER_SIZE);
+            nameBuffer.get(rawName);
+            String name = new String(rawName, StandardCharsets.UTF_8);
+
+            if (size == 0xFFFFFFFFL || compressedSize == 0xFFFFFFFFL || localHeaderOffset == 0xFFFFFFFFL) {
+                // The real values are stored in the zip64 extra field, in that order
+                int extra = pos + CENTRAL_HEADER_SIZE + nameLength;
+                int extraEnd = extra + extraLength;
+                while (extra + 4 <= extraEnd) {
+                    int id = getUnsignedShort(archive, extra);
+                    int length = getUnsignedShort(archive, extra + 2);
+                    if (id == ZIP64_EXTRA_FIELD_ID) {
+                        int field = extra + 4;
+                        if (size == 0xFFFFFFFFL) {
+                            size = archive.getLong(field);
+                            field += 8;
+                        }
+                        if (compressedSize == 0xFFFFFFFFL) {
+                            compressedSize = archive.getLong(field);
+                            field += 8;
+                        }
+                        if (localHeaderOffset == 0xFFFFFFFFL) {
+                            localHeaderOffset = archive.getLong(field);
+                        }
+                        break;
+                    }
+                    extra += 4 + length;
+                }
+            }
+
+            int headerLength = CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+            entries.add(new MappedEntry(name, method, crc, compressedSize, size, localHeaderOffset, pos, headerLength));
+            pos += headerLength;
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * Package for classes that read the jars that are diffed or patched.
+ */
+package de.geolykt.starloader.bcdiff.io;
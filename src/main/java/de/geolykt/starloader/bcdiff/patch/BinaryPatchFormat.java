@@ -0,0 +1,214 @@
+package de.geolykt.starloader.bcdiff.patch;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Constants and helper methods of the binary patch format.
+ *
+ * <p>A binary patch starts with the {@link #MAGIC magic bytes} followed by a single byte holding the format version.
+ * It is followed by the sections, each of which is prefixed by the length of its body as a varint. A section with a length
+ * of 0 marks the end of the patch. The body of a section is self-contained so that sections can be skipped or decoded
+ * independently and consists of, in this order:
+ * <ul>
+ * <li>The string table: the amount of strings, followed by every string as its UTF-8 length and bytes.
+ * Every distinct line and name of the section is stored once and referred to by its index afterwards.</li>
+ * <li>The original and the revised name of the file.</li>
+ * <li>The amount of hunks, followed by the hunks. Every hunk consists of the distance of its original and revised start
+ * to the end of the previous hunk as signed varints, the amount of lines and the lines themselves.
+ * A line is stored as the index of its contents shifted left by two bits, with the lower two bits holding its kind.</li>
+ * </ul>
+ * All integers are stored as unsigned LEB128 varints. Signed integers are zigzag-encoded first.
+ *
+ * <p>Since version 2 the end marker is followed by an index of the sections, which allows to read individual sections
+ * without reading the rest of the patch (see {@link IndexedPatchFile}). The index consists of the amount of sections,
+ * followed by the original name, the revised name, the offset of the body within the file, the length of the body and
+ * the CRC32 checksum of the body of every section. Names are stored as their UTF-8 length and bytes,
+ * the checksum as four big-endian bytes. The patch ends with a trailer of {@value #TRAILER_LENGTH} bytes:
+ * the offset of the index as eight big-endian bytes, followed by the magic bytes.
+ * Version 1 patches lack the index and the trailer, but are otherwise the same.
+ *
+ * <p>Since version 3 the version is followed by a single byte holding the ID of the {@link PatchCodec codec} the sections are
+ * compressed with. Unless the codec is {@link PatchCodecs#NONE}, the body of every section is replaced by the length of the
+ * uncompressed body as a varint, followed by the compressed body. Lengths, offsets and checksums in the section prefixes and the
+ * index always refer to the bodies as they are stored. Earlier versions have no codec byte and are never compressed.
+ *
+ * <p>Since version 4 the names of a section are followed by its kind as a varint, which is either {@link #SECTION_HUNKS} for
+ * sections holding hunks as described above or {@link #SECTION_RESOURCE} for sections of resources. The latter hold the length
+ * of their {@link ResourceDelta} as a varint, followed by the delta, instead of hunks. Every index entry ends with the kind of
+ * its section as a single byte. Earlier versions only have sections holding hunks.
+ */
+public final class BinaryPatchFormat {
+
+    /**
+     * The bytes every binary patch starts with.
+     */
+    public static final byte[] MAGIC = {'B', 'C', 'D', 'P'};
+
+    /**
+     * The version of the format written by {@link BinaryPatchWriter}.
+     */
+    public static final int VERSION = 4;
+
+    /**
+     * The first version that has an index.
+     */
+    public static final int INDEXED_VERSION = 2;
+
+    /**
+     * The first version that stores the codec in the header.
+     */
+    static final int CODEC_VERSION = 3;
+
+    /**
+     * The first version that stores the kind of every section.
+     */
+    static final int SECTION_KIND_VERSION = 4;
+
+    static final int SECTION_HUNKS = 0;
+    static final int SECTION_RESOURCE = 1;
+
+    static final int TRAILER_LENGTH = 12;
+
+    static final int KIND_CONTEXT = 0;
+    static final int KIND_REMOVED = 1;
+    static final int KIND_ADDED = 2;
+
+    private BinaryPatchFormat() {
+    }
+
+    /**
+     * Checks whether a stream contains a binary patch without consuming any bytes from it.
+     *
+     * @param in The stream, which must support {@link InputStream#mark(int)}
+     * @return True if the stream starts with the magic bytes of a binary patch
+     * @throws IOException If the stream could not be read
+     */
+    public static boolean isBinaryPatch(InputStream in) throws IOException {
+        if (!in.markSupported()) {
+            throw new IllegalArgumentException("The stream does not support mark");
+        }
+        in.mark(MAGIC.length);
+        try {
+            for (byte b : MAGIC) {
+                if (in.read() != (b & 0xFF)) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            in.reset();
+        }
+    }
+
+    /**
+     * Checks whether a stream that contains a binary patch is of a version that has an index, without consuming any bytes from it.
+     *
+     * @param in The stream, which must support {@link InputStream#mark(int)}
+     * @return True if the version of the patch is at least {@link #INDEXED_VERSION}
+     * @throws IOException If the stream could not be read
+     */
+    public static boolean isIndexed(InputStream in) throws IOException {
+        if (!in.markSupported()) {
+            throw new IllegalArgumentException("The stream does not support mark");
+        }
+        in.mark(MAGIC.length + 1);
+        try {
+            for (int i = 0; i < MAGIC.length; i++) {
+                in.read();
+            }
+            return in.read() >= INDEXED_VERSION;
+        } finally {
+            in.reset();
+        }
+    }
+
+    /**
+     * Obtains the codec with the ID stored in the header of a patch.
+     *
+     * @param id The ID
+     * @return The codec
+     * @throws IOException If no codec with this ID is registered
+     */
+    static PatchCodec getCodec(int id) throws IOException {
+        PatchCodec codec = PatchCodecs.get(id);
+        if (codec == null) {
+            throw new IOException("The binary patch is compressed with an unknown codec: " + id);
+        }
+        return codec;
+    }
+
+    static int readVarInt(InputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.read();
+            if (b == -1) {
+                throw new EOFException("Unexpected end of the binary patch");
+            }
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in the binary patch");
+    }
+
+    static long readVarLong(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            int b = in.read();
+            if (b == -1) {
+                throw new EOFException("Unexpected end of the binary patch");
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint in the binary patch");
+    }
+
+    static String readString(ByteArrayInputStream in) throws IOException {
+        int length = readVarInt(in);
+        if (length < 0 || length > in.available()) {
+            throw new IOException("Malformed string length in the binary patch: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.read(bytes, 0, length);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static void writeString(ByteArrayOutputStream out, String string) {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
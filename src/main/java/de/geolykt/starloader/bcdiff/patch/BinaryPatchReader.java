@@ -0,0 +1,201 @@
+package de.geolykt.starloader.bcdiff.patch;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads patches in the {@link BinaryPatchFormat binary patch format} section by section, in the order they were written.
+ * Sections are decoded into hunks directly, without going through the unified diff format.
+ * Use {@link IndexedPatchFile} to read individual sections of a patch file instead.
+ */
+public class BinaryPatchReader implements PatchInput {
+
+    private static final int MAX_BUFFERED_LENGTH = 1 << 20;
+    private static final char[] KINDS = {PatchHunk.CONTEXT, PatchHunk.REMOVED, PatchHunk.ADDED};
+
+    private final DataInputStream in;
+    private final PatchCodec codec;
+    private final int version;
+    private boolean ended;
+
+    /**
+     * Creates a reader and reads the header of the patch.
+     *
+     * @param in The stream to read from. It is closed once this reader is closed.
+     * @throws IOException If the stream could not be read or does not contain a binary patch of a supported version
+     */
+    public BinaryPatchReader(InputStream in) throws IOException {
+        this.in = new DataInputStream(in);
+        byte[] magic = new byte[BinaryPatchFormat.MAGIC.length];
+        this.in.readFully(magic);
+        for (int i = 0; i < magic.length; i++) {
+            if (magic[i] != BinaryPatchFormat.MAGIC[i]) {
+                throw new IOException("The stream does not contain a binary patch");
+            }
+        }
+        // The index of later versions is not needed when streaming
+        int version = this.in.read();
+        if (version < 1 || version > BinaryPatchFormat.VERSION) {
+            throw new IOException("Unsupported binary patch version: " + version);
+        }
+        if (version >= BinaryPatchFormat.CODEC_VERSION) {
+            this.codec = BinaryPatchFormat.getCodec(this.in.readUnsignedByte());
+        } else {
+            this.codec = PatchCodecs.NONE;
+        }
+        this.version = version;
+    }
+
+    /**
+     * Obtains the codec the sections of the patch are compressed with.
+     *
+     * @return The codec
+     */
+    public PatchCodec getCodec() {
+        return codec;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    @Override
+    public PatchSection nextSection() throws IOException {
+        if (ended) {
+            return null;
+        }
+        int length = BinaryPatchFormat.readVarInt(in);
+        if (length == 0) {
+            ended = true;
+            return null;
+        } else if (length < 0) {
+            throw new IOException("Malformed section length in the binary patch: " + length);
+        }
+        byte[] body;
+        try {
+            body = readBody(length);
+        } catch (EOFException e) {
+            throw new EOFException("The binary patch ends within a section");
+        }
+        return readSection(body, codec, version);
+    }
+
+    private byte[] readBody(int length) throws IOException {
+        if (length <= MAX_BUFFERED_LENGTH) {
+            byte[] body = new byte[length];
+            in.readFully(body);
+            return body;
+        }
+        // The length may be corrupt, so large bodies are only allocated as far as they are actually present
+        ByteArrayOutputStream body = new ByteArrayOutputStream(MAX_BUFFERED_LENGTH);
+        byte[] buffer = new byte[8192];
+        for (int remaining = length; remaining > 0;) {
+            int read = in.read(buffer, 0, Math.min(buffer.length, remaining));
+            if (read == -1) {
+                throw new EOFException();
+            }
+            body.write(buffer, 0, read);
+            remaining -= read;
+        }
+        return body.toByteArray();
+    }
+
+    /**
+     * Decompresses and decodes the body of a section as it is stored in the patch.
+     *
+     * @param body The stored body
+     * @param codec The codec of the patch
+     * @param version The version of the patch
+     * @return The section
+     * @throws IOException If the body is malformed
+     */
+    static PatchSection readSection(byte[] body, PatchCodec codec, int version) throws IOException {
+        if (codec == PatchCodecs.NONE) {
+            return readSection(new ByteArrayInputStream(body), version);
+        }
+        ByteArrayInputStream in = new ByteArrayInputStream(body);
+        int decodedLength = BinaryPatchFormat.readVarInt(in);
+        if (decodedLength < 0) {
+            throw new IOException("Malformed section length in the binary patch: " + decodedLength);
+        }
+        int offset = body.length - in.available();
+        return readSection(new ByteArrayInputStream(codec.decode(body, offset, body.length - offset, decodedLength)), version);
+    }
+
+    /**
+     * Decodes the uncompressed body of a section.
+     *
+     * @param body The body
+     * @param version The version of the patch
+     * @return The section
+     * @throws IOException If the body is malformed
+     */
+    static PatchSection readSection(ByteArrayInputStream body, int version) throws IOException {
+        // Every string, hunk and line takes up at least one byte, which bounds their amount
+        int stringCount = BinaryPatchFormat.readVarInt(body);
+        if (stringCount < 0 || stringCount > body.available()) {
+            throw new IOException("Malformed string count in the binary patch: " + stringCount);
+        }
+        String[] strings = new String[stringCount];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = BinaryPatchFormat.readString(body);
+        }
+        try {
+            String originalName = strings[BinaryPatchFormat.readVarInt(body)];
+            String revisedName = strings[BinaryPatchFormat.readVarInt(body)];
+            int kind = version >= BinaryPatchFormat.SECTION_KIND_VERSION ? BinaryPatchFormat.readVarInt(body) : BinaryPatchFormat.SECTION_HUNKS;
+            if (kind == BinaryPatchFormat.SECTION_RESOURCE) {
+                int length = BinaryPatchFormat.readVarInt(body);
+                if (length < 0 || length > body.available()) {
+                    throw new IOException("Malformed resource delta length in the binary patch: " + length);
+                }
+                byte[] delta = new byte[length];
+                body.read(delta, 0, length);
+                return new PatchSection(originalName, revisedName, new ResourceDelta(delta));
+            } else if (kind != BinaryPatchFormat.SECTION_HUNKS) {
+                throw new IOException("Unknown section kind in the binary patch: " + kind);
+            }
+            int hunkCount = BinaryPatchFormat.readVarInt(body);
+            if (hunkCount < 0 || hunkCount > body.available()) {
+                throw new IOException("Malformed hunk count in the binary patch: " + hunkCount);
+            }
+            List<PatchHunk> hunks = new ArrayList<>(hunkCount);
+            int originalEnd = 0;
+            int revisedEnd = 0;
+            for (int i = 0; i < hunkCount; i++) {
+                int originalStart = originalEnd + BinaryPatchFormat.unzigzag(BinaryPatchFormat.readVarInt(body));
+                int revisedStart = revisedEnd + BinaryPatchFormat.unzigzag(BinaryPatchFormat.readVarInt(body));
+                int lineCount = BinaryPatchFormat.readVarInt(body);
+                if (lineCount < 0 || lineCount > body.available()) {
+                    throw new IOException("Malformed line count in the binary patch: " + lineCount);
+                }
+                char[] kinds = new char[lineCount];
+                String[] lines = new String[lineCount];
+                originalEnd = originalStart;
+                revisedEnd = revisedStart;
+                for (int j = 0; j < lineCount; j++) {
+                    int line = BinaryPatchFormat.readVarInt(body);
+                    kinds[j] = KINDS[line & 3];
+                    lines[j] = strings[line >>> 2];
+                    if (kinds[j] != PatchHunk.ADDED) {
+                        originalEnd++;
+                    }
+                    if (kinds[j] != PatchHunk.REMOVED) {
+                        revisedEnd++;
+                    }
+                }
+                hunks.add(new PatchHunk(originalStart, revisedStart, kinds, lines));
+            }
+            return new PatchSection(originalName, revisedName, hunks);
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Malformed section in the binary patch", e);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package de.geolykt.starloader.bcdiff.patch;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Writes patches in the {@link BinaryPatchFormat binary patch format}.
+ * Only the section that is currently being written and the index of all sections are held in memory.
+ */
+public class BinaryPatchWriter implements Closeable {
+
+    private final OutputStream out;
+    private final PatchCodec codec;
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream header = new ByteArrayOutputStream();
+    private final Map<String, Integer> stringIndices = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+    private final ByteArrayOutputStream index = new ByteArrayOutputStream();
+    private final CRC32 checksum = new CRC32();
+    private int sectionCount;
+    private long position;
+    private boolean finished;
+
+    /**
+     * Creates a writer that does not compress the sections and writes the header of the patch.
+     *
+     * @param out The stream to write to. It is closed once this writer is closed.
+     * @throws IOException If the stream could not be written to
+     */
+    public BinaryPatchWriter(OutputStream out) throws IOException {
+        this(out, PatchCodecs.NONE);
+    }
+
+    /**
+     * Creates a writer and writes the header of the patch.
+     *
+     * @param out The stream to write to. It is closed once this writer is closed.
+     * @param codec The codec every section is compressed with
+     * @throws IOException If the stream could not be written to
+     */
+    public BinaryPatchWriter(OutputStream out, PatchCodec codec) throws IOException {
+        this.out = out;
+        this.codec = codec;
+        out.write(BinaryPatchFormat.MAGIC);
+        out.write(BinaryPatchFormat.VERSION);
+        out.write(codec.getId());
+        position = BinaryPatchFormat.MAGIC.length + 2;
+    }
+
+    /**
+     * Obtains the codec the sections are compressed with.
+     *
+     * @return The codec
+     */
+    public PatchCodec getCodec() {
+        return codec;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Writes the marker that ends the sections, the index and the trailer of the patch and flushes the stream.
+     * No sections can be written afterwards.
+     *
+     * @throws IOException If the stream could not be written to
+     */
+    public void finish() throws IOException {
+        if (!finished) {
+            finished = true;
+            out.write(0);
+            long indexOffset = position + 1;
+            ByteArrayOutputStream count = new ByteArrayOutputStream(5);
+            BinaryPatchFormat.writeVarInt(count, sectionCount);
+            count.writeTo(out);
+            index.writeTo(out);
+            DataOutputStream trailer = new DataOutputStream(out);
+            trailer.writeLong(indexOffset);
+            trailer.write(BinaryPatchFormat.MAGIC);
+            trailer.flush();
+        }
+    }
+
+    private int indexOf(String string) {
+        Integer index = stringIndices.get(string);
+        if (index == null) {
+            index = strings.size();
+            stringIndices.put(string, index);
+            strings.add(string);
+        }
+        return index;
+    }
+
+    /**
+     * Writes a section.
+     *
+     * @param section The section
+     * @throws IOException If the stream could not be written to
+     */
+    public void writeSection(PatchSection section) throws IOException {
+        if (finished) {
+            throw new IllegalStateException("The patch was already finished");
+        }
+        body.reset();
+        BinaryPatchFormat.writeVarInt(body, indexOf(section.getOriginalName()));
+        BinaryPatchFormat.writeVarInt(body, indexOf(section.getRevisedName()));
+        if (section.isResource()) {
+            BinaryPatchFormat.writeVarInt(body, BinaryPatchFormat.SECTION_RESOURCE);
+            byte[] delta = section.getResourceDelta().getBytes();
+            BinaryPatchFormat.writeVarInt(body, delta.length);
+            body.write(delta, 0, delta.length);
+        } else {
+            BinaryPatchFormat.writeVarInt(body, BinaryPatchFormat.SECTION_HUNKS);
+            writeHunks(section.getHunks());
+        }
+
+        // The string table precedes the hunks, but is only known once they were written
+        header.reset();
+        BinaryPatchFormat.writeVarInt(header, strings.size());
+        for (String string : strings) {
+            BinaryPatchFormat.writeString(header, string);
+        }
+        strings.clear();
+        stringIndices.clear();
+
+        if (codec != PatchCodecs.NONE) {
+            body.writeTo(header);
+            byte[] compressed = codec.encode(header.toByteArray(), 0, header.size());
+            int decodedLength = header.size();
+            header.reset();
+            BinaryPatchFormat.writeVarInt(header, decodedLength);
+            body.reset();
+            body.write(compressed, 0, compressed.length);
+        }
+
+        ByteArrayOutputStream length = new ByteArrayOutputStream(5);
+        int bodyLength = header.size() + body.size();
+        BinaryPatchFormat.writeVarInt(length, bodyLength);
+        length.writeTo(out);
+        checksum.reset();
+        OutputStream checked = new CheckedOutputStream(out, checksum);
+        header.writeTo(checked);
+        body.writeTo(checked);
+
+        BinaryPatchFormat.writeString(index, section.getOriginalName());
+        BinaryPatchFormat.writeString(index, section.getRevisedName());
+        BinaryPatchFormat.writeVarLong(index, position + length.size());
+        BinaryPatchFormat.writeVarInt(index, bodyLength);
+        int crc = (int) checksum.getValue();
+        index.write(crc >>> 24);
+        index.write(crc >>> 16);
+        index.write(crc >>> 8);
+        index.write(crc);
+        index.write(section.isResource() ? BinaryPatchFormat.SECTION_RESOURCE : BinaryPatchFormat.SECTION_HUNKS);
+        sectionCount++;
+        position += length.size() + bodyLength;
+    }
+
+    private void writeHunks(List<PatchHunk> hunks) {
+        BinaryPatchFormat.writeVarInt(body, hunks.size());
+        int originalEnd = 0;
+        int revisedEnd = 0;
+        for (PatchHunk hunk : hunks) {
+            BinaryPatchFormat.writeVarInt(body, BinaryPatchFormat.zigzag(hunk.getOriginalStart() - originalEnd));
+            BinaryPatchFormat.writeVarInt(body, BinaryPatchFormat.zigzag(hunk.getRevisedStart() - revisedEnd));
+            int count = hunk.getLineCount();
+            BinaryPatchFormat.writeVarInt(body, count);
+            for (int i = 0; i < count; i++) {
+                int kind;
+                switch (hunk.getKind(i)) {
+                case PatchHunk.CONTEXT:
+                    kind = BinaryPatchFormat.KIND_CONTEXT;
+                    break;
+                case PatchHunk.REMOVED:
+                    kind = BinaryPatchFormat.KIND_REMOVED;
+                    break;
+                default:
+                    kind = BinaryPatchFormat.KIND_ADDED;
+                }
+                BinaryPatchFormat.writeVarInt(body, indexOf(hunk.getLine(i)) << 2 | kind);
+            }
+            originalEnd = hunk.getOriginalStart() + hunk.getOriginalLength();
+            revisedEnd = hunk.getRevisedStart() + hunk.getRevisedLength();
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package de.geolykt.starloader.bcdiff.patch;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * A binary patch file whose sections are read on demand by using the index at its end,
+ * so that only the sections of the files that are actually patched need to be read and decoded.
+ *
+ * <p>The sections returned by {@link #nextSection()} only read their hunks once they are requested. Failures to do so are
+ * reported as an {@link UncheckedIOException}. Sections can be read from multiple threads at once.
+ */
+public class IndexedPatchFile implements PatchInput {
+
+    private final FileChannel channel;
+    private final PatchCodec codec;
+    private final int version;
+    private final List<PatchIndexEntry> entries;
+    private final Map<String, PatchIndexEntry> entriesByName;
+    private int nextEntry;
+
+    private IndexedPatchFile(FileChannel channel, PatchCodec codec, int version, List<PatchIndexEntry> entries) {
+        this.channel = channel;
+        this.codec = codec;
+        this.version = version;
+        this.entries = Collections.unmodifiableList(entries);
+        this.entriesByName = new HashMap<>();
+        for (PatchIndexEntry entry : entries) {
+            if (!entry.getOriginalName().equals("/dev/null")) {
+                entriesByName.put(entry.getOriginalName(), entry);
+            }
+            if (!entry.getRevisedName().equals("/dev/null")) {
+                entriesByName.putIfAbsent(entry.getRevisedName(), entry);
+            }
+        }
+    }
+
+    /**
+     * Opens a binary patch file and reads its index.
+     *
+     * @param path The path of the patch file
+     * @return The opened patch file, which needs to be closed once it is no longer used
+     * @throws IOException If the file could not be read or is not a binary patch with an index
+     */
+    public static IndexedPatchFile open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = read(channel, 0, BinaryPatchFormat.MAGIC.length + 1);
+            for (int i = 0; i < BinaryPatchFormat.MAGIC.length; i++) {
+                if (header.get(i) != BinaryPatchFormat.MAGIC[i]) {
+                    throw new IOException("The file does not contain a binary patch");
+                }
+            }
+            int version = header.get(BinaryPatchFormat.MAGIC.length) & 0xFF;
+            if (version < BinaryPatchFormat.INDEXED_VERSION) {
+                throw new IOException("Version " + version + " binary patches do not have an index");
+            } else if (version > BinaryPatchFormat.VERSION) {
+                throw new IOException("Unsupported binary patch version: " + version);
+            }
+            PatchCodec codec = PatchCodecs.NONE;
+            long sectionsOffset = header.capacity();
+            if (version >= BinaryPatchFormat.CODEC_VERSION) {
+                codec = BinaryPatchFormat.getCodec(read(channel, sectionsOffset++, 1).get() & 0xFF);
+            }
+            return new IndexedPatchFile(channel, codec, version, readIndex(channel, sectionsOffset, version));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static List<PatchIndexEntry> readIndex(FileChannel channel, long sectionsOffset, int version) throws IOException {
+        long size = channel.size();
+        ByteBuffer trailer = read(channel, size - BinaryPatchFormat.TRAILER_LENGTH, BinaryPatchFormat.TRAILER_LENGTH);
+        long indexOffset = trailer.getLong();
+        for (int i = 0; i < BinaryPatchFormat.MAGIC.length; i++) {
+            if (trailer.get() != BinaryPatchFormat.MAGIC[i]) {
+                throw new IOException("The binary patch is truncated or lacks an index");
+            }
+        }
+        long indexLength = size - BinaryPatchFormat.TRAILER_LENGTH - indexOffset;
+        if (indexOffset < sectionsOffset || indexLength < 0 || indexLength > Integer.MAX_VALUE) {
+            throw new IOException("Malformed trailer in the binary patch: index at " + indexOffset);
+        }
+
+        ByteArrayInputStream index = new ByteArrayInputStream(read(channel, indexOffset, (int) indexLength).array());
+        int count = BinaryPatchFormat.readVarInt(index);
+        // Every entry takes up more than one byte, which bounds their amount
+        if (count < 0 || count > index.available()) {
+            throw new IOException("Malformed section count in the index of the binary patch: " + count);
+        }
+        List<PatchIndexEntry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String originalName = BinaryPatchFormat.readString(index);
+            String revisedName = BinaryPatchFormat.readString(index);
+            long offset = BinaryPatchFormat.readVarLong(index);
+            int length = BinaryPatchFormat.readVarInt(index);
+            int checksum = 0;
+            for (int j = 0; j < 4; j++) {
+                int b = index.read();
+                if (b == -1) {
+                    throw new EOFException("The index of the binary patch is truncated");
+                }
+                checksum = checksum << 8 | b;
+            }
+            boolean resource = false;
+            if (version >= BinaryPatchFormat.SECTION_KIND_VERSION) {
+                int kind = index.read();
+                if (kind != BinaryPatchFormat.SECTION_HUNKS && kind != BinaryPatchFormat.SECTION_RESOURCE) {
+                    throw new IOException("Unknown section kind in the index of the binary patch: " + kind);
+                }
+                resource = kind == BinaryPatchFormat.SECTION_RESOURCE;
+            }
+            if (offset < sectionsOffset || length < 0 || offset + length > indexOffset) {
+                throw new IOException("Malformed index entry in the binary patch: " + originalName + " at " + offset);
+            }
+            entries.add(new PatchIndexEntry(originalName, revisedName, offset, length, checksum, resource));
+        }
+        return entries;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        if (position < 0) {
+            throw new EOFException("The binary patch is truncated");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) == -1) {
+                throw new EOFException("The binary patch is truncated");
+            }
+        }
+        ((Buffer) buffer).flip();
+        return buffer;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Obtains the codec the sections of the patch are compressed with.
+     *
+     * @return The codec
+     */
+    public PatchCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Obtains the index entries of all sections, in the order the sections are stored in.
+     *
+     * @return The entries
+     */
+    public List<PatchIndexEntry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Obtains the index entry of the section that patches the given file.
+     *
+     * @param name The name of the file, either before or after it was patched
+     * @return The entry, or null if the file is not patched
+     */
+    public PatchIndexEntry getEntry(String name) {
+        return entriesByName.get(name);
+    }
+
+    /**
+     * Reads the section that patches the given file.
+     *
+     * @param name The name of the file, either before or after it was patched
+     * @return The section, or null if the file is not patched
+     * @throws IOException If the section could not be read or is corrupt
+     */
+    public PatchSection getSection(String name) throws IOException {
+        PatchIndexEntry entry = getEntry(name);
+        return entry == null ? null : readSection(entry);
+    }
+
+    @Override
+    public PatchSection nextSection() throws IOException {
+        if (nextEntry == entries.size()) {
+            return null;
+        }
+        PatchIndexEntry entry = entries.get(nextEntry++);
+        return new PatchSection(entry.getOriginalName(), entry.getRevisedName(), entry.isResource()) {
+            private PatchSection section;
+
+            @Override
+            public List<PatchHunk> getHunks() {
+                return load().getHunks();
+            }
+
+            @Override
+            public ResourceDelta getResourceDelta() {
+                return load().getResourceDelta();
+            }
+
+            private synchronized PatchSection load() {
+                if (section == null) {
+                    try {
+                        section = readSection(entry);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                return section;
+            }
+        };
+    }
+
+    /**
+     * Reads and decodes a section of this patch file.
+     *
+     * @param entry The index entry of the section
+     * @return The section
+     * @throws IOException If the section could not be read or its checksum does not match
+     */
+    public PatchSection readSection(PatchIndexEntry entry) throws IOException {
+        byte[] body = read(channel, entry.getOffset(), entry.getLength()).array();
+        CRC32 crc = new CRC32();
+        crc.update(body, 0, body.length);
+        if ((int) crc.getValue() != entry.getChecksum()) {
+            throw new IOException("Checksum mismatch in the section of " + entry.getOriginalName() + " in the binary patch");
+        }
+        return BinaryPatchReader.readSection(body, codec, version);
+    }
+}
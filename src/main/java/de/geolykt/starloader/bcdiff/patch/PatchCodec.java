@@ -0,0 +1,48 @@
+package de.geolykt.starloader.bcdiff.patch;
+
+import java.io.IOException;
+
+/**
+ * Compresses the sections of a binary patch. Every section is compressed on its own,
+ * so that sections can still be skipped or decoded independently of each other.
+ * Codecs are identified within patches by their ID and need to be {@link PatchCodecs#register(PatchCodec) registered}
+ * in order to read patches that use them.
+ */
+public interface PatchCodec {
+
+    /**
+     * Decompresses a section.
+     *
+     * @param data The array holding the compressed section
+     * @param offset The offset of the compressed section within the array
+     * @param length The length of the compressed section
+     * @param decodedLength The length of the section before it was compressed
+     * @return The decompressed section, which is exactly decodedLength bytes long
+     * @throws IOException If the data is malformed
+     */
+    byte[] decode(byte[] data, int offset, int length, int decodedLength) throws IOException;
+
+    /**
+     * Compresses a section.
+     *
+     * @param data The array holding the section
+     * @param offset The offset of the section within the array
+     * @param length The length of the section
+     * @return The compressed section
+     */
+    byte[] encode(byte[] data, int offset, int length);
+
+    /**
+     * Obtains the ID that is stored in the header of patches using this codec.
+     *
+     * @return The ID, between 0 and 255
+     */
+    int getId();
+
+    /**
+     * Obtains the name of the codec, as used on the command line.
+     *
+     * @return The name
+     */
+    String getName();
+}
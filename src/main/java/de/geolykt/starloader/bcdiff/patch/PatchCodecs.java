@@ -0,0 +1,169 @@
+package de.geolykt.starloader.bcdiff.patch;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The registry of the {@link PatchCodec codecs} that can be used to compress binary patches.
+ * The JDK only provides deflate, other codecs such as zstd can be registered by the application.
+ */
+public final class PatchCodecs {
+
+    /**
+     * The codec that stores sections uncompressed.
+     */
+    public static final PatchCodec NONE = new PatchCodec() {
+
+        @Override
+        public byte[] decode(byte[] data, int offset, int length, int decodedLength) throws IOException {
+            if (length != decodedLength) {
+                throw new IOException("Expected an uncompressed section of " + decodedLength + " bytes but got " + length + " bytes");
+            }
+            return Arrays.copyOfRange(data, offset, offset + length);
+        }
+
+        @Override
+        public byte[] encode(byte[] data, int offset, int length) {
+            return Arrays.copyOfRange(data, offset, offset + length);
+        }
+
+        @Override
+        public int getId() {
+            return 0;
+        }
+
+        @Override
+        public String getName() {
+            return "none";
+        }
+    };
+
+    /**
+     * The codec that compresses sections with deflate in the zlib format.
+     */
+    public static final PatchCodec DEFLATE = new PatchCodec() {
+
+        @Override
+        public byte[] decode(byte[] data, int offset, int length, int decodedLength) throws IOException {
+            // Deflate compresses by a factor of 1032 at most
+            if (decodedLength > length * 1032L + 64) {
+                throw new IOException("A compressed section of " + length + " bytes cannot hold " + decodedLength + " bytes");
+            }
+            byte[] out = new byte[decodedLength];
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(data, offset, length);
+                int written = 0;
+                while (written < decodedLength) {
+                    int n = inflater.inflate(out, written, decodedLength - written);
+                    if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new IOException("The compressed section ends after " + written + " of " + decodedLength + " bytes");
+                    }
+                    written += n;
+                }
+                return out;
+            } catch (DataFormatException e) {
+                throw new IOException("Malformed compressed section", e);
+            } finally {
+                inflater.end();
+            }
+        }
+
+        @Override
+        public byte[] encode(byte[] data, int offset, int length) {
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+            try {
+                deflater.setInput(data, offset, length);
+                deflater.finish();
+                ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, length / 4));
+                byte[] buffer = new byte[8192];
+                while (!deflater.finished()) {
+                    int n = deflater.deflate(buffer);
+                    out.write(buffer, 0, n);
+                }
+                return out.toByteArray();
+            } finally {
+                deflater.end();
+            }
+        }
+
+        @Override
+        public int getId() {
+            return 1;
+        }
+
+        @Override
+        public String getName() {
+            return "deflate";
+        }
+    };
+
+    private static final Map<Integer, PatchCodec> CODECS = new ConcurrentHashMap<>();
+
+    static {
+        register(NONE);
+        register(DEFLATE);
+    }
+
+    private PatchCodecs() {
+    }
+
+    /**
+     * Obtains a codec by its ID.
+     *
+     * @param id The ID
+     * @return The codec, or null if no codec with this ID is registered
+     */
+    public static PatchCodec get(int id) {
+        return CODECS.get(id);
+    }
+
+    /**
+     * Obtains a codec by its name.
+     *
+     * @param name The name
+     * @return The codec, or null if no codec with this name is registered
+     */
+    public static PatchCodec get(String name) {
+        for (PatchCodec codec : CODECS.values()) {
+            if (codec.getName().equals(name)) {
+                return codec;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Obtains all registered codecs.
+     *
+     * @return The codecs
+     */
+    public static Collection<PatchCodec> getCodecs() {
+        return Collections.unmodifiableCollection(CODECS.values());
+    }
+
+    /**
+     * Registers a codec, so that patches using it can be read.
+     *
+     * @param codec The codec
+     * @throws IllegalArgumentException If the ID of the codec is out of range or already used by another codec
+     */
+    public static void register(PatchCodec codec) {
+        int id = codec.getId();
+        if (id < 0 || id > 255) {
+            throw new IllegalArgumentException("Codec IDs must be between 0 and 255, but " + codec.getName() + " uses " + id);
+        }
+        PatchCodec previous = CODECS.putIfAbsent(id, codec);
+        if (previous != null && previous != codec) {
+            throw new IllegalArgumentException("The codec ID " + id + " of " + codec.getName() + " is already used by " + previous.getName());
+        }
+    }
+}
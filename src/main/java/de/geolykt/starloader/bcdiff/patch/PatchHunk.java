@@ -0,0 +1,173 @@
+package de.geolykt.starloader.bcdiff.patch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.github.difflib.patch.AbstractDelta;
+import com.github.difflib.patch.ChangeDelta;
+import com.github.difflib.patch.Chunk;
+
+/**
+ * A single hunk of a patch section, which is a range of context, removed and added lines
+ * introduced by a "@@ -a,b +c,d @@" line in the unified diff format.
+ */
+public final class PatchHunk {
+
+    /**
+     * The kind of lines that are present in both the original and the revised file.
+     */
+    public static final char CONTEXT = ' ';
+
+    /**
+     * The kind of lines that are only present in the original file.
+     */
+    public static final char REMOVED = '-';
+
+    /**
+     * The kind of lines that are only present in the revised file.
+     */
+    public static final char ADDED = '+';
+
+    private final int originalStart;
+    private final int revisedStart;
+    private final char[] kinds;
+    private final String[] lines;
+
+    /**
+     * Constructor.
+     *
+     * @param originalStart The line number of the first line of the hunk within the original file, as written in the hunk header
+     * @param revisedStart The line number of the first line of the hunk within the revised file, as written in the hunk header
+     * @param kinds The kinds of the lines, one of {@link #CONTEXT}, {@link #REMOVED} and {@link #ADDED}
+     * @param lines The lines, without the character that denotes their kind
+     */
+    public PatchHunk(int originalStart, int revisedStart, char[] kinds, String[] lines) {
+        if (kinds.length != lines.length) {
+            throw new IllegalArgumentException("Got " + kinds.length + " kinds for " + lines.length + " lines");
+        }
+        for (char kind : kinds) {
+            if (kind != CONTEXT && kind != REMOVED && kind != ADDED) {
+                throw new IllegalArgumentException("Unknown line kind: '" + kind + "'");
+            }
+        }
+        this.originalStart = originalStart;
+        this.revisedStart = revisedStart;
+        this.kinds = kinds;
+        this.lines = lines;
+    }
+
+    /**
+     * Obtains the header line of the hunk in the unified diff format.
+     *
+     * @return The header line
+     */
+    public String getHeader() {
+        return "@@ -" + originalStart + ',' + getOriginalLength() + " +" + revisedStart + ',' + getRevisedLength() + " @@";
+    }
+
+    /**
+     * Obtains the kind of a line.
+     *
+     * @param index The index of the line within the hunk
+     * @return The kind of the line, one of {@link #CONTEXT}, {@link #REMOVED} and {@link #ADDED}
+     */
+    public char getKind(int index) {
+        return kinds[index];
+    }
+
+    /**
+     * Obtains a line, without the character that denotes its kind.
+     *
+     * @param index The index of the line within the hunk
+     * @return The line
+     */
+    public String getLine(int index) {
+        return lines[index];
+    }
+
+    /**
+     * Obtains the amount of lines in the hunk, regardless of their kind.
+     *
+     * @return The amount of lines
+     */
+    public int getLineCount() {
+        return lines.length;
+    }
+
+    /**
+     * Obtains the amount of lines the hunk covers within the original file.
+     *
+     * @return The amount of context and removed lines
+     */
+    public int getOriginalLength() {
+        int length = 0;
+        for (char kind : kinds) {
+            if (kind != ADDED) {
+                length++;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Obtains the line number of the first line of the hunk within the original file. The number is 1-based,
+     * unless the original file is empty.
+     *
+     * @return The line number
+     */
+    public int getOriginalStart() {
+        return originalStart;
+    }
+
+    /**
+     * Obtains the amount of lines the hunk covers within the revised file.
+     *
+     * @return The amount of context and added lines
+     */
+    public int getRevisedLength() {
+        int length = 0;
+        for (char kind : kinds) {
+            if (kind != REMOVED) {
+                length++;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Obtains the line number of the first line of the hunk within the revised file. The number is 1-based,
+     * unless the revised file is empty.
+     *
+     * @return The line number
+     */
+    public int getRevisedStart() {
+        return revisedStart;
+    }
+
+    /**
+     * Converts the hunk into a delta. The delta is the same as the one that
+     * {@link com.github.difflib.UnifiedDiffUtils#parseUnifiedDiff(List)} creates for the hunk.
+     *
+     * @return The delta
+     */
+    public AbstractDelta<String> toDelta() {
+        List<String> originalLines = new ArrayList<>(lines.length);
+        List<String> revisedLines = new ArrayList<>(lines.length);
+        List<Integer> removedPositions = new ArrayList<>();
+        List<Integer> addedPositions = new ArrayList<>();
+        for (int i = 0; i < lines.length; i++) {
+            if (kinds[i] == CONTEXT) {
+                originalLines.add(lines[i]);
+                revisedLines.add(lines[i]);
+            } else if (kinds[i] == REMOVED) {
+                removedPositions.add(originalStart + originalLines.size());
+                originalLines.add(lines[i]);
+            } else {
+                addedPositions.add(revisedStart + revisedLines.size());
+                revisedLines.add(lines[i]);
+            }
+        }
+        return new ChangeDelta<>(new Chunk<>(Math.max(0, originalStart - 1), originalLines, removedPositions),
+                new Chunk<>(Math.max(0, revisedStart - 1), revisedLines, addedPositions));
+    }
+}
@@ -0,0 +1,77 @@
+package de.geolykt.starloader.bcdiff.patch;
+
+/**
+ * An entry of the index of a {@link IndexedPatchFile}, which locates the section of a single file.
+ */
+public final class PatchIndexEntry {
+
+    private final String originalName;
+    private final String revisedName;
+    private final long offset;
+    private final int length;
+    private final int checksum;
+    private final boolean resource;
+
+    PatchIndexEntry(String originalName, String revisedName, long offset, int length, int checksum, boolean resource) {
+        this.originalName = originalName;
+        this.revisedName = revisedName;
+        this.offset = offset;
+        this.length = length;
+        this.checksum = checksum;
+        this.resource = resource;
+    }
+
+    /**
+     * Obtains the CRC32 checksum of the body of the section.
+     *
+     * @return The checksum
+     */
+    public int getChecksum() {
+        return checksum;
+    }
+
+    /**
+     * Obtains the length of the body of the section.
+     *
+     * @return The length in bytes
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Obtains the offset of the body of the section within the patch file.
+     *
+     * @return The offset in bytes
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Obtains the name of the file before it was patched. This is "/dev/null" if the file is created by the patch.
+     *
+     * @return The original name of the file
+     */
+    public String getOriginalName() {
+        return originalName;
+    }
+
+    /**
+     * Obtains the name of the file after it was patched. This is "/dev/null" if the file is removed by the patch.
+     *
+     * @return The revised name of the file
+     */
+    public String getRevisedName() {
+        return revisedName;
+    }
+
+    /**
+     * Checks whether the section is the section of a resource, which holds a {@link ResourceDelta} instead of hunks.
+     *
+     * @return True if the section is the section of a resource
+     */
+    public boolean isResource() {
+        return resource;
+    }
+}
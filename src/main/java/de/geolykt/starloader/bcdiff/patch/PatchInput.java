@@ -0,0 +1,18 @@
+package de.geolykt.starloader.bcdiff.patch;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A patch that is read section by section, regardless of the format it is stored in.
+ */
+public interface PatchInput extends Closeable {
+
+    /**
+     * Reads the next section of the patch.
+     *
+     * @return The next section, or null if the end of the patch has been reached
+     * @throws IOException If the patch could not be read
+     */
+    PatchSection nextSection() throws IOException;
+}
@@ -0,0 +1,103 @@
+package de.geolykt.starloader.bcdiff.patch;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Reads a patch in the unified diff format, as created by the generate command, section by section.
+ * Only the section that is currently being read is held in memory, which allows to process patches
+ * of arbitrary size.
+ */
+public class PatchReader implements PatchInput {
+
+    private final BufferedReader reader;
+    private final Iterator<String> lines;
+    private String nextHeader;
+
+    /**
+     * Creates a reader that reads the lines of the patch from a {@link Reader}.
+     *
+     * @param reader The reader to read from. It is closed once this reader is closed.
+     */
+    public PatchReader(Reader reader) {
+        if (reader instanceof BufferedReader) {
+            this.reader = (BufferedReader) reader;
+        } else {
+            this.reader = new BufferedReader(reader);
+        }
+        this.lines = null;
+    }
+
+    /**
+     * Creates a reader that reads the lines of the patch from an in-memory list.
+     *
+     * @param lines The lines of the patch
+     */
+    public PatchReader(Iterable<String> lines) {
+        this.reader = null;
+        this.lines = lines.iterator();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (reader != null) {
+            reader.close();
+        }
+    }
+
+    /**
+     * Reads the next section of the patch. Comment lines (lines starting with '#') and empty lines between sections
+     * are skipped. Empty lines within a section are kept, as some editors strip the trailing space of empty context lines.
+     *
+     * @return The next section, or null if the end of the patch has been reached
+     * @throws IOException If the underlying reader could not be read
+     */
+    @Override
+    public PatchSection nextSection() throws IOException {
+        List<String> section = new ArrayList<>();
+        if (nextHeader != null) {
+            section.add(nextHeader);
+            nextHeader = null;
+        }
+        // Empty lines are only added once it is known that further lines of the section follow them
+        int emptyLines = 0;
+        for (String ln = readLine(); ln != null; ln = readLine()) {
+            if (ln.isEmpty()) {
+                if (section.size() >= 2) {
+                    emptyLines++;
+                }
+                continue;
+            } else if (ln.charAt(0) == '#') {
+                continue;
+            }
+            if (ln.startsWith("---")) {
+                if (!section.isEmpty()) {
+                    nextHeader = ln;
+                    return new PatchSection(section);
+                }
+            }
+            for (; emptyLines > 0; emptyLines--) {
+                section.add("");
+            }
+            section.add(ln);
+        }
+        if (section.isEmpty()) {
+            return null;
+        }
+        return new PatchSection(section);
+    }
+
+    private String readLine() throws IOException {
+        if (reader != null) {
+            return reader.readLine();
+        }
+        if (lines.hasNext()) {
+            return lines.next();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,283 @@
+package de.geolykt.starloader.bcdiff.patch;
+
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+import com.github.difflib.UnifiedDiffUtils;
+import com.github.difflib.patch.Patch;
+
+/**
+ * The part of a patch file that describes the changes made to a single file.
+ *
+ * <p>A section is either backed by its lines in the unified diff format, as read from a text patch,
+ * or by its hunks, as read from a binary patch. Either representation is derived from the other one when needed.
+ *
+ * <p>Sections of files that are not classes, called resources, hold a {@link ResourceDelta} instead of hunks.
+ * In the unified diff format, the delta is written as a "{@value #RESOURCE_MARKER}" line holding the length of the delta,
+ * followed by the delta encoded in base64, split into lines of {@value #BASE64_LINE_LENGTH} characters.
+ */
+public class PatchSection {
+
+    /**
+     * The line that introduces the delta of a resource section in the unified diff format, followed by the length of the delta.
+     */
+    public static final String RESOURCE_MARKER = "BINARY";
+
+    private static final int BASE64_LINE_LENGTH = 76;
+
+    private final String originalName;
+    private final String revisedName;
+    private final boolean resource;
+    private List<String> lines;
+    private List<PatchHunk> hunks;
+    private ResourceDelta resourceDelta;
+
+    /**
+     * Constructor.
+     *
+     * @param lines The lines of the section in the unified diff format, starting with the "---" and "+++" lines.
+     */
+    public PatchSection(List<String> lines) {
+        if (lines.size() < 2) {
+            throw new IllegalArgumentException("A patch section needs at least two lines, but got " + lines);
+        }
+        this.lines = lines;
+        this.originalName = lines.get(0).substring(4);
+        this.revisedName = lines.get(1).substring(4);
+        this.resource = lines.size() > 2 && lines.get(2).startsWith(RESOURCE_MARKER + " ");
+    }
+
+    /**
+     * Creates a section whose contents are provided by a subclass overriding {@link #getHunks()}
+     * or {@link #getResourceDelta()}.
+     *
+     * @param originalName The name of the file before it was patched, "/dev/null" if the file is created by the patch
+     * @param revisedName The name of the file after it was patched, "/dev/null" if the file is removed by the patch
+     * @param resource Whether the section is the section of a resource
+     */
+    protected PatchSection(String originalName, String revisedName, boolean resource) {
+        this.originalName = originalName;
+        this.revisedName = revisedName;
+        this.resource = resource;
+    }
+
+    /**
+     * Creates the section of a resource.
+     *
+     * @param originalName The name of the file before it was patched, "/dev/null" if the file is created by the patch
+     * @param revisedName The name of the file after it was patched, "/dev/null" if the file is removed by the patch
+     * @param resourceDelta The delta of the resource
+     */
+    public PatchSection(String originalName, String revisedName, ResourceDelta resourceDelta) {
+        this.originalName = originalName;
+        this.revisedName = revisedName;
+        this.resource = true;
+        this.resourceDelta = resourceDelta;
+    }
+
+    /**
+     * Creates a section from its hunks.
+     *
+     * @param originalName The name of the file before it was patched, "/dev/null" if the file is created by the patch
+     * @param revisedName The name of the file after it was patched, "/dev/null" if the file is removed by the patch
+     * @param hunks The hunks of the section, ordered by their position
+     */
+    public PatchSection(String originalName, String revisedName, List<PatchHunk> hunks) {
+        this.originalName = originalName;
+        this.revisedName = revisedName;
+        this.resource = false;
+        this.hunks = hunks;
+    }
+
+    /**
+     * Obtains the hunks of the section.
+     *
+     * @return The hunks, ordered by their position
+     * @throws IllegalArgumentException If the lines of the section are not a valid unified diff
+     * @throws IllegalStateException If the section is the section of a resource
+     */
+    public List<PatchHunk> getHunks() {
+        if (resource) {
+            throw new IllegalStateException("The section of " + originalName + " is the section of a resource and has no hunks");
+        }
+        List<PatchHunk> hunks = this.hunks;
+        if (hunks == null) {
+            hunks = Collections.unmodifiableList(parseHunks(lines));
+            this.hunks = hunks;
+        }
+        return hunks;
+    }
+
+    /**
+     * Obtains the lines of the section in the unified diff format.
+     *
+     * @return The lines of the section
+     */
+    public List<String> getLines() {
+        List<String> lines = this.lines;
+        if (lines == null) {
+            lines = new ArrayList<>();
+            lines.add("--- " + originalName);
+            lines.add("+++ " + revisedName);
+            if (resource) {
+                byte[] delta = getResourceDelta().getBytes();
+                lines.add(RESOURCE_MARKER + " " + delta.length);
+                String base64 = Base64.getEncoder().encodeToString(delta);
+                for (int i = 0; i < base64.length(); i += BASE64_LINE_LENGTH) {
+                    lines.add(base64.substring(i, Math.min(base64.length(), i + BASE64_LINE_LENGTH)));
+                }
+                this.lines = lines;
+                return lines;
+            }
+            for (PatchHunk hunk : getHunks()) {
+                lines.add(hunk.getHeader());
+                int count = hunk.getLineCount();
+                for (int i = 0; i < count; i++) {
+                    lines.add(hunk.getKind(i) + hunk.getLine(i));
+                }
+            }
+            this.lines = lines;
+        }
+        return lines;
+    }
+
+    /**
+     * Obtains the name of the file before it was patched. This is "/dev/null" if the file is created by the patch.
+     *
+     * @return The original name of the file
+     */
+    public String getOriginalName() {
+        return originalName;
+    }
+
+    /**
+     * Parses the changes described by this section.
+     *
+     * @return The changes described by this section
+     * @throws IllegalStateException If the section is the section of a resource
+     */
+    public Patch<String> getPatch() {
+        if (resource) {
+            throw new IllegalStateException("The section of " + originalName + " is the section of a resource and has no line changes");
+        }
+        if (hunks == null && lines != null) {
+            return UnifiedDiffUtils.parseUnifiedDiff(lines);
+        }
+        List<PatchHunk> hunks = getHunks();
+        Patch<String> patch = new Patch<>(hunks.size());
+        for (PatchHunk hunk : hunks) {
+            patch.addDelta(hunk.toDelta());
+        }
+        return patch;
+    }
+
+    /**
+     * Obtains the delta of a resource section, decoding it from the lines of the section if needed.
+     *
+     * @return The delta
+     * @throws IllegalArgumentException If the lines of the section do not hold a valid delta
+     * @throws IllegalStateException If the section is not the section of a resource
+     */
+    public ResourceDelta getResourceDelta() {
+        if (!resource) {
+            throw new IllegalStateException("The section of " + originalName + " is not the section of a resource");
+        }
+        ResourceDelta delta = this.resourceDelta;
+        if (delta == null) {
+            delta = parseResourceDelta(lines);
+            this.resourceDelta = delta;
+        }
+        return delta;
+    }
+
+    /**
+     * Obtains the name of the file after it was patched. This is "/dev/null" if the file is removed by the patch.
+     *
+     * @return The revised name of the file
+     */
+    public String getRevisedName() {
+        return revisedName;
+    }
+
+    /**
+     * Checks whether this section is the section of a resource, which holds a {@link ResourceDelta} instead of hunks.
+     *
+     * @return True if the section is the section of a resource
+     */
+    public boolean isResource() {
+        return resource;
+    }
+
+    private static int parseHunkNumber(String header, int start, int end) {
+        try {
+            return Integer.parseInt(header.substring(start, end));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed hunk header: " + header, e);
+        }
+    }
+
+    private static ResourceDelta parseResourceDelta(List<String> lines) {
+        String marker = lines.get(2);
+        int length;
+        try {
+            length = Integer.parseInt(marker.substring(RESOURCE_MARKER.length() + 1).trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed resource delta marker: " + marker, e);
+        }
+        StringBuilder base64 = new StringBuilder(length / 3 * 4 + 4);
+        for (int i = 3; i < lines.size(); i++) {
+            base64.append(lines.get(i).trim());
+        }
+        byte[] delta = Base64.getDecoder().decode(base64.toString());
+        if (delta.length != length) {
+            throw new IllegalArgumentException("Expected a resource delta of " + length + " bytes, but got " + delta.length + " bytes");
+        }
+        return new ResourceDelta(delta);
+    }
+
+    private static List<PatchHunk> parseHunks(List<String> lines) {
+        List<PatchHunk> hunks = new ArrayList<>();
+        int size = lines.size();
+        int i = 2;
+        while (i < size) {
+            String header = lines.get(i++);
+            // @@ -a,b +c,d @@, where ",b" and ",d" may be omitted if they are 1
+            if (!header.startsWith("@@ -")) {
+                throw new IllegalArgumentException("Expected a hunk header but got: " + header);
+            }
+            int revisedIndex = header.indexOf(" +", 4);
+            int endIndex = revisedIndex == -1 ? -1 : header.indexOf(" @@", revisedIndex);
+            if (endIndex == -1) {
+                throw new IllegalArgumentException("Malformed hunk header: " + header);
+            }
+            int originalComma = header.indexOf(',', 4);
+            boolean originalLength = originalComma != -1 && originalComma < revisedIndex;
+            int originalStart = parseHunkNumber(header, 4, originalLength ? originalComma : revisedIndex);
+            int revisedComma = header.indexOf(',', revisedIndex);
+            boolean revisedLength = revisedComma != -1 && revisedComma < endIndex;
+            int revisedStart = parseHunkNumber(header, revisedIndex + 2, revisedLength ? revisedComma : endIndex);
+
+            int start = i;
+            while (i < size && !lines.get(i).startsWith("@@")) {
+                i++;
+            }
+            List<String> hunkLines = new ArrayList<>(i - start);
+            StringBuilder kinds = new StringBuilder(i - start);
+            for (int j = start; j < i; j++) {
+                String line = lines.get(j);
+                if (line.isEmpty()) {
+                    // Some editors strip the trailing space of empty context lines
+                    kinds.append(PatchHunk.CONTEXT);
+                    hunkLines.add(line);
+                } else if (line.charAt(0) != '\\') {
+                    kinds.append(line.charAt(0));
+                    hunkLines.add(line.substring(1));
+                }
+            }
+            hunks.add(new PatchHunk(originalStart, revisedStart, kinds.toString().toCharArray(), hunkLines.toArray(new String[0])));
+        }
+        return hunks;
+    }
+}
@@ -0,0 +1,280 @@
+package de.geolykt.starloader.bcdiff.patch;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import com.github.difflib.patch.PatchFailedException;
+
+/**
+ * A binary delta that transforms the contents of a non-class file, such as a texture or a data file, into its revised contents.
+ *
+ * <p>The delta starts with the lengths of the original and the revised contents as varints and their CRC32 checksums as four
+ * big-endian bytes each. It is followed by instructions that build the revised contents from start to end. Every instruction
+ * starts with a varint holding its length shifted left by one bit. If the lowest bit is clear, the instruction inserts the bytes
+ * that follow it. Otherwise it copies bytes of the original contents, starting at the offset given by the zigzag-encoded varint
+ * that follows it, relative to the end of the previous copy.
+ *
+ * <p>Copies are found by indexing the blocks of the original contents with a rolling hash and looking up every position
+ * of the revised contents, so moved or repeated data is copied as well.
+ */
+public final class ResourceDelta {
+
+    private static final int BLOCK_SIZE = 16;
+    private static final int MAX_CANDIDATES = 16;
+    private static final int MAX_INSTRUCTION_LENGTH = 1 << 24;
+    private static final int HASH_MULTIPLIER = 0x01000193;
+    private static final int HASH_OUTGOING_FACTOR;
+
+    static {
+        int factor = 1;
+        for (int i = 1; i < BLOCK_SIZE; i++) {
+            factor *= HASH_MULTIPLIER;
+        }
+        HASH_OUTGOING_FACTOR = factor;
+    }
+
+    private final byte[] data;
+    private final int originalLength;
+    private final int revisedLength;
+    private final int originalChecksum;
+    private final int revisedChecksum;
+    private final int instructionsOffset;
+
+    /**
+     * Creates a delta from its encoded form.
+     *
+     * @param data The encoded delta
+     * @throws IllegalArgumentException If the header of the delta is malformed
+     */
+    public ResourceDelta(byte[] data) {
+        ByteArrayInputStream in = new ByteArrayInputStream(data);
+        try {
+            this.originalLength = BinaryPatchFormat.readVarInt(in);
+            this.revisedLength = BinaryPatchFormat.readVarInt(in);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Truncated resource delta", e);
+        }
+        int offset = data.length - in.available();
+        if (originalLength < 0 || revisedLength < 0 || offset + 8 > data.length) {
+            throw new IllegalArgumentException("Malformed resource delta header");
+        }
+        this.data = data;
+        this.originalChecksum = readInt(data, offset);
+        this.revisedChecksum = readInt(data, offset + 4);
+        this.instructionsOffset = offset + 8;
+    }
+
+    /**
+     * Applies the delta and writes the revised contents to a stream. Only the original contents and the delta are held
+     * in memory, the revised contents are written as they are built.
+     *
+     * @param original The original contents, an empty array if the file is created by the delta
+     * @param out The stream to write the revised contents to. It is neither flushed nor closed.
+     * @throws IOException If the delta is malformed or the stream could not be written to
+     * @throws PatchFailedException If the original contents are not the ones the delta was computed for
+     */
+    public void apply(byte[] original, OutputStream out) throws IOException, PatchFailedException {
+        if (original.length != originalLength || checksum(original) != originalChecksum) {
+            throw new PatchFailedException("The resource does not match the original contents of the delta");
+        }
+        CRC32 crc = new CRC32();
+        OutputStream checked = new CheckedOutputStream(out, crc);
+        ByteArrayInputStream in = new ByteArrayInputStream(data, instructionsOffset, data.length - instructionsOffset);
+        long written = 0;
+        long copyEnd = 0;
+        while (written < revisedLength) {
+            int instruction = BinaryPatchFormat.readVarInt(in);
+            int length = instruction >>> 1;
+            if (length == 0 || written + length > revisedLength) {
+                throw new IOException("Malformed resource delta instruction at " + written + " of " + revisedLength + " bytes");
+            }
+            if ((instruction & 1) == 0) {
+                int offset = data.length - in.available();
+                if (in.skip(length) != length) {
+                    throw new IOException("The resource delta ends within an insertion");
+                }
+                checked.write(data, offset, length);
+            } else {
+                long start = copyEnd + BinaryPatchFormat.unzigzag(BinaryPatchFormat.readVarInt(in));
+                if (start < 0 || start + length > original.length) {
+                    throw new IOException("Resource delta copies from outside of the original contents: " + start + " + " + length);
+                }
+                checked.write(original, (int) start, length);
+                copyEnd = start + length;
+            }
+            written += length;
+        }
+        if ((int) crc.getValue() != revisedChecksum) {
+            throw new PatchFailedException("The patched resource does not match the revised contents of the delta");
+        }
+    }
+
+    private static int checksum(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Computes the delta between the contents of two versions of a file.
+     *
+     * @param original The original contents, an empty array if the file is created
+     * @param revised The revised contents, an empty array if the file is removed
+     * @return The delta
+     */
+    public static ResourceDelta compute(byte[] original, byte[] revised) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 + revised.length / 8);
+        BinaryPatchFormat.writeVarInt(out, original.length);
+        BinaryPatchFormat.writeVarInt(out, revised.length);
+        writeInt(out, checksum(original));
+        writeInt(out, checksum(revised));
+
+        int blockCount = original.length / BLOCK_SIZE;
+        int[] blockHashes = new int[blockCount];
+        int[] nextBlock = new int[blockCount];
+        int[] heads = new int[Integer.highestOneBit(Math.max(16, blockCount) * 2 - 1) << 1];
+        Arrays.fill(heads, -1);
+        int mask = heads.length - 1;
+        // Inserted from the back so that the chains list the blocks in ascending order
+        for (int block = blockCount - 1; block >= 0; block--) {
+            int hash = hash(original, block * BLOCK_SIZE);
+            int slot = mix(hash) & mask;
+            blockHashes[block] = hash;
+            nextBlock[block] = heads[slot];
+            heads[slot] = block;
+        }
+
+        long copyEnd = 0;
+        int insertStart = 0;
+        int position = 0;
+        int hash = revised.length >= BLOCK_SIZE ? hash(revised, 0) : 0;
+        while (blockCount != 0 && position + BLOCK_SIZE <= revised.length) {
+            int bestStart = -1;
+            int bestLength = 0;
+            int candidates = 0;
+            for (int block = heads[mix(hash) & mask]; block != -1 && candidates < MAX_CANDIDATES; block = nextBlock[block]) {
+                if (blockHashes[block] != hash) {
+                    continue;
+                }
+                candidates++;
+                int start = block * BLOCK_SIZE;
+                int length = matchLength(original, start, revised, position);
+                // Prefer continuing the previous copy, as its offset is the cheapest to encode
+                if (length > bestLength || (length == bestLength && start == copyEnd)) {
+                    bestStart = start;
+                    bestLength = length;
+                }
+            }
+            if (bestLength < BLOCK_SIZE) {
+                if (position + BLOCK_SIZE == revised.length) {
+                    break;
+                }
+                hash = (hash - (revised[position] & 0xFF) * HASH_OUTGOING_FACTOR) * HASH_MULTIPLIER + (revised[position + BLOCK_SIZE] & 0xFF);
+                position++;
+                continue;
+            }
+            // The bytes in front of the match may match as well, but were not at a block boundary of the original contents
+            while (bestStart > 0 && position > insertStart && original[bestStart - 1] == revised[position - 1]) {
+                bestStart--;
+                position--;
+                bestLength++;
+            }
+            writeInsertion(out, revised, insertStart, position);
+            for (int copied = 0; copied < bestLength; copied += MAX_INSTRUCTION_LENGTH) {
+                int length = Math.min(MAX_INSTRUCTION_LENGTH, bestLength - copied);
+                BinaryPatchFormat.writeVarInt(out, length << 1 | 1);
+                BinaryPatchFormat.writeVarInt(out, BinaryPatchFormat.zigzag((int) (bestStart + copied - copyEnd)));
+                copyEnd = bestStart + copied + length;
+            }
+            position += bestLength;
+            insertStart = position;
+            if (position + BLOCK_SIZE <= revised.length) {
+                hash = hash(revised, position);
+            }
+        }
+        writeInsertion(out, revised, insertStart, revised.length);
+        return new ResourceDelta(out.toByteArray());
+    }
+
+    /**
+     * Obtains the encoded form of the delta.
+     *
+     * @return The encoded delta, which must not be modified
+     */
+    public byte[] getBytes() {
+        return data;
+    }
+
+    /**
+     * Obtains the length of the contents the delta applies to.
+     *
+     * @return The length in bytes
+     */
+    public int getOriginalLength() {
+        return originalLength;
+    }
+
+    /**
+     * Obtains the CRC32 checksum of the contents the delta produces.
+     *
+     * @return The checksum
+     */
+    public int getRevisedChecksum() {
+        return revisedChecksum;
+    }
+
+    /**
+     * Obtains the length of the contents the delta produces.
+     *
+     * @return The length in bytes
+     */
+    public int getRevisedLength() {
+        return revisedLength;
+    }
+
+    private static int hash(byte[] data, int offset) {
+        int hash = 0;
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            hash = hash * HASH_MULTIPLIER + (data[offset + i] & 0xFF);
+        }
+        return hash;
+    }
+
+    private static int matchLength(byte[] original, int originalStart, byte[] revised, int revisedStart) {
+        int max = Math.min(original.length - originalStart, revised.length - revisedStart);
+        int length = 0;
+        while (length < max && original[originalStart + length] == revised[revisedStart + length]) {
+            length++;
+        }
+        return length;
+    }
+
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return (data[offset] & 0xFF) << 24 | (data[offset + 1] & 0xFF) << 16 | (data[offset + 2] & 0xFF) << 8 | (data[offset + 3] & 0xFF);
+    }
+
+    private static void writeInsertion(ByteArrayOutputStream out, byte[] revised, int start, int end) {
+        for (int position = start; position < end; position += MAX_INSTRUCTION_LENGTH) {
+            int length = Math.min(MAX_INSTRUCTION_LENGTH, end - position);
+            BinaryPatchFormat.writeVarInt(out, length << 1);
+            out.write(revised, position, length);
+        }
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * Package for classes that read and write patch files.
+ */
+package de.geolykt.starloader.bcdiff.patch;
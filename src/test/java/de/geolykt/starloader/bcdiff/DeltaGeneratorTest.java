@@ -0,0 +1,296 @@
+package de.geolykt.starloader.bcdiff;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LabelNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.TypeInsnNode;
+
+import com.github.difflib.DiffUtils;
+import com.github.difflib.patch.PatchFailedException;
+
+import de.geolykt.starloader.bcdiff.diff.LineDiffAlgorithm;
+import de.geolykt.starloader.bcdiff.io.JarFileInput;
+
+class DeltaGeneratorTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static byte[] constantClass(String name, int value) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name, null, "java/lang/Object", null);
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "value", "()I", null, null);
+        mv.visitCode();
+        mv.visitIntInsn(Opcodes.BIPUSH, value);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static byte[] emptyClass(String name, String superName) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name, null, superName, null);
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, superName, "<init>", "()V", false);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    /**
+     * Generates "static returnType value() { return flag ? new A() : new B(); }", so that the frame after
+     * the conditional holds the common super class of A and B.
+     */
+    private static byte[] pickerClass(String returnType) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, "fixtures/Picker", null, "java/lang/Object", null);
+        cw.visitField(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "flag", "Z", null, null).visitEnd();
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "value", "()L" + returnType + ";", null, null);
+        mv.visitCode();
+        Label createB = new Label();
+        Label end = new Label();
+        mv.visitFieldInsn(Opcodes.GETSTATIC, "fixtures/Picker", "flag", "Z");
+        mv.visitJumpInsn(Opcodes.IFEQ, createB);
+        mv.visitTypeInsn(Opcodes.NEW, "fixtures/A");
+        mv.visitInsn(Opcodes.DUP);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, "fixtures/A", "<init>", "()V", false);
+        mv.visitJumpInsn(Opcodes.GOTO, end);
+        mv.visitLabel(createB);
+        mv.visitFrame(Opcodes.F_SAME, 0, null, 0, null);
+        mv.visitTypeInsn(Opcodes.NEW, "fixtures/B");
+        mv.visitInsn(Opcodes.DUP);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, "fixtures/B", "<init>", "()V", false);
+        mv.visitLabel(end);
+        mv.visitFrame(Opcodes.F_SAME1, 0, null, 1, new Object[] {returnType});
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    /**
+     * Reads the classes of java-diff-utils, which only depends on the JDK. Its classes target Java 8, so that they
+     * are checked by the type checking verifier, which relies on the stack map frames.
+     */
+    private static Map<String, byte[]> readLibraryClasses() throws Exception {
+        Path libraryJar = Paths.get(DiffUtils.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        Map<String, byte[]> classes = new LinkedHashMap<>();
+        try (JarFile jar = new JarFile(libraryJar.toFile())) {
+            for (JarEntry entry : Collections.list(jar.entries())) {
+                if (entry.getName().endsWith(".class")) {
+                    classes.put(entry.getName(), JarFileInput.readFully(jar.getInputStream(entry), entry.getSize()));
+                }
+            }
+        }
+        return classes;
+    }
+
+    /**
+     * Reverses the order of the methods of a class and adds a branch to the start of every method, which moves large
+     * blocks of code around as well as changing them. The branch is never taken, but its frames need the common
+     * super class of two deltas.
+     */
+    private static byte[] shuffleMethods(byte[] classFile) {
+        ClassNode node = new ClassNode();
+        new ClassReader(classFile).accept(node, ClassReader.SKIP_FRAMES);
+        Collections.reverse(node.methods);
+        for (MethodNode method : node.methods) {
+            if (method.instructions.size() != 0) {
+                method.instructions.insert(mergeDeltas());
+            }
+        }
+        // Frames are never part of the listing, they are computed when the patch is applied
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        node.accept(cw);
+        return cw.toByteArray();
+    }
+
+    // if (true) skip; ((flag) ? (ChangeDelta) null : (DeleteDelta) null).getType();
+    private static InsnList mergeDeltas() {
+        LabelNode deleteDelta = new LabelNode();
+        LabelNode merged = new LabelNode();
+        LabelNode skip = new LabelNode();
+        InsnList insns = new InsnList();
+        insns.add(new InsnNode(Opcodes.ICONST_1));
+        insns.add(new JumpInsnNode(Opcodes.IFNE, skip));
+        insns.add(new InsnNode(Opcodes.ICONST_0));
+        insns.add(new JumpInsnNode(Opcodes.IFEQ, deleteDelta));
+        insns.add(new InsnNode(Opcodes.ACONST_NULL));
+        insns.add(new TypeInsnNode(Opcodes.CHECKCAST, "com/github/difflib/patch/ChangeDelta"));
+        insns.add(new JumpInsnNode(Opcodes.GOTO, merged));
+        insns.add(deleteDelta);
+        insns.add(new InsnNode(Opcodes.ACONST_NULL));
+        insns.add(new TypeInsnNode(Opcodes.CHECKCAST, "com/github/difflib/patch/DeleteDelta"));
+        insns.add(merged);
+        insns.add(new MethodInsnNode(Opcodes.INVOKEVIRTUAL, "com/github/difflib/patch/AbstractDelta", "getType",
+                "()Lcom/github/difflib/patch/DeltaType;", false));
+        insns.add(new InsnNode(Opcodes.POP));
+        insns.add(skip);
+        return insns;
+    }
+
+    private Path writeJar(String name, Map<String, byte[]> entries) throws IOException {
+        Path jar = tempDir.resolve(name);
+        try (OutputStream out = Files.newOutputStream(jar); JarOutputStream jarOut = new JarOutputStream(out)) {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                jarOut.putNextEntry(new JarEntry(entry.getKey()));
+                jarOut.write(entry.getValue());
+                jarOut.closeEntry();
+            }
+        }
+        return jar;
+    }
+
+    private Path applyGeneratedPatch(DeltaGenerator generator, Path original, Path revised) throws IOException, PatchFailedException {
+        List<String> patch;
+        try (JarFileInput originalInput = new JarFileInput(new JarFile(original.toFile()));
+                JarFileInput revisedInput = new JarFileInput(new JarFile(revised.toFile()))) {
+            patch = generator.generatePatch(originalInput, revisedInput, 3, new String[0]);
+        }
+        Path patched = tempDir.resolve("patched.jar");
+        try (JarFileInput originalInput = new JarFileInput(new JarFile(original.toFile()))) {
+            generator.applyPatch(originalInput, patched.toFile(), patch);
+        }
+        return patched;
+    }
+
+    private static byte[] readEntry(Path jar, String name) throws IOException {
+        try (JarFile jarFile = new JarFile(jar.toFile())) {
+            return JarFileInput.readFully(jarFile.getInputStream(jarFile.getEntry(name)), -1);
+        }
+    }
+
+    /**
+     * Loads a class of a jar, which also verifies it, and invokes its static "value" method.
+     */
+    private static Object invokeValue(Path jar, String className) throws Exception {
+        try (URLClassLoader loader = new URLClassLoader(new URL[] {jar.toUri().toURL()}, null)) {
+            Method method = Class.forName(className, true, loader).getMethod("value");
+            return method.invoke(null);
+        }
+    }
+
+    @Test
+    void keepsEntriesThatOnlyLookLikeClasses() throws Exception {
+        // A fat Mach-O binary starts with the same magic as class files
+        byte[] fatBinary = {(byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE, 0, 0, 0, 2, 1, 0, 0, 7, (byte) 0x80, 0, 0, 3, 0, 0, 0x10, 0};
+        Map<String, byte[]> original = new LinkedHashMap<>();
+        original.put("fixtures/Main.class", constantClass("fixtures/Main", 1));
+        original.put("lib/native.dylib", fatBinary);
+        Map<String, byte[]> revised = new LinkedHashMap<>(original);
+        revised.put("fixtures/Main.class", constantClass("fixtures/Main", 2));
+
+        Path patched = applyGeneratedPatch(new DeltaGenerator(), writeJar("original.jar", original), writeJar("revised.jar", revised));
+        assertArrayEquals(fatBinary, readEntry(patched, "lib/native.dylib"));
+        assertEquals(2, invokeValue(patched, "fixtures.Main"));
+    }
+
+    static Stream<Arguments> diffSettings() {
+        return Stream.of(
+                Arguments.of(LineDiffAlgorithm.MYERS, false, 0),
+                Arguments.of(LineDiffAlgorithm.HISTOGRAM, false, 0),
+                Arguments.of(LineDiffAlgorithm.PATIENCE, false, 0),
+                Arguments.of(LineDiffAlgorithm.HISTOGRAM, true, 0),
+                Arguments.of(LineDiffAlgorithm.MYERS, true, 16));
+    }
+
+    @ParameterizedTest
+    @MethodSource("diffSettings")
+    void patchesVerifiableClasses(LineDiffAlgorithm algorithm, boolean structural, int costLimit) throws Exception {
+        Map<String, byte[]> original = readLibraryClasses();
+        Map<String, byte[]> revised = new LinkedHashMap<>();
+        for (Map.Entry<String, byte[]> entry : original.entrySet()) {
+            revised.put(entry.getKey(), shuffleMethods(entry.getValue()));
+        }
+        Path revisedJar = writeJar("revised.jar", revised);
+
+        DeltaGenerator generator = new DeltaGenerator();
+        generator.setDiffAlgorithm(algorithm);
+        generator.setStructuralDiff(structural);
+        if (costLimit != 0) {
+            generator.setDiffCostLimit(costLimit);
+        }
+        Path patched = applyGeneratedPatch(generator, writeJar("original.jar", original), revisedJar);
+
+        Map<String, ClassNode> patchedNodes;
+        Map<String, ClassNode> revisedNodes;
+        try (JarFileInput patchedInput = new JarFileInput(new JarFile(patched.toFile()));
+                JarFileInput revisedInput = new JarFileInput(new JarFile(revisedJar.toFile()))) {
+            patchedNodes = generator.mapNodes(patchedInput);
+            revisedNodes = generator.mapNodes(revisedInput);
+        }
+        assertEquals(revisedNodes.keySet(), patchedNodes.keySet());
+        for (Map.Entry<String, ClassNode> entry : revisedNodes.entrySet()) {
+            assertEquals(generator.generateBytecode(entry.getValue()), generator.generateBytecode(patchedNodes.get(entry.getKey())), entry.getKey());
+        }
+        // Classes loaded by a class loader other than the bootstrap loader are verified when they are linked
+        try (URLClassLoader loader = new URLClassLoader(new URL[] {patched.toUri().toURL()}, null)) {
+            for (String name : patchedNodes.keySet()) {
+                Class.forName(name.substring(0, name.length() - 6).replace('/', '.'), true, loader);
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void computesFramesWithPatchedHierarchy(boolean incrementalFrames) throws Exception {
+        Map<String, byte[]> original = new LinkedHashMap<>();
+        original.put("fixtures/A.class", emptyClass("fixtures/A", "java/lang/Object"));
+        original.put("fixtures/B.class", emptyClass("fixtures/B", "java/lang/Object"));
+        original.put("fixtures/Picker.class", pickerClass("java/lang/Object"));
+        // The patch adds the common super class of A and B, which the frame of the conditional has to use
+        Map<String, byte[]> revised = new LinkedHashMap<>();
+        revised.put("fixtures/A.class", emptyClass("fixtures/A", "fixtures/Base"));
+        revised.put("fixtures/B.class", emptyClass("fixtures/B", "fixtures/Base"));
+        revised.put("fixtures/Picker.class", pickerClass("fixtures/Base"));
+        revised.put("fixtures/Base.class", emptyClass("fixtures/Base", "java/lang/Object"));
+
+        DeltaGenerator generator = new DeltaGenerator();
+        generator.setIncrementalFrames(incrementalFrames);
+        Path patched = applyGeneratedPatch(generator, writeJar("original.jar", original), writeJar("revised.jar", revised));
+        // Fails with a VerifyError if the frame holds java/lang/Object instead of fixtures/Base
+        assertEquals("fixtures.B", invokeValue(patched, "fixtures.Picker").getClass().getName());
+    }
+}
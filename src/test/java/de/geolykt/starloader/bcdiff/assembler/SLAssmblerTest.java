@@ -0,0 +1,79 @@
+package de.geolykt.starloader.bcdiff.assembler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.TryCatchBlockNode;
+
+import de.geolykt.starloader.bcdiff.disassembler.BytecodeGeneratorVisitor;
+import de.geolykt.starloader.bcdiff.disassembler.TestClasses;
+
+class SLAssmblerTest {
+
+    private static List<String> disassemble(ClassNode node) {
+        List<String> listing = new ArrayList<>();
+        node.accept(new BytecodeGeneratorVisitor(listing));
+        return listing;
+    }
+
+    private static ClassNode assemble(List<String> listing) {
+        ClassNode node = new ClassNode();
+        new SLAssmbler(listing.toArray(new String[0]), node);
+        return node;
+    }
+
+    private static MethodNode getMethod(ClassNode node, String name) {
+        for (MethodNode method : node.methods) {
+            if (method.name.equals(name)) {
+                return method;
+            }
+        }
+        throw new AssertionError("No method named " + name + " in " + node.name);
+    }
+
+    static String[] testClasses() {
+        return TestClasses.NAMES;
+    }
+
+    @ParameterizedTest
+    @MethodSource("testClasses")
+    void reassemblesListing(String name) {
+        List<String> listing = disassemble(TestClasses.getClass(name));
+        assertEquals(listing, disassemble(assemble(listing)));
+    }
+
+    @ParameterizedTest
+    @MethodSource("testClasses")
+    void reassemblesClassFile(String name) {
+        List<String> listing = disassemble(TestClasses.getClass(name));
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+        new SLAssmbler(listing.toArray(new String[0]), cw);
+        ClassNode node = new ClassNode();
+        new ClassReader(cw.toByteArray()).accept(node, 0);
+        assertEquals(listing, disassemble(node));
+    }
+
+    @Test
+    void catchAllHandler() {
+        List<String> listing = disassemble(TestClasses.getClass("CatchAll"));
+        assertTrue(listing.stream().anyMatch(line -> line.startsWith("    TRY ") && line.contains(" CATCH(*) ")), "No catch-all handler in the listing");
+
+        List<TryCatchBlockNode> blocks = getMethod(assemble(listing), "run").tryCatchBlocks;
+        assertEquals(3, blocks.size());
+        assertEquals("java/lang/IllegalStateException", blocks.get(0).type);
+        // "*" must be turned back into the null type of finally blocks instead of a class named "*"
+        assertNull(blocks.get(1).type);
+        assertNull(blocks.get(2).type);
+    }
+}
@@ -0,0 +1,59 @@
+package de.geolykt.starloader.bcdiff.disassembler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+class BytecodeGeneratorVisitorTest {
+
+    /**
+     * Reads the golden listing of one of the {@link TestClasses}.
+     *
+     * @param name The name of the class
+     * @return The lines of the listing
+     * @throws IOException If the listing could not be read
+     */
+    static List<String> readListing(String name) throws IOException {
+        InputStream in = BytecodeGeneratorVisitorTest.class.getResourceAsStream("/listings/" + name + ".txt");
+        assertNotNull(in, "Missing golden listing of " + name);
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    static String[] testClasses() {
+        return TestClasses.NAMES;
+    }
+
+    @ParameterizedTest
+    @MethodSource("testClasses")
+    void matchesGoldenListing(String name) throws IOException {
+        List<String> listing = new ArrayList<>();
+        TestClasses.getClass(name).accept(new BytecodeGeneratorVisitor(listing));
+        // Compared as a whole so that a failure shows the differing lines in context
+        assertEquals(String.join("\n", readListing(name)), String.join("\n", listing));
+    }
+
+    @ParameterizedTest
+    @MethodSource("testClasses")
+    void writesGoldenListing(String name) throws IOException {
+        StringWriter out = new StringWriter();
+        TestClasses.getClass(name).accept(new BytecodeGeneratorVisitor(LineSink.of(out)));
+        assertEquals(String.join("\n", readListing(name)) + "\n", out.toString());
+    }
+}
@@ -0,0 +1,210 @@
+package de.geolykt.starloader.bcdiff.disassembler;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.ClassNode;
+
+/**
+ * Builds the classes whose listings are pinned by the golden files in the "listings" resource directory.
+ * The classes are generated with ASM instead of being compiled, so that their listings do not depend on the
+ * version of javac the tests are compiled with.
+ */
+public final class TestClasses {
+
+    /**
+     * The names of all classes, which are also the names of their golden files.
+     */
+    public static final String[] NAMES = {"Switches", "Lambdas", "StringEscapes", "CatchAll"};
+
+    private static final Handle METAFACTORY = new Handle(Opcodes.H_INVOKESTATIC, "java/lang/invoke/LambdaMetafactory", "metafactory",
+            "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;Ljava/lang/invoke/MethodType;"
+            + "Ljava/lang/invoke/MethodHandle;Ljava/lang/invoke/MethodType;)Ljava/lang/invoke/CallSite;", false);
+
+    private TestClasses() {
+    }
+
+    /**
+     * Generates a class and reads it back into a tree, including its debug information and stack map frames.
+     *
+     * @param name One of {@link #NAMES}
+     * @return The class
+     */
+    public static ClassNode getClass(String name) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, "fixtures/" + name, null, "java/lang/Object", null);
+        cw.visitSource(name + ".java", null);
+        switch (name) {
+        case "Switches":
+            writeSwitches(cw);
+            break;
+        case "Lambdas":
+            writeLambdas(cw);
+            break;
+        case "StringEscapes":
+            writeStringEscapes(cw);
+            break;
+        case "CatchAll":
+            writeCatchAll(cw);
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown test class: " + name);
+        }
+        cw.visitEnd();
+        ClassNode node = new ClassNode();
+        new ClassReader(cw.toByteArray()).accept(node, 0);
+        return node;
+    }
+
+    // int table(int value) with a tableswitch that has a gap and String lookup(int value) with a sparse lookupswitch
+    private static void writeSwitches(ClassWriter cw) {
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "table", "(I)I", null, null);
+        mv.visitCode();
+        Label start = new Label();
+        Label[] cases = {new Label(), new Label(), new Label(), new Label()};
+        Label dflt = new Label();
+        mv.visitLabel(start);
+        mv.visitVarInsn(Opcodes.ILOAD, 0);
+        mv.visitTableSwitchInsn(0, 3, dflt, cases[0], cases[1], dflt, cases[3]);
+        for (int i : new int[] {0, 1, 3}) {
+            mv.visitLabel(cases[i]);
+            mv.visitIntInsn(Opcodes.BIPUSH, 10 + i);
+            mv.visitInsn(Opcodes.IRETURN);
+        }
+        mv.visitLabel(dflt);
+        mv.visitInsn(Opcodes.ICONST_M1);
+        mv.visitInsn(Opcodes.IRETURN);
+        Label end = new Label();
+        mv.visitLabel(end);
+        mv.visitLocalVariable("value", "I", null, start, end, 0);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "lookup", "(I)Ljava/lang/String;", null, null);
+        mv.visitCode();
+        int[] keys = {-100, 7, 100000};
+        String[] results = {"low", "seven", "high"};
+        Label[] labels = {new Label(), new Label(), new Label()};
+        dflt = new Label();
+        mv.visitVarInsn(Opcodes.ILOAD, 0);
+        mv.visitLookupSwitchInsn(dflt, keys, labels);
+        for (int i = 0; i < keys.length; i++) {
+            mv.visitLabel(labels[i]);
+            mv.visitLdcInsn(results[i]);
+            mv.visitInsn(Opcodes.ARETURN);
+        }
+        mv.visitLabel(dflt);
+        mv.visitInsn(Opcodes.ACONST_NULL);
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    // Runnable print(String message) capturing its argument and Function<String, Integer> length() using String::length
+    private static void writeLambdas(ClassWriter cw) {
+        cw.visitInnerClass("java/lang/invoke/MethodHandles$Lookup", "java/lang/invoke/MethodHandles", "Lookup",
+                Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL);
+
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "print", "(Ljava/lang/String;)Ljava/lang/Runnable;", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitInvokeDynamicInsn("run", "(Ljava/lang/String;)Ljava/lang/Runnable;", METAFACTORY, Type.getType("()V"),
+                new Handle(Opcodes.H_INVOKESTATIC, "fixtures/Lambdas", "lambda$print$0", "(Ljava/lang/String;)V", false), Type.getType("()V"));
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "length", "()Ljava/util/function/Function;",
+                "()Ljava/util/function/Function<Ljava/lang/String;Ljava/lang/Integer;>;", null);
+        mv.visitCode();
+        mv.visitInvokeDynamicInsn("apply", "()Ljava/util/function/Function;", METAFACTORY, Type.getType("(Ljava/lang/Object;)Ljava/lang/Object;"),
+                new Handle(Opcodes.H_INVOKEVIRTUAL, "java/lang/String", "length", "()I", false), Type.getType("(Ljava/lang/String;)Ljava/lang/Integer;"));
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        mv = cw.visitMethod(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC | Opcodes.ACC_SYNTHETIC, "lambda$print$0", "(Ljava/lang/String;)V", null, null);
+        mv.visitCode();
+        mv.visitFieldInsn(Opcodes.GETSTATIC, "java/lang/System", "out", "Ljava/io/PrintStream;");
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/io/PrintStream", "println", "(Ljava/lang/String;)V", false);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    // Constants with quotes, backslashes, control characters and characters outside of ASCII
+    private static void writeStringEscapes(ClassWriter cw) {
+        FieldVisitor fv = cw.visitField(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL, "CONSTANT", "Ljava/lang/String;",
+                null, "tab\there \"quoted\" back\\slash");
+        fv.visitEnd();
+        fv = cw.visitField(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL, "CHARACTER", "C", null, (int) '\n');
+        fv.visitEnd();
+
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "text", "()Ljava/lang/String;", null, null);
+        mv.visitCode();
+        mv.visitLdcInsn("line\nbreak\r\n\b\f\u0000\u001F\u007F caf\u00E9 \u2603 \uD83D\uDE00");
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "empty", "()Ljava/lang/String;", null, null);
+        mv.visitCode();
+        mv.visitLdcInsn("");
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    // void run() { try { work(); } catch (IllegalStateException e) { e.printStackTrace(); } finally { cleanup(); } }
+    private static void writeCatchAll(ClassWriter cw) {
+        for (String name : new String[] {"work", "cleanup"}) {
+            MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PRIVATE | Opcodes.ACC_STATIC, name, "()V", null, null);
+            mv.visitCode();
+            mv.visitInsn(Opcodes.RETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "run", "()V", null, null);
+        mv.visitCode();
+        Label tryStart = new Label();
+        Label tryEnd = new Label();
+        Label catchHandler = new Label();
+        Label catchEnd = new Label();
+        Label finallyHandler = new Label();
+        Label end = new Label();
+        mv.visitTryCatchBlock(tryStart, tryEnd, catchHandler, "java/lang/IllegalStateException");
+        mv.visitTryCatchBlock(tryStart, tryEnd, finallyHandler, null);
+        mv.visitTryCatchBlock(catchHandler, catchEnd, finallyHandler, null);
+        mv.visitLabel(tryStart);
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, "fixtures/CatchAll", "work", "()V", false);
+        mv.visitLabel(tryEnd);
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, "fixtures/CatchAll", "cleanup", "()V", false);
+        mv.visitJumpInsn(Opcodes.GOTO, end);
+        mv.visitLabel(catchHandler);
+        mv.visitVarInsn(Opcodes.ASTORE, 0);
+        Label exceptionStart = new Label();
+        mv.visitLabel(exceptionStart);
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/IllegalStateException", "printStackTrace", "()V", false);
+        mv.visitLabel(catchEnd);
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, "fixtures/CatchAll", "cleanup", "()V", false);
+        mv.visitJumpInsn(Opcodes.GOTO, end);
+        mv.visitLabel(finallyHandler);
+        mv.visitVarInsn(Opcodes.ASTORE, 1);
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, "fixtures/CatchAll", "cleanup", "()V", false);
+        mv.visitVarInsn(Opcodes.ALOAD, 1);
+        mv.visitInsn(Opcodes.ATHROW);
+        mv.visitLabel(end);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitLocalVariable("e", "Ljava/lang/IllegalStateException;", null, exceptionStart, catchEnd, 0);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+}
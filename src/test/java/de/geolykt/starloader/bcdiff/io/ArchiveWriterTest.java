@@ -0,0 +1,345 @@
+package de.geolykt.starloader.bcdiff.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+import java.util.jar.JarFile;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import de.geolykt.starloader.bcdiff.io.MappedArchiveInput.MappedEntry;
+
+class ArchiveWriterTest {
+
+    private interface ArchiveConsumer {
+        void accept(ArchiveWriter writer) throws IOException;
+    }
+
+    /**
+     * The contents and metadata of an entry, as far as they are stored in both the local and the central directory header.
+     */
+    private static final class EntryInfo {
+
+        final String name;
+        final int method;
+        final LocalDateTime time;
+        final byte[] extra;
+        final String comment;
+        final byte[] data;
+
+        EntryInfo(String name, int method, LocalDateTime time, byte[] extra, String comment, byte[] data) {
+            this.name = name;
+            this.method = method;
+            this.time = time;
+            this.extra = extra;
+            this.comment = comment;
+            this.data = data;
+        }
+
+        EntryInfo withContents(String name, byte[] data) {
+            return new EntryInfo(name, method, time, extra, comment, data);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof EntryInfo && toString().equals(obj.toString());
+        }
+
+        @Override
+        public int hashCode() {
+            return toString().hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return name + ": method " + method + ", modified " + time + ", extra " + Arrays.toString(extra) + ", comment \"" + comment
+                    + "\", data " + Base64.getEncoder().encodeToString(data);
+        }
+    }
+
+    private static final LocalDateTime DOS_EPOCH = LocalDateTime.of(1980, 1, 1, 0, 0);
+
+    @TempDir
+    Path tempDir;
+
+    private Path source;
+
+    private static long crc(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        return crc.getValue();
+    }
+
+    private static ZipEntry entry(String name, int method, byte[] data, LocalDateTime time) {
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(method);
+        if (method == ZipEntry.STORED) {
+            entry.setSize(data.length);
+            entry.setCompressedSize(data.length);
+            entry.setCrc(crc(data));
+        }
+        entry.setTime(time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        return entry;
+    }
+
+    /**
+     * Writes an archive with stored and deflated entries, extra fields, comments and timestamps.
+     */
+    @BeforeEach
+    void writeSource() throws IOException {
+        source = tempDir.resolve("source.jar");
+        byte[] random = new byte[3000];
+        new Random(1).nextBytes(random);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            text.append("line ").append(i).append('\n');
+        }
+        try (ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(source)))) {
+            out.setComment("archive comment");
+            write(out, entry("META-INF/MANIFEST.MF", ZipEntry.DEFLATED, "Manifest-Version: 1.0\r\n\r\n".getBytes(StandardCharsets.UTF_8),
+                    LocalDateTime.of(2021, 6, 15, 12, 30, 44)), "Manifest-Version: 1.0\r\n\r\n".getBytes(StandardCharsets.UTF_8));
+
+            ZipEntry stored = entry("assets/stored.bin", ZipEntry.STORED, random, LocalDateTime.of(2001, 2, 3, 4, 5, 6));
+            stored.setExtra(new byte[] {(byte) 0xFE, (byte) 0xCA, 4, 0, 1, 2, 3, 4});
+            stored.setComment("stored entry");
+            write(out, stored, random);
+
+            byte[] textBytes = text.toString().getBytes(StandardCharsets.UTF_8);
+            ZipEntry deflated = entry("assets/deflated-\u00FC.txt", ZipEntry.DEFLATED, textBytes, LocalDateTime.of(2099, 12, 31, 23, 59, 58));
+            deflated.setExtra(new byte[] {0x34, 0x12, 2, 0, 'h', 'i', 0x78, 0x56, 0, 0});
+            deflated.setComment("deflated entry \u2603");
+            write(out, deflated, textBytes);
+
+            write(out, entry("assets/empty.txt", ZipEntry.STORED, new byte[0], LocalDateTime.of(1980, 1, 1, 0, 0, 2)), new byte[0]);
+            write(out, entry("assets/", ZipEntry.STORED, new byte[0], LocalDateTime.of(2020, 1, 1, 0, 0)), new byte[0]);
+            byte[] classFile = Arrays.copyOf(new byte[] {(byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE}, 64);
+            write(out, entry("de/example/Main.class", ZipEntry.DEFLATED, classFile, LocalDateTime.of(2024, 2, 29, 8, 0)), classFile);
+        }
+    }
+
+    private static void write(ZipOutputStream out, ZipEntry entry, byte[] data) throws IOException {
+        out.putNextEntry(entry);
+        out.write(data);
+        out.closeEntry();
+    }
+
+    private static EntryInfo describe(ArchiveEntry entry, int method, LocalDateTime time, byte[] extra, String comment) throws IOException {
+        byte[] data = entry.getBytes();
+        assertEquals(entry.getSize(), data.length, entry.getName());
+        assertEquals(entry.getCrc(), crc(data), entry.getName());
+        return new EntryInfo(entry.getName(), method, time, extra, comment, data);
+    }
+
+    /**
+     * Reads all entries of an archive with a {@link JarFileInput} and describes their contents and metadata.
+     */
+    private static List<EntryInfo> readJarFile(Path archive) throws IOException {
+        List<EntryInfo> entries = new ArrayList<>();
+        try (JarFileInput input = new JarFileInput(new JarFile(archive.toFile()))) {
+            for (ArchiveEntry entry : input.entries()) {
+                ZipEntry metadata = entry.getZipEntry();
+                LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(metadata.getTime()), ZoneId.systemDefault());
+                byte[] extra = metadata.getExtra() == null ? new byte[0] : metadata.getExtra();
+                String comment = metadata.getComment() == null ? "" : metadata.getComment();
+                entries.add(describe(entry, metadata.getMethod(), time, extra, comment));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Reads all entries of an archive with a {@link MappedArchiveInput} and describes their contents and metadata,
+     * which are taken from the central directory.
+     */
+    private static List<EntryInfo> readMapped(Path archive) throws IOException {
+        List<EntryInfo> entries = new ArrayList<>();
+        try (MappedArchiveInput input = new MappedArchiveInput(archive)) {
+            for (MappedEntry entry : input.entries()) {
+                ByteBuffer central = entry.getCentralHeader();
+                int time = central.getShort(12) & 0xFFFF;
+                int date = central.getShort(14) & 0xFFFF;
+                LocalDateTime dateTime = LocalDateTime.of(1980 + (date >> 9), date >> 5 & 0xF, date & 0x1F, time >> 11, time >> 5 & 0x3F, (time & 0x1F) * 2);
+                int nameLength = central.getShort(28) & 0xFFFF;
+                byte[] extra = new byte[central.getShort(30) & 0xFFFF];
+                byte[] comment = new byte[central.getShort(32) & 0xFFFF];
+                ((Buffer) central).position(46 + nameLength);
+                central.get(extra);
+                central.get(comment);
+                entries.add(describe(entry, entry.getMethod(), dateTime, extra, new String(comment, StandardCharsets.UTF_8)));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Reads an archive with both readers, which have to agree on all entries.
+     */
+    private static List<EntryInfo> read(Path archive) throws IOException {
+        List<EntryInfo> entries = readJarFile(archive);
+        assertEquals(entries, readMapped(archive));
+        return entries;
+    }
+
+    private Path writeArchive(String name, ArchiveConsumer writer) throws IOException {
+        Path archive = tempDir.resolve(name);
+        try (ArchiveWriter out = new ArchiveWriter(new BufferedOutputStream(Files.newOutputStream(archive)))) {
+            writer.accept(out);
+        }
+        return archive;
+    }
+
+    @Test
+    void readsSourceWithBothReaders() throws IOException {
+        List<EntryInfo> entries = read(source);
+        assertEquals(6, entries.size());
+        EntryInfo stored = entries.get(1);
+        assertEquals("assets/stored.bin", stored.name);
+        assertEquals(ZipEntry.STORED, stored.method);
+        assertEquals(LocalDateTime.of(2001, 2, 3, 4, 5, 6), stored.time);
+        assertEquals("stored entry", stored.comment);
+        assertEquals(8, stored.extra.length);
+    }
+
+    @Test
+    void copiesMappedEntriesAsStored() throws IOException {
+        List<ByteBuffer> rawData = new ArrayList<>();
+        Path copy;
+        try (MappedArchiveInput input = new MappedArchiveInput(source)) {
+            copy = writeArchive("copy.jar", writer -> {
+                for (MappedEntry entry : input.entries()) {
+                    writer.copyEntry(entry, null);
+                    rawData.add(entry.getRawData());
+                }
+            });
+        }
+        assertEquals(read(source), read(copy));
+        try (MappedArchiveInput input = new MappedArchiveInput(copy)) {
+            // The data is copied without inflating and deflating it again
+            List<MappedEntry> entries = input.entries();
+            for (int i = 0; i < entries.size(); i++) {
+                assertEquals(rawData.get(i), entries.get(i).getRawData(), entries.get(i).getName());
+            }
+        }
+    }
+
+    @Test
+    void copiesJarFileEntriesWithTheirMetadata() throws IOException {
+        Path copy;
+        try (JarFileInput input = new JarFileInput(new JarFile(source.toFile()))) {
+            copy = writeArchive("copy.jar", writer -> {
+                int i = 0;
+                for (ArchiveEntry entry : input.entries()) {
+                    // Alternate between writing the entries as a whole and streaming them
+                    writer.copyEntry(entry, i++ % 2 == 0 ? entry.getBytes() : null);
+                }
+            });
+        }
+        assertEquals(read(source), read(copy));
+    }
+
+    @Test
+    void writesEntriesWithTheMetadataOfTheReplacedEntry() throws IOException {
+        byte[] contents = "replaced".getBytes(StandardCharsets.UTF_8);
+        Path written;
+        try (MappedArchiveInput mapped = new MappedArchiveInput(source);
+                JarFileInput jar = new JarFileInput(new JarFile(source.toFile()))) {
+            List<MappedEntry> mappedEntries = mapped.entries();
+            List<ArchiveEntry> jarEntries = new ArrayList<>();
+            jar.entries().forEach(jarEntries::add);
+            written = writeArchive("written.jar", writer -> {
+                writer.writeEntry("stored-mapped.bin", mappedEntries.get(1), contents);
+                writer.writeEntry("stored-jar.bin", jarEntries.get(1), contents);
+                writer.writeEntry("deflated-mapped.txt", mappedEntries.get(2), contents);
+                try (OutputStream out = writer.putEntry("deflated-jar.txt", jarEntries.get(2), -1, -1)) {
+                    out.write(contents);
+                }
+                try (OutputStream out = writer.putEntry("stored-streamed.bin", mappedEntries.get(1), contents.length, crc(contents))) {
+                    out.write(contents);
+                }
+            });
+        }
+        List<EntryInfo> source = read(this.source);
+        // Only the name and the contents differ from the replaced entry
+        List<EntryInfo> expected = Arrays.asList(
+                source.get(1).withContents("stored-mapped.bin", contents),
+                source.get(1).withContents("stored-jar.bin", contents),
+                source.get(2).withContents("deflated-mapped.txt", contents),
+                source.get(2).withContents("deflated-jar.txt", contents),
+                source.get(1).withContents("stored-streamed.bin", contents));
+        assertEquals(expected, read(written));
+    }
+
+    @Test
+    void writesNewEntriesWithFixedMetadata() throws IOException {
+        byte[] contents = "new".getBytes(StandardCharsets.UTF_8);
+        Path written = writeArchive("written.jar", writer -> {
+            writer.writeEntry("new.txt", null, contents);
+            try (OutputStream out = writer.putEntry("streamed.txt", null, -1, -1)) {
+                out.write(contents);
+            }
+            writer.writeEntry("empty.txt", null, new byte[0]);
+        });
+        // Deflated, without extra field and comment and modified at the earliest time that can be stored
+        List<EntryInfo> expected = Arrays.asList(
+                new EntryInfo("new.txt", ZipEntry.DEFLATED, DOS_EPOCH, new byte[0], "", contents),
+                new EntryInfo("streamed.txt", ZipEntry.DEFLATED, DOS_EPOCH, new byte[0], "", contents),
+                new EntryInfo("empty.txt", ZipEntry.DEFLATED, DOS_EPOCH, new byte[0], "", new byte[0]));
+        assertEquals(expected, read(written));
+    }
+
+    @Test
+    void writesZip64EndRecords() throws IOException {
+        // More entries than the end of central directory record can count
+        int count = 0x10000 + 10;
+        Path written = writeArchive("many.jar", writer -> {
+            for (int i = 0; i < count; i++) {
+                writer.writeEntry("entries/" + i, null, Integer.toString(i).getBytes(StandardCharsets.UTF_8));
+            }
+        });
+        List<EntryInfo> entries = read(written);
+        assertEquals(count, entries.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals("entries/" + i, entries.get(i).name);
+            assertEquals(Integer.toString(i), new String(entries.get(i).data, StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void rejectsInvalidEntries() throws IOException {
+        byte[] contents = "contents".getBytes(StandardCharsets.UTF_8);
+        try (MappedArchiveInput input = new MappedArchiveInput(source);
+                ArchiveWriter writer = new ArchiveWriter(Files.newOutputStream(tempDir.resolve("invalid.jar")))) {
+            MappedEntry stored = input.entries().get(1);
+            writer.writeEntry("a.txt", null, contents);
+            assertThrows(ZipException.class, () -> writer.writeEntry("a.txt", null, contents));
+            assertThrows(IllegalArgumentException.class, () -> writer.putEntry("b.bin", stored, -1, -1));
+            OutputStream out = writer.putEntry("c.bin", stored, contents.length, crc(contents));
+            assertThrows(IllegalStateException.class, () -> writer.writeEntry("d.txt", null, contents));
+            out.write(contents, 0, contents.length - 1);
+            // Stored entries need to have the size and checksum they were started with
+            assertThrows(ZipException.class, out::close);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package de.geolykt.starloader.bcdiff.patch;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class BinaryPatchFormatTest {
+
+    /**
+     * A codec that only registers itself for the tests, which flips all bits of the data.
+     */
+    static final PatchCodec INVERTING = new PatchCodec() {
+
+        @Override
+        public byte[] decode(byte[] data, int offset, int length, int decodedLength) throws IOException {
+            if (length != decodedLength) {
+                throw new IOException("Length mismatch");
+            }
+            return encode(data, offset, length);
+        }
+
+        @Override
+        public byte[] encode(byte[] data, int offset, int length) {
+            byte[] out = Arrays.copyOfRange(data, offset, offset + length);
+            for (int i = 0; i < out.length; i++) {
+                out[i] = (byte) ~out[i];
+            }
+            return out;
+        }
+
+        @Override
+        public int getId() {
+            return 200;
+        }
+
+        @Override
+        public String getName() {
+            return "inverting";
+        }
+    };
+
+    private static PatchCodec codec(int id, String name) {
+        return new PatchCodec() {
+
+            @Override
+            public byte[] decode(byte[] data, int offset, int length, int decodedLength) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public byte[] encode(byte[] data, int offset, int length) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public int getId() {
+                return id;
+            }
+
+            @Override
+            public String getName() {
+                return name;
+            }
+        };
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE, -1, Integer.MIN_VALUE})
+    void roundTripsVarInts(int value) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryPatchFormat.writeVarInt(out, value);
+        // Negative values are written as their unsigned value and take up all five bytes
+        int expectedLength = value < 0 ? 5 : value < 1 << 7 ? 1 : value < 1 << 14 ? 2 : value < 1 << 21 ? 3 : value < 1 << 28 ? 4 : 5;
+        assertEquals(expectedLength, out.size());
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        assertEquals(value, BinaryPatchFormat.readVarInt(in));
+        assertEquals(0, in.available());
+    }
+
+    @ParameterizedTest
+    @ValueSource(longs = {0, 1, 127, 128, Integer.MAX_VALUE + 1L, Long.MAX_VALUE, -1})
+    void roundTripsVarLongs(long value) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryPatchFormat.writeVarLong(out, value);
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        assertEquals(value, BinaryPatchFormat.readVarLong(in));
+        assertEquals(0, in.available());
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, -1, 63, -64, 64, Integer.MAX_VALUE, Integer.MIN_VALUE})
+    void roundTripsZigzag(int value) {
+        int encoded = BinaryPatchFormat.zigzag(value);
+        assertEquals(value, BinaryPatchFormat.unzigzag(encoded));
+        if (value >= -64 && value < 64) {
+            // Small values of either sign fit into a single varint byte
+            assertTrue(encoded >= 0 && encoded < 128, "Zigzag encoding of " + value + " is " + encoded);
+        }
+    }
+
+    @Test
+    void rejectsMalformedVarInts() {
+        assertThrows(EOFException.class, () -> BinaryPatchFormat.readVarInt(new ByteArrayInputStream(new byte[0])));
+        assertThrows(EOFException.class, () -> BinaryPatchFormat.readVarInt(new ByteArrayInputStream(new byte[] {(byte) 0x80})));
+        byte[] tooLong = {(byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0};
+        assertThrows(IOException.class, () -> BinaryPatchFormat.readVarInt(new ByteArrayInputStream(tooLong)));
+        byte[] tooLongLong = new byte[11];
+        Arrays.fill(tooLongLong, (byte) 0x80);
+        assertThrows(IOException.class, () -> BinaryPatchFormat.readVarLong(new ByteArrayInputStream(tooLongLong)));
+    }
+
+    @Test
+    void roundTripsStrings() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryPatchFormat.writeString(out, "");
+        BinaryPatchFormat.writeString(out, "caf\u00E9 \u2603 \uD83D\uDE00");
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+        assertEquals("", BinaryPatchFormat.readString(in));
+        assertEquals("caf\u00E9 \u2603 \uD83D\uDE00", BinaryPatchFormat.readString(in));
+        assertEquals(0, in.available());
+    }
+
+    @Test
+    void rejectsStringsLongerThanTheInput() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryPatchFormat.writeVarInt(out, 4);
+        out.write('a');
+        assertThrows(IOException.class, () -> BinaryPatchFormat.readString(new ByteArrayInputStream(out.toByteArray())));
+        out.reset();
+        BinaryPatchFormat.writeVarInt(out, -1);
+        assertThrows(IOException.class, () -> BinaryPatchFormat.readString(new ByteArrayInputStream(out.toByteArray())));
+    }
+
+    @Test
+    void detectsBinaryPatches() throws IOException {
+        byte[] patch = TestPatches.toBinary(TestPatches.text(), PatchCodecs.NONE);
+        BufferedInputStream in = new BufferedInputStream(new ByteArrayInputStream(patch));
+        assertTrue(BinaryPatchFormat.isBinaryPatch(in));
+        assertTrue(BinaryPatchFormat.isIndexed(in));
+        // Neither check may consume any bytes
+        assertEquals(patch.length, in.available());
+
+        byte[] text = String.join("\n", TestPatches.text()).getBytes(StandardCharsets.UTF_8);
+        assertFalse(BinaryPatchFormat.isBinaryPatch(new BufferedInputStream(new ByteArrayInputStream(text))));
+        byte[] version1 = {'B', 'C', 'D', 'P', 1, 0};
+        assertFalse(BinaryPatchFormat.isIndexed(new BufferedInputStream(new ByteArrayInputStream(version1))));
+    }
+
+    @Test
+    void looksUpBuiltInCodecs() {
+        assertSame(PatchCodecs.NONE, PatchCodecs.get(0));
+        assertSame(PatchCodecs.DEFLATE, PatchCodecs.get(1));
+        assertSame(PatchCodecs.DEFLATE, PatchCodecs.get("deflate"));
+        assertNull(PatchCodecs.get(255));
+        assertNull(PatchCodecs.get("zstd"));
+        assertTrue(PatchCodecs.getCodecs().contains(PatchCodecs.NONE));
+    }
+
+    @Test
+    void registersCodecs() {
+        PatchCodecs.register(INVERTING);
+        // Registering the same codec again is allowed
+        PatchCodecs.register(INVERTING);
+        assertSame(INVERTING, PatchCodecs.get(200));
+        assertSame(INVERTING, PatchCodecs.get("inverting"));
+        assertThrows(IllegalArgumentException.class, () -> PatchCodecs.register(codec(1, "other")));
+        assertThrows(IllegalArgumentException.class, () -> PatchCodecs.register(codec(256, "other")));
+        assertThrows(IllegalArgumentException.class, () -> PatchCodecs.register(codec(-1, "other")));
+        assertSame(PatchCodecs.DEFLATE, PatchCodecs.get(1));
+    }
+
+    @Test
+    void roundTripsDeflate() throws IOException {
+        byte[] data = TestPatches.resource(false);
+        byte[] compressed = PatchCodecs.DEFLATE.encode(data, 0, data.length);
+        assertTrue(compressed.length < data.length);
+        assertArrayEquals(data, PatchCodecs.DEFLATE.decode(compressed, 0, compressed.length, data.length));
+    }
+
+    @Test
+    void validatesDecodedLengths() {
+        byte[] data = TestPatches.resource(false);
+        byte[] compressed = PatchCodecs.DEFLATE.encode(data, 0, data.length);
+        // More than deflate could ever produce from the compressed data
+        assertThrows(IOException.class, () -> PatchCodecs.DEFLATE.decode(compressed, 0, compressed.length, compressed.length * 1032 + 65));
+        assertThrows(IOException.class, () -> PatchCodecs.DEFLATE.decode(compressed, 0, compressed.length, data.length + 1));
+        assertThrows(IOException.class, () -> PatchCodecs.DEFLATE.decode(compressed, 0, compressed.length / 2, data.length));
+        assertThrows(IOException.class, () -> PatchCodecs.DEFLATE.decode(data, 0, data.length, data.length));
+        assertThrows(IOException.class, () -> PatchCodecs.NONE.decode(data, 0, data.length, data.length - 1));
+    }
+}
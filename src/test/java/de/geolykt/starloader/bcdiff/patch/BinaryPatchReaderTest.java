@@ -0,0 +1,178 @@
+package de.geolykt.starloader.bcdiff.patch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+class BinaryPatchReaderTest {
+
+    static Stream<PatchCodec> codecs() {
+        PatchCodecs.register(BinaryPatchFormatTest.INVERTING);
+        return Stream.of(PatchCodecs.NONE, PatchCodecs.DEFLATE, BinaryPatchFormatTest.INVERTING);
+    }
+
+    private static List<String> read(byte[] patch) throws IOException {
+        return TestPatches.toText(new BinaryPatchReader(new ByteArrayInputStream(patch)));
+    }
+
+    /**
+     * Writes a patch without a codec whose only section has the given body.
+     */
+    private static byte[] withSection(byte[] body) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(BinaryPatchFormat.MAGIC, 0, BinaryPatchFormat.MAGIC.length);
+        out.write(BinaryPatchFormat.VERSION);
+        out.write(PatchCodecs.NONE.getId());
+        BinaryPatchFormat.writeVarInt(out, body.length);
+        out.write(body, 0, body.length);
+        out.write(0);
+        return out.toByteArray();
+    }
+
+    /**
+     * Creates the body of a section whose names are valid, followed by the given varints.
+     */
+    private static byte[] namedSection(int... values) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryPatchFormat.writeVarInt(out, 1);
+        BinaryPatchFormat.writeString(out, "Name.class");
+        BinaryPatchFormat.writeVarInt(out, 0);
+        BinaryPatchFormat.writeVarInt(out, 0);
+        for (int value : values) {
+            BinaryPatchFormat.writeVarInt(out, value);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] varInts(int... values) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int value : values) {
+            BinaryPatchFormat.writeVarInt(out, value);
+        }
+        return out.toByteArray();
+    }
+
+    @ParameterizedTest
+    @MethodSource("codecs")
+    void roundTripsTextPatches(PatchCodec codec) throws IOException {
+        List<String> text = TestPatches.text();
+        byte[] patch = TestPatches.toBinary(text, codec);
+        try (BinaryPatchReader reader = new BinaryPatchReader(new ByteArrayInputStream(patch))) {
+            assertSame(codec, reader.getCodec());
+        }
+        assertEquals(text, read(patch));
+        // Converting the result again must produce the very same bytes
+        assertTrue(Arrays.equals(patch, TestPatches.toBinary(read(patch), codec)));
+    }
+
+    @Test
+    void appliesDecodedResourceDeltas() throws Exception {
+        try (BinaryPatchReader reader = new BinaryPatchReader(new ByteArrayInputStream(TestPatches.toBinary(TestPatches.text(), PatchCodecs.DEFLATE)))) {
+            PatchSection section;
+            do {
+                section = reader.nextSection();
+            } while (!section.isResource());
+            assertEquals("assets/data.txt", section.getOriginalName());
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            section.getResourceDelta().apply(TestPatches.resource(false), out);
+            assertTrue(Arrays.equals(TestPatches.resource(true), out.toByteArray()));
+        }
+    }
+
+    @Test
+    void stopsAtTheEndMarker() throws IOException {
+        byte[] patch = TestPatches.toBinary(TestPatches.text(), PatchCodecs.NONE);
+        try (BinaryPatchReader reader = new BinaryPatchReader(new ByteArrayInputStream(patch))) {
+            int sections = 0;
+            while (reader.nextSection() != null) {
+                sections++;
+            }
+            assertEquals(4, sections);
+            assertNull(reader.nextSection());
+        }
+    }
+
+    @Test
+    void rejectsTruncatedPatches() throws IOException {
+        for (PatchCodec codec : new PatchCodec[] {PatchCodecs.NONE, PatchCodecs.DEFLATE}) {
+            byte[] patch = TestPatches.toBinary(TestPatches.text(), codec);
+            // The index and the trailer are not needed when streaming, but everything up to the end marker is
+            int endMarker = TestPatches.indexOffset(patch) - 1;
+            for (int length = 0; length < endMarker; length++) {
+                byte[] truncated = Arrays.copyOf(patch, length);
+                assertThrows(IOException.class, () -> read(truncated), "Truncated to " + length + " bytes");
+            }
+        }
+    }
+
+    @Test
+    void rejectsMalformedHeaders() {
+        assertThrows(IOException.class, () -> read(new byte[] {'B', 'C', 'D', 'X', 4, 0, 0}));
+        assertThrows(IOException.class, () -> read(new byte[] {'B', 'C', 'D', 'P', 0, 0}));
+        assertThrows(IOException.class, () -> read(new byte[] {'B', 'C', 'D', 'P', BinaryPatchFormat.VERSION + 1, 0, 0}));
+        // No codec is registered with this ID
+        assertThrows(IOException.class, () -> read(new byte[] {'B', 'C', 'D', 'P', BinaryPatchFormat.VERSION, (byte) 199, 0}));
+    }
+
+    @Test
+    void rejectsNegativeCounts() {
+        byte[] header = {'B', 'C', 'D', 'P', BinaryPatchFormat.VERSION, 0};
+        byte[] negativeLength = Arrays.copyOf(header, header.length + 5);
+        System.arraycopy(varInts(-1), 0, negativeLength, header.length, 5);
+        assertThrows(IOException.class, () -> read(negativeLength));
+
+        // Strings, hunks and lines
+        assertThrows(IOException.class, () -> read(withSection(varInts(-1))));
+        assertThrows(IOException.class, () -> read(withSection(namedSection(BinaryPatchFormat.SECTION_HUNKS, -1))));
+        assertThrows(IOException.class, () -> read(withSection(namedSection(BinaryPatchFormat.SECTION_HUNKS, 1, 0, 0, -1))));
+        assertThrows(IOException.class, () -> read(withSection(namedSection(BinaryPatchFormat.SECTION_RESOURCE, -1))));
+    }
+
+    @Test
+    void rejectsCountsLargerThanTheSection() {
+        assertThrows(IOException.class, () -> read(withSection(varInts(1000))));
+        assertThrows(IOException.class, () -> read(withSection(namedSection(BinaryPatchFormat.SECTION_HUNKS, 1000))));
+        assertThrows(IOException.class, () -> read(withSection(namedSection(BinaryPatchFormat.SECTION_RESOURCE, 1000))));
+        // A section that claims to be longer than the rest of the patch
+        assertThrows(IOException.class, () -> read(new byte[] {'B', 'C', 'D', 'P', BinaryPatchFormat.VERSION, 0, 100, 0}));
+    }
+
+    @Test
+    void rejectsOutOfRangeStringIndices() {
+        // The empty string table is followed by the index of the original name
+        assertThrows(IOException.class, () -> read(withSection(varInts(0, 5, 5, BinaryPatchFormat.SECTION_HUNKS, 0))));
+        // A line referring to the second string of a table with a single string
+        assertThrows(IOException.class, () -> read(withSection(namedSection(BinaryPatchFormat.SECTION_HUNKS, 1, 0, 0, 1, 1 << 2 | BinaryPatchFormat.KIND_ADDED))));
+        // A line of an unknown kind
+        assertThrows(IOException.class, () -> read(withSection(namedSection(BinaryPatchFormat.SECTION_HUNKS, 1, 0, 0, 1, 3))));
+    }
+
+    @Test
+    void rejectsUnknownSectionKinds() {
+        assertThrows(IOException.class, () -> read(withSection(namedSection(7))));
+    }
+
+    @Test
+    void rejectsCorruptCompressedSections() throws IOException {
+        byte[] patch = TestPatches.toBinary(TestPatches.text(), PatchCodecs.DEFLATE);
+        // The first section starts after the header, its length and the length of its decompressed body
+        int first = BinaryPatchFormat.MAGIC.length + 2;
+        for (int i = first + 3; i < first + 9; i++) {
+            patch[i] ^= 0x55;
+        }
+        assertThrows(IOException.class, () -> read(patch));
+    }
+}
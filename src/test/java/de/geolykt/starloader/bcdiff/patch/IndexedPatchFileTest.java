@@ -0,0 +1,204 @@
+package de.geolykt.starloader.bcdiff.patch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class IndexedPatchFileTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path write(byte[] patch) throws IOException {
+        return Files.write(tempDir.resolve("patch.bin"), patch);
+    }
+
+    private IndexedPatchFile open(byte[] patch) throws IOException {
+        return IndexedPatchFile.open(write(patch));
+    }
+
+    /**
+     * Replaces the index and the trailer of a patch.
+     *
+     * @param patch The patch
+     * @param index The new index
+     * @param indexOffset The offset of the index as stored in the trailer
+     * @return The patch with the new index
+     */
+    private static byte[] withIndex(byte[] patch, byte[] index, long indexOffset) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(patch, 0, TestPatches.indexOffset(patch));
+        out.write(index, 0, index.length);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.write((int) (indexOffset >>> shift));
+        }
+        out.write(BinaryPatchFormat.MAGIC, 0, BinaryPatchFormat.MAGIC.length);
+        return out.toByteArray();
+    }
+
+    /**
+     * Creates an index with a single entry.
+     */
+    private static byte[] index(long offset, int length) {
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        BinaryPatchFormat.writeVarInt(index, 1);
+        BinaryPatchFormat.writeString(index, "fixtures/Changed.class");
+        BinaryPatchFormat.writeString(index, "fixtures/Changed.class");
+        BinaryPatchFormat.writeVarLong(index, offset);
+        BinaryPatchFormat.writeVarInt(index, length);
+        index.write(new byte[4], 0, 4);
+        index.write(BinaryPatchFormat.SECTION_HUNKS);
+        return index.toByteArray();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1})
+    void roundTripsTextPatches(int codecId) throws IOException {
+        List<String> text = TestPatches.text();
+        try (IndexedPatchFile patch = open(TestPatches.toBinary(text, PatchCodecs.get(codecId)))) {
+            assertSame(PatchCodecs.get(codecId), patch.getCodec());
+            assertEquals(text, TestPatches.toText(patch));
+        }
+    }
+
+    @Test
+    void listsSectionsFromTheIndex() throws IOException {
+        byte[] patch = TestPatches.toBinary(TestPatches.text(), PatchCodecs.DEFLATE);
+        // The list command only reads the index, so it still works if every section is corrupt
+        int indexOffset = TestPatches.indexOffset(patch);
+        for (int i = BinaryPatchFormat.MAGIC.length + 2; i < indexOffset - 1; i++) {
+            patch[i] = 0;
+        }
+        try (IndexedPatchFile file = open(patch)) {
+            List<String> names = new ArrayList<>();
+            for (PatchIndexEntry entry : file.getEntries()) {
+                names.add(entry.getOriginalName() + " -> " + entry.getRevisedName() + (entry.isResource() ? " (resource)" : ""));
+            }
+            assertEquals(Arrays.asList(
+                    "fixtures/Changed.class -> fixtures/Changed.class",
+                    "/dev/null -> fixtures/Created.class",
+                    "fixtures/Removed.class -> /dev/null",
+                    "assets/data.txt -> assets/data.txt (resource)"), names);
+        }
+    }
+
+    @Test
+    void looksUpSectionsByName() throws IOException {
+        List<String> text = TestPatches.text();
+        try (IndexedPatchFile patch = open(TestPatches.toBinary(text, PatchCodecs.DEFLATE))) {
+            assertSame(patch.getEntries().get(1), patch.getEntry("fixtures/Created.class"));
+            assertSame(patch.getEntries().get(2), patch.getEntry("fixtures/Removed.class"));
+            assertNull(patch.getEntry("/dev/null"));
+            assertNull(patch.getSection("fixtures/Unknown.class"));
+            PatchSection section = patch.getSection("fixtures/Changed.class");
+            assertEquals(text.subList(0, 14), section.getLines());
+            assertTrue(patch.getSection("assets/data.txt").isResource());
+        }
+    }
+
+    @Test
+    void loadsSectionsLazily() throws IOException {
+        byte[] patch = TestPatches.toBinary(TestPatches.text(), PatchCodecs.NONE);
+        PatchIndexEntry created;
+        try (IndexedPatchFile file = open(patch)) {
+            created = file.getEntry("fixtures/Created.class");
+        }
+        // A changed byte within the body of a section is only noticed once the section is read
+        patch[(int) created.getOffset() + created.getLength() - 1] ^= 1;
+        try (IndexedPatchFile file = open(patch)) {
+            PatchSection changed = file.nextSection();
+            PatchSection corrupt = file.nextSection();
+            PatchSection removed = file.nextSection();
+            PatchSection resource = file.nextSection();
+            assertNull(file.nextSection());
+
+            assertEquals("/dev/null", corrupt.getOriginalName());
+            assertEquals("fixtures/Created.class", corrupt.getRevisedName());
+            assertFalse(corrupt.isResource());
+            UncheckedIOException e = assertThrows(UncheckedIOException.class, corrupt::getHunks);
+            assertTrue(e.getCause().getMessage().startsWith("Checksum mismatch"), e.getCause().getMessage());
+            assertThrows(IOException.class, () -> file.getSection("fixtures/Created.class"));
+
+            assertEquals(2, changed.getHunks().size());
+            assertEquals(1, removed.getHunks().size());
+            assertTrue(resource.isResource());
+            assertEquals(TestPatches.resource(true).length, resource.getResourceDelta().getRevisedLength());
+        }
+    }
+
+    @Test
+    void rejectsOutOfRangeIndexOffsets() throws IOException {
+        byte[] patch = TestPatches.toBinary(TestPatches.text(), PatchCodecs.NONE);
+        int indexOffset = TestPatches.indexOffset(patch);
+        PatchIndexEntry entry;
+        try (IndexedPatchFile file = open(patch)) {
+            entry = file.getEntries().get(0);
+        }
+        // Replacing the index with an equivalent one must work, otherwise the cases below prove nothing
+        try (IndexedPatchFile file = open(withIndex(patch, index(entry.getOffset(), entry.getLength()), indexOffset))) {
+            assertEquals(entry.getOffset(), file.getEntries().get(0).getOffset());
+        }
+
+        // Entries overlapping the header, the index or the end of the file
+        assertThrows(IOException.class, () -> open(withIndex(patch, index(0, entry.getLength()), indexOffset)));
+        assertThrows(IOException.class, () -> open(withIndex(patch, index(entry.getOffset(), indexOffset), indexOffset)));
+        assertThrows(IOException.class, () -> open(withIndex(patch, index(indexOffset + 100L, 1), indexOffset)));
+        assertThrows(IOException.class, () -> open(withIndex(patch, index(-1, entry.getLength()), indexOffset)));
+        assertThrows(IOException.class, () -> open(withIndex(patch, index(entry.getOffset(), -1), indexOffset)));
+
+        // Trailers pointing in front of the sections, behind the end of the file or to a negative offset
+        byte[] index = index(entry.getOffset(), entry.getLength());
+        assertThrows(IOException.class, () -> open(withIndex(patch, index, 2)));
+        assertThrows(IOException.class, () -> open(withIndex(patch, index, patch.length + 100L)));
+        assertThrows(IOException.class, () -> open(withIndex(patch, index, -1)));
+    }
+
+    @Test
+    void rejectsMalformedIndexCounts() throws IOException {
+        byte[] patch = TestPatches.toBinary(TestPatches.text(), PatchCodecs.NONE);
+        int indexOffset = TestPatches.indexOffset(patch);
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        BinaryPatchFormat.writeVarInt(index, -1);
+        assertThrows(IOException.class, () -> open(withIndex(patch, index.toByteArray(), indexOffset)));
+        index.reset();
+        BinaryPatchFormat.writeVarInt(index, 1000);
+        assertThrows(IOException.class, () -> open(withIndex(patch, index.toByteArray(), indexOffset)));
+        // The entry lacks its checksum and kind
+        byte[] entry = index(0, 0);
+        assertThrows(IOException.class, () -> open(withIndex(patch, Arrays.copyOf(entry, entry.length - 3), indexOffset)));
+    }
+
+    @Test
+    void rejectsTruncatedFiles() throws IOException {
+        byte[] patch = TestPatches.toBinary(TestPatches.text(), PatchCodecs.NONE);
+        for (int length = 0; length < patch.length; length++) {
+            byte[] truncated = Arrays.copyOf(patch, length);
+            assertThrows(IOException.class, () -> open(truncated), "Truncated to " + truncated.length + " bytes");
+        }
+    }
+
+    @Test
+    void rejectsPatchesWithoutIndex() {
+        // Version 1 patches end after the end marker
+        assertThrows(IOException.class, () -> open(new byte[] {'B', 'C', 'D', 'P', 1, 0}));
+        assertThrows(IOException.class, () -> open(new byte[] {'B', 'C', 'D', 'P', BinaryPatchFormat.VERSION + 1, 0, 0}));
+        assertThrows(IOException.class, () -> open(new byte[] {'-', '-', '-', ' ', 'a'}));
+    }
+}
@@ -0,0 +1,161 @@
+package de.geolykt.starloader.bcdiff.patch;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import com.github.difflib.patch.PatchFailedException;
+
+class ResourceDeltaTest {
+
+    private static final int BLOCK_SIZE = 16;
+    private static final int MAX_INSTRUCTION_LENGTH = 1 << 24;
+
+    private static byte[] random(int length, long seed) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] apply(ResourceDelta delta, byte[] original) throws IOException, PatchFailedException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(delta.getRevisedLength());
+        delta.apply(original, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Computes a delta, decodes it from its encoded form and applies it.
+     *
+     * @return The decoded delta
+     */
+    private static ResourceDelta assertRoundTrip(byte[] original, byte[] revised) throws IOException, PatchFailedException {
+        ResourceDelta delta = new ResourceDelta(ResourceDelta.compute(original, revised).getBytes());
+        assertEquals(original.length, delta.getOriginalLength());
+        assertEquals(revised.length, delta.getRevisedLength());
+        assertArrayEquals(revised, apply(delta, original));
+        return delta;
+    }
+
+    static Stream<Arguments> contents() {
+        byte[] text = TestPatches.resource(false);
+        byte[] data = random(4096, 1);
+        return Stream.of(
+                Arguments.of("identical", data, data),
+                Arguments.of("changed lines", text, TestPatches.resource(true)),
+                Arguments.of("inserted in the middle", data, concat(Arrays.copyOf(data, 1000), random(37, 2), Arrays.copyOfRange(data, 1000, data.length))),
+                Arguments.of("removed from the middle", data, concat(Arrays.copyOf(data, 1000), Arrays.copyOfRange(data, 2000, data.length))),
+                Arguments.of("swapped halves", data, concat(Arrays.copyOfRange(data, 2048, data.length), Arrays.copyOf(data, 2048))),
+                Arguments.of("repeated", data, concat(data, data, Arrays.copyOf(data, 100))),
+                Arguments.of("unaligned", data, Arrays.copyOfRange(data, 7, data.length - 3)),
+                Arguments.of("unrelated", data, random(4096, 3)),
+                Arguments.of("empty original", new byte[0], data),
+                Arguments.of("empty revised", data, new byte[0]),
+                Arguments.of("both empty", new byte[0], new byte[0]),
+                Arguments.of("short original", Arrays.copyOf(data, BLOCK_SIZE - 1), data),
+                Arguments.of("short revised", data, Arrays.copyOfRange(data, 100, 100 + BLOCK_SIZE - 1)),
+                Arguments.of("single block", Arrays.copyOf(data, BLOCK_SIZE), Arrays.copyOf(data, BLOCK_SIZE)),
+                Arguments.of("both short", "abc".getBytes(StandardCharsets.UTF_8), "abd".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("contents")
+    void roundTrips(String name, byte[] original, byte[] revised) throws Exception {
+        assertRoundTrip(original, revised);
+    }
+
+    @Test
+    void copiesUnchangedData() throws Exception {
+        byte[] data = random(1 << 16, 4);
+        byte[] revised = data.clone();
+        revised[30000] ^= 1;
+        // Two copies around the changed byte, which is inserted
+        assertTrue(assertRoundTrip(data, revised).getBytes().length < 64);
+    }
+
+    @Test
+    void splitsLongCopies() throws Exception {
+        byte[] data = random(MAX_INSTRUCTION_LENGTH + MAX_INSTRUCTION_LENGTH / 2, 5);
+        // A single run of twice the maximum instruction length copies the original and then its start once more
+        byte[] revised = concat(data, Arrays.copyOf(data, MAX_INSTRUCTION_LENGTH / 2));
+        ResourceDelta delta = assertRoundTrip(data, revised);
+        assertTrue(delta.getBytes().length < 64, "Delta of " + delta.getBytes().length + " bytes");
+    }
+
+    @Test
+    void splitsLongInsertions() throws Exception {
+        byte[] revised = random(MAX_INSTRUCTION_LENGTH + 1000, 6);
+        ResourceDelta delta = assertRoundTrip(new byte[0], revised);
+        assertTrue(delta.getBytes().length > revised.length);
+        assertRoundTrip("abc".getBytes(StandardCharsets.UTF_8), revised);
+    }
+
+    @Test
+    void rejectsOtherOriginals() {
+        byte[] data = random(4096, 7);
+        ResourceDelta delta = ResourceDelta.compute(data, TestPatches.resource(true));
+        byte[] changed = data.clone();
+        changed[100] ^= 1;
+        // Same length, but a different checksum
+        assertThrows(PatchFailedException.class, () -> apply(delta, changed));
+        assertThrows(PatchFailedException.class, () -> apply(delta, Arrays.copyOf(data, data.length + 1)));
+        assertThrows(PatchFailedException.class, () -> apply(delta, new byte[0]));
+        assertThrows(PatchFailedException.class, () -> apply(ResourceDelta.compute(new byte[0], data), data));
+    }
+
+    @Test
+    void rejectsCorruptInsertions() {
+        byte[] revised = TestPatches.resource(true);
+        byte[] bytes = ResourceDelta.compute(new byte[0], revised).getBytes().clone();
+        // The last byte of the only insertion
+        bytes[bytes.length - 1] ^= 1;
+        assertThrows(PatchFailedException.class, () -> apply(new ResourceDelta(bytes), new byte[0]));
+    }
+
+    @Test
+    void rejectsMalformedDeltas() {
+        byte[] original = random(4096, 8);
+        byte[] bytes = ResourceDelta.compute(original, concat(original, original)).getBytes();
+        assertThrows(IllegalArgumentException.class, () -> new ResourceDelta(new byte[0]));
+        assertThrows(IllegalArgumentException.class, () -> new ResourceDelta(Arrays.copyOf(bytes, 5)));
+        // The instructions end before the revised contents are complete
+        assertThrows(IOException.class, () -> apply(new ResourceDelta(Arrays.copyOf(bytes, bytes.length - 1)), original));
+
+        // A copy of a single byte from empty original contents, whose checksum is 0
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryPatchFormat.writeVarInt(out, 0);
+        BinaryPatchFormat.writeVarInt(out, 1);
+        out.write(new byte[8], 0, 8);
+        BinaryPatchFormat.writeVarInt(out, 1 << 1 | 1);
+        BinaryPatchFormat.writeVarInt(out, BinaryPatchFormat.zigzag(0));
+        assertThrows(IOException.class, () -> apply(new ResourceDelta(out.toByteArray()), new byte[0]));
+
+        // An instruction of length 0, which would never end
+        out.reset();
+        BinaryPatchFormat.writeVarInt(out, 0);
+        BinaryPatchFormat.writeVarInt(out, 1);
+        out.write(new byte[8], 0, 8);
+        BinaryPatchFormat.writeVarInt(out, 0);
+        assertThrows(IOException.class, () -> apply(new ResourceDelta(out.toByteArray()), new byte[0]));
+    }
+}
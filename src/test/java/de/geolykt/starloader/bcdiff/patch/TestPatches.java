@@ -0,0 +1,116 @@
+package de.geolykt.starloader.bcdiff.patch;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Builds the patches the tests of the binary patch format are run against.
+ * The text patch covers changed, created and removed classes as well as a changed resource.
+ */
+final class TestPatches {
+
+    private TestPatches() {
+    }
+
+    /**
+     * Creates a patch in the unified diff format.
+     *
+     * @return The lines of the patch
+     */
+    static List<String> text() {
+        List<String> lines = new ArrayList<>(Arrays.asList(
+                "--- fixtures/Changed.class",
+                "+++ fixtures/Changed.class",
+                "@@ -1,3 +1,3 @@",
+                " .NAME fixtures/Changed",
+                "-.SUPER java/lang/Object",
+                "+.SUPER fixtures/Base",
+                " .ACCESS 0x21",
+                "@@ -10,4 +10,5 @@",
+                "     ALOAD 0",
+                "-    ICONST_1",
+                "+    ICONST_2",
+                "+    \"caf\u00E9 \u2603\"",
+                "     IRETURN",
+                "     ALOAD 0",
+                "--- /dev/null",
+                "+++ fixtures/Created.class",
+                "@@ -0,0 +1,2 @@",
+                "+.NAME fixtures/Created",
+                "+.SUPER java/lang/Object",
+                "--- fixtures/Removed.class",
+                "+++ /dev/null",
+                "@@ -1,2 +0,0 @@",
+                "-.NAME fixtures/Removed",
+                "-.SUPER java/lang/Object"));
+        lines.addAll(new PatchSection("assets/data.txt", "assets/data.txt", ResourceDelta.compute(resource(false), resource(true))).getLines());
+        return lines;
+    }
+
+    /**
+     * Creates the contents of the resource that is changed by the {@link #text() text patch}.
+     *
+     * @param revised Whether to create the revised instead of the original contents
+     * @return The contents
+     */
+    static byte[] resource(boolean revised) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            builder.append(revised && i % 50 == 7 ? "changed line " : "line ").append(i).append('\n');
+        }
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Converts a patch from the unified diff format into the binary patch format.
+     *
+     * @param text The lines of the patch
+     * @param codec The codec to compress the sections with
+     * @return The binary patch
+     * @throws IOException If the patch could not be converted
+     */
+    static byte[] toBinary(List<String> text, PatchCodec codec) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (PatchReader reader = new PatchReader(text); BinaryPatchWriter writer = new BinaryPatchWriter(out, codec)) {
+            for (PatchSection section = reader.nextSection(); section != null; section = reader.nextSection()) {
+                writer.writeSection(section);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Reads all sections of a patch and converts them into the unified diff format.
+     *
+     * @param patch The patch, which is closed afterwards
+     * @return The lines of the patch
+     * @throws IOException If the patch could not be read
+     */
+    static List<String> toText(PatchInput patch) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (PatchInput in = patch) {
+            for (PatchSection section = in.nextSection(); section != null; section = in.nextSection()) {
+                lines.addAll(section.getLines());
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Obtains the offset of the index of a binary patch from its trailer.
+     *
+     * @param patch The binary patch
+     * @return The offset of the index, which directly follows the marker that ends the sections
+     */
+    static int indexOffset(byte[] patch) {
+        int offset = 0;
+        for (int i = patch.length - BinaryPatchFormat.TRAILER_LENGTH; i < patch.length - BinaryPatchFormat.MAGIC.length; i++) {
+            offset = offset << 8 | (patch[i] & 0xFF);
+        }
+        return offset;
+    }
+}